@@ -0,0 +1,1193 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.tabular;
+
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.DatasetFileReader;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import edu.pitt.dbmi.data.reader.metadata.ColumnMetadata;
+import edu.pitt.dbmi.data.reader.metadata.Metadata;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads tabular data in one pass over a memory-mapped file. The file is split
+ * into chunks that end at line breaks, and the chunks are parsed in parallel
+ * straight into column arrays (double[] for continuous columns, int[] for
+ * discrete ones), so the data can be handed to VerticalDoubleDataBox,
+ * VerticalIntDataBox or MixedDataBox without copying. Numbers are parsed from
+ * the bytes of the file without making strings.
+ * <p>
+ * read(dataColumns, hasHeader, numberOfCategories) also decides in the same
+ * pass which columns are discrete: each chunk encodes a column's values with
+ * its own dictionary until it has seen more than numberOfCategories of them,
+ * at which point the column becomes continuous and the chunks convert what
+ * they have encoded so far to numbers. Dictionaries are merged at the end.
+ * <p>
+ * The format is read as TabularDataFileReader reads it, except that a quote is
+ * taken to end at the end of its line. Continuous data is returned by column,
+ * as VerticalContinuousTabularData; discrete and mixed data are returned as
+ * VerticalDiscreteTabularData and MixedTabularData.
+ */
+public final class MappedTabularDataFileReader extends DatasetFileReader implements TabularDataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedTabularDataFileReader.class);
+
+    private static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * A chunk keeps the codes of the first rows of a column itself until it
+     * knows whether the column is discrete, so that a continuous column does
+     * not need an int array the size of the column.
+     */
+    private static final int PENDING_ROWS = 64;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private long chunkSize;
+    private int numberOfThreads;
+
+    public MappedTabularDataFileReader(Path dataFile, Delimiter delimiter) {
+        super(dataFile, delimiter);
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.numberOfThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Set the number of bytes at which to split the file. Chunks are extended
+     * to the next line break.
+     *
+     * @param chunkSize
+     */
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1.");
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Set the number of chunks to parse at once.
+     *
+     * @param numberOfThreads
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    @Override
+    public void determineDiscreteDataColumns(DataColumn[] dataColumns, int numberOfCategories, boolean hasHeader) throws IOException {
+        Column[] columns = toColumns(dataColumns, Mode.CATEGORIES);
+        parse(columns, hasHeader, numberOfCategories);
+
+        for (Column column : columns) {
+            column.dataColumn.setDiscrete(!column.continuous);
+        }
+    }
+
+    /**
+     * Determine which columns of the file are discrete, as
+     * determineDiscreteDataColumns does, and read in the data, in one pass.
+     *
+     * @param dataColumns
+     * @param hasHeader
+     * @param numberOfCategories maximum number of categories to be considered
+     * discrete
+     * @return the data
+     * @throws IOException
+     */
+    public Data read(DataColumn[] dataColumns, boolean hasHeader, int numberOfCategories) throws IOException {
+        if (dataColumns == null) {
+            return null;
+        }
+
+        Column[] columns = toColumns(dataColumns, Mode.INFER);
+        int numOfRows = parse(columns, hasHeader, numberOfCategories);
+
+        for (Column column : columns) {
+            column.dataColumn.setDiscrete(!column.continuous);
+        }
+
+        return toData(dataColumns, columns, numOfRows);
+    }
+
+    @Override
+    public Data read(DataColumn[] dataColumns, boolean hasHeader) throws IOException {
+        if (dataColumns == null) {
+            return null;
+        }
+
+        Column[] columns = toColumns(dataColumns, null);
+        int numOfRows = parse(columns, hasHeader, Integer.MAX_VALUE);
+
+        return toData(dataColumns, columns, numOfRows);
+    }
+
+    @Override
+    public Data read(DataColumn[] dataColumns, boolean hasHeader, Metadata metadata) throws IOException {
+        Data data = read(dataColumns, hasHeader);
+
+        if (metadata != null && data != null) {
+            setInterventionalData(data, dataColumns, metadata);
+        }
+
+        return data;
+    }
+
+    /**
+     * Receives rows of continuous data from readContinuousRows.
+     */
+    public interface ContinuousRowHandler {
+
+        /**
+         * @param row the values of the columns read, in order, with missing
+         * values as NaN. The array is reused for the next row.
+         */
+        void handle(double[] row);
+
+    }
+
+    /**
+     * Read the given columns, which must be continuous, a row at a time
+     * without keeping the data, for files too large to be held in memory.
+     * Chunks are parsed in parallel; each thread that parses passes its rows
+     * to a handler of its own, made by the given supplier, in no particular
+     * order. Line numbers in error messages are counted from the start of the
+     * chunk in which the error occurs.
+     *
+     * @param dataColumns
+     * @param hasHeader
+     * @param handlers makes a handler for each thread
+     * @return the handlers made
+     * @throws IOException
+     */
+    public <H extends ContinuousRowHandler> List<H> readContinuousRows(DataColumn[] dataColumns, boolean hasHeader, Supplier<H> handlers) throws IOException {
+        Column[] columns = toColumns(dataColumns, Mode.ROW);
+        List<H> made = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel);
+
+            ThreadLocal<H> handler = ThreadLocal.withInitial(() -> {
+                H h = handlers.get();
+                synchronized (made) {
+                    made.add(h);
+                }
+                return h;
+            });
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(numberOfThreads, Math.max(chunks.size(), 1)));
+
+            try {
+                // count the lines of the chunks to find the line each chunk starts on
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (Chunk chunk : chunks) {
+                    tasks.add(() -> {
+                        chunk.count();
+                        return null;
+                    });
+                }
+                invokeAll(pool, tasks);
+
+                // the header is the first row of data, which is almost always in the first chunk
+                int lineNum = 1;
+                boolean skipHeader = hasHeader;
+                for (Chunk chunk : chunks) {
+                    chunk.firstLine = lineNum;
+                    lineNum += chunk.numOfLines;
+
+                    if (skipHeader && chunk.numOfRows > 0) {
+                        chunk.skipHeader = true;
+                        skipHeader = false;
+                    }
+                }
+
+                tasks.clear();
+                for (Chunk chunk : chunks) {
+                    tasks.add(() -> {
+                        chunk.stream(columns, handler.get());
+                        return null;
+                    });
+                }
+                invokeAll(pool, tasks);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        return made;
+    }
+
+    private Column[] toColumns(DataColumn[] dataColumns, Mode mode) {
+        return Arrays.stream(dataColumns)
+                .filter(e -> !e.isGenerated())
+                .map(e -> new Column(e, (mode == null) ? (e.isDiscrete() ? Mode.DISCRETE : Mode.CONTINUOUS) : mode))
+                .toArray(Column[]::new);
+    }
+
+    /**
+     * Parse the file into the given columns.
+     *
+     * @return the number of rows of data
+     */
+    private int parse(Column[] columns, boolean hasHeader, int numberOfCategories) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel);
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(numberOfThreads, Math.max(chunks.size(), 1)));
+
+            try {
+                // count the lines and rows of the chunks to find where each chunk's rows go
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (Chunk chunk : chunks) {
+                    tasks.add(() -> {
+                        chunk.count();
+                        return null;
+                    });
+                }
+                invokeAll(pool, tasks);
+
+                int numOfRows = 0;
+                int lineNum = 1;
+                boolean skipHeader = hasHeader;
+                for (Chunk chunk : chunks) {
+                    chunk.firstLine = lineNum;
+                    lineNum += chunk.numOfLines;
+
+                    if (skipHeader && chunk.numOfRows > 0) {
+                        chunk.skipHeader = true;
+                        chunk.numOfRows--;
+                        skipHeader = false;
+                    }
+
+                    chunk.firstRow = numOfRows;
+                    numOfRows += chunk.numOfRows;
+                }
+
+                for (Column column : columns) {
+                    column.allocate(numOfRows);
+                }
+
+                int totalRows = numOfRows;
+                tasks.clear();
+                for (Chunk chunk : chunks) {
+                    tasks.add(() -> {
+                        chunk.parse(columns, totalRows, numberOfCategories);
+                        return null;
+                    });
+                }
+                invokeAll(pool, tasks);
+
+                tasks.clear();
+                for (int i = 0; i < columns.length; i++) {
+                    int index = i;
+                    tasks.add(() -> {
+                        finish(columns[index], index, chunks, totalRows, numberOfCategories);
+                        return null;
+                    });
+                }
+                invokeAll(pool, tasks);
+
+                return numOfRows;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Split the file at line breaks into chunks of about chunkSize bytes.
+     */
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkSize, size);
+
+            // move the end past the next line break
+            boolean found = false;
+            while (end < size && !found) {
+                buffer.clear();
+                int len = channel.read(buffer, end);
+                for (int i = 0; i < len && !found; i++) {
+                    byte currChar = buffer.get(i);
+                    if (currChar == LINE_FEED) {
+                        end += i + 1;
+                        found = true;
+                    } else if (currChar == CARRIAGE_RETURN) {
+                        // keep a CR LF pair together
+                        if (i + 1 < len) {
+                            end += (buffer.get(i + 1) == LINE_FEED) ? i + 2 : i + 1;
+                        } else {
+                            ByteBuffer next = ByteBuffer.allocate(1);
+                            end += i + 1;
+                            if (channel.read(next, end) == 1 && next.get(0) == LINE_FEED) {
+                                end++;
+                            }
+                        }
+                        found = true;
+                    }
+                }
+
+                if (!found) {
+                    end += len;
+                }
+            }
+            end = Math.min(end, size);
+
+            if (end - start > Integer.MAX_VALUE) {
+                String errMsg = String.format("Line starting after byte %d is too long.", start);
+                LOGGER.error(errMsg);
+                throw new DataReaderException(errMsg);
+            }
+
+            chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Decide the type of a column whose type was inferred, and replace chunk
+     * codes with column codes or numbers.
+     */
+    private void finish(Column column, int index, List<Chunk> chunks, int numOfRows, int numberOfCategories) {
+        if (column.mode == Mode.CONTINUOUS) {
+            return;
+        }
+
+        // merge the chunks' categories
+        Map<String, Integer> values = new TreeMap<>();
+        if (!column.continuous) {
+            for (Chunk chunk : chunks) {
+                Categories categories = chunk.categories[index];
+                for (int i = 0; categories != null && i < categories.size(); i++) {
+                    values.put(categories.get(i), null);
+                }
+            }
+
+            if (values.size() > numberOfCategories) {
+                column.continuous = true;
+            }
+        }
+
+        if (column.mode == Mode.CATEGORIES) {
+            return;
+        }
+
+        if (column.continuous) {
+            for (Chunk chunk : chunks) {
+                chunk.toContinuous(column, index, chunk.firstRow + chunk.numOfRows, numOfRows);
+            }
+            column.codes = null;
+
+            return;
+        }
+
+        List<String> categories = new ArrayList<>(values.size());
+        for (String value : values.keySet()) {
+            values.put(value, categories.size());
+            categories.add(value);
+        }
+        column.categories = categories;
+
+        int[] codes = column.codes(numOfRows);
+        for (Chunk chunk : chunks) {
+            int[] pending = chunk.pending[index];
+            if (pending != null) {
+                System.arraycopy(pending, 0, codes, chunk.firstRow, chunk.numOfRows);
+                chunk.pending[index] = null;
+            }
+
+            Categories chunkCategories = chunk.categories[index];
+            if (chunkCategories == null) {
+                continue;
+            }
+
+            int[] recode = new int[chunkCategories.size()];
+            for (int i = 0; i < recode.length; i++) {
+                recode[i] = values.get(chunkCategories.get(i));
+            }
+
+            for (int row = chunk.firstRow; row < chunk.firstRow + chunk.numOfRows; row++) {
+                if (codes[row] != DISCRETE_MISSING_VALUE) {
+                    codes[row] = recode[codes[row]];
+                }
+            }
+
+            chunk.categories[index] = null;
+        }
+    }
+
+    private Data toData(DataColumn[] dataColumns, Column[] columns, int numOfRows) {
+        int numOfCols = dataColumns.length;
+
+        boolean isDiscrete = false;
+        boolean isContinuous = false;
+        for (DataColumn dataColumn : dataColumns) {
+            if (dataColumn.isDiscrete()) {
+                isDiscrete = true;
+            } else {
+                isContinuous = true;
+            }
+        }
+
+        double[][] continuousData = new double[numOfCols][];
+        int[][] discreteData = new int[numOfCols][];
+        DiscreteDataColumn[] discreteDataColumns = new DiscreteDataColumn[numOfCols];
+        int columnIndex = 0;
+        for (int i = 0; i < numOfCols; i++) {
+            DataColumn dataColumn = dataColumns[i];
+            Column column = dataColumn.isGenerated() ? null : columns[columnIndex++];
+
+            discreteDataColumns[i] = isContinuous
+                    ? new MixedTabularDataColumn(dataColumn)
+                    : new DiscreteTabularDataColumn(dataColumn);
+
+            if (dataColumn.isDiscrete()) {
+                if (column == null) {
+                    discreteData[i] = new int[numOfRows];
+                    discreteDataColumns[i].setValue("0");
+                    discreteDataColumns[i].setValue("1");
+                } else {
+                    discreteData[i] = column.codes;
+                    column.categories.forEach(discreteDataColumns[i]::setValue);
+                }
+            } else {
+                continuousData[i] = (column == null) ? new double[numOfRows] : column.values;
+            }
+
+            discreteDataColumns[i].recategorize();
+        }
+
+        if (isDiscrete && isContinuous) {
+            return new MixedTabularData(numOfRows, discreteDataColumns, continuousData, discreteData);
+        } else if (isContinuous) {
+            return new VerticalContinuousTabularData(dataColumns, continuousData);
+        } else if (isDiscrete) {
+            return new VerticalDiscreteTabularData(discreteDataColumns, discreteData);
+        } else {
+            return null;
+        }
+    }
+
+    private void setInterventionalData(Data data, DataColumn[] dataColumns, Metadata metadata) {
+        double[][] continuousData;
+        int[][] discreteData;
+        if (data instanceof VerticalContinuousTabularData) {
+            continuousData = ((VerticalContinuousTabularData) data).getData();
+            discreteData = new int[continuousData.length][];
+        } else if (data instanceof VerticalDiscreteTabularData) {
+            discreteData = ((VerticalDiscreteTabularData) data).getData();
+            continuousData = new double[discreteData.length][];
+        } else {
+            continuousData = ((MixedTabularData) data).getContinuousData();
+            discreteData = ((MixedTabularData) data).getDiscreteData();
+        }
+
+        metadata.getInterventionalColumns().forEach(column -> {
+            ColumnMetadata valCol = column.getValueColumn();
+            ColumnMetadata statCol = column.getStatusColumn();
+            int valColNum = valCol.getColumnNumber() - 1;
+            int statColNum = statCol.getColumnNumber() - 1;
+            boolean isGenerated = dataColumns[statColNum].isGenerated();
+            int numOfRows = (discreteData[valColNum] != null) ? discreteData[valColNum].length : continuousData[valColNum].length;
+            for (int i = 0; i < numOfRows; i++) {
+                boolean isMissing = (discreteData[valColNum] != null)
+                        ? discreteData[valColNum][i] == DISCRETE_MISSING_VALUE
+                        : Double.isNaN(continuousData[valColNum][i]);
+                if (isMissing) {
+                    setValue(continuousData, discreteData, valColNum, i, 0);
+                    setValue(continuousData, discreteData, statColNum, i, 0);
+                } else if (isGenerated) {
+                    setValue(continuousData, discreteData, statColNum, i, 1);
+                }
+            }
+        });
+    }
+
+    private static void setValue(double[][] continuousData, int[][] discreteData, int col, int row, int value) {
+        if (discreteData[col] != null) {
+            discreteData[col][row] = value;
+        } else {
+            continuousData[col][row] = value;
+        }
+    }
+
+    private static void invokeAll(ExecutorService pool, List<Callable<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new DataReaderException("Reading was interrupted.");
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else {
+                throw new DataReaderException(cause.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Parse a number as Double.parseDouble would. Numbers with at most 15
+     * significant digits and a power of ten of at most 22 are converted with
+     * one rounding, which gives the nearest double; other numbers are left to
+     * Double.parseDouble.
+     */
+    private static double parseDouble(byte[] bytes, int from, int to) {
+        int i = from;
+
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int numOfDigits = 0;
+        int exponent = 0;
+        boolean hasDigit = false;
+        for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+            hasDigit = true;
+            if (mantissa > 0 || bytes[i] != '0') {
+                if (++numOfDigits > 15) {
+                    return Double.parseDouble(toString(bytes, from, to));
+                }
+                mantissa = 10 * mantissa + (bytes[i] - '0');
+            }
+        }
+
+        if (i < to && bytes[i] == '.') {
+            for (i++; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                hasDigit = true;
+                if (mantissa > 0 || bytes[i] != '0') {
+                    if (++numOfDigits > 15) {
+                        return Double.parseDouble(toString(bytes, from, to));
+                    }
+                    mantissa = 10 * mantissa + (bytes[i] - '0');
+                }
+                exponent--;
+            }
+        }
+
+        if (hasDigit && i < to && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+
+            int e = 0;
+            boolean hasExponentDigit = false;
+            for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                hasExponentDigit = true;
+                e = Math.min(10 * e + (bytes[i] - '0'), 100000);
+            }
+
+            if (!hasExponentDigit) {
+                return Double.parseDouble(toString(bytes, from, to));
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (!hasDigit || i < to || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(toString(bytes, from, to));
+        }
+
+        double value = mantissa;
+        if (mantissa > 0) {
+            value = (exponent < 0) ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Make a string of bytes the way TabularDataFileReader does, a char per
+     * byte.
+     */
+    private static String toString(byte[] bytes, int from, int to) {
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) {
+            chars[i - from] = (char) bytes[i];
+        }
+
+        return new String(chars);
+    }
+
+    private enum Mode {
+        /**
+         * Only count categories.
+         */
+        CATEGORIES,
+        /**
+         * Infer the type while reading the data.
+         */
+        INFER,
+        DISCRETE,
+        CONTINUOUS,
+        /**
+         * Read continuous values a row at a time.
+         */
+        ROW
+    }
+
+    /**
+     * A column of the file that is read in, and its data.
+     */
+    private static final class Column {
+
+        private final DataColumn dataColumn;
+        private final int columnNumber;
+        private final Mode mode;
+
+        /**
+         * True when the column has been seen to have too many categories to
+         * be discrete, or was declared continuous.
+         */
+        private volatile boolean continuous;
+
+        private int[] codes;
+        private double[] values;
+        private List<String> categories;
+
+        private Column(DataColumn dataColumn, Mode mode) {
+            this.dataColumn = dataColumn;
+            this.columnNumber = dataColumn.getColumnNumber();
+            this.mode = mode;
+            this.continuous = mode == Mode.CONTINUOUS;
+        }
+
+        private void allocate(int numOfRows) {
+            if (mode == Mode.DISCRETE) {
+                codes = new int[numOfRows];
+            } else if (mode == Mode.CONTINUOUS) {
+                values = new double[numOfRows];
+            }
+        }
+
+        private synchronized int[] codes(int numOfRows) {
+            if (codes == null) {
+                codes = new int[numOfRows];
+            }
+
+            return codes;
+        }
+
+        private synchronized double[] values(int numOfRows) {
+            if (values == null) {
+                values = new double[numOfRows];
+            }
+
+            return values;
+        }
+
+    }
+
+    /**
+     * The values of a column seen by one chunk, numbered in the order seen.
+     * Values are kept as bytes and found by hash.
+     */
+    private static final class Categories {
+
+        private byte[][] values = new byte[8][];
+        private int[] hashes = new int[8];
+        private double[] numbers;
+        private int size;
+
+        // codes + 1 of the values, by hash; 0 for empty slots
+        private int[] table = new int[16];
+
+        private int encode(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+
+            int mask = table.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int code = table[slot] - 1;
+                if (code < 0) {
+                    code = add(bytes, from, to, hash);
+                    table[slot] = code + 1;
+                    if (2 * size > table.length) {
+                        rehash();
+                    }
+
+                    return code;
+                } else if (hashes[code] == hash && equals(values[code], bytes, from, to)) {
+                    return code;
+                }
+            }
+        }
+
+        private int add(byte[] bytes, int from, int to, int hash) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+                hashes = Arrays.copyOf(hashes, 2 * size);
+            }
+
+            values[size] = Arrays.copyOfRange(bytes, from, to);
+            hashes[size] = hash;
+
+            return size++;
+        }
+
+        private void rehash() {
+            table = new int[2 * table.length];
+            int mask = table.length - 1;
+            for (int code = 0; code < size; code++) {
+                int slot = hashes[code] & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = code + 1;
+            }
+        }
+
+        private static boolean equals(byte[] value, byte[] bytes, int from, int to) {
+            if (value.length != to - from) {
+                return false;
+            }
+
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] != bytes[from + i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private String get(int code) {
+            return MappedTabularDataFileReader.toString(values[code], 0, values[code].length);
+        }
+
+        /**
+         * @throws NumberFormatException if the value is not a number
+         */
+        private double getNumber(int code) {
+            if (numbers == null || numbers.length < size) {
+                double[] parsed = new double[size];
+                Arrays.fill(parsed, Double.NaN);
+                if (numbers != null) {
+                    System.arraycopy(numbers, 0, parsed, 0, numbers.length);
+                }
+                numbers = parsed;
+            }
+
+            if (Double.isNaN(numbers[code])) {
+                numbers[code] = parseDouble(values[code], 0, values[code].length);
+            }
+
+            return numbers[code];
+        }
+
+    }
+
+    /**
+     * A part of the file that ends at a line break, and what was read from it.
+     */
+    private final class Chunk {
+
+        private final ByteBuffer buffer;
+
+        private int numOfLines;
+        private int numOfRows;
+        private int firstLine;
+        private int firstRow;
+        private boolean skipHeader;
+
+        // by column
+        private Categories[] categories;
+        private int[][] pending;
+        private int[][] codes;
+        private double[][] values;
+
+        // the row being read, when reading a row at a time
+        private double[] rowValues;
+
+        private byte[] field = new byte[256];
+
+        private Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Count the lines and the rows of data, which are the lines that are
+         * not blank or comments.
+         */
+        private void count() {
+            int limit = buffer.limit();
+            int i = 0;
+            while (i < limit) {
+                int end = endOfLine(i);
+                if (isDataLine(i, end)) {
+                    numOfRows++;
+                }
+                numOfLines++;
+                i = nextLine(end);
+            }
+        }
+
+        private void parse(Column[] columns, int totalRows, int numberOfCategories) {
+            int numOfCols = columns.length;
+            categories = new Categories[numOfCols];
+            pending = new int[numOfCols][];
+            codes = new int[numOfCols][];
+            values = new double[numOfCols][];
+            for (int j = 0; j < numOfCols; j++) {
+                codes[j] = columns[j].codes;
+                values[j] = columns[j].values;
+            }
+
+            int limit = buffer.limit();
+            int lineNum = firstLine;
+            int row = firstRow;
+            boolean header = skipHeader;
+            int i = 0;
+            while (i < limit && numOfCols > 0) {
+                int end = endOfLine(i);
+                if (isDataLine(i, end)) {
+                    if (header) {
+                        header = false;
+                    } else {
+                        parseLine(columns, i, end, row++, lineNum, totalRows, numberOfCategories);
+                    }
+                }
+                lineNum++;
+                i = nextLine(end);
+            }
+        }
+
+        /**
+         * Parse the rows of the chunk one at a time, passing each to the
+         * handler.
+         */
+        private void stream(Column[] columns, ContinuousRowHandler handler) {
+            int numOfCols = columns.length;
+            rowValues = new double[numOfCols];
+
+            int limit = buffer.limit();
+            int lineNum = firstLine;
+            boolean header = skipHeader;
+            int i = 0;
+            while (i < limit && numOfCols > 0) {
+                int end = endOfLine(i);
+                if (isDataLine(i, end)) {
+                    if (header) {
+                        header = false;
+                    } else {
+                        parseLine(columns, i, end, 0, lineNum, 0, 0);
+                        handler.handle(rowValues);
+                    }
+                }
+                lineNum++;
+                i = nextLine(end);
+            }
+        }
+
+        private void parseLine(Column[] columns, int start, int end, int row, int lineNum, int totalRows, int numberOfCategories) {
+            byte delimChar = delimiter.getByteValue();
+            boolean isWhitespace = delimiter == Delimiter.WHITESPACE;
+
+            int colNum = 0;
+            int columnIndex = 0;
+            int length = 0;
+            boolean hasQuoteChar = false;
+            byte prevChar = -1;
+            for (int i = start; i < end; i++) {
+                byte currChar = buffer.get(i);
+
+                if (currChar == quoteCharacter) {
+                    hasQuoteChar = !hasQuoteChar;
+                } else {
+                    boolean isDelimiter = !hasQuoteChar && (isWhitespace
+                            ? (currChar <= SPACE_CHAR) && (prevChar > SPACE_CHAR)
+                            : currChar == delimChar);
+
+                    if (isDelimiter) {
+                        colNum++;
+
+                        if (columns[columnIndex].columnNumber == colNum) {
+                            setValue(columns, columnIndex, row, length, lineNum, colNum, totalRows, numberOfCategories);
+
+                            columnIndex++;
+                            if (columnIndex == columns.length) {
+                                return;
+                            }
+                        }
+
+                        length = 0;
+                    } else {
+                        if (length == field.length) {
+                            field = Arrays.copyOf(field, 2 * length);
+                        }
+                        field[length++] = currChar;
+                    }
+                }
+
+                prevChar = currChar;
+            }
+
+            colNum++;
+            if (columns[columnIndex].columnNumber == colNum) {
+                setValue(columns, columnIndex, row, length, lineNum, colNum, totalRows, numberOfCategories);
+                columnIndex++;
+            }
+
+            // ensure we have enough data
+            if (columnIndex < columns.length) {
+                String errMsg = String.format("Insufficient data on line %d.  Extracted %d value(s) but expected %d.", lineNum, columnIndex, columns.length);
+                LOGGER.error(errMsg);
+                throw new DataReaderException(errMsg);
+            }
+        }
+
+        /**
+         * Set the value of a column in a row from the bytes in field.
+         */
+        private void setValue(Column[] columns, int j, int row, int length, int lineNum, int colNum, int totalRows, int numberOfCategories) {
+            // trim as String.trim does
+            int from = 0;
+            int to = length;
+            while (from < to && (char) field[from] <= ' ') {
+                from++;
+            }
+            while (to > from && (char) field[to - 1] <= ' ') {
+                to--;
+            }
+
+            boolean isMissing = (from == to) || isMissingDataMarker(from, to);
+
+            Column column = columns[j];
+            switch (column.mode) {
+                case CATEGORIES:
+                    if (!isMissing && !column.continuous) {
+                        if (categories[j] == null) {
+                            categories[j] = new Categories();
+                        }
+                        categories[j].encode(field, from, to);
+                        if (categories[j].size() > numberOfCategories) {
+                            column.continuous = true;
+                        }
+                    }
+                    break;
+                case DISCRETE:
+                    codes[j][row] = isMissing ? DISCRETE_MISSING_VALUE : encode(j, from, to);
+                    break;
+                case CONTINUOUS:
+                    values[j][row] = isMissing ? CONTINUOUS_MISSING_VALUE : toNumber(from, to, lineNum, colNum);
+                    break;
+                case ROW:
+                    rowValues[j] = isMissing ? CONTINUOUS_MISSING_VALUE : toNumber(from, to, lineNum, colNum);
+                    break;
+                default:
+                    if (values[j] == null && column.continuous) {
+                        toContinuous(column, j, row, totalRows);
+                    }
+
+                    if (values[j] != null) {
+                        values[j][row] = isMissing ? CONTINUOUS_MISSING_VALUE : toNumber(from, to, lineNum, colNum);
+                    } else {
+                        int code = isMissing ? DISCRETE_MISSING_VALUE : encode(j, from, to);
+                        if (categories[j] != null && categories[j].size() > numberOfCategories) {
+                            column.continuous = true;
+                            toContinuous(column, j, row, totalRows);
+                            values[j][row] = isMissing ? CONTINUOUS_MISSING_VALUE : toNumber(from, to, lineNum, colNum);
+                        } else {
+                            setCode(column, j, row, code, totalRows);
+                        }
+                    }
+            }
+        }
+
+        private int encode(int j, int from, int to) {
+            if (categories[j] == null) {
+                categories[j] = new Categories();
+            }
+
+            return categories[j].encode(field, from, to);
+        }
+
+        private double toNumber(int from, int to, int lineNum, int colNum) {
+            try {
+                return parseDouble(field, from, to);
+            } catch (NumberFormatException exception) {
+                String errMsg = String.format("Non-continuous number %s on line %d at column %d.", MappedTabularDataFileReader.toString(field, from, to), lineNum, colNum);
+                LOGGER.error(errMsg, exception);
+                throw new DataReaderException(errMsg);
+            }
+        }
+
+        private void setCode(Column column, int j, int row, int code, int totalRows) {
+            int index = row - firstRow;
+            if (codes[j] != null) {
+                codes[j][row] = code;
+            } else if (index < PENDING_ROWS) {
+                if (pending[j] == null) {
+                    pending[j] = new int[Math.min(numOfRows, PENDING_ROWS)];
+                }
+                pending[j][index] = code;
+            } else {
+                codes[j] = column.codes(totalRows);
+                System.arraycopy(pending[j], 0, codes[j], firstRow, PENDING_ROWS);
+                pending[j] = null;
+                codes[j][row] = code;
+            }
+        }
+
+        /**
+         * Replace the codes of the rows of a column before the given row with
+         * numbers, and read numbers from now on.
+         */
+        private void toContinuous(Column column, int j, int row, int totalRows) {
+            if (values == null || values[j] != null) {
+                return;
+            }
+
+            values[j] = column.values(totalRows);
+            for (int r = firstRow; r < row; r++) {
+                int code = (codes[j] != null) ? codes[j][r] : pending[j][r - firstRow];
+                if (code == DISCRETE_MISSING_VALUE) {
+                    values[j][r] = CONTINUOUS_MISSING_VALUE;
+                } else {
+                    try {
+                        values[j][r] = categories[j].getNumber(code);
+                    } catch (NumberFormatException exception) {
+                        String errMsg = String.format("Non-continuous number %s at column %d.", categories[j].get(code), column.columnNumber);
+                        LOGGER.error(errMsg, exception);
+                        throw new DataReaderException(errMsg);
+                    }
+                }
+            }
+
+            pending[j] = null;
+            codes[j] = null;
+            categories[j] = null;
+        }
+
+        private boolean isMissingDataMarker(int from, int to) {
+            if (missingDataMarker.length() != to - from) {
+                return false;
+            }
+
+            for (int i = from; i < to; i++) {
+                if ((char) field[i] != missingDataMarker.charAt(i - from)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private int endOfLine(int i) {
+            int limit = buffer.limit();
+            while (i < limit) {
+                byte currChar = buffer.get(i);
+                if (currChar == LINE_FEED || currChar == CARRIAGE_RETURN) {
+                    break;
+                }
+                i++;
+            }
+
+            return i;
+        }
+
+        private int nextLine(int end) {
+            if (end < buffer.limit() && buffer.get(end) == CARRIAGE_RETURN
+                    && end + 1 < buffer.limit() && buffer.get(end + 1) == LINE_FEED) {
+                return end + 2;
+            }
+
+            return end + 1;
+        }
+
+        /**
+         * True if the line has a nonblank character and does not start with
+         * the comment marker.
+         */
+        private boolean isDataLine(int start, int end) {
+            int i = start;
+            while (i < end && buffer.get(i) <= SPACE_CHAR) {
+                i++;
+            }
+
+            if (i == end) {
+                return false;
+            }
+
+            byte[] comment = commentMarker.getBytes();
+            if (comment.length == 0 || end - i < comment.length) {
+                return true;
+            }
+
+            for (int k = 0; k < comment.length; k++) {
+                if (buffer.get(i + k) != comment[k]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+    }
+
+}
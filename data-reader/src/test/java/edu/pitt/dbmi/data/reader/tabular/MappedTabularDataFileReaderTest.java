@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.tabular;
+
+import edu.pitt.dbmi.data.reader.ContinuousData;
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.DiscreteData;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks MappedTabularDataFileReader against TabularDataFileReader.
+ */
+public class MappedTabularDataFileReaderTest {
+
+    private final Delimiter delimiter = Delimiter.COMMA;
+    private final char quoteCharacter = '"';
+    private final String missingValueMarker = "*";
+    private final String commentMarker = "//";
+    private final boolean hasHeader = true;
+
+    // small enough to split the test files into many chunks
+    private final long[] chunkSizes = {1, 100, 1024 * 1024};
+
+    private final Path[] continuousDataFiles = {
+        Paths.get(getClass().getResource("/data/tabular/continuous/dos_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/continuous/mac_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/continuous/sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/continuous/quotes_sim_test_data.csv").getFile())
+    };
+
+    private final Path[] discreteDataFiles = {
+        Paths.get(getClass().getResource("/data/tabular/discrete/dos_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/discrete/mac_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/discrete/sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/discrete/quotes_sim_test_data.csv").getFile())
+    };
+
+    private final Path[] mixedDataFiles = {
+        Paths.get(getClass().getResource("/data/tabular/mixed/dos_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/mixed/mac_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/mixed/sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/mixed/quotes_sim_test_data.csv").getFile())
+    };
+
+    public MappedTabularDataFileReaderTest() {
+    }
+
+    @Test
+    public void testReadInContinuousData() throws IOException {
+        for (Path dataFile : continuousDataFiles) {
+            for (long chunkSize : chunkSizes) {
+                DataColumn[] dataColumns = readInDataColumns(dataFile, false);
+                ContinuousData expected = (ContinuousData) setUp(new TabularDataFileReader(dataFile, delimiter)).read(dataColumns, hasHeader);
+
+                Data data = setUp(dataFile, chunkSize).read(dataColumns, hasHeader);
+                Assert.assertTrue(data instanceof VerticalContinuousTabularData);
+
+                double[][] contData = ((VerticalContinuousTabularData) data).getData();
+                Assert.assertEquals(dataColumns.length, contData.length);
+                for (int i = 0; i < expected.getData().length; i++) {
+                    for (int j = 0; j < dataColumns.length; j++) {
+                        Assert.assertEquals(expected.getData()[i][j], contData[j][i], 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadContinuousRows() throws IOException {
+        for (Path dataFile : continuousDataFiles) {
+            for (long chunkSize : chunkSizes) {
+                DataColumn[] dataColumns = readInDataColumns(dataFile, false);
+                ContinuousData expected = (ContinuousData) setUp(new TabularDataFileReader(dataFile, delimiter)).read(dataColumns, hasHeader);
+
+                List<ColumnSums> handlers = setUp(dataFile, chunkSize)
+                        .readContinuousRows(dataColumns, hasHeader, () -> new ColumnSums(dataColumns.length));
+
+                int numOfRows = 0;
+                double[] sums = new double[dataColumns.length];
+                for (ColumnSums handler : handlers) {
+                    numOfRows += handler.numOfRows;
+                    for (int j = 0; j < sums.length; j++) {
+                        sums[j] += handler.sums[j];
+                    }
+                }
+
+                Assert.assertEquals(expected.getData().length, numOfRows);
+                for (int j = 0; j < sums.length; j++) {
+                    double sum = 0;
+                    for (double[] row : expected.getData()) {
+                        sum += row[j];
+                    }
+                    Assert.assertEquals(sum, sums[j], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadInDiscreteData() throws IOException {
+        for (Path dataFile : discreteDataFiles) {
+            for (long chunkSize : chunkSizes) {
+                DataColumn[] dataColumns = readInDataColumns(dataFile, true);
+                DiscreteData expected = (DiscreteData) setUp(new TabularDataFileReader(dataFile, delimiter)).read(dataColumns, hasHeader);
+
+                Data data = setUp(dataFile, chunkSize).read(dataColumns, hasHeader);
+                Assert.assertTrue(data instanceof VerticalDiscreteTabularData);
+
+                DiscreteData discreteData = (DiscreteData) data;
+                Assert.assertArrayEquals(expected.getData(), discreteData.getData());
+                assertCategoriesEquals(expected.getDataColumns(), discreteData.getDataColumns());
+            }
+        }
+    }
+
+    @Test
+    public void testReadInMixedData() throws IOException {
+        int numberOfCategories = 4;
+        for (Path dataFile : mixedDataFiles) {
+            for (long chunkSize : chunkSizes) {
+                DataColumn[] dataColumns = readInDataColumns(dataFile, true);
+                TabularDataReader dataReader = setUp(new TabularDataFileReader(dataFile, delimiter));
+                dataReader.determineDiscreteDataColumns(dataColumns, numberOfCategories, hasHeader);
+                MixedTabularData expected = (MixedTabularData) dataReader.read(dataColumns, hasHeader);
+
+                // determine the discrete columns while reading in the data
+                DataColumn[] mappedDataColumns = readInDataColumns(dataFile, true);
+                Data data = setUp(dataFile, chunkSize).read(mappedDataColumns, hasHeader, numberOfCategories);
+                Assert.assertTrue(data instanceof MixedTabularData);
+
+                MixedTabularData mixedTabularData = (MixedTabularData) data;
+                Assert.assertEquals(expected.getNumOfRows(), mixedTabularData.getNumOfRows());
+                for (int i = 0; i < dataColumns.length; i++) {
+                    Assert.assertEquals(dataColumns[i].isDiscrete(), mappedDataColumns[i].isDiscrete());
+                }
+                Assert.assertArrayEquals(expected.getContinuousData(), mixedTabularData.getContinuousData());
+                Assert.assertArrayEquals(expected.getDiscreteData(), mixedTabularData.getDiscreteData());
+                assertCategoriesEquals(expected.getDataColumns(), mixedTabularData.getDataColumns());
+            }
+        }
+    }
+
+    @Test
+    public void testDetermineDiscreteDataColumns() throws IOException {
+        int numberOfCategories = 4;
+        for (Path dataFile : mixedDataFiles) {
+            DataColumn[] dataColumns = readInDataColumns(dataFile, true);
+            setUp(new TabularDataFileReader(dataFile, delimiter)).determineDiscreteDataColumns(dataColumns, numberOfCategories, hasHeader);
+
+            DataColumn[] mappedDataColumns = readInDataColumns(dataFile, true);
+            setUp(dataFile, 100).determineDiscreteDataColumns(mappedDataColumns, numberOfCategories, hasHeader);
+
+            for (int i = 0; i < dataColumns.length; i++) {
+                Assert.assertEquals(dataColumns[i].isDiscrete(), mappedDataColumns[i].isDiscrete());
+            }
+        }
+    }
+
+    @Test
+    public void testErrorLineNumbers() throws IOException {
+        // a header, then rows of data with a short row on line 25
+        StringBuilder text = new StringBuilder("X1,X2,X3\n");
+        for (int line = 2; line <= 40; line++) {
+            text.append((line == 25) ? "1.5,2.5" : "1.5,2.5,3.5").append('\n');
+        }
+
+        Path dataFile = Files.createTempFile("line_numbers", ".csv");
+        try {
+            Files.write(dataFile, text.toString().getBytes(StandardCharsets.UTF_8));
+            DataColumn[] dataColumns = readInDataColumns(dataFile, false);
+
+            for (long chunkSize : chunkSizes) {
+                try {
+                    setUp(dataFile, chunkSize).read(dataColumns, hasHeader);
+                    Assert.fail("Expected an error on line 25.");
+                } catch (DataReaderException exception) {
+                    Assert.assertTrue(exception.getMessage(), exception.getMessage().contains("line 25."));
+                }
+
+                try {
+                    setUp(dataFile, chunkSize).readContinuousRows(dataColumns, hasHeader, () -> new ColumnSums(dataColumns.length));
+                    Assert.fail("Expected an error on line 25.");
+                } catch (DataReaderException exception) {
+                    Assert.assertTrue(exception.getMessage(), exception.getMessage().contains("line 25."));
+                }
+            }
+        } finally {
+            Files.delete(dataFile);
+        }
+    }
+
+    private void assertCategoriesEquals(DiscreteDataColumn[] expected, DiscreteDataColumn[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].getCategories(), actual[i].getCategories());
+        }
+    }
+
+    private DataColumn[] readInDataColumns(Path dataFile, boolean isDiscrete) throws IOException {
+        TabularColumnReader columnReader = new TabularColumnFileReader(dataFile, delimiter);
+        columnReader.setCommentMarker(commentMarker);
+        columnReader.setQuoteCharacter(quoteCharacter);
+
+        return columnReader.readInDataColumns(isDiscrete);
+    }
+
+    private MappedTabularDataFileReader setUp(Path dataFile, long chunkSize) {
+        MappedTabularDataFileReader dataReader = new MappedTabularDataFileReader(dataFile, delimiter);
+        dataReader.setChunkSize(chunkSize);
+        dataReader.setNumberOfThreads(4);
+        setUp(dataReader);
+
+        return dataReader;
+    }
+
+    private TabularDataReader setUp(TabularDataReader dataReader) {
+        dataReader.setCommentMarker(commentMarker);
+        dataReader.setQuoteCharacter(quoteCharacter);
+        dataReader.setMissingDataMarker(missingValueMarker);
+
+        return dataReader;
+    }
+
+    private static final class ColumnSums implements MappedTabularDataFileReader.ContinuousRowHandler {
+
+        private final double[] sums;
+        private int numOfRows;
+
+        private ColumnSums(int numOfCols) {
+            this.sums = new double[numOfCols];
+        }
+
+        @Override
+        public void handle(double[] row) {
+            for (int j = 0; j < row.length; j++) {
+                sums[j] += row[j];
+            }
+            numOfRows++;
+        }
+
+    }
+
+}
@@ -27,7 +27,6 @@ import edu.cmu.tetradapp.util.DesktopController;
 import edu.cmu.tetradapp.util.SessionEditorIndirectRef;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -85,10 +84,9 @@ final class SaveSessionAction extends AbstractAction {
             }
         }
 
-        try (ObjectOutputStream objOut = new ObjectOutputStream(Files.newOutputStream(outputFile))) {
+        try {
             sessionWrapper.setNewSession(false);
-            objOut.writeObject(metadata);
-            objOut.writeObject(sessionWrapper);
+            SessionFile.write(outputFile, metadata, sessionWrapper);
         } catch (IOException exception) {
             exception.printStackTrace(System.err);
             JOptionPane.showMessageDialog(
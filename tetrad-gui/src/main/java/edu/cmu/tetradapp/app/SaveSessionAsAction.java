@@ -29,7 +29,6 @@ import edu.cmu.tetradapp.util.SessionEditorIndirectRef;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.util.prefs.Preferences;
 import javax.swing.AbstractAction;
@@ -87,9 +86,8 @@ final class SaveSessionAsAction extends AbstractAction {
         sessionWrapper.setName(file.getName());
         sessionEditor.setName(file.getName());
 
-        try (ObjectOutputStream objOut = new ObjectOutputStream(Files.newOutputStream(file.toPath()))) {
-            objOut.writeObject(metadata);
-            objOut.writeObject(sessionWrapper);
+        try {
+            SessionFile.write(file.toPath(), metadata, sessionWrapper);
 
             sessionWrapper.setSessionChanged(false);
             sessionWrapper.setNewSession(false);
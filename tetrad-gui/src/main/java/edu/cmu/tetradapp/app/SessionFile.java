@@ -0,0 +1,502 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetradapp.app;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.Matrix;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes session files. A session file holds the columns of the session's larger data boxes and matrices
+ * as separate compressed blobs, followed by an index: the Java serialization of the session objects, in which those
+ * boxes and matrices are replaced by references to their blobs. The layout is
+ * <pre>
+ * "TETSESS1"   magic
+ * long         offset of the index
+ * blobs        one deflated little-endian column per blob
+ * index        serialized objects
+ * </pre>
+ * On reading, each referenced data box becomes a LazyDataBox, which memory-maps and inflates its blobs the first
+ * time it is used, so opening a session reads only the index. Matrices are read when the session is opened, since
+ * Matrix is used directly rather than through an interface. Files in the older format, a plain serialization of the
+ * session objects, are still read.
+ * <p>
+ * Saving writes all of the data, so data not yet loaded are read from the old file first. The new file is written
+ * beside the old one and moved over it, so a failed save leaves the old file as it was. Since lazy boxes know their
+ * blobs only by offset into the file they were opened from, any box opened from the file being replaced that is still
+ * unloaded, in whatever session, is loaded before the move.
+ */
+public final class SessionFile {
+
+    private static final byte[] MAGIC = {'T', 'E', 'T', 'S', 'E', 'S', 'S', '1'};
+
+    // Boxes and matrices with fewer cells than this stay in the index.
+    private static final long MIN_BLOB_CELLS = 10000;
+
+    // The lazy boxes opened from each file, held weakly, so that they can be loaded before the file is replaced.
+    private static final Map<Path, Set<LazyDataBox>> lazyBoxes = new HashMap<>();
+
+    private SessionFile() {
+    }
+
+    /**
+     * Writes the given objects, in order, to the file.
+     */
+    public static void write(Path file, Object... objects) throws IOException {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 8);
+                header.put(MAGIC).putLong(0).flip();
+                writeFully(channel, header);
+
+                ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+                try (BlobOutputStream objOut = new BlobOutputStream(index, channel)) {
+                    for (Object object : objects) {
+                        objOut.writeObject(object);
+                    }
+                }
+
+                long indexOffset = channel.position();
+                writeFully(channel, ByteBuffer.wrap(index.toByteArray()));
+
+                ByteBuffer offset = ByteBuffer.allocate(8);
+                offset.putLong(indexOffset).flip();
+                channel.position(MAGIC.length);
+                writeFully(channel, offset);
+                channel.force(true);
+            }
+
+            loadLazyBoxes(absolute);
+
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return A stream from which the objects in the file can be read, in the order they were written, whichever
+     * format the file is in. Serial version mismatches are tolerated, as in DecompressibleInputStream.
+     */
+    public static ObjectInputStream open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 8);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+
+            byte[] magic = new byte[MAGIC.length];
+            if (header.remaining() == header.capacity()) header.get(magic);
+
+            if (!Arrays.equals(MAGIC, magic)) {
+                return new DecompressibleInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            }
+
+            long indexOffset = header.getLong();
+            long indexLength = channel.size() - indexOffset;
+
+            if (indexOffset < header.capacity() || indexLength > Integer.MAX_VALUE) {
+                throw new IOException("Not a session file: " + file);
+            }
+
+            ByteBuffer index = ByteBuffer.allocate((int) indexLength);
+            channel.position(indexOffset);
+            while (index.hasRemaining() && channel.read(index) >= 0) ;
+
+            return new BlobInputStream(new ByteArrayInputStream(index.array()), file.toAbsolutePath().normalize());
+        }
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    private static void addLazyBox(Path file, LazyDataBox box) {
+        synchronized (lazyBoxes) {
+            lazyBoxes.computeIfAbsent(file, f -> Collections.newSetFromMap(new WeakHashMap<>())).add(box);
+        }
+    }
+
+    // Loads the boxes still reading from the file, which is about to be replaced.
+    private static void loadLazyBoxes(Path file) throws IOException {
+        List<LazyDataBox> boxes;
+
+        synchronized (lazyBoxes) {
+            Set<LazyDataBox> _boxes = lazyBoxes.get(file);
+            if (_boxes == null) return;
+            boxes = new ArrayList<>(_boxes);
+        }
+
+        try {
+            for (LazyDataBox box : boxes) {
+                box.load();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        synchronized (lazyBoxes) {
+            Set<LazyDataBox> _boxes = lazyBoxes.get(file);
+            if (_boxes != null) _boxes.removeAll(boxes);
+            if (_boxes != null && _boxes.isEmpty()) lazyBoxes.remove(file);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes data boxes and matrices that are large enough to the channel as blobs, serializing references to them
+     * in their place.
+     */
+    private static class BlobOutputStream extends ObjectOutputStream {
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        BlobOutputStream(OutputStream out, FileChannel channel) throws IOException {
+            super(out);
+            this.channel = channel;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof DataBox) {
+                DataBox box = (DataBox) obj;
+
+                if ((long) box.numRows() * box.numCols() >= MIN_BLOB_CELLS) {
+                    return replaceDataBox(box);
+                }
+            } else if (obj instanceof Matrix) {
+                Matrix matrix = (Matrix) obj;
+
+                if ((long) matrix.rows() * matrix.columns() >= MIN_BLOB_CELLS) {
+                    double[][] columns = matrix.transpose().toArray();
+                    Blobs blobs = new Blobs(columns.length);
+                    for (int j = 0; j < columns.length; j++) writeColumn(blobs, j, columns[j]);
+                    return new MatrixBlob(matrix.rows(), matrix.columns(), blobs);
+                }
+            }
+
+            return obj;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            deflater.end();
+        }
+
+        private Object replaceDataBox(DataBox box) throws IOException {
+            int numRows = box.numRows();
+            int numCols = box.numCols();
+            Blobs blobs = new Blobs(numCols);
+
+            if (box instanceof VerticalDoubleDataBox) {
+                double[][] data = ((VerticalDoubleDataBox) box).getVariableVectors();
+                for (int j = 0; j < numCols; j++) writeColumn(blobs, j, data[j]);
+                return new DataBoxBlob(DataBoxBlob.VERTICAL_DOUBLE, numRows, numCols, blobs, null, null);
+            } else if (box instanceof DoubleDataBox) {
+                double[][] data = ((DoubleDataBox) box).getData();
+                double[] column = new double[numRows];
+
+                for (int j = 0; j < numCols; j++) {
+                    for (int i = 0; i < numRows; i++) column[i] = data[i][j];
+                    writeColumn(blobs, j, column);
+                }
+
+                return new DataBoxBlob(DataBoxBlob.DOUBLE, numRows, numCols, blobs, null, null);
+            } else if (box instanceof VerticalIntDataBox) {
+                int[][] data = ((VerticalIntDataBox) box).getVariableVectors();
+                for (int j = 0; j < numCols; j++) writeColumn(blobs, j, data[j]);
+                return new DataBoxBlob(DataBoxBlob.VERTICAL_INT, numRows, numCols, blobs, null, null);
+            } else if (box instanceof MixedDataBox) {
+                MixedDataBox mixed = (MixedDataBox) box;
+                boolean[] discrete = new boolean[numCols];
+
+                for (int j = 0; j < numCols; j++) {
+                    if (mixed.getContinuousData()[j] != null) {
+                        writeColumn(blobs, j, mixed.getContinuousData()[j]);
+                    } else {
+                        discrete[j] = true;
+                        writeColumn(blobs, j, mixed.getDiscreteData()[j]);
+                    }
+                }
+
+                return new DataBoxBlob(DataBoxBlob.MIXED, numRows, numCols, blobs, discrete, mixed.getVariables());
+            }
+
+            // Other kinds of boxes are serialized as they are.
+            return box;
+        }
+
+        private void writeColumn(Blobs blobs, int j, double[] column) throws IOException {
+            ByteBuffer raw = ByteBuffer.allocate(8 * column.length).order(ByteOrder.LITTLE_ENDIAN);
+            raw.asDoubleBuffer().put(column);
+            writeBlob(blobs, j, raw.array());
+        }
+
+        private void writeColumn(Blobs blobs, int j, int[] column) throws IOException {
+            ByteBuffer raw = ByteBuffer.allocate(4 * column.length).order(ByteOrder.LITTLE_ENDIAN);
+            raw.asIntBuffer().put(column);
+            writeBlob(blobs, j, raw.array());
+        }
+
+        private void writeBlob(Blobs blobs, int j, byte[] raw) throws IOException {
+            blobs.offsets[j] = channel.position();
+
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+
+            byte[] buffer = new byte[65536];
+            long length = 0;
+
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                writeFully(channel, ByteBuffer.wrap(buffer, 0, n));
+                length += n;
+            }
+
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Column too large for a session blob.");
+            }
+
+            blobs.lengths[j] = (int) length;
+            blobs.rawLengths[j] = raw.length;
+        }
+    }
+
+    /**
+     * Replaces references to blobs with lazy data boxes or with matrices.
+     */
+    private static class BlobInputStream extends DecompressibleInputStream {
+        private final Path file;
+
+        BlobInputStream(InputStream in, Path file) throws IOException {
+            super(in);
+            this.file = file;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof DataBoxBlob) {
+                DataBoxBlob blob = (DataBoxBlob) obj;
+                LazyDataBox box = new LazyDataBox(blob.numRows, blob.numCols, () -> blob.load(file));
+                addLazyBox(file, box);
+                return box;
+            } else if (obj instanceof MatrixBlob) {
+                MatrixBlob blob = (MatrixBlob) obj;
+                double[][] data = new double[blob.rows][blob.columns];
+
+                for (int j = 0; j < blob.columns; j++) {
+                    double[] column = blob.blobs.readDoubles(file, j);
+                    for (int i = 0; i < blob.rows; i++) data[i][j] = column[i];
+                }
+
+                return new Matrix(data);
+            }
+
+            return obj;
+        }
+    }
+
+    /**
+     * Where the blobs of the columns of a box or matrix are in the file.
+     */
+    private static class Blobs implements Serializable {
+        static final long serialVersionUID = 23L;
+
+        private final long[] offsets;
+        private final int[] lengths;
+        private final int[] rawLengths;
+
+        Blobs(int numColumns) {
+            this.offsets = new long[numColumns];
+            this.lengths = new int[numColumns];
+            this.rawLengths = new int[numColumns];
+        }
+
+        double[] readDoubles(Path file, int j) throws IOException {
+            double[] column = new double[rawLengths[j] / 8];
+            ByteBuffer.wrap(read(file, j)).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(column);
+            return column;
+        }
+
+        int[] readInts(Path file, int j) throws IOException {
+            int[] column = new int[rawLengths[j] / 4];
+            ByteBuffer.wrap(read(file, j)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(column);
+            return column;
+        }
+
+        private byte[] read(Path file, int j) throws IOException {
+            byte[] compressed = new byte[lengths[j]];
+
+            // Read rather than mapped, since a mapping keeps the file open until it is collected, and on some
+            // systems an open file cannot be replaced when the session is saved over it.
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.wrap(compressed);
+
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offsets[j] + buffer.position()) < 0) {
+                        throw new IOException("Truncated session blob in " + file);
+                    }
+                }
+            }
+
+            byte[] raw = new byte[rawLengths[j]];
+            Inflater inflater = new Inflater();
+
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+
+                while (n < raw.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, n, raw.length - n);
+                    if (inflated == 0 && inflater.needsInput()) break;
+                    n += inflated;
+                }
+
+                if (n != raw.length) {
+                    throw new IOException("Truncated session blob in " + file);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt session blob in " + file, e);
+            } finally {
+                inflater.end();
+            }
+
+            return raw;
+        }
+    }
+
+    /**
+     * A reference to a data box stored as column blobs.
+     */
+    private static class DataBoxBlob implements Serializable {
+        static final long serialVersionUID = 23L;
+
+        static final int VERTICAL_DOUBLE = 0;
+        static final int DOUBLE = 1;
+        static final int VERTICAL_INT = 2;
+        static final int MIXED = 3;
+
+        private final int kind;
+        private final int numRows;
+        private final int numCols;
+        private final Blobs blobs;
+
+        // For mixed boxes only.
+        private final boolean[] discrete;
+        private final List<Node> variables;
+
+        DataBoxBlob(int kind, int numRows, int numCols, Blobs blobs, boolean[] discrete, List<Node> variables) {
+            this.kind = kind;
+            this.numRows = numRows;
+            this.numCols = numCols;
+            this.blobs = blobs;
+            this.discrete = discrete;
+            this.variables = variables;
+        }
+
+        // Columns are inflated in parallel.
+        DataBox load(Path file) throws IOException {
+            double[][] doubles = new double[numCols][];
+            int[][] ints = new int[numCols][];
+
+            try {
+                IntStream.range(0, numCols).parallel().forEach(j -> {
+                    try {
+                        if (kind == VERTICAL_INT || (kind == MIXED && discrete[j])) {
+                            ints[j] = blobs.readInts(file, j);
+                        } else {
+                            doubles[j] = blobs.readDoubles(file, j);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            switch (kind) {
+                case VERTICAL_DOUBLE:
+                    return new VerticalDoubleDataBox(doubles);
+                case DOUBLE:
+                    double[][] data = new double[numRows][numCols];
+
+                    for (int j = 0; j < numCols; j++) {
+                        for (int i = 0; i < numRows; i++) data[i][j] = doubles[j][i];
+                    }
+
+                    return new DoubleDataBox(data);
+                case VERTICAL_INT:
+                    return new VerticalIntDataBox(ints);
+                case MIXED:
+                    return new MixedDataBox(variables, numRows, doubles, ints);
+                default:
+                    throw new IOException("Unknown kind of data box: " + kind);
+            }
+        }
+    }
+
+    /**
+     * A reference to a matrix stored as column blobs.
+     */
+    private static class MatrixBlob implements Serializable {
+        static final long serialVersionUID = 23L;
+
+        private final int rows;
+        private final int columns;
+        private final Blobs blobs;
+
+        MatrixBlob(int rows, int columns, Blobs blobs) {
+            this.rows = rows;
+            this.columns = columns;
+            this.blobs = blobs;
+        }
+    }
+}
@@ -349,6 +349,10 @@ public class KnowledgeGraph implements Graph, TetradSerializableExcluded {
         getGraph().addPropertyChangeListener(l);
     }
 
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getGraph().removePropertyChangeListener(l);
+    }
+
     public boolean containsEdge(Edge edge) {
         return getGraph().containsEdge(edge);
     }
@@ -21,9 +21,9 @@ package edu.cmu.tetradapp.ui.tool;
 import edu.cmu.tetrad.session.Session;
 import edu.cmu.tetrad.util.JOptionUtils;
 import edu.cmu.tetrad.util.Version;
-import edu.cmu.tetradapp.app.DecompressibleInputStream;
 import edu.cmu.tetradapp.app.SessionEditor;
 import edu.cmu.tetradapp.app.SessionEditorWorkbench;
+import edu.cmu.tetradapp.app.SessionFile;
 import edu.cmu.tetradapp.model.SessionWrapper;
 import edu.cmu.tetradapp.model.TetradMetadata;
 import edu.cmu.tetradapp.util.DesktopController;
@@ -32,8 +32,7 @@ import java.awt.datatransfer.UnsupportedFlavorException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.ObjectInputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -88,8 +87,7 @@ public class SessionFileTransferHandler extends TransferHandler {
                     }
                 }
 
-                try (InputStream in = Files.newInputStream(file.toPath())) {
-                    DecompressibleInputStream objIn = new DecompressibleInputStream(in);
+                try (ObjectInputStream objIn = SessionFile.open(file.toPath())) {
                     Object o = objIn.readObject();
 
                     TetradMetadata metadata = null;
@@ -111,8 +109,6 @@ public class SessionFileTransferHandler extends TransferHandler {
                         sessionWrapper = (SessionWrapper) o;
                     }
 
-                    in.close();
-
                     if (metadata == null) {
                         throw new NullPointerException("Could not read metadata.");
                     }
@@ -0,0 +1,239 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetradapp.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetradapp.app.SessionFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests saving and loading session files, and loading lazy data boxes.
+ */
+public class TestSessionFile {
+
+    // Enough rows that each data set below is stored as blobs.
+    private static final int NUM_ROWS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        RandomUtil.getInstance().setSeed(48298483L);
+
+        DataSet continuous = continuousData(8);
+        DataSet discrete = discreteData(8);
+        DataSet mixed = mixedData(8);
+
+        Path file = folder.getRoot().toPath().resolve("session.tet");
+        SessionFile.write(file, "metadata", continuous, discrete, mixed);
+
+        try (ObjectInputStream in = SessionFile.open(file)) {
+            assertEquals("metadata", in.readObject());
+
+            DataSet _continuous = (DataSet) in.readObject();
+            DataSet _discrete = (DataSet) in.readObject();
+            DataSet _mixed = (DataSet) in.readObject();
+
+            assertSameData(continuous, _continuous);
+            assertSameData(discrete, _discrete);
+            assertSameData(mixed, _mixed);
+
+            assertTrue(((BoxDataSet) _continuous).getDataBox() instanceof VerticalDoubleDataBox);
+            assertTrue(((BoxDataSet) _discrete).getDataBox() instanceof VerticalIntDataBox);
+            assertTrue(((BoxDataSet) _mixed).getDataBox() instanceof MixedDataBox);
+        }
+    }
+
+    @Test
+    public void testLoadOldFormat() throws Exception {
+        RandomUtil.getInstance().setSeed(48298483L);
+
+        DataSet data = mixedData(5);
+
+        Path file = folder.getRoot().toPath().resolve("old.tet");
+
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject("metadata");
+            out.writeObject(data);
+        }
+
+        try (ObjectInputStream in = SessionFile.open(file)) {
+            assertEquals("metadata", in.readObject());
+            assertSameData(data, (DataSet) in.readObject());
+        }
+    }
+
+    @Test
+    public void testLoadAfterFileReplaced() throws Exception {
+        RandomUtil.getInstance().setSeed(48298483L);
+
+        DataSet first = continuousData(6);
+        DataSet second = continuousData(10);
+
+        Path file = folder.getRoot().toPath().resolve("session.tet");
+        SessionFile.write(file, first);
+
+        DataSet _first;
+
+        try (ObjectInputStream in = SessionFile.open(file)) {
+            _first = (DataSet) in.readObject();
+        }
+
+        // The first session's data are still unloaded when another session is saved over its file.
+        SessionFile.write(file, second);
+
+        assertSameData(first, _first);
+
+        try (ObjectInputStream in = SessionFile.open(file)) {
+            assertSameData(second, (DataSet) in.readObject());
+        }
+    }
+
+    @Test
+    public void testLazyDataBox() throws Exception {
+        double[][] data = new double[3][100];
+        for (int j = 0; j < 3; j++) for (int i = 0; i < 100; i++) data[j][i] = 100 * j + i;
+
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+
+        LazyDataBox box = new LazyDataBox(100, 3, () -> {
+            loads.incrementAndGet();
+
+            try {
+                loading.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            return new VerticalDoubleDataBox(data);
+        });
+
+        assertEquals(100, box.numRows());
+        assertEquals(3, box.numCols());
+        assertFalse(box.isLoaded());
+        assertEquals(0, loads.get());
+
+        // Two threads ask for values at once; the source is asked for the data once.
+        List<Number> values = new ArrayList<>();
+        Thread[] threads = new Thread[2];
+
+        for (int t = 0; t < threads.length; t++) {
+            int col = t + 1;
+            threads[t] = new Thread(() -> {
+                Number value = box.get(5, col);
+                synchronized (values) {
+                    values.add(value);
+                }
+            });
+            threads[t].start();
+        }
+
+        Thread.sleep(100);
+        loading.countDown();
+
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1, loads.get());
+        assertTrue(box.isLoaded());
+        assertTrue(values.contains(105.0));
+        assertTrue(values.contains(205.0));
+    }
+
+    private DataSet continuousData(int numVars) {
+        List<Node> variables = new ArrayList<>();
+        double[][] data = new double[numVars][NUM_ROWS];
+
+        for (int j = 0; j < numVars; j++) {
+            variables.add(new ContinuousVariable("X" + (j + 1)));
+            for (int i = 0; i < NUM_ROWS; i++) data[j][i] = RandomUtil.getInstance().nextNormal(0, 1);
+        }
+
+        return new BoxDataSet(new VerticalDoubleDataBox(data), variables);
+    }
+
+    private DataSet discreteData(int numVars) {
+        List<Node> variables = new ArrayList<>();
+        int[][] data = new int[numVars][NUM_ROWS];
+
+        for (int j = 0; j < numVars; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), 3));
+            for (int i = 0; i < NUM_ROWS; i++) data[j][i] = RandomUtil.getInstance().nextInt(3);
+        }
+
+        return new BoxDataSet(new VerticalIntDataBox(data), variables);
+    }
+
+    private DataSet mixedData(int numVars) {
+        List<Node> variables = new ArrayList<>();
+        double[][] continuous = new double[numVars][];
+        int[][] discrete = new int[numVars][];
+
+        for (int j = 0; j < numVars; j++) {
+            if (j % 2 == 0) {
+                variables.add(new ContinuousVariable("X" + (j + 1)));
+                continuous[j] = new double[NUM_ROWS];
+                for (int i = 0; i < NUM_ROWS; i++) continuous[j][i] = RandomUtil.getInstance().nextNormal(0, 1);
+            } else {
+                variables.add(new DiscreteVariable("X" + (j + 1), 3));
+                discrete[j] = new int[NUM_ROWS];
+                for (int i = 0; i < NUM_ROWS; i++) discrete[j][i] = RandomUtil.getInstance().nextInt(3);
+            }
+        }
+
+        return new BoxDataSet(new MixedDataBox(variables, NUM_ROWS, continuous, discrete), variables);
+    }
+
+    private void assertSameData(DataSet expected, DataSet actual) {
+        assertEquals(expected.getNumRows(), actual.getNumRows());
+        assertEquals(expected.getNumColumns(), actual.getNumColumns());
+
+        for (int j = 0; j < expected.getNumColumns(); j++) {
+            assertEquals(expected.getVariable(j).getName(), actual.getVariable(j).getName());
+
+            for (int i = 0; i < expected.getNumRows(); i++) {
+                if (expected.getVariable(j) instanceof DiscreteVariable) {
+                    assertEquals(expected.getInt(i, j), actual.getInt(i, j));
+                } else {
+                    assertEquals(expected.getDouble(i, j), actual.getDouble(i, j), 0.0);
+                }
+            }
+        }
+    }
+}
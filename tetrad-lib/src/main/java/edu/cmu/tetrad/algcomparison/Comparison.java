@@ -54,7 +54,6 @@ import edu.cmu.tetrad.search.DagToPag2;
 import edu.cmu.tetrad.search.SearchGraphUtils;
 import edu.cmu.tetrad.util.CombinationGenerator;
 import edu.cmu.tetrad.util.Experimental;
-import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.ParamDescription;
 import edu.cmu.tetrad.util.ParamDescriptions;
 import edu.cmu.tetrad.util.Parameters;
@@ -72,7 +71,6 @@ import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -80,9 +78,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.RecursiveTask;
 
 import org.reflections.Reflections;
 
@@ -111,6 +107,9 @@ public class Comparison {
     private String dataPath = null;
     private String resultsPath = null;
     private boolean parallelized = false;
+    private int maxCores = Runtime.getRuntime().availableProcessors();
+    private long maxMemory = (long) (0.75 * Runtime.getRuntime().maxMemory());
+    private boolean checkpointed = false;
     private boolean savePatterns = false;
     private boolean saveData = true;
     private boolean savePags = false;
@@ -990,68 +989,41 @@ public class Comparison {
 
         double[][][][] allStats = new double[4][algorithmSimulationWrappers.size()][statistics.size() + 1][numRuns];
 
-        List<AlgorithmTask> tasks = new ArrayList<>();
+        List<RunJob> jobs = new ArrayList<>();
         int index = 0;
 
         for (int algSimIndex = 0; algSimIndex < algorithmSimulationWrappers.size(); algSimIndex++) {
             for (int runIndex = 0; runIndex < numRuns; runIndex++) {
                 AlgorithmSimulationWrapper algorithmSimulationWrapper = algorithmSimulationWrappers.get(algSimIndex);
                 Run run = new Run(algSimIndex, runIndex, index++, algorithmSimulationWrapper);
-                AlgorithmTask task = new AlgorithmTask(algorithmSimulationWrappers,
+                RunJob job = new RunJob(algorithmSimulationWrappers,
                         algorithmWrappers, simulationWrappers,
                         statistics, numGraphTypes, allStats, run, stdout);
-//                task.compute();
-                tasks.add(task);
+                jobs.add(job);
             }
         }
 
-        if (!isParallelized()) {
-            for (AlgorithmTask task : tasks) {
-                task.compute();
-            }
-        } else {
-            class Task extends RecursiveTask<Boolean> {
-
-                List<AlgorithmTask> tasks;
-
-                public Task(List<AlgorithmTask> tasks) {
-                    this.tasks = tasks;
-                }
-
-                @Override
-                protected Boolean compute() {
-                    Queue<AlgorithmTask> tasks = new ArrayDeque<>();
-
-                    for (AlgorithmTask task : this.tasks) {
-                        tasks.add(task);
-                        task.fork();
-
-                        for (AlgorithmTask _task : new ArrayList<>(tasks)) {
-                            if (_task.isDone()) {
-                                _task.join();
-                                tasks.remove(_task);
-                            }
-                        }
-
-                        while (tasks.size() > Runtime.getRuntime().availableProcessors()) {
-                            AlgorithmTask _task = tasks.poll();
-                            _task.join();
-                        }
-                    }
+        // Run sequentially unless parallelized, but in either case longest first and with checkpoints.
+        ComparisonScheduler scheduler = new ComparisonScheduler(isParallelized() ? maxCores : 1, maxMemory);
 
-                    for (AlgorithmTask task : tasks) {
-                        task.join();
-                    }
+        if (isCheckpointed()) {
+            StringBuilder signature = new StringBuilder("numRuns = " + numRuns);
+            signature.append("; comparison graph = ").append(comparisonGraph);
 
-                    return true;
-                }
+            for (AlgorithmSimulationWrapper wrapper : algorithmSimulationWrappers) {
+                signature.append("; ").append(wrapper.getAlgorithmWrapper().getDescription())
+                        .append(" / ").append(wrapper.getSimulationWrapper().getDescription());
             }
 
-            Task task = new Task(tasks);
+            for (Statistic statistic : statistics.getStatistics()) {
+                signature.append("; ").append(statistic.getAbbreviation());
+            }
 
-            ForkJoinPoolInstance.getInstance().getPool().invoke(task);
+            scheduler.setCheckpointFile(new File(resultsPath, "checkpoint.txt"), signature.toString());
         }
 
+        scheduler.run(jobs);
+
         return allStats;
     }
 
@@ -1105,9 +1077,57 @@ public class Comparison {
         return parallelized;
     }
 
-//    public void setParallelized(boolean parallelized) {
-//        this.parallelized = parallelized;
-//    }
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /**
+     * @return The number of cores that runs done in parallel may use together.
+     */
+    public int getMaxCores() {
+        return maxCores;
+    }
+
+    /**
+     * @param maxCores The number of cores that runs done in parallel may use together. By default, all of them.
+     */
+    public void setMaxCores(int maxCores) {
+        if (maxCores < 1) throw new IllegalArgumentException("Max cores must be at least 1: " + maxCores);
+        this.maxCores = maxCores;
+    }
+
+    /**
+     * @return The number of bytes that runs done in parallel may use together.
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @param maxMemory The number of bytes that runs done in parallel may use together. By default, three quarters
+     *                  of the maximum heap.
+     */
+    public void setMaxMemory(long maxMemory) {
+        if (maxMemory < 1) throw new IllegalArgumentException("Max memory must be at least 1: " + maxMemory);
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * @return True if finished runs are recorded in checkpoint.txt in the results directory.
+     */
+    public boolean isCheckpointed() {
+        return checkpointed;
+    }
+
+    /**
+     * @param checkpointed True if finished runs should be recorded in checkpoint.txt in the results directory. A
+     *                     comparison of the same algorithms, simulations and statistics, run again with the same
+     *                     results directory, then takes the statistics of the recorded runs from the file instead
+     *                     of running them again, so that an interrupted comparison resumes where it stopped.
+     */
+    public void setCheckpointed(boolean checkpointed) {
+        this.checkpointed = checkpointed;
+    }
 
     /**
      * @return True if patterns should be saved out.
@@ -1226,7 +1246,11 @@ public class Comparison {
         this.comparisonGraph = comparisonGraph;
     }
 
-    private class AlgorithmTask extends RecursiveTask<Boolean> {
+    /**
+     * Runs one run of one algorithm on one simulation. The results recorded in a checkpoint are the statistics of the
+     * run for each graph type, each set preceded by 1 if the graph type was used and 0 if not.
+     */
+    private class RunJob implements ComparisonScheduler.Job {
 
         private List<AlgorithmSimulationWrapper> algorithmSimulationWrappers;
         private List<AlgorithmWrapper> algorithmWrappers;
@@ -1237,9 +1261,9 @@ public class Comparison {
         private final Run run;
         private final PrintStream stdout;
 
-        public AlgorithmTask(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
-                             List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
-                             Statistics statistics, int numGraphTypes, double[][][][] allStats, Run run, PrintStream stdout) {
+        public RunJob(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
+                      List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
+                      Statistics statistics, int numGraphTypes, double[][][][] allStats, Run run, PrintStream stdout) {
             this.algorithmSimulationWrappers = algorithmSimulationWrappers;
             this.simulationWrappers = simulationWrappers;
             this.algorithmWrappers = algorithmWrappers;
@@ -1251,10 +1275,83 @@ public class Comparison {
         }
 
         @Override
-        protected Boolean compute() {
-            doRun(algorithmSimulationWrappers, algorithmWrappers,
-                    simulationWrappers, statistics, numGraphTypes, allStats, run, stdout);
-            return true;
+        public String getId() {
+            return run.getAlgSimIndex() + "." + run.getRunIndex();
+        }
+
+        @Override
+        public String getKey() {
+            return Integer.toString(run.getAlgSimIndex());
+        }
+
+        // The parallelism the algorithm is given, for algorithms that take one; their searches fork that many tasks
+        // into the pool the job runs on.
+        @Override
+        public int getCores() {
+            AlgorithmWrapper algorithmWrapper = run.getWrapper().getAlgorithmWrapper();
+
+            if (!algorithmWrapper.getParameters().contains(Params.PARALLELISM)) {
+                return 1;
+            }
+
+            return Math.max(1, algorithmWrapper.getAlgorithmSpecificParameters().getInt(Params.PARALLELISM));
+        }
+
+        // The data, and a copy of it if the data are copied, plus as much again for the algorithm.
+        @Override
+        public long getMemory() {
+            DataModel data = run.getWrapper().getSimulationWrapper().getDataModel(run.getRunIndex());
+
+            if (!(data instanceof DataSet)) {
+                return 0;
+            }
+
+            long size = 8L * ((DataSet) data).getNumRows() * ((DataSet) data).getNumColumns();
+            return (copyData ? 3 : 2) * size;
+        }
+
+        @Override
+        public double[] run() {
+            if (!doRun(algorithmSimulationWrappers, algorithmWrappers,
+                    simulationWrappers, statistics, numGraphTypes, allStats, run, stdout)) {
+                return null;
+            }
+
+            int numStats = statistics.size();
+            double[] results = new double[numGraphTypes * (numStats + 1)];
+
+            synchronized (Comparison.this) {
+                for (int u = 0; u < numGraphTypes; u++) {
+                    results[u * (numStats + 1)] = graphTypeUsed[u] ? 1 : 0;
+
+                    for (int s = 0; s < numStats; s++) {
+                        results[u * (numStats + 1) + s + 1] = allStats[u][run.getAlgSimIndex()][s][run.getRunIndex()];
+                    }
+                }
+            }
+
+            return results;
+        }
+
+        @Override
+        public void restore(double[] results) {
+            int numStats = statistics.size();
+
+            if (results.length != numGraphTypes * (numStats + 1)) {
+                throw new IllegalArgumentException("Checkpoint does not match the statistics.");
+            }
+
+            synchronized (Comparison.this) {
+                for (int u = 0; u < numGraphTypes; u++) {
+                    if (results[u * (numStats + 1)] == 1) {
+                        graphTypeUsed[u] = true;
+                    }
+
+                    for (int s = 0; s < numStats; s++) {
+                        allStats[u][run.getAlgSimIndex()][s][run.getRunIndex()] = results[u * (numStats + 1) + s + 1];
+                    }
+                }
+            }
         }
     }
 
@@ -1304,7 +1401,8 @@ public class Comparison {
         dir.delete();
     }
 
-    private void doRun(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
+    // Returns false if the algorithm could not be run.
+    private boolean doRun(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
                        List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
                        Statistics statistics,
                        int numGraphTypes, double[][][][] allStats, Run run, PrintStream stdout) {
@@ -1364,7 +1462,7 @@ public class Comparison {
         } catch (Exception e) {
             stdout.println("Could not run " + algorithmWrapper.getDescription());
             e.printStackTrace();
-            return;
+            return false;
         }
 
         int simIndex = simulationWrappers.indexOf(simulationWrapper) + 1;
@@ -1457,6 +1555,8 @@ public class Comparison {
             }
 
         }
+
+        return true;
     }
 
     private void saveGraph(String resultsPath, Graph graph, int i, int simIndex, int algIndex,
@@ -0,0 +1,417 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.algcomparison;
+
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the jobs of a comparison (one per algorithm, simulation and run) on a ForkJoinPool, within a budget of cores
+ * and memory.
+ * <p>
+ * Jobs are started longest expected job first, which keeps one slow algorithm from being started last and holding up
+ * the end of the study. A job's expected time is the mean time of the finished jobs with the same key (for instance
+ * the same algorithm on the same simulation), including those recorded in the checkpoint file by earlier sessions.
+ * Keys with no finished jobs yet are started first, one run of each before the second run of any, so that every key
+ * gets an estimate early. A job starts when its cores and memory fit in what is left of the budget; if the longest
+ * job does not fit, a shorter one that does is started in its place. A job that needs more than the whole budget is
+ * run by itself.
+ * <p>
+ * Jobs run as tasks of the pool, so an algorithm that forks tasks of its own into the pool of the thread it runs on
+ * (see ForkJoinPoolInstance.getPool(int)) shares the pool's threads with the other jobs instead of starting threads
+ * of its own. With a budget of one core, jobs run one at a time on the calling thread instead, so such an algorithm
+ * makes a pool of its own of the size it asks for.
+ * <p>
+ * If a checkpoint file is given, the results of each finished job are appended to it. A later session with the same
+ * signature restores those results instead of running the jobs again, so an interrupted study picks up where it left
+ * off. A file with a different signature is started over.
+ */
+public class ComparisonScheduler {
+
+    /**
+     * A job to be scheduled.
+     */
+    public interface Job {
+
+        /**
+         * @return An identifier for the job that is the same from session to session.
+         */
+        String getId();
+
+        /**
+         * @return A key shared by jobs that are expected to take about the same time.
+         */
+        String getKey();
+
+        /**
+         * @return The number of cores the job uses.
+         */
+        int getCores();
+
+        /**
+         * @return The number of bytes the job is expected to use.
+         */
+        long getMemory();
+
+        /**
+         * Runs the job.
+         *
+         * @return The results to record in the checkpoint file, or null if the job failed, in which case it is run
+         * again when the study is resumed.
+         */
+        double[] run();
+
+        /**
+         * Restores the results of the job from the checkpoint file, instead of running it.
+         *
+         * @throws IllegalArgumentException if the results are not of the kind the job records, in which case the job
+         *                                  is run again.
+         */
+        void restore(double[] results);
+    }
+
+    // The default fraction of the maximum heap that jobs may use.
+    private static final double DEFAULT_MEMORY_FRACTION = 0.75;
+
+    private final int maxCores;
+    private final long maxMemory;
+
+    // The pool jobs run on, while a run is in progress; null if jobs run on the calling thread.
+    private ForkJoinPool pool = null;
+
+    private File checkpointFile = null;
+    private String signature = "";
+
+    // Sums and counts of elapsed times by key, in milliseconds.
+    private final Map<String, long[]> elapsed = new HashMap<>();
+
+    // Numbers of jobs started by key.
+    private final Map<String, Integer> started = new HashMap<>();
+
+    // Resources in use.
+    private int coresInUse = 0;
+    private long memoryInUse = 0;
+    private int numRunning = 0;
+
+    private PrintStream checkpoint = null;
+
+    /**
+     * Uses all of the processors of the machine and three quarters of the maximum heap.
+     */
+    public ComparisonScheduler() {
+        this(Runtime.getRuntime().availableProcessors(),
+                (long) (DEFAULT_MEMORY_FRACTION * Runtime.getRuntime().maxMemory()));
+    }
+
+    /**
+     * @param maxCores  The number of cores that jobs running at the same time may use together.
+     * @param maxMemory The number of bytes that jobs running at the same time may use together.
+     */
+    public ComparisonScheduler(int maxCores, long maxMemory) {
+        if (maxCores < 1) throw new IllegalArgumentException("Max cores must be at least 1: " + maxCores);
+        if (maxMemory < 1) throw new IllegalArgumentException("Max memory must be at least 1: " + maxMemory);
+
+        this.maxCores = maxCores;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Sets the file in which to record finished jobs.
+     *
+     * @param checkpointFile The file, or null for none.
+     * @param signature      Describes the study; a checkpoint file with a different signature is started over.
+     */
+    public void setCheckpointFile(File checkpointFile, String signature) {
+        this.checkpointFile = checkpointFile;
+        this.signature = signature == null ? "" : signature.replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Runs the given jobs, or restores their results from the checkpoint file, and returns when all are done.
+     */
+    public void run(List<? extends Job> jobs) {
+        Map<String, Job> byId = new LinkedHashMap<>();
+
+        for (Job job : jobs) {
+            if (byId.put(job.getId(), job) != null) {
+                throw new IllegalArgumentException("Duplicate job ID: " + job.getId());
+            }
+        }
+
+        openCheckpoint(byId);
+
+        // The jobs left to run, by key, in the given order.
+        Map<String, Queue<Job>> queues = new LinkedHashMap<>();
+
+        for (Job job : byId.values()) {
+            queues.computeIfAbsent(job.getKey(), k -> new ArrayDeque<>()).add(job);
+        }
+
+        List<String> keys = new ArrayList<>(queues.keySet());
+
+        // The shared pool is used if it has the right number of threads; otherwise a pool is made for the run. With
+        // one core, jobs run on this thread, so that their searches are not confined to a pool of one thread.
+        ForkJoinPool shared = ForkJoinPoolInstance.getInstance().getPool();
+
+        if (maxCores > 1) {
+            pool = shared.getParallelism() == maxCores ? shared : new ForkJoinPool(maxCores);
+        }
+
+        try {
+            synchronized (this) {
+                while (!queues.isEmpty() || numRunning > 0) {
+                    Job next = null;
+
+                    if (!queues.isEmpty()) {
+                        keys.retainAll(queues.keySet());
+                        keys.sort(byExpectedTime());
+
+                        for (String key : keys) {
+                            Job job = queues.get(key).peek();
+
+                            if (numRunning == 0 || fits(job)) {
+                                next = job;
+                                break;
+                            }
+                        }
+                    }
+
+                    if (next == null) {
+                        wait();
+                        continue;
+                    }
+
+                    Queue<Job> queue = queues.get(next.getKey());
+                    queue.poll();
+                    if (queue.isEmpty()) queues.remove(next.getKey());
+
+                    start(next);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted; finished jobs are in the checkpoint file, if any.", e);
+        } finally {
+            if (pool != null && pool != shared) {
+                pool.shutdown();
+            }
+
+            pool = null;
+
+            if (checkpoint != null) {
+                checkpoint.close();
+                checkpoint = null;
+            }
+        }
+    }
+
+    /**
+     * @return The mean elapsed time in milliseconds of the finished jobs with the given key, or NaN if there are none.
+     */
+    public synchronized double getExpectedTime(String key) {
+        long[] e = elapsed.get(key);
+        return e == null ? Double.NaN : e[0] / (double) e[1];
+    }
+
+    public int getMaxCores() {
+        return maxCores;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    // Longest expected time first. Keys with no estimate come first, those with fewer jobs started before the others;
+    // ties keep the order the keys were given in, since the sort is stable.
+    private Comparator<String> byExpectedTime() {
+        return (k1, k2) -> {
+            double t1 = getExpectedTime(k1);
+            double t2 = getExpectedTime(k2);
+
+            if (Double.isNaN(t1) && Double.isNaN(t2)) {
+                return Integer.compare(started.getOrDefault(k1, 0), started.getOrDefault(k2, 0));
+            }
+
+            if (Double.isNaN(t1)) return -1;
+            if (Double.isNaN(t2)) return 1;
+            return Double.compare(t2, t1);
+        };
+    }
+
+    private boolean fits(Job job) {
+        return coresInUse + job.getCores() <= maxCores && memoryInUse + job.getMemory() <= maxMemory;
+    }
+
+    private void start(Job job) {
+        started.merge(job.getKey(), 1, Integer::sum);
+        coresInUse += job.getCores();
+        memoryInUse += job.getMemory();
+        numRunning++;
+
+        Runnable task = () -> {
+            long start = System.currentTimeMillis();
+            double[] results = null;
+
+            try {
+                results = job.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                finish(job, results, System.currentTimeMillis() - start);
+            }
+        };
+
+        if (pool == null) {
+            task.run();
+        } else {
+            pool.execute(ForkJoinTask.adapt(task));
+        }
+    }
+
+    private synchronized void finish(Job job, double[] results, long time) {
+        coresInUse -= job.getCores();
+        memoryInUse -= job.getMemory();
+        numRunning--;
+
+        if (results != null) {
+            addElapsed(job.getKey(), time);
+            record(job, results, time);
+        }
+
+        notifyAll();
+    }
+
+    private void addElapsed(String key, long time) {
+        long[] e = elapsed.computeIfAbsent(key, k -> new long[2]);
+        e[0] += time;
+        e[1]++;
+    }
+
+    // Restores the jobs recorded in the checkpoint file and removes them from byId, then opens the file for appending.
+    private void openCheckpoint(Map<String, Job> byId) {
+        if (checkpointFile == null) {
+            return;
+        }
+
+        boolean append = false;
+        boolean complete = true;
+
+        if (checkpointFile.exists()) {
+            try (BufferedReader in = new BufferedReader(new FileReader(checkpointFile))) {
+                complete = endsWithNewline(checkpointFile);
+                String line = in.readLine();
+
+                if (line != null && line.equals("# " + signature)) {
+                    append = true;
+
+                    String next = in.readLine();
+
+                    while ((line = next) != null) {
+                        next = in.readLine();
+
+                        // A partly written last line is skipped; its job is run again. So is a line whose results
+                        // the job does not accept.
+                        if (next == null && !complete) continue;
+
+                        String[] tokens = line.split("\t");
+                        if (tokens.length < 3) continue;
+
+                        Job job = byId.get(tokens[0]);
+                        if (job == null) continue;
+
+                        double[] results = new double[tokens.length - 3];
+                        long time;
+
+                        try {
+                            time = Long.parseLong(tokens[2]);
+                            for (int i = 0; i < results.length; i++) results[i] = Double.parseDouble(tokens[i + 3]);
+                            job.restore(results);
+                        } catch (IllegalArgumentException e) {
+                            // Including NumberFormatException.
+                            continue;
+                        }
+
+                        addElapsed(job.getKey(), time);
+                        byId.remove(tokens[0]);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read checkpoint file " + checkpointFile, e);
+            }
+        }
+
+        try {
+            checkpoint = new PrintStream(new FileOutputStream(checkpointFile, append));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write checkpoint file " + checkpointFile, e);
+        }
+
+        if (!append) {
+            checkpoint.println("# " + signature);
+            checkpoint.flush();
+        } else if (!complete) {
+            // Ends the partly written line, so that the next job's line starts on a line of its own.
+            checkpoint.println();
+            checkpoint.flush();
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() == 0) return false;
+            in.seek(in.length() - 1);
+            return in.read() == '\n';
+        }
+    }
+
+    private void record(Job job, double[] results, long time) {
+        if (checkpoint == null) {
+            return;
+        }
+
+        StringBuilder b = new StringBuilder();
+        b.append(job.getId()).append('\t').append(job.getKey().replaceAll("\\s+", " ")).append('\t').append(time);
+        for (double r : results) b.append('\t').append(r);
+
+        checkpoint.println(b);
+        checkpoint.flush();
+    }
+}
@@ -19,11 +19,10 @@
 package edu.cmu.tetrad.annotation;
 
 import java.lang.annotation.Annotation;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
-import org.reflections.Reflections;
 
 /**
  *
@@ -37,8 +36,7 @@ public abstract class AbstractAnnotations<T extends Annotation> {
     protected final List<AnnotatedClass<T>> annotatedClasses;
 
     public AbstractAnnotations(String packageName, Class<T> type) {
-        Reflections reflections = new Reflections(packageName);
-        Set<Class<?>> classes = reflections.getTypesAnnotatedWith(type);
+        Collection<Class<?>> classes = AnnotatedClassIndex.getTypesAnnotatedWith(packageName, type);
 
         this.annotatedClasses = classes.parallelStream()
                 .map(e -> new AnnotatedClass<>(e, e.getAnnotation(type)))
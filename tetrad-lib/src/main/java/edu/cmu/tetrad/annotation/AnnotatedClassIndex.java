@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.annotation;
+
+import edu.cmu.tetrad.annotation.processing.AnnotationIndexProcessor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+
+/**
+ * Finds annotated classes from the index written at compile time by
+ * AnnotationIndexProcessor. The index covers only the classpath roots (class
+ * directories or jars) that were compiled with the processor, such as
+ * tetrad-lib itself. Any other root that has classes in the requested package,
+ * such as a plugin jar compiled without the processor, is scanned, as is the
+ * whole classpath if there is no index at all. So classes are found wherever
+ * they are, and scanning is done only where the index can't answer.
+ */
+final class AnnotatedClassIndex {
+
+    private AnnotatedClassIndex() {
+    }
+
+    /**
+     * @return the classes in the given package or its subpackages that are
+     * annotated with the given annotation.
+     */
+    static Collection<Class<?>> getTypesAnnotatedWith(String packageName, Class<? extends Annotation> type) {
+        ClassLoader classLoader = getClassLoader();
+        Set<String> indexedRoots = new HashSet<>();
+        List<Class<?>> classes = getIndexedTypesAnnotatedWith(packageName, type, classLoader, indexedRoots);
+
+        if (classes == null) {
+            return new Reflections(packageName).getTypesAnnotatedWith(type);
+        }
+
+        // The roots with classes in the package that the index doesn't cover.
+        List<URL> unindexedRoots = ClasspathHelper.forPackage(packageName, classLoader).stream()
+                .filter(e -> !indexedRoots.contains(e.toExternalForm()))
+                .collect(Collectors.toList());
+
+        if (unindexedRoots.isEmpty()) {
+            return classes;
+        }
+
+        Set<Class<?>> allClasses = new LinkedHashSet<>(classes);
+        allClasses.addAll(new Reflections(new ConfigurationBuilder()
+                .setUrls(unindexedRoots)
+                .addClassLoader(classLoader)
+                .filterInputsBy(new FilterBuilder().includePackage(packageName)))
+                .getTypesAnnotatedWith(type));
+
+        return allClasses;
+    }
+
+    /**
+     * @return the classes in the given package or its subpackages listed in
+     * the index for the given annotation, or null if there is no index. Only
+     * the classpath roots compiled with AnnotationIndexProcessor are covered.
+     */
+    static List<Class<?>> getIndexedTypesAnnotatedWith(String packageName, Class<? extends Annotation> type) {
+        return getIndexedTypesAnnotatedWith(packageName, type, getClassLoader(), new HashSet<>());
+    }
+
+    private static ClassLoader getClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = AnnotatedClassIndex.class.getClassLoader();
+        }
+
+        return classLoader;
+    }
+
+    // Adds the classpath root of each index found to indexedRoots, in the form given by ClasspathHelper.
+    private static List<Class<?>> getIndexedTypesAnnotatedWith(String packageName, Class<? extends Annotation> type,
+            ClassLoader classLoader, Set<String> indexedRoots) {
+        String location = AnnotationIndexProcessor.INDEX_LOCATION + type.getName();
+        Set<String> names = new TreeSet<>();
+
+        try {
+            Enumeration<URL> resources = classLoader.getResources(location);
+
+            if (!resources.hasMoreElements()) {
+                return null;
+            }
+
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                String url = resource.toExternalForm();
+                indexedRoots.add(url.substring(0, url.lastIndexOf(location)));
+
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+                    reader.lines()
+                            .map(String::trim)
+                            .filter(e -> !e.isEmpty())
+                            .forEach(names::add);
+                }
+            }
+        } catch (IOException exception) {
+            return null;
+        }
+
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        List<Class<?>> classes = new ArrayList<>();
+
+        for (String name : names) {
+            if (!name.startsWith(prefix)) {
+                continue;
+            }
+
+            try {
+                Class<?> clazz = Class.forName(name, false, classLoader);
+
+                if (clazz.isAnnotationPresent(type)) {
+                    classes.add(clazz);
+                }
+            } catch (ClassNotFoundException | LinkageError exception) {
+                // The index is stale; the class is no longer there.
+            }
+        }
+
+        return classes;
+    }
+
+}
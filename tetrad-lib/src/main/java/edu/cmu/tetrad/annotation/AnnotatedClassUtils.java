@@ -19,11 +19,10 @@
 package edu.cmu.tetrad.annotation;
 
 import java.lang.annotation.Annotation;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
-import org.reflections.Reflections;
 
 /**
  *
@@ -37,8 +36,7 @@ public class AnnotatedClassUtils {
     }
 
     public static <T extends Annotation> List<AnnotatedClass<T>> getAnnotatedClasses(String packageName, Class<T> type) {
-        Reflections reflections = new Reflections(packageName);
-        Set<Class<?>> classes = reflections.getTypesAnnotatedWith(type);
+        Collection<Class<?>> classes = AnnotatedClassIndex.getTypesAnnotatedWith(packageName, type);
 
         return classes.stream()
                 .map(e -> new AnnotatedClass<>(e, e.getAnnotation(type)))
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.annotation.processing;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes an index of the classes annotated with @Algorithm, @Score and
+ * @TestOfIndependence as tetrad-lib is compiled, so that they can be found at
+ * runtime without scanning the classpath. The index of each annotation is a
+ * resource named INDEX_LOCATION followed by the name of the annotation,
+ * listing the binary names of the annotated classes, one per line.
+ */
+@SupportedAnnotationTypes({
+    "edu.cmu.tetrad.annotation.Algorithm",
+    "edu.cmu.tetrad.annotation.Score",
+    "edu.cmu.tetrad.annotation.TestOfIndependence"
+})
+public class AnnotationIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX_LOCATION = "META-INF/tetrad/annotations/";
+
+    // The names of the annotated classes, by annotation name.
+    private final Map<String, Set<String>> index = new HashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+
+        for (TypeElement annotation : annotations) {
+            Set<String> names = index.computeIfAbsent(annotation.getQualifiedName().toString(), e -> new TreeSet<>());
+
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement) {
+                    names.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void writeIndex() {
+        for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+            String location = INDEX_LOCATION + entry.getKey();
+
+            try {
+                FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", location);
+
+                try (Writer writer = file.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+                    entry.getValue().forEach(out::println);
+                }
+            } catch (IOException exception) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Could not write " + location + ": " + exception.getMessage());
+            }
+        }
+    }
+
+}
@@ -24,19 +24,15 @@ package edu.cmu.tetrad.bayes;
 import edu.cmu.tetrad.graph.Dag;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.RandomUtil;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.Collection;
-import java.util.List;
 
 /**
- * Calculates updated marginals for a Bayes net by simulating data and
- * calculating likelihood ratios. The method is as follows. For P(A | B), enough
- * sample points are simulated from the underlying BayesIm so that 1000 satisfy
- * the condition B. Then the maximum likelihood estimate of condition A is
- * calculated.
+ * Calculates updated marginals for a Bayes net by simulating data. Samples are
+ * drawn from the manipulated BayesIm by likelihood weighting or Gibbs sampling
+ * (see BayesImSampler) until each marginal is within the error bound.
  *
  * @author Joseph Ramsey
  */
@@ -58,11 +54,27 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     private Evidence evidence;
 
     /**
-     * Counts of data points for each variable value.
+     * Estimated marginals for each variable value, or null if not yet
+     * calculated for the current evidence.
      *
      * @serial
      */
-    private int[][] counts;
+    private double[][] marginals;
+
+    /**
+     * The sampling method.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesImSampler.Mode mode = BayesImSampler.Mode.LIKELIHOOD_WEIGHTING;
+
+    /**
+     * The half-width of a 95% confidence interval for the marginals at which
+     * sampling stops.
+     *
+     * @serial Range (0, 1].
+     */
+    private double errorBound = 0.01;
 
     /**
      * This is the source BayesIm after manipulation; all data simulations
@@ -160,18 +172,45 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         BayesPm manipulatedBayesPm = createUpdatedBayesPm(manipulatedGraph);
         this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedBayesPm);
 
-        this.counts = null;
+        this.marginals = null;
     }
 
     public double getMarginal(int variable, int value) {
         doUpdate();
-        int sum = 0;
+        return marginals[variable][value];
+    }
+
+    public BayesImSampler.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the sampling method for the next update operation.
+     */
+    public void setMode(BayesImSampler.Mode mode) {
+        if (mode == null) {
+            throw new NullPointerException();
+        }
+
+        this.mode = mode;
+        this.marginals = null;
+    }
+
+    public double getErrorBound() {
+        return errorBound;
+    }
 
-        for (int i = 0; i < manipulatedBayesIm.getNumColumns(variable); i++) {
-            sum += counts[variable][i];
+    /**
+     * Sets the half-width of a 95% confidence interval for the marginals at
+     * which sampling stops.
+     */
+    public void setErrorBound(double errorBound) {
+        if (!(errorBound > 0 && errorBound <= 1)) {
+            throw new IllegalArgumentException("Error bound must be in (0, 1]: " + errorBound);
         }
 
-        return counts[variable][value] / (double) sum;
+        this.errorBound = errorBound;
+        this.marginals = null;
     }
 
     public boolean isJointMarginalSupported() {
@@ -221,45 +260,14 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     //==============================PRIVATE METHODS=======================//
 
     private void doUpdate() {
-        if (counts != null) {
+        if (marginals != null) {
             return;
         }
 
-        this.counts = new int[manipulatedBayesIm.getNumNodes()][];
-
-        for (int i = 0; i < manipulatedBayesIm.getNumNodes(); i++) {
-            this.counts[i] = new int[manipulatedBayesIm.getNumColumns(i)];
-        }
-
-        // Get a tier ordering and convert it to an int array.
-        Graph graph = getManipulatedGraph();
-        List<Node> tierOrdering = graph.getCausalOrdering();
-        int[] tiers = new int[tierOrdering.size()];
-
-        for (int i = 0; i < tierOrdering.size(); i++) {
-            tiers[i] = getManipulatedBayesIm().getNodeIndex(tierOrdering.get(i));
-        }
-
-        int numCounted = 0;
-
-        // Adding an "ur"-counter--if the counting procedure exceeds this many
-        // iterations, just give up. Handles the case there there simply aren't
-        // enough (say, none) legitimate combinations to count, which was
-        // leading to infinite loops. jdramsey 2/7/12
-        int numSurveyed = 0;
-
-        // Construct the sample.
-        while (numCounted < 1000 && ++numSurveyed < 10000) {
-            int[] point = getSinglePoint(getBayesIm(), tiers);
-
-            if (evidence.getProposition().isPermissibleCombination(point)) {
-                numCounted++;
-
-                for (int j = 0; j < getManipulatedBayesIm().getNumNodes(); j++) {
-                    counts[j][point[j]]++;
-                }
-            }
-        }
+        BayesImSampler sampler = new BayesImSampler(getManipulatedBayesIm());
+        sampler.setMode(mode);
+        sampler.setErrorBound(errorBound);
+        this.marginals = sampler.getMarginals(evidence);
     }
 
     private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
@@ -289,43 +297,6 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         return updatedGraph;
     }
 
-    private static int[] getSinglePoint(BayesIm bayesIm, int[] tiers) {
-        int[] point = new int[bayesIm.getNumNodes()];
-        int[] combination = new int[bayesIm.getNumNodes()];
-        RandomUtil randomUtil = RandomUtil.getInstance();
-
-        for (int nodeIndex : tiers) {
-            double cutoff = randomUtil.nextDouble();
-
-            for (int k = 0; k < bayesIm.getNumParents(nodeIndex); k++) {
-                combination[k] = point[bayesIm.getParent(nodeIndex, k)];
-            }
-
-            int rowIndex = bayesIm.getRowIndex(nodeIndex, combination);
-            double sum = 0.0;
-
-            for (int k = 0; k < bayesIm.getNumColumns(nodeIndex); k++) {
-                double probability =
-                        bayesIm.getProbability(nodeIndex, rowIndex, k);
-
-                if (Double.isNaN(probability)) {
-                    throw new IllegalStateException("Some probability " +
-                            "values in the BayesIm are not filled in; " +
-                            "cannot simulate data to do approximate updating.");
-                }
-
-                sum += probability;
-
-                if (sum >= cutoff) {
-                    point[nodeIndex] = k;
-                    break;
-                }
-            }
-        }
-
-        return point;
-    }
-
     /**
      * Adds semantic checks to the default deserialization method. This method
      * must have the standard signature for a readObject method, and the body of
@@ -350,6 +321,14 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         if (evidence == null) {
             throw new NullPointerException();
         }
+
+        if (mode == null) {
+            mode = BayesImSampler.Mode.LIKELIHOOD_WEIGHTING;
+        }
+
+        if (errorBound == 0) {
+            errorBound = 0.01;
+        }
     }
 }
 
@@ -0,0 +1,477 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates the marginals of a Bayes net given evidence by sampling. The conditional probability tables are copied
+ * into flat arrays, one per node, with nodes in causal order, and samples are drawn in batches in parallel, each
+ * batch with its own random number generator split from a seed taken from RandomUtil. Sampling is either by
+ * likelihood weighting, in which non-evidence nodes are drawn forward from their parents and each sample is weighted
+ * by the probability of the evidence given its parents, or by Gibbs sampling, in which each batch continues a chain
+ * whose non-evidence nodes are redrawn in turn from their distributions given their Markov blankets.
+ * <p>
+ * Sampling stops once the half-width of an approximate 95% confidence interval for each queried marginal, estimated
+ * from the variation among batches, is within the error bound, or once the maximum number of samples has been drawn.
+ * Manipulated nodes have their values drawn uniformly from their allowed categories, ignoring their parents.
+ */
+public final class BayesImSampler {
+
+    public enum Mode {LIKELIHOOD_WEIGHTING, GIBBS}
+
+    // The least number of batches from which the error is estimated.
+    private static final int MIN_BATCHES = 16;
+
+    // The number of sweeps of a Gibbs chain discarded when it is started.
+    private static final int BURN_IN = 100;
+
+    private final int numNodes;
+
+    // Node indices in causal order.
+    private final int[] order;
+
+    // The number of categories of each node.
+    private final int[] numCategories;
+
+    // The parents of each node, in the order of its table's rows.
+    private final int[][] parents;
+    private final int[][] parentDims;
+
+    // The children of each node.
+    private final int[][] children;
+
+    // The conditional probability table of each node, row by row.
+    private final double[][] probs;
+
+    private Mode mode = Mode.LIKELIHOOD_WEIGHTING;
+    private double errorBound = 0.01;
+    private long maxSamples = 1000000;
+    private int batchSize = 1000;
+
+    private long numSamples;
+    private double error;
+
+    public BayesImSampler(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException("Bayes IM not specified.");
+        }
+
+        this.numNodes = bayesIm.getNumNodes();
+        this.order = new int[numNodes];
+        this.numCategories = new int[numNodes];
+        this.parents = new int[numNodes][];
+        this.parentDims = new int[numNodes][];
+        this.probs = new double[numNodes][];
+
+        List<Node> ordering = bayesIm.getDag().getCausalOrdering();
+
+        for (int i = 0; i < numNodes; i++) {
+            order[i] = bayesIm.getNodeIndex(ordering.get(i));
+        }
+
+        List<List<Integer>> _children = new ArrayList<>();
+        for (int node = 0; node < numNodes; node++) _children.add(new ArrayList<>());
+
+        for (int node = 0; node < numNodes; node++) {
+            int numColumns = bayesIm.getNumColumns(node);
+            int numRows = bayesIm.getNumRows(node);
+
+            numCategories[node] = numColumns;
+            parents[node] = bayesIm.getParents(node).clone();
+            parentDims[node] = bayesIm.getParentDims(node).clone();
+            probs[node] = new double[numRows * numColumns];
+
+            for (int parent : parents[node]) {
+                _children.get(parent).add(node);
+            }
+
+            for (int row = 0; row < numRows; row++) {
+                for (int k = 0; k < numColumns; k++) {
+                    double p = bayesIm.getProbability(node, row, k);
+
+                    if (Double.isNaN(p)) {
+                        throw new IllegalStateException("Some probability values in the BayesIm are not filled in; "
+                                + "cannot simulate data to do approximate updating.");
+                    }
+
+                    probs[node][row * numColumns + k] = p;
+                }
+            }
+        }
+
+        this.children = new int[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            children[node] = _children.get(node).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Estimates the marginals of all nodes given the evidence, sampling until the marginals of the queried nodes are
+     * within the error bound.
+     *
+     * @param evidence   The evidence, over the nodes of the Bayes IM.
+     * @param queryNodes The nodes whose marginals must be within the error bound; if empty, all nodes.
+     * @return The estimated marginals, by node and category; NaN if the evidence has probability zero as far as
+     * could be told.
+     */
+    public double[][] getMarginals(Evidence evidence, int... queryNodes) {
+        Proposition proposition = evidence.getProposition();
+        boolean[][] allowed = new boolean[numNodes][];
+        boolean[] manipulated = new boolean[numNodes];
+
+        for (int node = 0; node < numNodes; node++) {
+            allowed[node] = new boolean[numCategories[node]];
+
+            for (int k = 0; k < numCategories[node]; k++) {
+                allowed[node][k] = proposition.isAllowed(node, k);
+            }
+
+            manipulated[node] = evidence.isManipulated(node);
+        }
+
+        if (queryNodes.length == 0) {
+            queryNodes = IntStream.range(0, numNodes).toArray();
+        }
+
+        int numBatches = Math.max(MIN_BATCHES, Runtime.getRuntime().availableProcessors());
+        Batch[] batches = new Batch[numBatches];
+        SplittableRandom random = new SplittableRandom(RandomUtil.getInstance().nextLong());
+
+        for (int b = 0; b < numBatches; b++) {
+            batches[b] = new Batch(random.split(), allowed, manipulated);
+        }
+
+        // Sums over batches of the weight, of the weight of each category, of the squares of these, and of the
+        // products of the weights of the categories with the weights of the batches.
+        double sumW = 0.0;
+        double sumW2 = 0.0;
+        double[][] sumWv = new double[numNodes][];
+        double[][] sumWv2 = new double[numNodes][];
+        double[][] sumWvW = new double[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            sumWv[node] = new double[numCategories[node]];
+            sumWv2[node] = new double[numCategories[node]];
+            sumWvW[node] = new double[numCategories[node]];
+        }
+
+        numSamples = 0;
+        error = Double.NaN;
+        int numDone = 0;
+
+        while (numSamples < maxSamples) {
+            IntStream.range(0, numBatches).parallel().forEach(b -> batches[b].run(batchSize));
+
+            for (Batch batch : batches) {
+                double w = batch.weight;
+                sumW += w;
+                sumW2 += w * w;
+
+                for (int node = 0; node < numNodes; node++) {
+                    for (int k = 0; k < numCategories[node]; k++) {
+                        double wv = batch.weights[node][k];
+                        sumWv[node][k] += wv;
+                        sumWv2[node][k] += wv * wv;
+                        sumWvW[node][k] += wv * w;
+                    }
+                }
+            }
+
+            numSamples += (long) numBatches * batchSize;
+            numDone += numBatches;
+
+            if (sumW > 0) {
+                error = getError(queryNodes, numDone, sumW, sumW2, sumWv, sumWv2, sumWvW);
+                if (error <= errorBound) break;
+            }
+        }
+
+        double[][] marginals = new double[numNodes][];
+
+        for (int node = 0; node < numNodes; node++) {
+            marginals[node] = new double[numCategories[node]];
+
+            for (int k = 0; k < numCategories[node]; k++) {
+                marginals[node][k] = sumWv[node][k] / sumW;
+            }
+        }
+
+        return marginals;
+    }
+
+    /**
+     * @return The number of samples drawn by the last call to getMarginals.
+     */
+    public long getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * @return The largest half-width of the confidence intervals of the queried marginals after the last call to
+     * getMarginals, NaN if no sample was consistent with the evidence.
+     */
+    public double getError() {
+        return error;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        if (mode == null) throw new NullPointerException("Mode not specified.");
+        this.mode = mode;
+    }
+
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * @param errorBound The half-width of an approximate 95% confidence interval for each queried marginal at which
+     *                   sampling stops.
+     */
+    public void setErrorBound(double errorBound) {
+        if (!(errorBound > 0)) throw new IllegalArgumentException("Error bound must be positive: " + errorBound);
+        this.errorBound = errorBound;
+    }
+
+    public long getMaxSamples() {
+        return maxSamples;
+    }
+
+    public void setMaxSamples(long maxSamples) {
+        if (maxSamples < 1) throw new IllegalArgumentException("Max samples must be at least 1: " + maxSamples);
+        this.maxSamples = maxSamples;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // The largest half-width of the confidence intervals of the queried marginals, treating the marginals as ratio
+    // estimates over batches.
+    private double getError(int[] queryNodes, int numBatches, double sumW, double sumW2, double[][] sumWv,
+                            double[][] sumWv2, double[][] sumWvW) {
+        if (numBatches < 2) return Double.POSITIVE_INFINITY;
+
+        double meanW = sumW / numBatches;
+        double max = 0.0;
+
+        for (int node : queryNodes) {
+            for (int k = 0; k < numCategories[node]; k++) {
+                double p = sumWv[node][k] / sumW;
+                double ss = sumWv2[node][k] - 2 * p * sumWvW[node][k] + p * p * sumW2;
+                double var = Math.max(ss, 0) / (numBatches * (numBatches - 1.0) * meanW * meanW);
+                max = Math.max(max, 1.96 * Math.sqrt(var));
+            }
+        }
+
+        return max;
+    }
+
+    private int getRowIndex(int node, int[] point) {
+        int[] _parents = parents[node];
+        int[] dims = parentDims[node];
+        int row = 0;
+
+        for (int i = 0; i < _parents.length; i++) {
+            row *= dims[i];
+            row += point[_parents[i]];
+        }
+
+        return row;
+    }
+
+    /**
+     * A batch of samples, with its own random number generator and, for Gibbs sampling, its own chain.
+     */
+    private final class Batch {
+        private final SplittableRandom random;
+        private final boolean[][] allowed;
+        private final boolean[] manipulated;
+
+        // The state of the chain, or the last sample.
+        private final int[] point = new int[numNodes];
+        private final double[] scratch;
+        private boolean started = false;
+
+        // The total weight of the batch and the weight of each category of each node.
+        private double weight;
+        private final double[][] weights = new double[numNodes][];
+
+        Batch(SplittableRandom random, boolean[][] allowed, boolean[] manipulated) {
+            this.random = random;
+            this.allowed = allowed;
+            this.manipulated = manipulated;
+
+            int max = 0;
+            for (int node = 0; node < numNodes; node++) {
+                weights[node] = new double[numCategories[node]];
+                max = Math.max(max, numCategories[node]);
+            }
+
+            this.scratch = new double[max];
+        }
+
+        void run(int size) {
+            weight = 0.0;
+            for (double[] w : weights) Arrays.fill(w, 0.0);
+
+            if (mode == Mode.GIBBS) {
+                if (!started) {
+                    started = start(size);
+                    if (!started) return;
+                }
+
+                for (int s = 0; s < size; s++) {
+                    sweep();
+                    add(1.0);
+                }
+            } else {
+                for (int s = 0; s < size; s++) {
+                    add(sampleWeighted());
+                }
+            }
+        }
+
+        private void add(double w) {
+            if (w == 0) return;
+            weight += w;
+            for (int node = 0; node < numNodes; node++) weights[node][point[node]] += w;
+        }
+
+        // Draws a sample forward, keeping evidence nodes within their allowed categories, and returns its weight.
+        private double sampleWeighted() {
+            double w = 1.0;
+
+            for (int node : order) {
+                int n = numCategories[node];
+                boolean[] _allowed = allowed[node];
+                double total = 0.0;
+
+                if (manipulated[node]) {
+                    for (int k = 0; k < n; k++) {
+                        scratch[k] = _allowed[k] ? 1.0 : 0.0;
+                        total += scratch[k];
+                    }
+                } else {
+                    int offset = getRowIndex(node, point) * n;
+                    double sum = 0.0;
+
+                    for (int k = 0; k < n; k++) {
+                        double p = probs[node][offset + k];
+                        sum += p;
+                        scratch[k] = _allowed[k] ? p : 0.0;
+                        total += scratch[k];
+                    }
+
+                    w *= total / sum;
+                }
+
+                if (total == 0) return 0.0;
+                point[node] = draw(scratch, n, total);
+            }
+
+            return w;
+        }
+
+        // Starts the chain from a weighted sample consistent with the evidence and burns it in.
+        private boolean start(int attempts) {
+            boolean found = false;
+
+            for (int a = 0; a < attempts && !found; a++) {
+                found = sampleWeighted() > 0;
+            }
+
+            if (!found) return false;
+
+            for (int s = 0; s < BURN_IN; s++) {
+                sweep();
+            }
+
+            return true;
+        }
+
+        // Redraws each node from its distribution given its Markov blanket, within its allowed categories.
+        private void sweep() {
+            for (int node : order) {
+                int n = numCategories[node];
+                boolean[] _allowed = allowed[node];
+                double total = 0.0;
+                int current = point[node];
+
+                for (int k = 0; k < n; k++) {
+                    if (!_allowed[k]) {
+                        scratch[k] = 0.0;
+                        continue;
+                    }
+
+                    point[node] = k;
+                    double p = manipulated[node] ? 1.0 : probs[node][getRowIndex(node, point) * n + k];
+
+                    for (int child : children[node]) {
+                        if (manipulated[child]) continue;
+                        p *= probs[child][getRowIndex(child, point) * numCategories[child] + point[child]];
+                    }
+
+                    scratch[k] = p;
+                    total += p;
+                }
+
+                point[node] = total > 0 ? draw(scratch, n, total) : current;
+            }
+        }
+
+        private int draw(double[] p, int n, double total) {
+            double cutoff = random.nextDouble() * total;
+            double sum = 0.0;
+
+            for (int k = 0; k < n; k++) {
+                sum += p[k];
+                if (p[k] > 0 && sum >= cutoff) return k;
+            }
+
+            for (int k = n - 1; k >= 0; k--) {
+                if (p[k] > 0) return k;
+            }
+
+            return 0;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Junction Tree Algorithm.
@@ -61,6 +62,8 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
     private final BayesIm bayesIm;
     private final Map<Node, TreeNode> treeNodes;
 
+    private final CompiledTree compiledTree;
+
     public JunctionTreeAlgorithm(Graph graph, DataModel dataModel) {
         this.bayesPm = createBayesPm(dataModel, graph);
         this.bayesIm = createBayesIm(dataModel, this.bayesPm);
@@ -73,6 +76,8 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         this.root = buildJunctionTree();
 
         initialize();
+
+        this.compiledTree = new CompiledTree();
     }
 
     public JunctionTreeAlgorithm(BayesIm bayesIm) {
@@ -87,6 +92,8 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         this.root = buildJunctionTree();
 
         initialize();
+
+        this.compiledTree = new CompiledTree();
     }
 
     private void initialize() {
@@ -286,6 +293,37 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         return index;
     }
 
+    /**
+     * Map the entries of a table over the given nodes to the entries of its
+     * marginal over a subset of them, both in the order they appear in the
+     * graph.
+     *
+     * @param nodes nodes of the table
+     * @param subset nodes of the marginal
+     * @return for each entry of the table, the entry of the marginal
+     */
+    private int[] getIndexMap(Node[] nodes, Node[] subset) {
+        int size = nodes.length;
+        int[] values = new int[size];
+        int[] map = new int[getCardinality(nodes)];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = getIndexOfCPT(subset, values, nodes);
+
+            updateValues(size, values, nodes);
+        }
+
+        return map;
+    }
+
+    private int getCardinality(Node[] nodes) {
+        int count = 1;
+        for (Node node : nodes) {
+            count *= bayesPm.getNumCategories(node);
+        }
+
+        return count;
+    }
+
     private void clear(double[] array) {
         Arrays.fill(array, 0);
     }
@@ -400,16 +438,7 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         validate(iNode);
         validate(parent, parentValue);
 
-        setEvidence(parent, parentValue);
-
-        double[] condProbs = new double[margins[iNode].length];
-        System.arraycopy(margins[iNode], 0, condProbs, 0, condProbs.length);
-        normalize(condProbs);
-
-        // reset
-        initialize();
-
-        return condProbs;
+        return compiledTree.query(iNode, new int[]{parent}, new int[]{parentValue});
     }
 
     private boolean isAllNodes(int[] nodes) {
@@ -438,24 +467,11 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         validate(nodes, values);
         validate(parents, parentValues);
 
-        for (int i = 0; i < parents.length; i++) {
-            setEvidence(parents[i], parentValues[i]);
-        }
-
         double prob = 1;
         for (int i = 0; i < nodes.length; i++) {
-            double[] marg = margins[nodes[i]];
-
-            double[] condProbs = new double[marg.length];
-            System.arraycopy(marg, 0, condProbs, 0, marg.length);
-            normalize(condProbs);
-
-            prob *= condProbs[values[i]];
+            prob *= compiledTree.query(nodes[i], parents, parentValues)[values[i]];
         }
 
-        // reset
-        initialize();
-
         return prob;
     }
 
@@ -474,18 +490,7 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         if (parents.length == 1) {
             return getConditionalProbabilities(iNode, parents[0], parentValues[0]);
         } else {
-            for (int i = 0; i < parents.length; i++) {
-                setEvidence(parents[i], parentValues[i]);
-            }
-
-            double[] condProbs = new double[margins[iNode].length];
-            System.arraycopy(margins[iNode], 0, condProbs, 0, condProbs.length);
-            normalize(condProbs);
-
-            // reset
-            initialize();
-
-            return condProbs;
+            return compiledTree.query(iNode, parents, parentValues);
         }
     }
 
@@ -540,6 +545,45 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         }
     }
 
+    /**
+     * Get the conditional probabilities of a node for all of its values, for
+     * each of a number of cases. Cases are answered in parallel, each
+     * propagating only the evidence that reaches the node, and the state of
+     * this object is not changed.
+     *
+     * @param iNode
+     * @param evidenceNodes nodes observed in the cases
+     * @param evidenceValues for each case, the values of the observed nodes;
+     * negative values are taken to be missing
+     * @return for each case, the conditional probabilities of the node
+     */
+    public double[][] getConditionalProbabilities(int iNode, int[] evidenceNodes, int[][] evidenceValues) {
+        validate(iNode);
+        if (evidenceNodes == null || evidenceValues == null) {
+            throw new IllegalArgumentException("Evidence cannot be null.");
+        }
+        for (int iNode2 : evidenceNodes) {
+            validate(iNode2);
+        }
+
+        double[][] condProbs = new double[evidenceValues.length][];
+        IntStream.range(0, evidenceValues.length).parallel().forEach(i -> {
+            int[] values = evidenceValues[i];
+            if (values.length != evidenceNodes.length) {
+                throw new IllegalArgumentException("Number of nodes values must be equal to the number of nodes.");
+            }
+            for (int j = 0; j < values.length; j++) {
+                if (values[j] >= 0) {
+                    validate(evidenceNodes[j], values[j]);
+                }
+            }
+
+            condProbs[i] = compiledTree.query(iNode, evidenceNodes, values);
+        });
+
+        return condProbs;
+    }
+
     public double[] getMarginalProbability(int iNode) {
         validate(iNode);
 
@@ -582,6 +626,12 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         private final TreeNode childNode;
         private final TreeNode parentNode;
 
+        /**
+         * Separator entries of the entries of the child and parent cliques.
+         */
+        private final int[] childMap;
+        private final int[] parentMap;
+
         public TreeSeparator(Set<Node> separator, TreeNode childNode, TreeNode parentNode) {
             this.childNode = childNode;
             this.parentNode = parentNode;
@@ -591,6 +641,9 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
 
             this.parentPotentials = new double[cardinality];
             this.childPotentials = new double[cardinality];
+
+            this.childMap = getIndexMap(childNode.nodes, nodes);
+            this.parentMap = getIndexMap(parentNode.nodes, nodes);
         }
 
         /**
@@ -603,14 +656,9 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
             clear(potentials);
 
             if (node.prob != null) {
-                int size = node.nodes.length;
-                int[] values = new int[size];
+                int[] map = (node == childNode) ? childMap : parentMap;
                 for (int i = 0; i < node.cardinality; i++) {
-                    int indexNodeCPT = getIndexOfCPT(node.nodes, values);
-                    int indexSepCPT = getIndexOfCPT(nodes, values, node.nodes);
-                    potentials[indexSepCPT] += node.prob[indexNodeCPT];
-
-                    updateValues(size, values, node.nodes);
+                    potentials[map[i]] += node.prob[i];
                 }
             }
         }
@@ -698,16 +746,10 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         public void initializeUp() {
             System.arraycopy(potentials, 0, prob, 0, cardinality);
 
-            int size = nodes.length;
-            int[] values = new int[size];
             children.forEach(childNode -> {
                 TreeSeparator separator = childNode.parentSeparator;
                 for (int i = 0; i < cardinality; i++) {
-                    int indexSepCPT = getIndexOfCPT(separator.nodes, values, nodes);
-                    int indexNodeCPT = getIndexOfCPT(nodes, values);
-                    prob[indexNodeCPT] *= separator.childPotentials[indexSepCPT];
-
-                    updateValues(size, values, nodes);
+                    prob[i] *= separator.childPotentials[separator.parentMap[i]];
                 }
             });
 
@@ -722,19 +764,15 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
             } else {
                 parentSeparator.updateFromParent();
 
-                int size = nodes.length;
-                int[] values = new int[size];
+                int[] map = parentSeparator.childMap;
                 for (int i = 0; i < cardinality; i++) {
-                    int indexSepCPT = getIndexOfCPT(parentSeparator.nodes, values, nodes);
-                    int indexNodeCPT = getIndexOfCPT(nodes, values);
+                    int indexSepCPT = map[i];
 
                     if (parentSeparator.childPotentials[indexSepCPT] > 0) {
-                        prob[indexNodeCPT] *= (parentSeparator.parentPotentials[indexSepCPT] / parentSeparator.childPotentials[indexSepCPT]);
+                        prob[i] *= (parentSeparator.parentPotentials[indexSepCPT] / parentSeparator.childPotentials[indexSepCPT]);
                     } else {
-                        prob[indexNodeCPT] = 0;
+                        prob[i] = 0;
                     }
-
-                    updateValues(size, values, nodes);
                 }
 
                 parentSeparator.updateFromChild();
@@ -759,9 +797,8 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
             int size = nodes.length;
             int[] values = new int[size];
             for (int i = 0; i < cardinality; i++) {
-                int indexNodeCPT = getIndexOfCPT(nodes, values);
                 for (int iNode = 0; iNode < size; iNode++) {
-                    margProb[iNode][values[iNode]] += prob[indexNodeCPT];
+                    margProb[iNode][values[iNode]] += prob[i];
                 }
 
                 updateValues(size, values, nodes);
@@ -810,8 +847,7 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
             int[] values = new int[size];
             for (int i = 0; i < cardinality; i++) {
                 if (values[nodeIndex] != value) {
-                    int indexNodeCPT = getIndexOfCPT(nodes, values);
-                    prob[indexNodeCPT] = 0;
+                    prob[i] = 0;
                 }
 
                 updateValues(size, values, nodes);
@@ -823,19 +859,15 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
 
         private void updateEvidence(TreeNode source) {
             if (source != this) {
-                int size = nodes.length;
-                int[] values = new int[size];
+                int[] map = source.parentSeparator.parentMap;
                 for (int i = 0; i < cardinality; i++) {
-                    int indexNodeCPT = getIndexOfCPT(nodes, values);
-                    int indexChildNodeCPT = getIndexOfCPT(source.parentSeparator.nodes, values, nodes);
+                    int indexChildNodeCPT = map[i];
                     if (source.parentSeparator.parentPotentials[indexChildNodeCPT] != 0) {
-                        prob[indexNodeCPT] *= source.parentSeparator.childPotentials[indexChildNodeCPT]
+                        prob[i] *= source.parentSeparator.childPotentials[indexChildNodeCPT]
                                 / source.parentSeparator.parentPotentials[indexChildNodeCPT];
                     } else {
-                        prob[indexNodeCPT] = 0;
+                        prob[i] = 0;
                     }
-
-                    updateValues(size, values, nodes);
                 }
 
                 calculateMarginalProbabilities();
@@ -931,4 +963,261 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
 
     }
 
+    /**
+     * The junction tree compiled to flat tables indexed by clique number, with
+     * the index maps between cliques and separators and the messages passed
+     * with no evidence precomputed. A query propagates messages toward the
+     * clique of the queried node in its own arrays (Shafer-Shenoy), computing
+     * only the messages from parts of the tree holding evidence and reusing
+     * the precomputed ones elsewhere, so queries may run concurrently.
+     */
+    private class CompiledTree implements TetradSerializable {
+
+        static final long serialVersionUID = 23L;
+
+        /**
+         * Cliques, parents before children.
+         */
+        private final TreeNode[] cliques;
+        private final int[] parent;
+        private final int[][] children;
+
+        /**
+         * The root of the tree each clique is in.
+         */
+        private final int[] treeRoot;
+
+        /**
+         * Product of the conditional probabilities assigned to each clique.
+         */
+        private final double[][] potentials;
+
+        /**
+         * Entries of the separator between a clique and its parent, for the
+         * entries of the clique and of the parent.
+         */
+        private final int[][] childMap;
+        private final int[][] parentMap;
+        private final int[] separatorCardinality;
+
+        /**
+         * Messages from each clique to its parent and from its parent to it
+         * with no evidence.
+         */
+        private final double[][] upMessages;
+        private final double[][] downMessages;
+
+        /**
+         * For each node, the first clique containing it and its stride and
+         * number of values in that clique's table.
+         */
+        private final int[] homeClique;
+        private final int[] homeStride;
+        private final int[] homeNumValues;
+
+        public CompiledTree() {
+            List<TreeNode> order = new LinkedList<>();
+            treeNodes.values().stream()
+                    .filter(treeNode -> treeNode.parentSeparator == null)
+                    .forEach(treeNode -> addSubtree(treeNode, order));
+
+            int numCliques = order.size();
+            this.cliques = order.toArray(new TreeNode[numCliques]);
+            this.parent = new int[numCliques];
+            this.children = new int[numCliques][];
+            this.treeRoot = new int[numCliques];
+            this.potentials = new double[numCliques][];
+            this.childMap = new int[numCliques][];
+            this.parentMap = new int[numCliques][];
+            this.separatorCardinality = new int[numCliques];
+
+            Map<TreeNode, Integer> index = new HashMap<>();
+            for (int c = 0; c < numCliques; c++) {
+                index.put(cliques[c], c);
+            }
+
+            for (int c = 0; c < numCliques; c++) {
+                TreeNode treeNode = cliques[c];
+                TreeSeparator separator = treeNode.parentSeparator;
+
+                parent[c] = (separator == null) ? -1 : index.get(separator.parentNode);
+                children[c] = treeNode.children.stream().mapToInt(index::get).toArray();
+                treeRoot[c] = (separator == null) ? c : treeRoot[parent[c]];
+                potentials[c] = treeNode.potentials.clone();
+
+                if (separator != null) {
+                    childMap[c] = separator.childMap;
+                    parentMap[c] = separator.parentMap;
+                    separatorCardinality[c] = separator.cardinality;
+                }
+            }
+
+            this.homeClique = new int[graphNodes.length];
+            this.homeStride = new int[graphNodes.length];
+            this.homeNumValues = new int[graphNodes.length];
+            Arrays.fill(homeClique, -1);
+            for (int c = numCliques - 1; c >= 0; c--) {
+                Node[] nodes = cliques[c].nodes;
+                int stride = 1;
+                for (int i = nodes.length - 1; i >= 0; i--) {
+                    int iNode = bayesIm.getNodeIndex(nodes[i]);
+                    int numValues = bayesPm.getNumCategories(nodes[i]);
+                    homeClique[iNode] = c;
+                    homeStride[iNode] = stride;
+                    homeNumValues[iNode] = numValues;
+                    stride *= numValues;
+                }
+            }
+
+            // messages with no evidence
+            Query query = new Query(new int[0], new int[0]);
+            this.upMessages = new double[numCliques][];
+            this.downMessages = new double[numCliques][];
+            for (int c = numCliques - 1; c >= 0; c--) {
+                if (parent[c] >= 0) {
+                    upMessages[c] = marginalize(collect(c, parent[c], query), childMap[c], separatorCardinality[c]);
+                }
+            }
+            for (int c = 0; c < numCliques; c++) {
+                for (int child : children[c]) {
+                    downMessages[child] = marginalize(collect(c, child, query), parentMap[child], separatorCardinality[child]);
+                }
+            }
+        }
+
+        private void addSubtree(TreeNode treeNode, List<TreeNode> order) {
+            order.add(treeNode);
+            treeNode.children.forEach(child -> addSubtree(child, order));
+        }
+
+        /**
+         * @return the conditional probabilities of a node given the values of
+         * others, ignoring negative values.
+         */
+        public double[] query(int iNode, int[] evidenceNodes, int[] evidenceValues) {
+            int c = homeClique[iNode];
+            if (c < 0) {
+                String msg = String.format("Node %s is not in junction tree.", graphNodes[iNode].getName());
+                throw new IllegalArgumentException(msg);
+            }
+
+            double[] table = collect(c, -1, new Query(evidenceNodes, evidenceValues));
+
+            int stride = homeStride[iNode];
+            int numValues = homeNumValues[iNode];
+            double[] condProbs = new double[numValues];
+            for (int i = 0; i < table.length; i++) {
+                condProbs[(i / stride) % numValues] += table[i];
+            }
+            normalize(condProbs);
+
+            return condProbs;
+        }
+
+        /**
+         * Multiply the potentials of a clique by the evidence in it and the
+         * messages from all of its neighbors but one.
+         *
+         * @param c the clique
+         * @param exclude the neighbor left out, or -1
+         * @return the product, in a new array
+         */
+        private double[] collect(int c, int exclude, Query query) {
+            double[] table = potentials[c].clone();
+
+            for (int e = 0; e < query.nodes.length; e++) {
+                int iNode = query.nodes[e];
+                if (homeClique[iNode] == c) {
+                    int stride = homeStride[iNode];
+                    int numValues = homeNumValues[iNode];
+                    int value = query.values[e];
+                    for (int i = 0; i < table.length; i++) {
+                        if ((i / stride) % numValues != value) {
+                            table[i] = 0;
+                        }
+                    }
+                }
+            }
+
+            if (parent[c] >= 0 && parent[c] != exclude) {
+                multiply(table, childMap[c], message(parent[c], c, query));
+            }
+            for (int child : children[c]) {
+                if (child != exclude) {
+                    multiply(table, parentMap[child], message(child, c, query));
+                }
+            }
+
+            return table;
+        }
+
+        /**
+         * The message from a clique to a neighbor, which is the precomputed
+         * one if there is no evidence on the clique's side of the separator.
+         */
+        private double[] message(int from, int to, Query query) {
+            if (parent[from] == to) {
+                return (query.count[from] == 0)
+                        ? upMessages[from]
+                        : marginalize(collect(from, to, query), childMap[from], separatorCardinality[from]);
+            } else {
+                return (query.count[treeRoot[from]] == query.count[to])
+                        ? downMessages[to]
+                        : marginalize(collect(from, to, query), parentMap[to], separatorCardinality[to]);
+            }
+        }
+
+        private double[] marginalize(double[] table, int[] map, int cardinality) {
+            double[] potentials = new double[cardinality];
+            for (int i = 0; i < table.length; i++) {
+                potentials[map[i]] += table[i];
+            }
+
+            return potentials;
+        }
+
+        private void multiply(double[] table, int[] map, double[] message) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] *= message[map[i]];
+            }
+        }
+
+        /**
+         * The evidence of one query, with the number of observed nodes in the
+         * subtree of each clique.
+         */
+        private class Query {
+
+            private final int[] nodes;
+            private final int[] values;
+            private final int[] count;
+
+            public Query(int[] evidenceNodes, int[] evidenceValues) {
+                int size = 0;
+                int[] nodes = new int[evidenceNodes.length];
+                int[] values = new int[evidenceNodes.length];
+                for (int i = 0; i < evidenceNodes.length; i++) {
+                    if (evidenceValues[i] >= 0 && homeClique[evidenceNodes[i]] >= 0) {
+                        nodes[size] = evidenceNodes[i];
+                        values[size] = evidenceValues[i];
+                        size++;
+                    }
+                }
+                this.nodes = Arrays.copyOf(nodes, size);
+                this.values = Arrays.copyOf(values, size);
+
+                this.count = new int[cliques.length];
+                for (int iNode : this.nodes) {
+                    count[homeClique[iNode]]++;
+                }
+                for (int c = cliques.length - 1; c >= 0; c--) {
+                    if (parent[c] >= 0) {
+                        count[parent[c]] += count[c];
+                    }
+                }
+            }
+        }
+
+    }
+
 }
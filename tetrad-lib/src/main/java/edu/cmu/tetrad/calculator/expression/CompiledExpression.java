@@ -0,0 +1,307 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.calculator.expression;
+
+import java.util.List;
+
+/**
+ * An expression compiled for repeated evaluation in a SlotContext. Variables are resolved to slots when the
+ * expression is compiled, so evaluating it looks nothing up by name, and arithmetic and the elementary functions are
+ * evaluated directly rather than through the expression tree. Other expressions, such as the random distributions,
+ * are evaluated as they are, with the slot context as their context.
+ * <p>
+ * Evaluation gives the same result as evaluating the expression in a context with the same values, including draws
+ * from the random distributions, which are made in the same order. As there, a term of a sum that cannot be
+ * evaluated counts as zero.
+ */
+public abstract class CompiledExpression {
+
+    private CompiledExpression() {
+    }
+
+    /**
+     * @param expression The expression to compile.
+     * @param context    The context in which names in the expression are bound to slots.
+     */
+    public static CompiledExpression compile(Expression expression, SlotContext context) {
+        if (expression instanceof ConstantExpression) {
+            return new Constant(expression.evaluate(null));
+        }
+
+        if (expression instanceof VariableExpression) {
+            String name = ((VariableExpression) expression).getVariable();
+            int slot = context.getSlot(name);
+            return slot == -1 ? new Interpreted(expression) : new Variable(slot, name);
+        }
+
+        // Only the operators of ExpressionManager are known to mean what their tokens say.
+        if (!(expression instanceof AbstractExpression) || expression.getClass().getEnclosingClass() == null
+                || expression.getClass().getEnclosingClass().getEnclosingClass() != ExpressionManager.class) {
+            return new Interpreted(expression);
+        }
+
+        List<Expression> expressions = expression.getExpressions();
+        CompiledExpression[] args = new CompiledExpression[expressions.size()];
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = compile(expressions.get(i), context);
+        }
+
+        switch (expression.getToken()) {
+            case "+":
+                return new Sum(args);
+            case "*":
+                return new Product(args);
+            case "-":
+                return args.length == 1 ? new Negation(args[0]) : new Binary(Binary.SUBTRACT, args[0], args[1]);
+            case "/":
+                return new Binary(Binary.DIVIDE, args[0], args[1]);
+            case "pow":
+            case "^":
+                return new Binary(Binary.POW, args[0], args[1]);
+            case "max":
+                return new Extremum(true, args);
+            case "min":
+                return new Extremum(false, args);
+            default:
+                int function = Function.forToken(expression.getToken());
+                return function == -1 ? new Interpreted(expression) : new Function(function, args[0]);
+        }
+    }
+
+    /**
+     * @return The value of the expression, given the values in the context.
+     */
+    public abstract double evaluate(SlotContext context);
+
+    //================================ Inner classes ==============================//
+
+    private static class Constant extends CompiledExpression {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        public double evaluate(SlotContext context) {
+            return value;
+        }
+    }
+
+    private static class Variable extends CompiledExpression {
+        private final int slot;
+        private final String name;
+
+        Variable(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        public double evaluate(SlotContext context) {
+            return context.get(slot, name);
+        }
+    }
+
+    private static class Interpreted extends CompiledExpression {
+        private final Expression expression;
+
+        Interpreted(Expression expression) {
+            this.expression = expression;
+        }
+
+        public double evaluate(SlotContext context) {
+            return expression.evaluate(context);
+        }
+    }
+
+    private static class Sum extends CompiledExpression {
+        private final CompiledExpression[] args;
+
+        Sum(CompiledExpression[] args) {
+            this.args = args;
+        }
+
+        public double evaluate(SlotContext context) {
+            double value = 0.0;
+
+            for (CompiledExpression arg : args) {
+                double evaluate = 0;
+
+                try {
+                    evaluate = arg.evaluate(context);
+                } catch (Exception e) {
+                    // As in the interpreter, a term that can't be evaluated counts as zero.
+                }
+
+                value += evaluate;
+            }
+
+            return value;
+        }
+    }
+
+    private static class Product extends CompiledExpression {
+        private final CompiledExpression[] args;
+
+        Product(CompiledExpression[] args) {
+            this.args = args;
+        }
+
+        public double evaluate(SlotContext context) {
+            double value = 1.0;
+            for (CompiledExpression arg : args) value = value * arg.evaluate(context);
+            return value;
+        }
+    }
+
+    private static class Negation extends CompiledExpression {
+        private final CompiledExpression arg;
+
+        Negation(CompiledExpression arg) {
+            this.arg = arg;
+        }
+
+        public double evaluate(SlotContext context) {
+            return -arg.evaluate(context);
+        }
+    }
+
+    private static class Binary extends CompiledExpression {
+        static final int SUBTRACT = 0;
+        static final int DIVIDE = 1;
+        static final int POW = 2;
+
+        private final int op;
+        private final CompiledExpression arg1;
+        private final CompiledExpression arg2;
+
+        Binary(int op, CompiledExpression arg1, CompiledExpression arg2) {
+            this.op = op;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        public double evaluate(SlotContext context) {
+            double a = arg1.evaluate(context);
+            double b = arg2.evaluate(context);
+
+            switch (op) {
+                case SUBTRACT:
+                    return a - b;
+                case DIVIDE:
+                    return a / b;
+                default:
+                    return Math.pow(a, b);
+            }
+        }
+    }
+
+    private static class Extremum extends CompiledExpression {
+        private final boolean max;
+        private final CompiledExpression[] args;
+
+        Extremum(boolean max, CompiledExpression[] args) {
+            this.max = max;
+            this.args = args;
+        }
+
+        public double evaluate(SlotContext context) {
+            double value = args[0].evaluate(context);
+
+            for (int i = 1; i < args.length; i++) {
+                double d = args[i].evaluate(context);
+
+                if (max ? value < d : d < value) {
+                    value = d;
+                }
+            }
+
+            return value;
+        }
+    }
+
+    private static class Function extends CompiledExpression {
+        private static final String[] TOKENS = {"exp", "ln", "log10", "sqrt", "abs", "signum", "ceil", "floor",
+                "round", "sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh", "logistic"};
+
+        private final int function;
+        private final CompiledExpression arg;
+
+        Function(int function, CompiledExpression arg) {
+            this.function = function;
+            this.arg = arg;
+        }
+
+        static int forToken(String token) {
+            for (int i = 0; i < TOKENS.length; i++) {
+                if (TOKENS[i].equals(token)) return i;
+            }
+
+            return -1;
+        }
+
+        public double evaluate(SlotContext context) {
+            double t = arg.evaluate(context);
+
+            switch (function) {
+                case 0:
+                    return Math.exp(t);
+                case 1:
+                    return Math.log(t);
+                case 2:
+                    return Math.log10(t);
+                case 3:
+                    return Math.sqrt(t);
+                case 4:
+                    return Math.abs(t);
+                case 5:
+                    return Math.signum(t);
+                case 6:
+                    return Math.ceil(t);
+                case 7:
+                    return Math.floor(t);
+                case 8:
+                    return Math.round(t);
+                case 9:
+                    return Math.sin(t);
+                case 10:
+                    return Math.cos(t);
+                case 11:
+                    return Math.tan(t);
+                case 12:
+                    return Math.asin(t);
+                case 13:
+                    return Math.acos(t);
+                case 14:
+                    return Math.atan(t);
+                case 15:
+                    return Math.sinh(t);
+                case 16:
+                    return Math.cosh(t);
+                case 17:
+                    return Math.tanh(t);
+                default:
+                    return 1.0 / (1.0 + Math.exp(-t));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.calculator.expression;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A context whose values are kept in an array, by slot, for use with CompiledExpression. Names are bound to slots
+ * once, in advance; after that values are set and read by slot. A slot may be unassigned, in which case looking up
+ * its name gives null, as for a variable with no value.
+ * <p>
+ * A name can be bound only once. A slot added for a name that is already bound (for instance a variable with the
+ * same name as a parameter, where the parameter takes precedence) can still be set, but is not seen by name.
+ */
+public class SlotContext implements Context {
+
+    private final Map<String, Integer> slots;
+    private double[] values;
+    private boolean[] assigned;
+    private int numSlots;
+
+    public SlotContext() {
+        this.slots = new HashMap<>();
+        this.values = new double[16];
+        this.assigned = new boolean[16];
+    }
+
+    private SlotContext(SlotContext context) {
+        this.slots = context.slots;
+        this.values = Arrays.copyOf(context.values, context.values.length);
+        this.assigned = Arrays.copyOf(context.assigned, context.assigned.length);
+        this.numSlots = context.numSlots;
+    }
+
+    /**
+     * Adds an unassigned slot for the given name.
+     *
+     * @return The slot.
+     */
+    public int addSlot(String name) {
+        if (numSlots == values.length) {
+            values = Arrays.copyOf(values, 2 * numSlots);
+            assigned = Arrays.copyOf(assigned, 2 * numSlots);
+        }
+
+        slots.putIfAbsent(name, numSlots);
+        return numSlots++;
+    }
+
+    /**
+     * @return The slot bound to the given name, or -1 if there is none.
+     */
+    public int getSlot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public void set(int slot, double value) {
+        values[slot] = value;
+        assigned[slot] = true;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the slot is unassigned.
+     */
+    public double get(int slot, String name) {
+        if (!assigned[slot]) {
+            throw new IllegalArgumentException(name + " was not assigned a value.");
+        }
+
+        return values[slot];
+    }
+
+    public void unassign(int slot) {
+        assigned[slot] = false;
+    }
+
+    @Override
+    public Double getValue(String var) {
+        Integer slot = slots.get(var);
+
+        if (slot == null || !assigned[slot]) {
+            return null;
+        }
+
+        return values[slot];
+    }
+
+    /**
+     * @return A context with the same slots and a copy of the values, for use by another thread.
+     */
+    public SlotContext copy() {
+        return new SlotContext(this);
+    }
+}
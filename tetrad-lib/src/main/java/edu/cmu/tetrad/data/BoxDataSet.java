@@ -103,11 +103,12 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
     /**
      * The container storing the data. Rows are cases; columns are variables.
      * The order of columns is coordinated with the order of variables in
-     * getVariables().
+     * getVariables(). Volatile, since getDataBox may replace a lazy box with
+     * the box it loads.
      *
      * @serial
      */
-    private DataBox dataBox;
+    private volatile DataBox dataBox;
 
     /**
      * The set of selected variables.
@@ -1571,6 +1572,13 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
     }
 
     public DataBox getDataBox() {
-        return dataBox;
+        DataBox box = dataBox;
+
+        if (box instanceof LazyDataBox) {
+            box = ((LazyDataBox) box).load();
+            dataBox = box;
+        }
+
+        return box;
     }
 }
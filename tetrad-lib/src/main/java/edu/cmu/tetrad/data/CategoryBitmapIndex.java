@@ -0,0 +1,190 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Indexes the rows of a discrete data set by category. For each variable and each of its categories, the rows having
+ * that category are stored as a bitmap, one bit per row; rows with missing values appear in none of the bitmaps for
+ * that variable. Cell counts for any combination of variables are then intersections of bitmaps followed by bit
+ * counts, without scanning the data set. A column is indexed the first time it is used.
+ * <p>
+ * Since discrete variables typically have few categories, each category bitmap is dense, and plain bitmaps take less
+ * room than the int column they index.
+ * <p>
+ * Safe to share among threads; cell counts are returned in new arrays.
+ */
+public final class CategoryBitmapIndex implements CellCounts {
+
+    // The data set being indexed.
+    private final DataSet dataSet;
+
+    // The number of categories of each variable.
+    private final int[] dims;
+
+    // The number of longs in a bitmap.
+    private final int numWords;
+
+    // bitmaps[j][k] is the bitmap of rows with category k for variable j, or null if variable j is not yet indexed.
+    private final AtomicReferenceArray<long[][]> bitmaps;
+
+    /**
+     * @param dataSet A data set consisting entirely of discrete variables.
+     */
+    public CategoryBitmapIndex(DataSet dataSet) {
+        this.dataSet = dataSet;
+        this.dims = new int[dataSet.getNumColumns()];
+
+        for (int j = 0; j < dims.length; j++) {
+            dims[j] = ((DiscreteVariable) dataSet.getVariable(j)).getNumCategories();
+        }
+
+        this.numWords = (dataSet.getNumRows() + 63) >>> 6;
+        this.bitmaps = new AtomicReferenceArray<>(dims.length);
+    }
+
+    @Override
+    public int[] getCounts(int[] indices) {
+        int size = 1;
+
+        for (int index : indices) {
+            size *= dims[index];
+        }
+
+        int[] counts = new int[size];
+
+        if (indices.length == 0) {
+            counts[0] = dataSet.getNumRows();
+            return counts;
+        }
+
+        long[][][] columns = new long[indices.length][][];
+
+        for (int i = 0; i < indices.length; i++) {
+            columns[i] = getBitmaps(indices[i]);
+        }
+
+        // prefixes[d] is the intersection of the bitmaps chosen for the first d + 1 variables.
+        long[][] prefixes = new long[indices.length - 1][numWords];
+
+        count(columns, prefixes, 0, null, 0, counts);
+        return counts;
+    }
+
+    /**
+     * @return The number of rows in the data set having category k for the variable at the given index.
+     */
+    public int getCount(int index, int k) {
+        return cardinality(getBitmaps(index)[k]);
+    }
+
+    public int getNumCategories(int index) {
+        return dims[index];
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    // Fills in counts below the given prefix, depth first, skipping combinations whose prefix is already empty.
+    private void count(long[][][] columns, long[][] prefixes, int depth, long[] prefix, int offset, int[] counts) {
+        long[][] column = columns[depth];
+
+        if (depth == columns.length - 1) {
+            for (int k = 0; k < column.length; k++) {
+                counts[offset + k] = prefix == null ? cardinality(column[k]) : intersectionCardinality(prefix, column[k]);
+            }
+
+            return;
+        }
+
+        long[] next = prefixes[depth];
+        int stride = 1;
+
+        for (int d = depth + 1; d < columns.length; d++) {
+            stride *= columns[d].length;
+        }
+
+        for (int k = 0; k < column.length; k++) {
+            boolean empty = prefix == null ? intersect(column[k], column[k], next) : intersect(prefix, column[k], next);
+
+            if (!empty) {
+                count(columns, prefixes, depth + 1, next, offset + k * stride, counts);
+            }
+        }
+    }
+
+    private long[][] getBitmaps(int index) {
+        long[][] b = bitmaps.get(index);
+
+        if (b == null) {
+            b = new long[dims[index]][numWords];
+
+            for (int i = 0; i < dataSet.getNumRows(); i++) {
+                int value = dataSet.getInt(i, index);
+
+                if (value >= 0 && value < dims[index]) {
+                    b[value][i >>> 6] |= 1L << i;
+                }
+            }
+
+            // If two threads index the same column at once, both get the same bitmaps, so either may win.
+            if (!bitmaps.compareAndSet(index, null, b)) {
+                b = bitmaps.get(index);
+            }
+        }
+
+        return b;
+    }
+
+    // Sets out to a & b and returns true if the result is empty.
+    private static boolean intersect(long[] a, long[] b, long[] out) {
+        long any = 0L;
+
+        for (int w = 0; w < a.length; w++) {
+            long v = a[w] & b[w];
+            out[w] = v;
+            any |= v;
+        }
+
+        return any == 0L;
+    }
+
+    private static int intersectionCardinality(long[] a, long[] b) {
+        int count = 0;
+
+        for (int w = 0; w < a.length; w++) {
+            count += Long.bitCount(a[w] & b[w]);
+        }
+
+        return count;
+    }
+
+    private static int cardinality(long[] a) {
+        int count = 0;
+
+        for (long word : a) {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+}
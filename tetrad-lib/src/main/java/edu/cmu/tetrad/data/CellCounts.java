@@ -0,0 +1,38 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+/**
+ * A source of cell counts for contingency tables over the discrete variables of a data set.
+ */
+public interface CellCounts {
+
+    /**
+     * Counts the rows having each combination of values of the given (distinct) variables, skipping rows with a
+     * missing value for any of them.
+     *
+     * @param indices Indices of variables in the data set.
+     * @return The counts, with the first variable's value most significant; that is, the count for values (v0, v1,
+     * ..., vn) is at ((v0 * d1 + v1) * d2 + ...) * dn + vn, where di is the number of categories of variable i.
+     */
+    int[] getCounts(int[] indices);
+}
@@ -0,0 +1,327 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.OrderedPair;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A frozen form of Knowledge2 for lookups in the inner loops of searches.
+ * Variables are numbered in a given order; tiers are held as an int per
+ * variable, with a table of which tiers are forbidden to cause which, and the
+ * remaining forbidden and required edges as bit arrays over pairs of variable
+ * numbers, so that isForbidden(int, int) takes constant time.
+ * <p>
+ * Each compiled form remembers the version of the Knowledge2 it was compiled
+ * from; once that knowledge is changed, lookups throw an
+ * IllegalStateException, and the knowledge should be compiled again.
+ */
+public final class CompiledKnowledge {
+
+    private final Knowledge2 source;
+    private final int version;
+
+    private final int numVars;
+    private final Map<String, Integer> indices;
+
+    // The tier of each variable, or -1.
+    private final int[] tiers;
+
+    // Whether edges from tier i to tier j are forbidden by the tiers, and
+    // whether they are forbidden at all, counting rules between whole tiers.
+    private final boolean[][] tierForbidden;
+    private final boolean[][] tierOrRuleForbidden;
+
+    // Forbidden and required edges i --> j, at bit j of row i, with the edges
+    // forbidden by the tiers of variables in more than one tier. Rows with no
+    // edges are null.
+    private final long[][] forbidden;
+    private final long[][] required;
+    private final long[][] forbiddenByTiers;
+
+    CompiledKnowledge(Knowledge2 source, int version, List<String> names,
+            List<OrderedPair<Set<String>>> forbiddenRulesSpecs,
+            List<OrderedPair<Set<String>>> requiredRulesSpecs,
+            List<Set<String>> tierSpecs) {
+        this.source = source;
+        this.version = version;
+
+        this.numVars = names.size();
+        this.indices = new HashMap<>();
+        for (int i = 0; i < numVars; i++) {
+            indices.put(names.get(i), i);
+        }
+
+        int numTiers = tierSpecs.size();
+        List<List<Integer>> tiersOf = new ArrayList<>();
+        for (int i = 0; i < numVars; i++) {
+            tiersOf.add(new ArrayList<>());
+        }
+        for (int tier = 0; tier < numTiers; tier++) {
+            for (String name : tierSpecs.get(tier)) {
+                Integer i = indices.get(name);
+                if (i != null) {
+                    tiersOf.get(i).add(tier);
+                }
+            }
+        }
+
+        this.tiers = new int[numVars];
+        for (int i = 0; i < numVars; i++) {
+            tiers[i] = tiersOf.get(i).size() == 1 ? tiersOf.get(i).get(0) : -1;
+        }
+
+        // Later tiers may not cause earlier ones, nor may a tier cause itself
+        // if forbidden within, nor later tiers but the next if it may only
+        // cause the next.
+        this.tierForbidden = new boolean[numTiers][numTiers];
+        for (int i = 0; i < numTiers; i++) {
+            for (int j = 0; j < i; j++) {
+                tierForbidden[i][j] = true;
+            }
+
+            Set<String> tier = tierSpecs.get(i);
+            if (tier.isEmpty()) {
+                continue;
+            }
+
+            tierForbidden[i][i] = forbiddenRulesSpecs.contains(new OrderedPair<>(tier, tier));
+
+            boolean onlyNext = i + 2 < numTiers;
+            for (int j = i + 2; j < numTiers && onlyNext; j++) {
+                onlyNext = forbiddenRulesSpecs.contains(new OrderedPair<>(tier, tierSpecs.get(j)));
+            }
+            for (int j = i + 2; j < numTiers && onlyNext; j++) {
+                tierForbidden[i][j] = true;
+            }
+        }
+
+        this.tierOrRuleForbidden = new boolean[numTiers][numTiers];
+        for (int i = 0; i < numTiers; i++) {
+            tierOrRuleForbidden[i] = tierForbidden[i].clone();
+        }
+
+        this.forbidden = new long[numVars][];
+        this.required = new long[numVars][];
+        this.forbiddenByTiers = new long[numVars][];
+
+        for (OrderedPair<Set<String>> rule : forbiddenRulesSpecs) {
+            int tier1 = indexOf(tierSpecs, rule.getFirst());
+            int tier2 = indexOf(tierSpecs, rule.getSecond());
+
+            if (tier1 >= 0 && tier2 >= 0) {
+                tierOrRuleForbidden[tier1][tier2] = true;
+                setAll(forbidden, rule, tiers);
+            } else {
+                setAll(forbidden, rule, null);
+            }
+        }
+
+        for (OrderedPair<Set<String>> rule : requiredRulesSpecs) {
+            setAll(required, rule, null);
+        }
+
+        // A variable in more than one tier is forbidden by the tiers to cause
+        // a variable if any of its tiers is.
+        for (int i = 0; i < numVars; i++) {
+            if (tiersOf.get(i).size() < 2) {
+                continue;
+            }
+
+            for (int j = 0; j < numVars; j++) {
+                if (tiersForbid(tiersOf.get(i), tiersOf.get(j))) {
+                    set(forbiddenByTiers, i, j);
+                }
+                if (tiersForbid(tiersOf.get(j), tiersOf.get(i))) {
+                    set(forbiddenByTiers, j, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of the named variable, or -1 if it is not one of the
+     * variables compiled.
+     */
+    public int getIndex(String name) {
+        Integer i = indices.get(name);
+        return (i == null) ? -1 : i;
+    }
+
+    /**
+     * @return the number of variables.
+     */
+    public int getNumVariables() {
+        return numVars;
+    }
+
+    /**
+     * @return the tier of variable i, or -1 if it is in no tier.
+     */
+    public int getTier(int i) {
+        checkVersion();
+        return tiers[i];
+    }
+
+    /**
+     * Determines whether the edge i --> j is forbidden, as
+     * Knowledge2.isForbidden.
+     */
+    public boolean isForbidden(int i, int j) {
+        checkVersion();
+
+        if (get(required, i, j)) {
+            return false;
+        }
+
+        int tier1 = tiers[i];
+        int tier2 = tiers[j];
+
+        if (tier1 >= 0 && tier2 >= 0) {
+            return tierOrRuleForbidden[tier1][tier2] || get(forbidden, i, j);
+        }
+
+        return get(forbidden, i, j) || get(forbiddenByTiers, i, j);
+    }
+
+    /**
+     * Determines whether the edge i --> j is required, as
+     * Knowledge2.isRequired.
+     */
+    public boolean isRequired(int i, int j) {
+        checkVersion();
+        return get(required, i, j);
+    }
+
+    /**
+     * Determines whether the edge i --> j is forbidden by the temporal tiers,
+     * as Knowledge2.isForbiddenByTiers.
+     */
+    public boolean isForbiddenByTiers(int i, int j) {
+        checkVersion();
+        return tierForbids(i, j);
+    }
+
+    public boolean isForbidden(String var1, String var2) {
+        int i = getIndex(var1);
+        int j = getIndex(var2);
+        return i >= 0 && j >= 0 && isForbidden(i, j);
+    }
+
+    public boolean isRequired(String var1, String var2) {
+        int i = getIndex(var1);
+        int j = getIndex(var2);
+        return i >= 0 && j >= 0 && isRequired(i, j);
+    }
+
+    public boolean isForbiddenByTiers(String var1, String var2) {
+        int i = getIndex(var1);
+        int j = getIndex(var2);
+        return i >= 0 && j >= 0 && isForbiddenByTiers(i, j);
+    }
+
+    /**
+     * @return true if the knowledge has been changed since this was compiled.
+     */
+    public boolean isStale() {
+        return source.getVersion() != version;
+    }
+
+    private void checkVersion() {
+        if (isStale()) {
+            throw new IllegalStateException("The knowledge has changed since it was compiled.");
+        }
+    }
+
+    // The index of the tier that is the given set itself (not just equal to it), or -1.
+    private static int indexOf(List<Set<String>> tierSpecs, Set<String> set) {
+        for (int tier = 0; tier < tierSpecs.size(); tier++) {
+            if (tierSpecs.get(tier) == set) {
+                return tier;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Sets the bits of the edges of a rule. If tiers are given, only edges
+     * from or to variables in other than one tier are set, the others being
+     * held by tier.
+     */
+    private void setAll(long[][] bits, OrderedPair<Set<String>> rule, int[] tiers) {
+        for (String var1 : rule.getFirst()) {
+            Integer i = indices.get(var1);
+            if (i == null) {
+                continue;
+            }
+
+            for (String var2 : rule.getSecond()) {
+                Integer j = indices.get(var2);
+                if (j != null && !i.equals(j)
+                        && (tiers == null || tiers[i] < 0 || tiers[j] < 0)) {
+                    set(bits, i, j);
+                }
+            }
+        }
+    }
+
+    private boolean tierForbids(int i, int j) {
+        int tier1 = tiers[i];
+        int tier2 = tiers[j];
+
+        if (tier1 >= 0 && tier2 >= 0) {
+            return tierForbidden[tier1][tier2];
+        }
+
+        return get(forbiddenByTiers, i, j);
+    }
+
+    private boolean tiersForbid(List<Integer> tiers1, List<Integer> tiers2) {
+        for (int tier1 : tiers1) {
+            for (int tier2 : tiers2) {
+                if (tierForbidden[tier1][tier2]) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void set(long[][] bits, int i, int j) {
+        if (bits[i] == null) {
+            bits[i] = new long[(numVars + 63) >>> 6];
+        }
+
+        bits[i][j >>> 6] |= 1L << j;
+    }
+
+    private static boolean get(long[][] bits, int i, int j) {
+        long[] row = bits[i];
+        return row != null && (row[j >>> 6] & (1L << j)) != 0;
+    }
+
+}
@@ -102,9 +102,20 @@ public class CovarianceMatrix implements ICovarianceMatrix {
             throw new IllegalArgumentException("Not a continuous data set.");
         }
 
-        CovariancesDoubleForkJoin covariances = new CovariancesDoubleForkJoin(dataSet.getDoubleData().toArray(), biasCorrected);
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
         this.sampleSize = dataSet.getNumRows();
+
+        // Resampled views are weighted by row counts over their shared data rather than copied.
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof ResampledDataBox) {
+            double[][] covariances = ((ResampledDataBox) ((BoxDataSet) dataSet).getDataBox()).getCovariances(biasCorrected);
+
+            if (covariances != null) {
+                this._covariancesMatrix = new Matrix(covariances);
+                return;
+            }
+        }
+
+        CovariancesDoubleForkJoin covariances = new CovariancesDoubleForkJoin(dataSet.getDoubleData().toArray(), biasCorrected);
         this._covariancesMatrix = new Matrix(covariances.getMatrix());
     }
 
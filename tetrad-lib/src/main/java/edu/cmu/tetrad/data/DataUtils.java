@@ -1483,6 +1483,56 @@ public final class DataUtils {
                 data.getVariables());
     }
 
+    /**
+     * @return a sample with replacement with the given sample size from the
+     * given dataset, as a view of the rows of the dataset's data box rather
+     * than a copy. See ResampledDataBox.
+     */
+    public static DataSet getBootstrapView(DataSet data, int sampleSize) {
+        if (!(data instanceof BoxDataSet)) {
+            return getBootstrapSample(data, sampleSize);
+        }
+
+        int actualSampleSize = data.getNumRows();
+
+        int[] rows = new int[sampleSize];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = RandomUtil.getInstance().nextInt(actualSampleSize);
+        }
+
+        return new BoxDataSet(new ResampledDataBox(((BoxDataSet) data).getDataBox(), rows),
+                data.getVariables());
+    }
+
+    /**
+     * @return a sample without replacement with the given sample size from the
+     * given dataset, as a view of the rows of the dataset's data box rather
+     * than a copy. See ResampledDataBox.
+     */
+    public static DataSet getResamplingView(DataSet data, int sampleSize) {
+        if (!(data instanceof BoxDataSet)) {
+            return getResamplingDataset(data, sampleSize);
+        }
+
+        int actualSampleSize = data.getNumRows();
+        int _size = Math.min(sampleSize, actualSampleSize);
+
+        int[] all = new int[actualSampleSize];
+        for (int i = 0; i < actualSampleSize; i++) all[i] = i;
+
+        // A partial Fisher-Yates shuffle.
+        for (int i = 0; i < _size; i++) {
+            int j = i + RandomUtil.getInstance().nextInt(actualSampleSize - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+
+        return new BoxDataSet(new ResampledDataBox(((BoxDataSet) data).getDataBox(), Arrays.copyOf(all, _size)),
+                data.getVariables());
+    }
+
     /**
      * @return a sample without replacement with the given sample size from the
      * given dataset. May return a sample of less than the given size; makes
@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -83,6 +84,13 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
     private final List<KnowledgeGroup> knowledgeGroups;
     private final Map<KnowledgeGroup, OrderedPair<Set<String>>> knowledgeGroupRules;
 
+    // Incremented whenever the knowledge is changed.
+    private transient int version;
+
+    // The knowledge compiled over all of its variables for lookups by name,
+    // or null if it has been changed since.
+    private transient volatile CompiledKnowledge compiled;
+
     public Knowledge2() {
         this.variables = new HashSet<>();
         this.forbiddenRulesSpecs = new ArrayList<>();
@@ -108,12 +116,32 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         this.defaultToKnowledgeLayout = knowledge.defaultToKnowledgeLayout;
 
         this.variables = new HashSet<>(knowledge.variables);
-        this.forbiddenRulesSpecs = new ArrayList<>(knowledge.forbiddenRulesSpecs);
-        this.requiredRulesSpecs = new ArrayList<>(knowledge.requiredRulesSpecs);
-        this.tierSpecs = new ArrayList<>(knowledge.tierSpecs);
 
-        this.knowledgeGroups = knowledge.knowledgeGroups;
-        this.knowledgeGroupRules = knowledge.knowledgeGroupRules;
+        // The sets are copied too, since they are changed in place, each once,
+        // so that a rule between tiers is still between the copied tiers.
+        Map<Set<String>, Set<String>> copies = new IdentityHashMap<>();
+
+        this.tierSpecs = new ArrayList<>();
+        knowledge.tierSpecs.forEach(tier -> tierSpecs.add(copy(tier, copies)));
+
+        this.forbiddenRulesSpecs = new ArrayList<>();
+        knowledge.forbiddenRulesSpecs.forEach(rule -> forbiddenRulesSpecs.add(copy(rule, copies)));
+
+        this.requiredRulesSpecs = new ArrayList<>();
+        knowledge.requiredRulesSpecs.forEach(rule -> requiredRulesSpecs.add(copy(rule, copies)));
+
+        this.knowledgeGroups = new LinkedList<>(knowledge.knowledgeGroups);
+        this.knowledgeGroupRules = new HashMap<>();
+        knowledge.knowledgeGroupRules.forEach((group, rule) -> knowledgeGroupRules.put(group, copy(rule, copies)));
+    }
+
+    private static Set<String> copy(Set<String> set, Map<Set<String>, Set<String>> copies) {
+        return copies.computeIfAbsent(set, LinkedHashSet::new);
+    }
+
+    private static OrderedPair<Set<String>> copy(OrderedPair<Set<String>> rule,
+            Map<Set<String>, Set<String>> copies) {
+        return new OrderedPair<>(copy(rule.getFirst(), copies), copy(rule.getSecond(), copies));
     }
 
     private boolean checkVarName(String name) {
@@ -159,6 +187,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                 .collect(Collectors.toSet());
     }
 
+    // Adds empty tiers up to the given one. Only for use by methods that change
+    // the knowledge, which call modified() themselves.
     private void ensureTiers(int tier) {
         for (int i = tierSpecs.size(); i <= tier; i++) {
             tierSpecs.add(new LinkedHashSet<>());
@@ -169,6 +199,43 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
     }
 
+    private void modified() {
+        version++;
+        compiled = null;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    private CompiledKnowledge compiled() {
+        CompiledKnowledge _compiled = compiled;
+
+        if (_compiled == null) {
+            _compiled = new CompiledKnowledge(this, version, new ArrayList<>(variables),
+                    forbiddenRulesSpecs, requiredRulesSpecs, tierSpecs);
+            compiled = _compiled;
+        }
+
+        return _compiled;
+    }
+
+    /**
+     * Compiles this knowledge for lookups by variable index in the given
+     * order. The result throws an IllegalStateException once this knowledge
+     * is changed.
+     *
+     * @param nodes the variables, in the order of their indices
+     * @return the compiled knowledge
+     */
+    public CompiledKnowledge compile(List<Node> nodes) {
+        List<String> names = new ArrayList<>();
+        nodes.forEach(node -> names.add(node.getName()));
+
+        return new CompiledKnowledge(this, version, names,
+                forbiddenRulesSpecs, requiredRulesSpecs, tierSpecs);
+    }
+
     private OrderedPair<Set<String>> getGroupRule(KnowledgeGroup group) {
         Set<String> fromExtent = new HashSet<>();
         group.getFromVariables()
@@ -233,6 +300,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                     variables.add(e);
                     tierSpecs.get(tier).add(e);
                 });
+
+        modified();
     }
 
     /**
@@ -259,6 +328,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                 addToTier(Integer.parseInt(e.substring(index + 2)), e);
             }
         });
+
+        modified();
     }
 
     /**
@@ -279,12 +350,15 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         } else if (group.getType() == KnowledgeGroup.REQUIRED) {
             requiredRulesSpecs.add(o);
         }
+
+        modified();
     }
 
     @Override
     public void addVariable(String varName) {
         if (!variables.contains(varName) && checkVarName(varName)) {
             variables.add(varName);
+            modified();
         }
     }
 
@@ -296,6 +370,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         this.forbiddenRulesSpecs.clear();
         this.requiredRulesSpecs.clear();
         this.tierSpecs.clear();
+
+        modified();
     }
 
     /**
@@ -396,7 +472,9 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public List<String> getTier(int tier) {
-        ensureTiers(tier);
+        if (tier >= tierSpecs.size()) {
+            return new ArrayList<>();
+        }
 
         return tierSpecs.get(tier).stream()
                 .sorted()
@@ -417,13 +495,6 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         return defaultToKnowledgeLayout;
     }
 
-    private boolean isForbiddenByRules(String var1, String var2) {
-        return forbiddenRulesSpecs.stream()
-                .anyMatch(rule -> !var1.equals(var2)
-                && rule.getFirst().contains(var1)
-                && rule.getSecond().contains(var2));
-    }
-
     /**
      * Determines whether the edge var1 --> var2 is forbidden.
      *
@@ -433,11 +504,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isForbidden(String var1, String var2) {
-        if (isRequired(var1, var2)) {
-            return false;
-        }
-
-        return isForbiddenByRules(var1, var2) || isForbiddenByTiers(var1, var2);
+        return compiled().isForbidden(var1, var2);
     }
 
     /**
@@ -469,9 +536,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isForbiddenByTiers(String var1, String var2) {
-        return forbiddenTierRules().stream()
-                .anyMatch(rule -> rule.getFirst().contains(var1)
-                && rule.getSecond().contains(var2));
+        return compiled().isForbiddenByTiers(var1, var2);
     }
 
     /**
@@ -483,10 +548,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isRequired(String var1, String var2) {
-        return requiredRulesSpecs.stream()
-                .anyMatch(rule -> !var1.equals(var2)
-                && rule.getFirst().contains(var1)
-                && rule.getSecond().contains(var2));
+        return compiled().isRequired(var1, var2);
     }
 
     /**
@@ -529,7 +591,9 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isTierForbiddenWithin(int tier) {
-        ensureTiers(tier);
+        if (tier >= tierSpecs.size()) {
+            return false;
+        }
 
         Set<String> varsInTier = tierSpecs.get(tier);
         if (varsInTier.isEmpty()) {
@@ -579,6 +643,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
         spec = checkSpec(spec);
         getExtent(spec).forEach(s -> tierSpecs.forEach(tier -> tier.remove(s)));
+
+        modified();
     }
 
     /**
@@ -594,6 +660,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         requiredRulesSpecs.remove(old);
 
         this.knowledgeGroups.remove(index);
+
+        modified();
     }
 
     /**
@@ -620,6 +688,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         });
 
         tierSpecs.forEach(tier -> tier.remove(name));
+
+        modified();
     }
 
     /**
@@ -662,6 +732,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<String> f2 = getExtent(var2);
 
         forbiddenRulesSpecs.add(new OrderedPair<>(f1, f2));
+
+        modified();
     }
 
     /**
@@ -679,6 +751,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<String> f2 = getExtent(var2);
 
         forbiddenRulesSpecs.remove(new OrderedPair<>(f1, f2));
+
+        modified();
     }
 
     /**
@@ -710,6 +784,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         });
 
         requiredRulesSpecs.add(new OrderedPair<>(f1, f2));
+
+        modified();
     }
 
     /**
@@ -727,6 +803,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<String> f2 = getExtent(var2);
 
         requiredRulesSpecs.remove(new OrderedPair<>(f1, f2));
+
+        modified();
     }
 
     /**
@@ -750,6 +828,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
 
         knowledgeGroups.set(index, group);
+
+        modified();
     }
 
     /**
@@ -767,6 +847,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
 
         vars.forEach(var -> addToTier(tier, var));
+
+        modified();
     }
 
     /**
@@ -786,6 +868,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         } else {
             forbiddenRulesSpecs.remove(new OrderedPair<>(varsInTier, varsInTier));
         }
+
+        modified();
     }
 
     /**
@@ -900,7 +984,9 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
     @Override
     public boolean isOnlyCanCauseNextTier(int tier) {
-        ensureTiers(tier);
+        if (tier >= tierSpecs.size()) {
+            return false;
+        }
 
         Set<String> varsInTier = tierSpecs.get(tier);
         if (varsInTier.isEmpty()) {
@@ -938,6 +1024,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                 forbiddenRulesSpecs.remove(new OrderedPair<>(varsInTier, varsInTierN));
             }
         }
+
+        modified();
     }
 
     /**
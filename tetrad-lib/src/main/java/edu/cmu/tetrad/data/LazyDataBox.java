@@ -0,0 +1,134 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.TetradSerializableExcluded;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.UncheckedIOException;
+
+/**
+ * A data box whose data are loaded from elsewhere, such as a session file, the first time they are needed. Until then
+ * only the dimensions are known. BoxDataSet.getDataBox returns the loaded box rather than this one, so that callers
+ * checking the type of the box see the real one. A lazy box is serialized as the box it loads, so it is excluded from
+ * the TetradSerializable checks.
+ */
+public class LazyDataBox implements DataBox, TetradSerializableExcluded {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * Loads the data of a lazy box.
+     */
+    public interface Source {
+
+        /**
+         * @return The data, as a box of the given dimensions.
+         */
+        DataBox load() throws IOException;
+    }
+
+    private final int numRows;
+    private final int numCols;
+    private transient Source source;
+    private transient volatile DataBox dataBox;
+
+    /**
+     * @param numRows The number of rows of the box the source loads.
+     * @param numCols The number of columns of the box the source loads.
+     * @param source  Where the data come from.
+     */
+    public LazyDataBox(int numRows, int numCols, Source source) {
+        if (source == null) throw new NullPointerException("Source not specified.");
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.source = source;
+    }
+
+    /**
+     * @return The box the data are loaded into, loading them if they haven't been yet.
+     * @throws UncheckedIOException if the data cannot be loaded.
+     */
+    public DataBox load() {
+        DataBox dataBox = this.dataBox;
+        if (dataBox != null) return dataBox;
+
+        synchronized (this) {
+            if (this.dataBox == null) {
+                try {
+                    DataBox loaded = source.load();
+
+                    if (loaded.numRows() != numRows || loaded.numCols() != numCols) {
+                        throw new IllegalStateException("Expecting a " + numRows + " x " + numCols
+                                + " box but loaded a " + loaded.numRows() + " x " + loaded.numCols() + " box.");
+                    }
+
+                    this.dataBox = loaded;
+                    this.source = null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not load data.", e);
+                }
+            }
+
+            return this.dataBox;
+        }
+    }
+
+    /**
+     * @return True if the data have been loaded.
+     */
+    public boolean isLoaded() {
+        return dataBox != null;
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numCols() {
+        return numCols;
+    }
+
+    public void set(int row, int col, Number value) throws IllegalArgumentException {
+        load().set(row, col, value);
+    }
+
+    public Number get(int row, int col) {
+        return load().get(row, col);
+    }
+
+    public DataBox copy() {
+        return load().copy();
+    }
+
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        return load().viewSelection(rows, cols);
+    }
+
+    public DataBox like() {
+        return load().like();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return load();
+    }
+}
@@ -279,4 +279,8 @@ public class MixedDataBox implements DataBox {
         return discreteData;
     }
 
+    public List<Node> getVariables() {
+        return variables;
+    }
+
 }
\ No newline at end of file
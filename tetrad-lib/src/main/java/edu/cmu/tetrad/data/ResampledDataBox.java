@@ -0,0 +1,305 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A view of some of the rows of another data box, possibly with repeats, as for a bootstrap sample. Only the row
+ * indices are stored; the other box is shared among all of the views made from it and is not modified through them.
+ * The first call to set copies the selected rows into a box of this view's own, which is used from then on.
+ * <p>
+ * For continuous data the covariances of the view may be calculated from the number of times each row of the
+ * shared box is selected, without copying the data; CovarianceMatrix does this.
+ */
+public class ResampledDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The shared box.
+     */
+    private final DataBox source;
+
+    /**
+     * For each row of this box, the row of the shared box it shows.
+     */
+    private final int[] rows;
+
+    /**
+     * This view's own copy of its rows, made the first time a value is set; null until then.
+     */
+    private DataBox written = null;
+
+    /**
+     * The number of times each row of the shared box is selected, calculated when first needed.
+     */
+    private transient int[] counts = null;
+
+    /**
+     * Constructs a view of the given rows of the given box. If the box is itself an unmodified view, the new view is
+     * taken directly over its shared box.
+     */
+    public ResampledDataBox(DataBox source, int[] rows) {
+        if (source == null) throw new NullPointerException("Data box not specified.");
+        if (rows == null) throw new NullPointerException("Rows not specified.");
+
+        if (source instanceof ResampledDataBox && ((ResampledDataBox) source).written == null) {
+            ResampledDataBox view = (ResampledDataBox) source;
+            int[] _rows = new int[rows.length];
+
+            for (int i = 0; i < rows.length; i++) {
+                _rows[i] = view.rows[rows[i]];
+            }
+
+            source = view.source;
+            rows = _rows;
+        } else {
+            for (int row : rows) {
+                if (row < 0 || row >= source.numRows()) {
+                    throw new IllegalArgumentException("Row out of range: " + row);
+                }
+            }
+        }
+
+        this.source = source;
+        this.rows = rows;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> vars = new ArrayList<>();
+        for (int i = 0; i < 4; i++) vars.add(new ContinuousVariable("X" + i));
+        return new BoxDataSet(new ResampledDataBox(new VerticalDoubleDataBox(4, 4), new int[]{0, 0, 2, 3}), vars);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return rows.length;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return source.numCols();
+    }
+
+    /**
+     * Sets the value at the given row/column, first copying the rows of this view if that has not already been
+     * done, so that the shared box is not changed.
+     */
+    public void set(int row, int col, Number value) {
+        if (written == null) {
+            written = source.viewSelection(rows, allColumns());
+            counts = null;
+        }
+
+        written.set(row, col, value);
+    }
+
+    /**
+     * @return the Number value at the given row and column.
+     */
+    public Number get(int row, int col) {
+        if (written != null) return written.get(row, col);
+        return source.get(rows[row], col);
+    }
+
+    /**
+     * @return a copy of this data box. Until a value is set, the copy is another view of the same shared box.
+     */
+    public DataBox copy() {
+        if (written != null) return written.copy();
+        return new ResampledDataBox(source, rows.clone());
+    }
+
+    /**
+     * @return a view of the given rows of this box if all of its columns are given in order, otherwise a copy of
+     * the given rows and columns.
+     */
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        if (written != null) return written.viewSelection(rows, cols);
+
+        int[] _rows = new int[rows.length];
+
+        for (int i = 0; i < rows.length; i++) {
+            _rows[i] = this.rows[rows[i]];
+        }
+
+        if (cols.length == numCols()) {
+            boolean inOrder = true;
+
+            for (int j = 0; j < cols.length; j++) {
+                if (cols[j] != j) {
+                    inOrder = false;
+                    break;
+                }
+            }
+
+            if (inOrder) return new ResampledDataBox(source, _rows);
+        }
+
+        return source.viewSelection(_rows, cols);
+    }
+
+    public DataBox like() {
+        return copy();
+    }
+
+    /**
+     * @return the shared box.
+     */
+    public DataBox getSource() {
+        return source;
+    }
+
+    /**
+     * @return true if a value has been set, so that this view now has its own copy of its rows.
+     */
+    public boolean isWritten() {
+        return written != null;
+    }
+
+    /**
+     * @return the number of times each row of the shared box is selected, indexed by row of the shared box.
+     */
+    public int[] getRowCounts() {
+        if (counts == null) {
+            int[] _counts = new int[source.numRows()];
+            for (int row : rows) _counts[row]++;
+            counts = _counts;
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return the approximate number of bytes this view adds to the shared box: its row indices and, if calculated,
+     * its row counts. Does not include a copy made by set.
+     */
+    public long getBytesUsed() {
+        return 4L * rows.length + (counts == null ? 0 : 4L * counts.length);
+    }
+
+    /**
+     * @return the covariance matrix of the rows of this view, calculated from the counts of the rows of the shared
+     * box, or null if the view has been written to or its columns are not all continuous. When the shared box is a
+     * VerticalDoubleDataBox its columns are read in place.
+     * @param biasCorrected True if the sums of products should be divided by N - 1 rather than N.
+     */
+    public double[][] getCovariances(boolean biasCorrected) {
+        if (written != null) return null;
+
+        int[] counts = getRowCounts();
+
+        int numDistinct = 0;
+        for (int count : counts) if (count > 0) numDistinct++;
+        final int m = numDistinct;
+
+        // The distinct rows selected and their weights.
+        int[] distinct = new int[m];
+        double[] weights = new double[m];
+
+        for (int r = 0, k = 0; r < counts.length; r++) {
+            if (counts[r] > 0) {
+                distinct[k] = r;
+                weights[k++] = counts[r];
+            }
+        }
+
+        int p = numCols();
+        double[][] columns;
+        int[] index;
+
+        if (source instanceof VerticalDoubleDataBox) {
+            columns = ((VerticalDoubleDataBox) source).getVariableVectors();
+            index = distinct;
+        } else if (source instanceof MixedDataBox) {
+            double[][] continuous = ((MixedDataBox) source).getContinuousData();
+
+            for (int j = 0; j < p; j++) {
+                if (continuous[j] == null) return null;
+            }
+
+            columns = continuous;
+            index = distinct;
+        } else if (source instanceof DoubleDataBox || source instanceof FloatDataBox) {
+            columns = new double[p][m];
+            index = new int[m];
+
+            for (int k = 0; k < m; k++) {
+                index[k] = k;
+
+                for (int j = 0; j < p; j++) {
+                    Number value = source.get(distinct[k], j);
+                    columns[j][k] = value == null ? Double.NaN : value.doubleValue();
+                }
+            }
+        } else {
+            return null;
+        }
+
+        double n = rows.length;
+        double[] means = new double[p];
+
+        for (int j = 0; j < p; j++) {
+            double sum = 0.0;
+            for (int k = 0; k < m; k++) sum += weights[k] * columns[j][index[k]];
+            means[j] = sum / n;
+        }
+
+        double[][] covariances = new double[p][p];
+        double divisor = biasCorrected ? n - 1 : n;
+
+        IntStream.range(0, p).parallel().forEach(i -> {
+            double[] x = columns[i];
+
+            for (int j = 0; j <= i; j++) {
+                double[] y = columns[j];
+                double sum = 0.0;
+
+                for (int k = 0; k < m; k++) {
+                    sum += weights[k] * (x[index[k]] - means[i]) * (y[index[k]] - means[j]);
+                }
+
+                covariances[i][j] = sum / divisor;
+                covariances[j][i] = sum / divisor;
+            }
+        });
+
+        return covariances;
+    }
+
+    private int[] allColumns() {
+        int[] cols = new int[numCols()];
+        for (int j = 0; j < cols.length; j++) cols[j] = j;
+        return cols;
+    }
+}
@@ -0,0 +1,320 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.tabular.MappedTabularDataFileReader;
+import edu.pitt.dbmi.data.reader.tabular.TabularColumnFileReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Accumulates the means and covariances of continuous data a row at a time, so that covariance matrices may be
+ * calculated for data too large to be held in memory. Rows are gathered into blocks; the sums of products of each
+ * block are taken about the block's own means and then merged into the running totals, as are the totals of two
+ * accumulators (Chan, Golub and LeVeque's pairwise update), which keeps the sums accurate for data with large means.
+ * Separate threads should use separate accumulators and merge them at the end.
+ * <p>
+ * Missing values (NaN) make the covariances that involve them NaN, as for CovarianceMatrix.
+ */
+public final class StreamingCovariance implements MappedTabularDataFileReader.ContinuousRowHandler {
+
+    // The number of rows gathered before they are added to the totals.
+    private static final int BLOCK_SIZE = 256;
+
+    // The number of bytes of a binary file mapped at once.
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final List<Node> variables;
+    private final int numVars;
+
+    // The number of rows in the totals.
+    private long n = 0;
+
+    // The means of the rows in the totals.
+    private final double[] means;
+
+    // Sums of products of deviations from the means, lower triangle packed by rows: (i, j) is at i * (i + 1) / 2 + j.
+    private final double[] products;
+
+    // The rows not yet added to the totals, by column.
+    private final double[][] block;
+    private int blockSize = 0;
+
+    // The means and sums of products of the block being flushed, reused from block to block; every entry is
+    // overwritten on each flush.
+    private final double[] blockMeans;
+    private final double[] blockProducts;
+
+    public StreamingCovariance(List<Node> variables) {
+        if (variables == null) throw new NullPointerException("Variables not specified.");
+        this.variables = new ArrayList<>(variables);
+        this.numVars = variables.size();
+        this.means = new double[numVars];
+        this.products = new double[numVars * (numVars + 1) / 2];
+        this.block = new double[numVars][BLOCK_SIZE];
+        this.blockMeans = new double[numVars];
+        this.blockProducts = new double[products.length];
+    }
+
+    /**
+     * Reads the covariances of a delimited text file with a header row of variable names, whose columns are all
+     * continuous. The file is read in parallel a chunk at a time and is never held in memory.
+     */
+    public static StreamingCovariance readTabular(Path file, Delimiter delimiter, String missingDataMarker,
+                                                  String commentMarker) throws IOException {
+        TabularColumnFileReader columnReader = new TabularColumnFileReader(file, delimiter);
+        columnReader.setCommentMarker(commentMarker);
+        DataColumn[] dataColumns = columnReader.readInDataColumns(false);
+
+        List<Node> variables = new ArrayList<>();
+
+        for (DataColumn dataColumn : dataColumns) {
+            variables.add(new ContinuousVariable(dataColumn.getName()));
+        }
+
+        MappedTabularDataFileReader dataReader = new MappedTabularDataFileReader(file, delimiter);
+        dataReader.setMissingDataMarker(missingDataMarker);
+        dataReader.setCommentMarker(commentMarker);
+
+        List<StreamingCovariance> parts = dataReader.readContinuousRows(dataColumns, true,
+                () -> new StreamingCovariance(variables));
+
+        return merge(variables, parts);
+    }
+
+    /**
+     * Reads the covariances of a binary file of little-endian doubles, row by row, one column per variable. The
+     * file is memory-mapped a window at a time, and ranges of rows are read in parallel.
+     */
+    public static StreamingCovariance readBinary(Path file, List<Node> variables) throws IOException {
+        int numVars = variables.size();
+        long rowBytes = 8L * numVars;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (numVars == 0 || size % rowBytes != 0) {
+                throw new IllegalArgumentException("File size " + size + " is not a whole number of rows of "
+                        + numVars + " doubles.");
+            }
+
+            long numRows = size / rowBytes;
+            int numParts = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), numRows / BLOCK_SIZE));
+            long rowsPerWindow = Math.max(1, WINDOW_SIZE / rowBytes);
+
+            List<StreamingCovariance> parts = new ArrayList<>();
+            for (int k = 0; k < numParts; k++) parts.add(new StreamingCovariance(variables));
+
+            try {
+                IntStream.range(0, numParts).parallel().forEach(k -> {
+                    StreamingCovariance part = parts.get(k);
+                    long from = numRows * k / numParts;
+                    long to = numRows * (k + 1) / numParts;
+                    double[] row = new double[numVars];
+
+                    try {
+                        for (long start = from; start < to; start += rowsPerWindow) {
+                            long count = Math.min(rowsPerWindow, to - start);
+                            DoubleBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start * rowBytes,
+                                    count * rowBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+                            for (long r = 0; r < count; r++) {
+                                window.get(row);
+                                part.add(row);
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            return merge(variables, parts);
+        }
+    }
+
+    /**
+     * Adds a row, whose values are in the order of the variables.
+     */
+    public void add(double[] row) {
+        if (row.length != numVars) {
+            throw new IllegalArgumentException("Expecting " + numVars + " values: " + row.length);
+        }
+
+        for (int j = 0; j < numVars; j++) {
+            block[j][blockSize] = row[j];
+        }
+
+        if (++blockSize == BLOCK_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public void handle(double[] row) {
+        add(row);
+    }
+
+    /**
+     * Adds the rows of the given accumulator to this one.
+     */
+    public void merge(StreamingCovariance other) {
+        if (other.numVars != numVars) {
+            throw new IllegalArgumentException("Expecting " + numVars + " variables: " + other.numVars);
+        }
+
+        flush();
+        other.flush();
+        merge(other.n, other.means, other.products);
+    }
+
+    /**
+     * @return the number of rows added.
+     */
+    public long getSampleSize() {
+        return n + blockSize;
+    }
+
+    /**
+     * @return the covariance matrix of the rows added, with sums of products divided by N - 1.
+     */
+    public ICovarianceMatrix getCovarianceMatrix() {
+        return getCovarianceMatrix(true);
+    }
+
+    /**
+     * @param biasCorrected True if sums of products should be divided by N - 1 rather than N.
+     * @return the covariance matrix of the rows added.
+     */
+    public ICovarianceMatrix getCovarianceMatrix(boolean biasCorrected) {
+        flush();
+
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sample size too large for a covariance matrix: " + n);
+        }
+
+        double divisor = biasCorrected ? n - 1 : n;
+        double[][] covariances = new double[numVars][numVars];
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j <= i; j++) {
+                covariances[i][j] = products[i * (i + 1) / 2 + j] / divisor;
+                covariances[j][i] = covariances[i][j];
+            }
+        }
+
+        return new CovarianceMatrix(variables, covariances, (int) n);
+    }
+
+    /**
+     * @return the means of the rows added.
+     */
+    public double[] getMeans() {
+        flush();
+        return means.clone();
+    }
+
+    public List<Node> getVariables() {
+        return new ArrayList<>(variables);
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    private static StreamingCovariance merge(List<Node> variables, List<StreamingCovariance> parts) {
+        StreamingCovariance total = new StreamingCovariance(variables);
+        for (StreamingCovariance part : parts) total.merge(part);
+        return total;
+    }
+
+    // Adds the gathered rows to the totals.
+    private void flush() {
+        if (blockSize == 0) return;
+
+        int b = blockSize;
+
+        for (int j = 0; j < numVars; j++) {
+            double[] x = block[j];
+            double sum = 0.0;
+            for (int r = 0; r < b; r++) sum += x[r];
+            blockMeans[j] = sum / b;
+            for (int r = 0; r < b; r++) x[r] -= blockMeans[j];
+        }
+
+        for (int i = 0; i < numVars; i++) {
+            double[] x = block[i];
+            int base = i * (i + 1) / 2;
+
+            for (int j = 0; j <= i; j++) {
+                double[] y = block[j];
+                double sum = 0.0;
+                for (int r = 0; r < b; r++) sum += x[r] * y[r];
+                blockProducts[base + j] = sum;
+            }
+        }
+
+        blockSize = 0;
+        merge(b, blockMeans, blockProducts);
+    }
+
+    // Merges the totals of another set of rows into these.
+    private void merge(long nb, double[] meansB, double[] productsB) {
+        if (nb == 0) return;
+
+        long na = n;
+        long total = na + nb;
+        double[] delta = new double[numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            delta[j] = meansB[j] - means[j];
+        }
+
+        double f = (double) na * nb / total;
+
+        for (int i = 0; i < numVars; i++) {
+            int base = i * (i + 1) / 2;
+
+            for (int j = 0; j <= i; j++) {
+                products[base + j] += productsB[base + j] + f * delta[i] * delta[j];
+            }
+        }
+
+        for (int j = 0; j < numVars; j++) {
+            means[j] += delta[j] * nb / total;
+        }
+
+        n = total;
+    }
+}
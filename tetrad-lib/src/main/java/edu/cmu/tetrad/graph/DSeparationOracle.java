@@ -0,0 +1,379 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.util.*;
+
+/**
+ * Answers d-separation (m-separation) queries for a fixed graph by reachability ("Bayes ball") over an int-indexed
+ * snapshot of it. A traversal visits each (node, whether it was entered by an arrowhead) pair at most once, so a query
+ * takes time linear in the size of the graph. Ancestor sets are precomputed as bitsets, so the ancestors of a
+ * conditioning set are found by or-ing the bitsets of its members, and the visit marks, queue and ancestor words are
+ * kept per thread and reused from one query to the next, so queries by node id do not allocate.
+ * <p>
+ * A single traversal from x finds every node d-connected to x given z, so isDConnectedTo(x, ys, z) answers the
+ * queries for all y in ys at once.
+ * <p>
+ * The graph may be a DAG or may have bidirected edges (or directed cycles); the answers are those of
+ * GraphUtils.isDConnectedTo for such graphs. Graphs with other kinds of edges, or with underline triples, are not
+ * supported; see supports(graph). The snapshot does not follow later changes to the graph.
+ *
+ * @see GraphUtils#isDConnectedTo(Node, Node, List, Graph)
+ */
+public class DSeparationOracle {
+
+    // Flags on adjacency entries.
+    private static final byte ARROW_AT_NODE = 1;
+    private static final byte ARROW_AT_NEIGHBOR = 2;
+    private static final byte TAIL_AT_NODE = 4;
+    private static final byte TAIL_AT_NEIGHBOR = 8;
+    private static final byte PARENT = ARROW_AT_NODE | TAIL_AT_NEIGHBOR;
+    private static final byte CHILD = TAIL_AT_NODE | ARROW_AT_NEIGHBOR;
+
+    private final List<Node> nodes;
+    private final Map<Node, Integer> ids = new HashMap<>();
+
+    // Adjacencies in compressed sparse row form: the neighbors of i are neighbors[offsets[i]..offsets[i + 1]), with
+    // the endpoint flags of the edges to them in flags.
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final byte[] flags;
+
+    // ancestors[i] is the set of ancestors of i, including i, as a bitset of words.
+    private final long[][] ancestors;
+    private final int numWords;
+
+    private final ThreadLocal<Workspace> workspace;
+
+    /**
+     * Takes a snapshot of the given graph.
+     *
+     * @throws IllegalArgumentException if the graph is not supported.
+     */
+    public DSeparationOracle(Graph graph) {
+        if (graph == null) throw new NullPointerException("Graph must not be null.");
+
+        if (!supports(graph)) {
+            throw new IllegalArgumentException("Only graphs with directed and bidirected edges and no underlines "
+                    + "are supported.");
+        }
+
+        this.nodes = new ArrayList<>(graph.getNodes());
+        int n = nodes.size();
+
+        for (int i = 0; i < n; i++) {
+            ids.put(nodes.get(i), i);
+        }
+
+        this.offsets = new int[n + 1];
+
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + graph.getEdges(nodes.get(i)).size();
+        }
+
+        this.neighbors = new int[offsets[n]];
+        this.flags = new byte[offsets[n]];
+
+        for (int i = 0; i < n; i++) {
+            Node node = nodes.get(i);
+            int k = offsets[i];
+
+            for (Edge edge : graph.getEdges(node)) {
+                Node neighbor = edge.getDistalNode(node);
+                neighbors[k] = ids.get(neighbor);
+                if (edge.getProximalEndpoint(node) == Endpoint.ARROW) flags[k] |= ARROW_AT_NODE;
+                if (edge.getProximalEndpoint(neighbor) == Endpoint.ARROW) flags[k] |= ARROW_AT_NEIGHBOR;
+                if (edge.getProximalEndpoint(node) == Endpoint.TAIL) flags[k] |= TAIL_AT_NODE;
+                if (edge.getProximalEndpoint(neighbor) == Endpoint.TAIL) flags[k] |= TAIL_AT_NEIGHBOR;
+                k++;
+            }
+        }
+
+        this.numWords = (n + 63) >>> 6;
+        this.ancestors = calcAncestors();
+        this.workspace = ThreadLocal.withInitial(() -> new Workspace(n, numWords));
+    }
+
+    /**
+     * @return True if all edges of the graph are directed or bidirected and it has no underline triples.
+     */
+    public static boolean supports(Graph graph) {
+        if (!graph.getUnderLines().isEmpty()) return false;
+
+        for (Edge edge : graph.getEdges()) {
+            if (!Edges.isDirectedEdge(edge) && !Edges.isBidirectedEdge(edge)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The nodes of the graph, in id order.
+     */
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return The id of the given node, or -1 if it is not in the graph.
+     */
+    public int getId(Node node) {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return True if x is an ancestor of y (or is y), where x and y are ids.
+     */
+    public boolean isAncestorOf(int x, int y) {
+        return (ancestors[y][x >>> 6] & (1L << x)) != 0;
+    }
+
+    /**
+     * @return True if x is d-connected to y given z.
+     */
+    public boolean isDConnectedTo(Node x, Node y, List<Node> z) {
+        return isDConnectedTo(id(x), id(y), ids(z));
+    }
+
+    /**
+     * @return True if x is d-connected to y given z, where x, y and the members of z are ids.
+     */
+    public boolean isDConnectedTo(int x, int y, int[] z) {
+        if (x == y) return true;
+        Workspace w = reach(x, z, y);
+        return w.reached[y] == w.epoch;
+    }
+
+    /**
+     * Answers the queries for all y in ys with one traversal from x.
+     *
+     * @return An array whose i'th entry is true if x is d-connected to ys[i] given z, where x and the members of ys
+     * and z are ids.
+     */
+    public boolean[] isDConnectedTo(int x, int[] ys, int[] z) {
+        Workspace w = reach(x, z, -1);
+        boolean[] connected = new boolean[ys.length];
+
+        for (int i = 0; i < ys.length; i++) {
+            connected[i] = ys[i] == x || w.reached[ys[i]] == w.epoch;
+        }
+
+        return connected;
+    }
+
+    /**
+     * @return The nodes other than x that are d-connected to x given z, in id order.
+     */
+    public List<Node> getDConnectedNodes(Node x, List<Node> z) {
+        int _x = id(x);
+        Workspace w = reach(_x, ids(z), -1);
+        List<Node> connected = new ArrayList<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i != _x && w.reached[i] == w.epoch) connected.add(nodes.get(i));
+        }
+
+        return connected;
+    }
+
+    //===============================PRIVATE METHODS=======================//
+
+    // Marks the nodes reachable from x given z by d-connecting paths with w.epoch in w.reached, stopping early if
+    // target is reached. States are (node, entered by an arrowhead), numbered 2 * node + (1 if by an arrowhead).
+    private Workspace reach(int x, int[] z, int target) {
+        Workspace w = workspace.get();
+        int epoch = w.nextEpoch();
+
+        long[] anZ = w.ancestorsOfZ;
+        Arrays.fill(anZ, 0L);
+
+        for (int _z : z) {
+            w.inZ[_z] = epoch;
+            long[] a = ancestors[_z];
+            for (int i = 0; i < numWords; i++) anZ[i] |= a[i];
+        }
+
+        int[] queue = w.queue;
+        int head = 0;
+        int tail = 0;
+
+        for (int k = offsets[x]; k < offsets[x + 1]; k++) {
+            int c = neighbors[k];
+            w.reached[c] = epoch;
+            if (c == target) return w;
+
+            int state = 2 * c + ((flags[k] & ARROW_AT_NEIGHBOR) != 0 ? 1 : 0);
+
+            if (w.visited[state] != epoch) {
+                w.visited[state] = epoch;
+                queue[tail++] = state;
+            }
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            int b = state >>> 1;
+            boolean intoB = (state & 1) != 0;
+            boolean bInZ = w.inZ[b] == epoch;
+            boolean bInAnZ = (anZ[b >>> 6] & (1L << b)) != 0;
+
+            for (int k = offsets[b]; k < offsets[b + 1]; k++) {
+                boolean collider = intoB && (flags[k] & ARROW_AT_NODE) != 0;
+
+                if (collider ? !bInAnZ : bInZ) {
+                    continue;
+                }
+
+                int c = neighbors[k];
+                w.reached[c] = epoch;
+                if (c == target) return w;
+
+                int next = 2 * c + ((flags[k] & ARROW_AT_NEIGHBOR) != 0 ? 1 : 0);
+
+                if (w.visited[next] != epoch) {
+                    w.visited[next] = epoch;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        return w;
+    }
+
+    // Ancestor sets, built in topological order from the parents' sets when the directed part of the graph is
+    // acyclic, and otherwise by a search up from each node.
+    private long[][] calcAncestors() {
+        int n = nodes.size();
+        long[][] ancestors = new long[n][numWords];
+
+        int[] numParents = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (isParent(k)) numParents[i]++;
+            }
+        }
+
+        int[] order = new int[n];
+        int tail = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (numParents[i] == 0) order[tail++] = i;
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = order[head];
+            ancestors[i][i >>> 6] |= 1L << i;
+
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (isChild(k)) {
+                    int c = neighbors[k];
+                    long[] a = ancestors[c];
+                    for (int j = 0; j < numWords; j++) a[j] |= ancestors[i][j];
+                    if (--numParents[c] == 0) order[tail++] = c;
+                }
+            }
+        }
+
+        if (tail < n) {
+            int[] queue = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                long[] a = ancestors[i];
+                Arrays.fill(a, 0L);
+                a[i >>> 6] |= 1L << i;
+                queue[0] = i;
+                int _tail = 1;
+
+                for (int head = 0; head < _tail; head++) {
+                    int t = queue[head];
+
+                    for (int k = offsets[t]; k < offsets[t + 1]; k++) {
+                        int p = neighbors[k];
+
+                        if (isParent(k) && (a[p >>> 6] & (1L << p)) == 0) {
+                            a[p >>> 6] |= 1L << p;
+                            queue[_tail++] = p;
+                        }
+                    }
+                }
+            }
+        }
+
+        return ancestors;
+    }
+
+    // True if adjacency entry k is an edge from the neighbor into the node.
+    private boolean isParent(int k) {
+        return flags[k] == PARENT;
+    }
+
+    // True if adjacency entry k is an edge from the node into the neighbor.
+    private boolean isChild(int k) {
+        return flags[k] == CHILD;
+    }
+
+    private int id(Node node) {
+        Integer id = ids.get(node);
+        if (id == null) throw new IllegalArgumentException("Not a node in the graph: " + node);
+        return id;
+    }
+
+    private int[] ids(List<Node> z) {
+        int[] _z = new int[z.size()];
+        for (int i = 0; i < _z.length; i++) _z[i] = id(z.get(i));
+        return _z;
+    }
+
+    /**
+     * Per-thread buffers for traversals. Marks are stamped with the number of the traversal that set them, so they
+     * need not be cleared between traversals.
+     */
+    private static class Workspace {
+        final int[] visited;
+        final int[] reached;
+        final int[] inZ;
+        final int[] queue;
+        final long[] ancestorsOfZ;
+        int epoch = 0;
+
+        Workspace(int numNodes, int numWords) {
+            visited = new int[2 * numNodes];
+            reached = new int[numNodes];
+            inZ = new int[numNodes];
+            queue = new int[2 * numNodes];
+            ancestorsOfZ = new long[numWords];
+        }
+
+        int nextEpoch() {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                Arrays.fill(reached, 0);
+                Arrays.fill(inZ, 0);
+                epoch = 1;
+            }
+
+            return epoch;
+        }
+    }
+}
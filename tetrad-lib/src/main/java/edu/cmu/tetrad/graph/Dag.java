@@ -178,6 +178,10 @@ public final class Dag implements Graph {
         getGraph().addPropertyChangeListener(l);
     }
 
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getGraph().removePropertyChangeListener(l);
+    }
+
     public boolean addUndirectedEdge(Node node1, Node node2) {
         throw new UnsupportedOperationException();
     }
@@ -1345,6 +1345,16 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         getPcs().addPropertyChangeListener(l);
     }
 
+    /**
+     * Removes a PropertyChangeListener from the graph.
+     *
+     * @param l the property change listener.
+     */
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getPcs().removePropertyChangeListener(l);
+    }
+
     /**
      * Adds a node to the graph. Precondition: The proposed name of the node
      * cannot already be used by any other node in the same graph.
@@ -368,6 +368,15 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         getPcs().addPropertyChangeListener(l);
     }
 
+    /**
+     * Removes a PropertyChangeListener from the graph.
+     *
+     * @param l the property change listener.
+     */
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getPcs().removePropertyChangeListener(l);
+    }
+
     /**
      * Adds a node to the graph. Precondition: The proposed name of the node
      * cannot already be used by any other node in the same graph.
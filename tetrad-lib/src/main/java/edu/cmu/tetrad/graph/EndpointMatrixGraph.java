@@ -1203,6 +1203,13 @@ public class EndpointMatrixGraph implements Graph {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Throws unsupported operation exception.
+     */
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Adds a node to the graph. Precondition: The proposed name of the node
      * cannot already be used by any other node in the same graph.
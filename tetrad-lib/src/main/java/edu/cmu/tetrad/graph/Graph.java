@@ -86,6 +86,11 @@ public interface Graph extends TetradSerializable, TripleClassifier {
      */
     void addPropertyChangeListener(PropertyChangeListener e);
 
+    /**
+     * Removes a PropertyChangeListener added to the graph.
+     */
+    void removePropertyChangeListener(PropertyChangeListener e);
+
     /**
      * Removes all nodes (and therefore all edges) from the graph.
      */
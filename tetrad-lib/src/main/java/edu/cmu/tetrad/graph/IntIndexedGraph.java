@@ -0,0 +1,565 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * An EdgeListGraph that also keeps, for each node, arrays of its neighbors' integer ids, the endpoints at either end
+ * of the edges to them, and the edges themselves. Adjacency, parent, child and endpoint queries, which searches such
+ * as FGES, the Meek rules and the FCI orientation rules make many millions of, are answered from these arrays by
+ * integer comparison instead of by walking tree maps of nodes. Node ids are dense and are assigned in the order nodes
+ * are added; an id is not reused after its node is removed.
+ * <p>
+ * The index is not safe for reading in one thread while another thread changes the graph; a search should change
+ * the graph only between its parallel steps.
+ * <p>
+ * Construct one from another graph at the start of a search and convert it back with new EdgeListGraph(graph) at the
+ * end, if need be.
+ *
+ * @see EdgeListGraph
+ */
+public class IntIndexedGraph extends EdgeListGraph {
+    static final long serialVersionUID = 23L;
+
+    // The fields below are an index over the nodes and edges of the graph; they are rebuilt on deserialization.
+
+    // Map from nodes to ids.
+    private transient Map<Node, Integer> ids = new HashMap<>();
+
+    // Nodes by id; null for ids of removed nodes.
+    private transient Node[] nodesById = new Node[16];
+
+    // Neighbors by id.
+    private transient Adjacency[] adjacencies = new Adjacency[16];
+
+    // The number of ids assigned.
+    private transient int numIds = 0;
+
+    //==============================CONSTUCTORS===========================//
+
+    /**
+     * Constructs a new (empty) graph.
+     */
+    public IntIndexedGraph() {
+    }
+
+    /**
+     * Constructs a new graph, with no edges, over the given nodes.
+     */
+    public IntIndexedGraph(List<Node> nodes) {
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        for (Node node : nodes) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Constructs a graph with the nodes, edges and other annotations of the given graph.
+     *
+     * @throws IllegalArgumentException if a duplicate edge is added.
+     */
+    public IntIndexedGraph(Graph graph) throws IllegalArgumentException {
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        transferNodesAndEdges(graph);
+        transferAttributes(graph);
+
+        this.ambiguousTriples = graph.getAmbiguousTriples();
+        this.underLineTriples = graph.getUnderLines();
+        this.dottedUnderLineTriples = graph.getDottedUnderlines();
+
+        for (Edge edge : graph.getEdges()) {
+            if (graph.isHighlighted(edge)) {
+                setHighlighted(edge, true);
+            }
+        }
+
+        setPag(graph.isPag());
+        setPattern(graph.isPattern());
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static IntIndexedGraph serializableInstance() {
+        return new IntIndexedGraph();
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    /**
+     * @return the id of the given node, or -1 if it is not in the graph.
+     */
+    public int getId(Node node) {
+        Integer id = node == null ? null : ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the node with the given id, or null if it has been removed.
+     */
+    public Node getNode(int id) {
+        return nodesById[id];
+    }
+
+    /**
+     * @return the number of ids assigned so far, which bounds every id in the graph, including those of removed
+     * nodes.
+     */
+    public int getNumIds() {
+        return numIds;
+    }
+
+    /**
+     * @return true if some edge connects the nodes with the given ids.
+     */
+    public boolean isAdjacentTo(int id1, int id2) {
+        return adjacencies[id1].indexOf(id2) >= 0;
+    }
+
+    /**
+     * @return the ids of the nodes adjacent to the node with the given id, each once.
+     */
+    public int[] getAdjacentIds(int id) {
+        Adjacency a = adjacencies[id];
+        int[] adj = new int[a.size()];
+        int n = 0;
+
+        for (int k = 0; k < a.size(); k++) {
+            if (a.indexOf(a.nodes[k]) == k) adj[n++] = a.nodes[k];
+        }
+
+        return Arrays.copyOf(adj, n);
+    }
+
+    /**
+     * @return the ids of the parents of the node with the given id.
+     */
+    public int[] getParentIds(int id) {
+        return getNeighborIds(id, Endpoint.ARROW, Endpoint.TAIL);
+    }
+
+    /**
+     * @return the ids of the neighbors of the node with the given id along edges with the given endpoint at that node
+     * and the given endpoint at the neighbor, in the order the edges were added. A null endpoint matches any endpoint.
+     */
+    public int[] getNeighborIds(int id, Endpoint near, Endpoint far) {
+        Adjacency a = adjacencies[id];
+        int[] neighbors = new int[a.size()];
+        int n = 0;
+
+        for (int k = 0; k < a.size(); k++) {
+            if ((near == null || a.near[k] == near) && (far == null || a.far[k] == far)) neighbors[n++] = a.nodes[k];
+        }
+
+        return n == neighbors.length ? neighbors : Arrays.copyOf(neighbors, n);
+    }
+
+    /**
+     * @return the endpoint at the second node of the edge between the nodes with the given ids, or null if they are
+     * not adjacent.
+     */
+    public Endpoint getEndpoint(int id1, int id2) {
+        Adjacency a = adjacencies[id2];
+        int k = a.indexOf(id1);
+        return k < 0 ? null : a.near[k];
+    }
+
+    @Override
+    public boolean isAdjacentTo(Node node1, Node node2) {
+        int id1 = getId(node1);
+        int id2 = getId(node2);
+        return id1 >= 0 && id2 >= 0 && isAdjacentTo(id1, id2);
+    }
+
+    @Override
+    public List<Node> getAdjacentNodes(Node node) {
+        int id = getId(node);
+        if (id < 0) return new ArrayList<>();
+
+        int[] adj = getAdjacentIds(id);
+        List<Node> nodes = new ArrayList<>(adj.length);
+        for (int i : adj) nodes.add(nodesById[i]);
+        return nodes;
+    }
+
+    @Override
+    public List<Node> getParents(Node node) {
+        return getNodes(node, Endpoint.ARROW, Endpoint.TAIL);
+    }
+
+    @Override
+    public List<Node> getChildren(Node node) {
+        return getNodes(node, Endpoint.TAIL, Endpoint.ARROW);
+    }
+
+    @Override
+    public List<Node> getNodesInTo(Node node, Endpoint endpoint) {
+        return getNodes(node, endpoint, null);
+    }
+
+    @Override
+    public List<Node> getNodesOutTo(Node node, Endpoint endpoint) {
+        return getNodes(node, null, endpoint);
+    }
+
+    @Override
+    public int getIndegree(Node node) {
+        return getParents(node).size();
+    }
+
+    @Override
+    public int getOutdegree(Node node) {
+        return getChildren(node).size();
+    }
+
+    @Override
+    public int getDegree(Node node) {
+        return getNumEdges(node);
+    }
+
+    @Override
+    public int getNumEdges(Node node) {
+        int id = getId(node);
+        return id < 0 ? 0 : adjacencies[id].size();
+    }
+
+    @Override
+    public boolean isParentOf(Node node1, Node node2) {
+        return hasEdge(node1, node2, Endpoint.TAIL, Endpoint.ARROW);
+    }
+
+    @Override
+    public boolean isChildOf(Node node1, Node node2) {
+        return hasEdge(node1, node2, Endpoint.ARROW, Endpoint.TAIL);
+    }
+
+    @Override
+    public Edge getEdge(Node node1, Node node2) {
+        int id1 = getId(node1);
+        int id2 = getId(node2);
+        if (id1 < 0 || id2 < 0) return null;
+
+        Adjacency a = adjacencies[id1];
+        int k = a.indexOf(id2);
+        return k < 0 ? null : a.edges[k];
+    }
+
+    @Override
+    public Endpoint getEndpoint(Node node1, Node node2) {
+        int id1 = getId(node1);
+        int id2 = getId(node2);
+        return id1 < 0 || id2 < 0 ? null : getEndpoint(id1, id2);
+    }
+
+    @Override
+    public List<Edge> getEdges(Node node) {
+        int id = getId(node);
+        if (id < 0) return new ArrayList<>();
+
+        Adjacency a = adjacencies[id];
+        return new ArrayList<>(Arrays.asList(a.edges).subList(0, a.size()));
+    }
+
+    @Override
+    public List<Edge> getEdges(Node node1, Node node2) {
+        List<Edge> edges = new ArrayList<>();
+        int id1 = getId(node1);
+        int id2 = getId(node2);
+        if (id1 < 0 || id2 < 0) return edges;
+
+        Adjacency a = adjacencies[id1];
+
+        for (int k = 0; k < a.size(); k++) {
+            if (a.nodes[k] == id2) edges.add(a.edges[k]);
+        }
+
+        return edges;
+    }
+
+    @Override
+    public boolean containsNode(Node node) {
+        return ids.containsKey(node);
+    }
+
+    @Override
+    public boolean addNode(Node node) {
+        if (ids.containsKey(node)) {
+            return true;
+        }
+
+        boolean added = super.addNode(node);
+
+        if (added && super.containsNode(node)) {
+            index(node);
+        }
+
+        return added;
+    }
+
+    @Override
+    public synchronized boolean addEdge(Edge edge) {
+        int numEdges = edgesSet.size();
+        boolean added = super.addEdge(edge);
+
+        if (edgesSet.size() > numEdges) {
+            link(edge);
+        }
+
+        return added;
+    }
+
+    @Override
+    public synchronized boolean removeEdge(Edge edge) {
+        boolean removed = super.removeEdge(edge);
+
+        if (removed) {
+            unlink(edge);
+        }
+
+        return removed;
+    }
+
+    @Override
+    public boolean removeNode(Node node) {
+        int id = getId(node);
+
+        if (id < 0) {
+            return false;
+        }
+
+        List<Edge> edges = getEdges(node);
+        boolean changed = super.removeNode(node);
+
+        for (Edge edge : edges) {
+            unlink(edge);
+        }
+
+        ids.remove(node);
+        nodesById[id] = null;
+        adjacencies[id] = Adjacency.EMPTY;
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        edgesSet.clear();
+        ids.clear();
+        Arrays.fill(nodesById, null);
+        Arrays.fill(adjacencies, null);
+        numIds = 0;
+    }
+
+    @Override
+    public void fullyConnect(Endpoint endpoint) {
+        for (int id = 0; id < numIds; id++) {
+            if (nodesById[id] != null) adjacencies[id] = Adjacency.EMPTY;
+        }
+
+        super.fullyConnect(endpoint);
+    }
+
+    @Override
+    public void setNodes(List<Node> nodes) {
+        super.setNodes(nodes);
+
+        // Nodes are replaced by equal nodes, which keep their ids.
+        for (Node node : nodes) {
+            int id = getId(node);
+
+            if (id >= 0) {
+                ids.remove(node);
+                ids.put(node, id);
+                nodesById[id] = node;
+            }
+        }
+    }
+
+    @Override
+    public void changeName(String name, String newName) {
+        Node node = getNode(name);
+        int id = getId(node);
+        ids.remove(node);
+        super.changeName(name, newName);
+        ids.put(node, id);
+    }
+
+    //===============================PRIVATE METHODS=======================//
+
+    private void index(Node node) {
+        if (numIds == nodesById.length) {
+            nodesById = Arrays.copyOf(nodesById, 2 * numIds);
+            adjacencies = Arrays.copyOf(adjacencies, 2 * numIds);
+        }
+
+        adjacencies[numIds] = Adjacency.EMPTY;
+        nodesById[numIds] = node;
+        ids.put(node, numIds++);
+    }
+
+    private void link(Edge edge) {
+        int id1 = getId(edge.getNode1());
+        int id2 = getId(edge.getNode2());
+        adjacencies[id1] = adjacencies[id1].plus(id2, edge.getEndpoint1(), edge.getEndpoint2(), edge);
+        adjacencies[id2] = adjacencies[id2].plus(id1, edge.getEndpoint2(), edge.getEndpoint1(), edge);
+    }
+
+    private void unlink(Edge edge) {
+        int id1 = getId(edge.getNode1());
+        int id2 = getId(edge.getNode2());
+        if (id1 >= 0) adjacencies[id1] = adjacencies[id1].minus(id2, edge);
+        if (id2 >= 0) adjacencies[id2] = adjacencies[id2].minus(id1, edge);
+    }
+
+    // The neighbors of node with the given endpoints at node and at the neighbor; null matches any endpoint.
+    private List<Node> getNodes(Node node, Endpoint near, Endpoint far) {
+        int id = getId(node);
+        List<Node> nodes = new ArrayList<>(4);
+        if (id < 0) return nodes;
+
+        Adjacency a = adjacencies[id];
+
+        for (int k = 0; k < a.size(); k++) {
+            if ((near == null || a.near[k] == near) && (far == null || a.far[k] == far)) {
+                nodes.add(nodesById[a.nodes[k]]);
+            }
+        }
+
+        return nodes;
+    }
+
+    // True if an edge between node1 and node2 has the given endpoints at node1 and at node2.
+    private boolean hasEdge(Node node1, Node node2, Endpoint near, Endpoint far) {
+        int id1 = getId(node1);
+        int id2 = getId(node2);
+        if (id1 < 0 || id2 < 0) return false;
+
+        Adjacency a = adjacencies[id1];
+
+        for (int k = 0; k < a.size(); k++) {
+            if (a.nodes[k] == id2 && a.near[k] == near && a.far[k] == far) return true;
+        }
+
+        return false;
+    }
+
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        ids = new HashMap<>();
+        nodesById = new Node[Math.max(16, nodes.size())];
+        adjacencies = new Adjacency[nodesById.length];
+        numIds = 0;
+
+        for (Node node : nodes) {
+            index(node);
+        }
+
+        for (Edge edge : edgesSet) {
+            link(edge);
+        }
+    }
+
+    /**
+     * The edges at one node, as parallel arrays. Immutable.
+     */
+    private static final class Adjacency {
+        static final Adjacency EMPTY = new Adjacency(new int[0], new Endpoint[0], new Endpoint[0], new Edge[0]);
+
+        // The ids of the neighbors.
+        final int[] nodes;
+
+        // The endpoints of the edges at this node.
+        final Endpoint[] near;
+
+        // The endpoints of the edges at the neighbors.
+        final Endpoint[] far;
+
+        final Edge[] edges;
+
+        Adjacency(int[] nodes, Endpoint[] near, Endpoint[] far, Edge[] edges) {
+            this.nodes = nodes;
+            this.near = near;
+            this.far = far;
+            this.edges = edges;
+        }
+
+        int size() {
+            return nodes.length;
+        }
+
+        int indexOf(int id) {
+            for (int k = 0; k < nodes.length; k++) {
+                if (nodes[k] == id) return k;
+            }
+
+            return -1;
+        }
+
+        Adjacency plus(int id, Endpoint near, Endpoint far, Edge edge) {
+            int n = nodes.length;
+
+            Adjacency a = new Adjacency(Arrays.copyOf(nodes, n + 1), Arrays.copyOf(this.near, n + 1),
+                    Arrays.copyOf(this.far, n + 1), Arrays.copyOf(edges, n + 1));
+
+            a.nodes[n] = id;
+            a.near[n] = near;
+            a.far[n] = far;
+            a.edges[n] = edge;
+            return a;
+        }
+
+        Adjacency minus(int id, Edge edge) {
+            for (int k = 0; k < nodes.length; k++) {
+                if (nodes[k] == id && edges[k].equals(edge)) {
+                    return new Adjacency(remove(nodes, k), remove(near, k), remove(far, k), remove(edges, k));
+                }
+            }
+
+            return this;
+        }
+
+        private static int[] remove(int[] array, int k) {
+            int[] _array = Arrays.copyOf(array, array.length - 1);
+            System.arraycopy(array, k + 1, _array, k, array.length - k - 1);
+            return _array;
+        }
+
+        private static <T> T[] remove(T[] array, int k) {
+            T[] _array = Arrays.copyOf(array, array.length - 1);
+            System.arraycopy(array, k + 1, _array, k, array.length - k - 1);
+            return _array;
+        }
+    }
+}
@@ -111,6 +111,10 @@ public class LagGraph implements Graph {
         getGraph().addPropertyChangeListener(e);
     }
 
+    public void removePropertyChangeListener(PropertyChangeListener e) {
+        getGraph().removePropertyChangeListener(e);
+    }
+
     public void clear() {
         getGraph().clear();
     }
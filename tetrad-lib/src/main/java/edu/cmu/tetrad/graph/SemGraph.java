@@ -544,6 +544,10 @@ public final class SemGraph implements Graph, TetradSerializable {
         getGraph().addPropertyChangeListener(l);
     }
 
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getGraph().removePropertyChangeListener(l);
+    }
+
     public boolean containsEdge(Edge edge) {
         return getGraph().containsEdge(edge);
     }
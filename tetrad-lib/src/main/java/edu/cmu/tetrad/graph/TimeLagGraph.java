@@ -727,6 +727,11 @@ public class TimeLagGraph implements Graph {
         getGraph().addPropertyChangeListener(l);
     }
 
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getPcs().removePropertyChangeListener(l);
+        getGraph().removePropertyChangeListener(l);
+    }
+
     public Set<Edge> getEdges() {
         return getGraph().getEdges();
     }
@@ -410,6 +410,77 @@ public class PerformanceTests {
         out.close();
     }
 
+    /**
+     * Compares EdgeListGraph with IntIndexedGraph on the adjacency, parent and endpoint queries the Meek rules and the
+     * FCI orientation rules make, and on the Meek rules themselves, over the pattern of a random DAG.
+     */
+    public void testIntIndexedGraph(int numVars, double edgeFactor) {
+        init(new File("long.intindexedgraph." + numVars + "." + edgeFactor + ".txt"), "Tests performance of IntIndexedGraph");
+
+        final int numRuns = 5;
+
+        Graph dag = makeDag(numVars, edgeFactor);
+        Graph pattern = SearchGraphUtils.patternForDag(dag);
+
+        System.out.println("Graph done");
+
+        out.println("# Vars = " + numVars);
+        out.println("# Edges = " + pattern.getNumEdges());
+
+        for (Graph graph : Arrays.asList(new EdgeListGraph(pattern), new IntIndexedGraph(pattern))) {
+            String name = graph.getClass().getSimpleName();
+            long count = 0;
+
+            long time1 = System.currentTimeMillis();
+
+            for (int run = 0; run < numRuns; run++) {
+                for (Node b : graph.getNodes()) {
+                    List<Node> adj = graph.getAdjacentNodes(b);
+
+                    for (int i = 0; i < adj.size(); i++) {
+                        for (int j = i + 1; j < adj.size(); j++) {
+                            if (graph.isAdjacentTo(adj.get(i), adj.get(j))) count++;
+                        }
+
+                        if (graph.getEndpoint(adj.get(i), b) == Endpoint.ARROW) count++;
+                    }
+
+                    count += graph.getParents(b).size();
+                }
+            }
+
+            long time2 = System.currentTimeMillis();
+
+            for (int run = 0; run < numRuns; run++) {
+                // The skeleton with just the unshielded colliders oriented, from which the rules recover the pattern.
+                Graph colliders = graph instanceof IntIndexedGraph ? new IntIndexedGraph(graph) : new EdgeListGraph(graph);
+                colliders.reorientAllWith(Endpoint.TAIL);
+
+                for (Edge edge : pattern.getEdges()) {
+                    if (!Edges.isDirectedEdge(edge)) continue;
+
+                    Node a = Edges.getDirectedEdgeTail(edge);
+                    Node c = Edges.getDirectedEdgeHead(edge);
+
+                    for (Node p : pattern.getParents(c)) {
+                        if (p != a && !pattern.isAdjacentTo(a, p)) {
+                            colliders.setEndpoint(a, c, Endpoint.ARROW);
+                            break;
+                        }
+                    }
+                }
+
+                new MeekRules().orientImplied(colliders);
+            }
+
+            long time3 = System.currentTimeMillis();
+
+            out.println(name + ": elapsed (queries, " + numRuns + " runs) " + (time2 - time1) + " ms; count = " + count);
+            out.println(name + ": elapsed (Meek rules, " + numRuns + " runs) " + (time3 - time2) + " ms");
+        }
+
+        out.close();
+    }
 
     public void testCpc(int numVars, double edgeFactor, int numCases) {
         double alpha = 0.0001;
@@ -2323,6 +2394,12 @@ public class PerformanceTests {
                     performanceTests.testGfci(numVars, edgeFactor);
                     break;
                 }
+                case "IntIndexedGraph": {
+                    final int numVars = Integer.parseInt(args[1]);
+                    final double edgeFactor = Double.parseDouble(args[2]);
+                    performanceTests.testIntIndexedGraph(numVars, edgeFactor);
+                    break;
+                }
                 default:
                     throw new IllegalArgumentException("Not a configuration!");
             }
@@ -0,0 +1,385 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.CellCounts;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sparse AD-tree over the discrete variables of a data set, after Moore and Lee, "Cached Sufficient Statistics for
+ * Efficient Machine Learning with Large Datasets," JAIR 8 (1998). The tree stores counts only. Under each vary node
+ * the child for the most common value is left out, its counts being recovered by subtraction from the parent, and
+ * children with zero count are left out. Nodes with fewer rows than the leaf-list threshold store their rows instead
+ * of being expanded further.
+ * <p>
+ * Making a vary node takes the rows of its node. A query passes the rows it has found down the tree as it goes, so a
+ * child made for the query gets its rows from those of its parent, and the rows are dropped when the query is done.
+ * A node reached without its rows, under a vary node made by an earlier query, finds them by filtering the rows of
+ * the nearest ancestor whose rows are at hand, one level at a time.
+ * <p>
+ * The tree is built lazily: a vary node is made the first time a query needs it. Once the estimated size of the tree
+ * reaches the memory budget, further vary nodes are made for the query at hand but not kept, so queries still succeed,
+ * only more slowly.
+ * <p>
+ * Missing values (-99) are counted under an extra category for each variable that has them, so that subtraction
+ * stays exact; rows with a missing value for a queried variable are left out of the counts returned.
+ * <p>
+ * Safe to share among threads.
+ *
+ * @see AdLeafTree
+ */
+public final class AdTree implements CellCounts {
+
+    // The default leaf-list threshold.
+    private static final int DEFAULT_LEAF_LIST_THRESHOLD = 16;
+
+    // The default memory budget, in bytes.
+    private static final long DEFAULT_MAX_BYTES = 1L << 28;
+
+    // The data, by column, with missing values recoded as dims[j].
+    private final int[][] data;
+
+    // The number of categories of each variable.
+    private final int[] dims;
+
+    // The number of categories of each variable, plus one for variables with missing values.
+    private final int[] arity;
+
+    // The number of rows in the data.
+    private final int numRows;
+
+    // Nodes with fewer rows than this store their rows.
+    private final int leafListThreshold;
+
+    // The memory budget, in bytes.
+    private final long maxBytes;
+
+    // The estimated size of the tree, in bytes.
+    private final AtomicLong bytes = new AtomicLong();
+
+    // The root, for all rows.
+    private final AdNode root;
+
+    /**
+     * Constructs a tree with a leaf-list threshold of 16 and a memory budget of 256 MB.
+     *
+     * @param dataSet A data set consisting entirely of discrete variables.
+     */
+    public AdTree(DataSet dataSet) {
+        this(dataSet, DEFAULT_LEAF_LIST_THRESHOLD, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param dataSet           A data set consisting entirely of discrete variables.
+     * @param leafListThreshold Nodes with fewer than this many rows store their rows rather than being expanded.
+     * @param maxBytes          The approximate number of bytes the tree may keep.
+     */
+    public AdTree(DataSet dataSet, int leafListThreshold, long maxBytes) {
+        if (leafListThreshold < 0) {
+            throw new IllegalArgumentException("Leaf-list threshold must be non-negative: " + leafListThreshold);
+        }
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Memory budget must be non-negative: " + maxBytes);
+        }
+
+        int numVars = dataSet.getNumColumns();
+
+        this.numRows = dataSet.getNumRows();
+        this.leafListThreshold = leafListThreshold;
+        this.maxBytes = maxBytes;
+        this.data = new int[numVars][numRows];
+        this.dims = new int[numVars];
+        this.arity = new int[numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            dims[j] = ((DiscreteVariable) dataSet.getVariable(j)).getNumCategories();
+            arity[j] = dims[j];
+
+            for (int i = 0; i < numRows; i++) {
+                int value = dataSet.getInt(i, j);
+
+                if (value == DiscreteVariable.MISSING_VALUE) {
+                    value = dims[j];
+                    arity[j] = dims[j] + 1;
+                }
+
+                data[j][i] = value;
+            }
+        }
+
+        this.root = new AdNode(null, -1, -1, numRows, 0, true);
+
+        if (numRows < leafListThreshold) {
+            int[] rows = new int[numRows];
+            for (int i = 0; i < numRows; i++) rows[i] = i;
+            root.rows = rows;
+        }
+    }
+
+    @Override
+    public int[] getCounts(int[] indices) {
+        int m = indices.length;
+
+        int[] sorted = Arrays.copyOf(indices, m);
+        Arrays.sort(sorted);
+
+        for (int t = 1; t < m; t++) {
+            if (sorted[t] == sorted[t - 1]) {
+                throw new IllegalArgumentException("Variables must be distinct: " + Arrays.toString(indices));
+            }
+        }
+
+        int[] table = table(root, sorted, 0, null, null);
+
+        // Output strides for the sorted variables, in the order requested.
+        int[] strides = new int[m];
+        int size = 1;
+
+        for (int t = m - 1; t >= 0; t--) {
+            strides[Arrays.binarySearch(sorted, indices[t])] = size;
+            size *= dims[indices[t]];
+        }
+
+        int[] counts = new int[size];
+        int[] values = new int[m];
+
+        CELL:
+        for (int c = 0; c < table.length; c++) {
+            if (table[c] == 0) continue;
+
+            for (int t = m - 1, rest = c; t >= 0; t--) {
+                values[t] = rest % arity[sorted[t]];
+                rest /= arity[sorted[t]];
+                if (values[t] == dims[sorted[t]]) continue CELL;
+            }
+
+            int index = 0;
+            for (int t = 0; t < m; t++) index += values[t] * strides[t];
+            counts[index] = table[c];
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return The number of categories of the given variable.
+     */
+    public int getNumCategories(int index) {
+        return dims[index];
+    }
+
+    /**
+     * @return The estimated size of the tree, in bytes.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    // The counts of the rows under node over the internal categories of vars[i], ..., vars[m - 1]. The rows of known,
+    // which is node or one of its ancestors, are knownRows, if at hand; otherwise both are null.
+    private int[] table(AdNode node, int[] vars, int i, AdNode known, int[] knownRows) {
+        int size = 1;
+
+        for (int t = i; t < vars.length; t++) {
+            size *= arity[vars[t]];
+        }
+
+        int[] table = new int[size];
+
+        if (i == vars.length) {
+            table[0] = node.count;
+            return table;
+        }
+
+        if (node.rows != null) {
+            for (int row : node.rows) {
+                int index = 0;
+                for (int t = i; t < vars.length; t++) index = index * arity[vars[t]] + data[vars[t]][row];
+                table[index]++;
+            }
+
+            return table;
+        }
+
+        int[][] childRows = new int[arity[vars[i]]][];
+        VaryNode vary = vary(node, vars[i], known, knownRows, childRows);
+        int block = size / arity[vars[i]];
+
+        // The most common value gets the node's counts less those of its siblings.
+        int[] mcv = table(node, vars, i + 1, known, knownRows);
+
+        for (int k = 0; k < vary.children.length; k++) {
+            AdNode child = vary.children[k];
+            if (child == null) continue;
+
+            int[] sub = childRows[k] != null
+                    ? table(child, vars, i + 1, child, childRows[k])
+                    : table(child, vars, i + 1, known, knownRows);
+            System.arraycopy(sub, 0, table, k * block, block);
+            for (int b = 0; b < block; b++) mcv[b] -= sub[b];
+        }
+
+        System.arraycopy(mcv, 0, table, vary.mcv * block, block);
+        return table;
+    }
+
+    // Returns the vary node for variable v under node, making it if necessary, in which case the rows of its children
+    // are put in childRows. The rows of known, which is node or one of its ancestors, are knownRows, if at hand.
+    private VaryNode vary(AdNode node, int v, AdNode known, int[] knownRows, int[][] childRows) {
+        synchronized (node) {
+            VaryNode vary = node.varies[v - node.first];
+            if (vary != null) return vary;
+
+            int[] rows = rows(node, known, knownRows);
+            int[] counts = new int[arity[v]];
+            int[] column = data[v];
+
+            for (int row : rows) {
+                counts[column[row]]++;
+            }
+
+            int mcv = 0;
+
+            for (int k = 1; k < counts.length; k++) {
+                if (counts[k] > counts[mcv]) mcv = k;
+            }
+
+            boolean keep = node.kept && bytes.get() < maxBytes;
+            AdNode[] children = new AdNode[arity[v]];
+            long size = 16 + 8L * children.length;
+
+            for (int k = 0; k < children.length; k++) {
+                if (k == mcv || counts[k] == 0) continue;
+
+                AdNode child = new AdNode(node, v, k, counts[k], v + 1, keep);
+                size += 40 + 8L * child.varies.length;
+
+                childRows[k] = new int[counts[k]];
+
+                // Leaf lists are kept; the rows of larger children only for the query at hand.
+                if (counts[k] < leafListThreshold) {
+                    child.rows = childRows[k];
+                    size += 4L * counts[k];
+                }
+
+                children[k] = child;
+            }
+
+            int[] n = new int[arity[v]];
+
+            for (int row : rows) {
+                int k = column[row];
+                if (childRows[k] != null) childRows[k][n[k]++] = row;
+            }
+
+            vary = new VaryNode(mcv, children);
+
+            if (keep) {
+                node.varies[v - node.first] = vary;
+                bytes.addAndGet(size);
+            }
+
+            return vary;
+        }
+    }
+
+    // The rows under the given node: those it keeps, those at hand for known, or else its parent's rows with its
+    // value for its variable.
+    private int[] rows(AdNode node, AdNode known, int[] knownRows) {
+        if (node.rows != null) return node.rows;
+        if (node == known) return knownRows;
+
+        if (node.parent == null) {
+            int[] rows = new int[numRows];
+            for (int i = 0; i < numRows; i++) rows[i] = i;
+            return rows;
+        }
+
+        int[] parentRows = rows(node.parent, known, knownRows);
+        int[] column = data[node.var];
+        int[] rows = new int[node.count];
+        int n = 0;
+
+        for (int row : parentRows) {
+            if (column[row] == node.value) rows[n++] = row;
+        }
+
+        return rows;
+    }
+
+    /**
+     * The rows with given values for the variables on the path from the root.
+     */
+    private final class AdNode {
+        private final AdNode parent;
+
+        // The variable and value this node adds to its parent's.
+        private final int var;
+        private final int value;
+
+        // The number of rows.
+        private final int count;
+
+        // Only variables from first on may be varied under this node.
+        private final int first;
+
+        // False for nodes made after the memory budget was reached; these keep nothing.
+        private final boolean kept;
+
+        // Vary nodes for variables first, first + 1, ..., made on demand.
+        private final VaryNode[] varies;
+
+        // The rows, for nodes below the leaf-list threshold; otherwise null.
+        private int[] rows;
+
+        AdNode(AdNode parent, int var, int value, int count, int first, boolean kept) {
+            this.parent = parent;
+            this.var = var;
+            this.value = value;
+            this.count = count;
+            this.first = first;
+            this.kept = kept;
+            this.varies = new VaryNode[count < leafListThreshold ? 0 : data.length - first];
+        }
+    }
+
+    /**
+     * Splits a node's rows by the values of one variable. The child for the most common value, and children with no
+     * rows, are null.
+     */
+    private static final class VaryNode {
+        private final int mcv;
+        private final AdNode[] children;
+
+        VaryNode(int mcv, AdNode[] children) {
+            this.mcv = mcv;
+            this.children = children;
+        }
+    }
+}
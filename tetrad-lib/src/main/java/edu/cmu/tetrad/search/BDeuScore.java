@@ -23,7 +23,6 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
-import org.apache.commons.math3.special.Gamma;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -42,7 +41,19 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     private final int[] numCategories;
 
+    // Counts cells and memoizes log gammas.
+    private final DiscreteCountKernel kernel;
+
     public BDeuScore(DataSet dataSet) {
+        this(dataSet, null);
+    }
+
+    /**
+     * @param dataSet    The discrete data.
+     * @param cellCounts If not null, counts are taken from this, for instance an AdTree over the same data, rather
+     *                   than from the data directly.
+     */
+    public BDeuScore(DataSet dataSet, CellCounts cellCounts) {
         if (dataSet == null) {
             throw new NullPointerException("Data was not provided.");
         }
@@ -74,6 +85,8 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         for (int i = 0; i < variables.size(); i++) {
             numCategories[i] = (getVariable(i)).getNumCategories();
         }
+
+        kernel = new DiscreteCountKernel(data, numCategories, cellCounts);
     }
 
     private DiscreteVariable getVariable(int i) {
@@ -82,77 +95,32 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     @Override
     public double localScore(int node, int parents[]) {
+        DiscreteCountKernel.Counts counts = kernel.count(node, parents);
 
         // Number of categories for node.
-        int c = numCategories[node];
-
-        // Numbers of categories of parents.
-        int[] dims = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories[parents[p]];
-        }
+        int c = counts.getNumColumns();
 
         // Number of parent states.
-        int r = 1;
-
-        for (int p = 0; p < parents.length; p++) {
-            r *= dims[p];
-        }
-
-        // Conditional cell coefs of data for node given parents(node).
-        int[][] n_jk = new int[r][c];
-        int[] n_j = new int[r];
-
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
-
-        int[] myChild = data[node];
-
-        int N = 0;
-
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
-
-            if (childValue == -99) {
-                continue;
-            }
-
-            int rowIndex = getRowIndex(dims, parentValues);
-
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
-            N++;
-        }
+        int r = counts.getNumRows();
 
         //Finally, compute the score
         double score = 0.0;
 
-        score += getPriorForStructure(parents.length, N);
+        score += getPriorForStructure(parents.length, counts.getN());
 
         final double cellPrior = getSamplePrior() / (c * r);
         final double rowPrior = getSamplePrior() / r;
 
         for (int j = 0; j < r; j++) {
-            score -= Gamma.logGamma(rowPrior + n_j[j]);
+            score -= kernel.logGamma(rowPrior, counts.getRowCount(j));
 
             for (int k = 0; k < c; k++) {
-                score += Gamma.logGamma(cellPrior + n_jk[j][k]);
+                score += kernel.logGamma(cellPrior, counts.getCellCount(j, k));
             }
         }
 
-        score += r * Gamma.logGamma(rowPrior);
-        score -= c * r * Gamma.logGamma(cellPrior);
+        score += r * kernel.logGamma(rowPrior, 0);
+        score -= c * r * kernel.logGamma(cellPrior, 0);
 
         return score;
     }
@@ -211,15 +179,6 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     @Override
     public double getStructurePrior() {
         return structurePrior;
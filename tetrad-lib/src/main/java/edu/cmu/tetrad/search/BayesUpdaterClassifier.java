@@ -185,8 +185,8 @@ public final class BayesUpdaterClassifier
             throw new NullPointerException("Target not set.");
         }
 
-        //Create an updater for the instantiated Bayes net.
-        BayesUpdater bayesUpdater = new RowSummingExactUpdater(getBayesIm());
+        //Create a junction tree for the instantiated Bayes net.
+        JunctionTreeAlgorithm jta = new JunctionTreeAlgorithm(getBayesIm());
 
         //Get the raw data from the dataset to be classified, the number
         //of variables and the number of cases.
@@ -225,84 +225,64 @@ public final class BayesUpdaterClassifier
                 new double[numTargetCategories][ncases];
         Arrays.fill(estimatedValues, -1);
 
-        //For each case in the dataset to be classified compute the estimated
-        //value of the target variable and increment the appropriate element
-        //of the crosstabulation array. Compute the estimated value of the
-        // target variable by using the observed values of the other variables
-        // and Bayesian updating.
-        for (int i = 0; i < ncases; i++) {
+        //The nodes of the instantiated Bayes net observed in each case--all
+        //but the target.
+        int itarget = getBayesImVars().indexOf(targetVariable);
+        int[] evidenceNodes = new int[nvars - 1];
+        int[] evidenceColumns = new int[nvars - 1];
 
-            //Create an Evidence instance for the instantiated Bayes net
-            //which will allow that updating.
-            Evidence evidence = Evidence.tautology(getBayesIm());
+        for (int j = 0, k = 0; j < nvars; j++) {
+            if (j == itarget) {
+                continue;
+            }
 
-            //Let the target variable range over all its values.
-            int itarget = evidence.getNodeIndex(targetVariable.getName());
-            evidence.getProposition().setVariable(itarget, true);
+            Node node = getBayesIm().getNode(getBayesImVars().get(j).getName());
+            evidenceNodes[k] = getBayesIm().getNodeIndex(node);
+            evidenceColumns[k] = j;
+            k++;
+        }
 
-            this.missingValueCaseFound = false;
+        //Restrict the observed variables to their values in each case,
+        //leaving out missing values.
+        int[][] evidenceValues = new int[ncases][evidenceNodes.length];
 
-            //Restrict all other variables to their observed values in
-            //this case.
-            for (int j = 0; j < getBayesImVars().size(); j++) {
-                if (j == getBayesImVars().indexOf(targetVariable)) {
-                    continue;
-                }
+        for (int i = 0; i < ncases; i++) {
+            this.missingValueCaseFound = false;
 
-                int observedValue = selectedData.getInt(i, j);
+            for (int k = 0; k < evidenceNodes.length; k++) {
+                int observedValue = selectedData.getInt(i, evidenceColumns[k]);
 
                 if (observedValue == DiscreteVariable.MISSING_VALUE) {
                     this.missingValueCaseFound = true;
-                    continue;
+                    observedValue = -1;
                 }
 
-                String jName = getBayesImVars().get(j).getName();
-                int jIndex = evidence.getNodeIndex(jName);
-                evidence.getProposition().setCategory(jIndex, observedValue);
+                evidenceValues[i][k] = observedValue;
             }
+        }
 
-            //Update using those values.
-            bayesUpdater.setEvidence(evidence);
+        //Compute the probabilities of the values of the target variable in
+        //all the cases at once.
+        Node targetNode = getBayesIm().getNode(targetVariable.getName());
+        int indexTargetBN = getBayesIm().getNodeIndex(targetNode);
+        double[][] caseMarginals = jta.getConditionalProbabilities(indexTargetBN, evidenceNodes, evidenceValues);
 
-            //for each possible value of target compute its probability in
-            //the updated Bayes net.  Select the value with the highest
-            //probability as the estimated value.
-            Node targetNode = getBayesIm().getNode(targetVariable.getName());
-            int indexTargetBN = getBayesIm().getNodeIndex(targetNode);
+        //For each case in the dataset to be classified compute the estimated
+        //value of the target variable. Select the value with the highest
+        //probability as the estimated value.
+        for (int i = 0; i < ncases; i++) {
 
             //Straw man values--to be replaced.
             int estimatedValue = -1;
+            double highestProb = -0.1;
+
+            for (int j = 0; j < numTargetCategories; j++) {
+                double marginal = caseMarginals[i][j];
+                probOfClassifiedValues[j][i] = marginal;
 
-//            if (numTargetCategories == 2) {
-//                for (int j = 0; j < numTargetCategories; j++) {
-//                    double marginal =
-//                            bayesUpdater.getMarginal(indexTargetBN, j);
-//                    probOfClassifiedValues[j][i] = marginal;
-//                    probOfClassifiedValues[1 - j][i] = 1.0 - marginal;
-//
-//                    if (targetCategory == j) {
-//                        if (marginal > binaryCutoff) {
-//                            estimatedValue = j;
-//                        } else {
-//                            estimatedValue = 1 - j;
-//                        }
-//
-//                        break;
-//                    }
-//                }
-//            } else
-            {
-                double highestProb = -0.1;
-
-                for (int j = 0; j < numTargetCategories; j++) {
-                    double marginal =
-                            bayesUpdater.getMarginal(indexTargetBN, j);
-                    probOfClassifiedValues[j][i] = marginal;
-
-                    if (marginal >= highestProb) {
-                        highestProb = marginal;
-                        estimatedValue = j;
-                    }
+                if (marginal >= highestProb) {
+                    highestProb = marginal;
+                    estimatedValue = j;
                 }
             }
 
@@ -313,8 +293,6 @@ public final class BayesUpdaterClassifier
                 TetradLogger.getInstance().log("details", "Case " + i + " does not return valid marginal.");
 
                 for (int m = 0; m < nvars; m++) {
-                    //System.out.print(getBayesImVars()
-                    //        .get(m).getNode());
                     TetradLogger.getInstance().log("details", "  " + selectedData.getDouble(i, m));
                 }
 
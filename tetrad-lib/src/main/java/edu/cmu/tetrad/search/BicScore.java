@@ -37,9 +37,22 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
     private double penaltyDiscount = 1;
 
     private final int[] numCategories;
+
+    // Counts cells.
+    private final DiscreteCountKernel kernel;
+
     private double structurePrior = 1;
 
     public BicScore(DataSet dataSet) {
+        this(dataSet, null);
+    }
+
+    /**
+     * @param dataSet    The discrete data.
+     * @param cellCounts If not null, counts are taken from this, for instance an AdTree over the same data, rather
+     *                   than from the data directly.
+     */
+    public BicScore(DataSet dataSet, CellCounts cellCounts) {
         if (dataSet == null) {
             throw new NullPointerException("Data was not provided.");
         }
@@ -71,6 +84,8 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
         for (int i = 0; i < variables.size(); i++) {
             numCategories[i] = getVariable(i).getNumCategories();
         }
+
+        kernel = new DiscreteCountKernel(data, numCategories, cellCounts);
     }
 
     private DiscreteVariable getVariable(int i) {
@@ -90,65 +105,23 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
             }
         }
 
-        // Number of categories for node.
-        int c = numCategories[node];
+        DiscreteCountKernel.Counts counts = kernel.count(node, parents);
 
-        // Numbers of categories of parents.
-        int[] dims = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories[parents[p]];
-        }
+        // Number of categories for node.
+        int c = counts.getNumColumns();
 
         // Number of parent states.
-        int r = 1;
+        int r = counts.getNumRows();
 
-        for (int p = 0; p < parents.length; p++) {
-            r *= dims[p];
-        }
-
-        // Conditional cell coefs of data for node given parents(node).
-        int[][] n_jk = new int[r][c];
-        int[] n_j = new int[r];
-
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
-
-        int[] myChild = data[node];
-
-        int N = 0;
-
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
-
-            if (childValue == -99) {
-                continue;
-            }
-
-            int rowIndex = getRowIndex(dims, parentValues);
-
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
-            N++;
-        }
+        int N = counts.getN();
 
         //Finally, compute the score
         double lik = 0.0;
 
         for (int rowIndex = 0; rowIndex < r; rowIndex++) {
             for (int childValue = 0; childValue < c; childValue++) {
-                int cellCount = n_jk[rowIndex][childValue];
-                int rowCount = n_j[rowIndex];
+                int cellCount = counts.getCellCount(rowIndex, childValue);
+                int rowCount = counts.getRowCount(rowIndex);
 
                 if (cellCount == 0) continue;
                 lik += cellCount * Math.log(cellCount / (double) rowCount);
@@ -214,15 +187,6 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     @Override
     public double getStructurePrior() {
         return structurePrior;
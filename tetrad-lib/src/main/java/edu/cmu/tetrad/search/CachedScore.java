@@ -0,0 +1,150 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wraps a score so that local scores are remembered in a LocalScoreCache. Score differences are
+ * calculated as differences of (cached) local scores, so this should only be used to wrap scores
+ * whose localScoreDiff is localScore(y, z + x) - localScore(y, z), such as SemBicScore (with the
+ * Chickering rule), BDeuScore or ConditionalGaussianScore. The same wrapper may be passed to
+ * several searches (e.g. Fges, FgesMb, GFci) over the same data to share the cache among them.
+ */
+public class CachedScore implements Score {
+
+    // The wrapped score.
+    private final Score score;
+
+    // The cache of local scores.
+    private final LocalScoreCache cache;
+
+    public CachedScore(Score score) {
+        this(score, new LocalScoreCache());
+    }
+
+    public CachedScore(Score score, int capacity) {
+        this(score, new LocalScoreCache(capacity));
+    }
+
+    public CachedScore(Score score, LocalScoreCache cache) {
+        if (score == null) throw new NullPointerException("Score not specified.");
+        if (cache == null) throw new NullPointerException("Cache not specified.");
+        this.score = score;
+        this.cache = cache;
+    }
+
+    @Override
+    public double localScore(int node, int... parents) {
+        double s = cache.get(node, parents);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node, parents);
+            cache.add(node, parents, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y, int[] z) {
+        return localScore(y, append(z, x)) - localScore(y, z);
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y) {
+        return localScore(y, x) - localScore(y);
+    }
+
+    @Override
+    public double localScore(int node, int parent) {
+        return localScore(node, new int[]{parent});
+    }
+
+    @Override
+    public double localScore(int node) {
+        return localScore(node, new int[0]);
+    }
+
+    @Override
+    public List<Node> getVariables() {
+        return score.getVariables();
+    }
+
+    @Override
+    public boolean isEffectEdge(double bump) {
+        return score.isEffectEdge(bump);
+    }
+
+    @Override
+    public int getSampleSize() {
+        return score.getSampleSize();
+    }
+
+    @Override
+    public Node getVariable(String targetName) {
+        return score.getVariable(targetName);
+    }
+
+    @Override
+    public int getMaxDegree() {
+        return score.getMaxDegree();
+    }
+
+    @Override
+    public boolean determines(List<Node> z, Node y) {
+        return score.determines(z, y);
+    }
+
+    @Override
+    public Score defaultScore() {
+        return score.defaultScore();
+    }
+
+    /**
+     * @return The wrapped score.
+     */
+    public Score getScore() {
+        return score;
+    }
+
+    /**
+     * @return The cache, for hit and miss counts.
+     */
+    public LocalScoreCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return score.toString();
+    }
+
+    private static int[] append(int[] z, int x) {
+        int[] _z = Arrays.copyOf(z, z.length + 1);
+        _z[z.length] = x;
+        return _z;
+    }
+}
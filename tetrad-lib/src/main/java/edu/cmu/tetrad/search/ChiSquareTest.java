@@ -21,16 +21,18 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.data.CellTable;
+import edu.cmu.tetrad.data.CategoryBitmapIndex;
+import edu.cmu.tetrad.data.CellCounts;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
-import edu.cmu.tetrad.util.CombinationIterator;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.util.Arrays;
 
 /**
- * Calculates marginal chi square test results for a discrete dataset.
+ * Calculates marginal chi square test results for a discrete dataset. Cell counts come from a CategoryBitmapIndex
+ * over the data, or from another source of counts such as an AdTree, so tests do not share any mutable state and may
+ * be run concurrently.
  *
  * @author Frank Wimberly original version
  * @author Joseph Ramsey revision 10/01, believe it or now also 2020.
@@ -48,9 +50,9 @@ public class ChiSquareTest {
     private final int[] dims;
 
     /**
-     * Stores the data in the form of a cell table.
+     * The source of cell counts.
      */
-    private final CellTable cellTable;
+    private final CellCounts cellCounts;
 
     /**
      * The significance level of the test.
@@ -66,6 +68,17 @@ public class ChiSquareTest {
      * @param alpha   The significance level, usually 0.05.
      */
     public ChiSquareTest(DataSet dataSet, double alpha) {
+        this(dataSet, alpha, new CategoryBitmapIndex(dataSet));
+    }
+
+    /**
+     * Constructs a test using the given data set, significance level and source of cell counts.
+     *
+     * @param dataSet    A data set consisting entirely of discrete variables.
+     * @param alpha      The significance level, usually 0.05.
+     * @param cellCounts Cell counts for the data set, for instance an AdTree.
+     */
+    public ChiSquareTest(DataSet dataSet, double alpha, CellCounts cellCounts) {
         if (alpha < 0.0 || alpha > 1.0) {
             throw new IllegalArgumentException("Significance level must be in " +
                     "[0, 1]: " + alpha);
@@ -81,8 +94,7 @@ public class ChiSquareTest {
 
         this.dataSet = dataSet;
         this.alpha = alpha;
-        this.cellTable = new CellTable(null);
-        this.getCellTable().setMissingValue(DiscreteVariable.MISSING_VALUE);
+        this.cellCounts = cellCounts;
     }
 
     /**
@@ -90,48 +102,28 @@ public class ChiSquareTest {
      * by summing up chi square and degrees of freedom for each conditional table in turn, where rows or columns that
      * consist entirely of zeros have been removed.
      */
-    public synchronized ChiSquareTest.Result calcChiSquare(int[] testIndices) {
-
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
+    public ChiSquareTest.Result calcChiSquare(int[] testIndices) {
+        int[] counts = getCounts(testIndices, 2);
 
         double xSquare = 0.0;
         int df = 0;
 
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
+        int numRows = getDims()[testIndices[0]];
+        int numCols = getDims()[testIndices[1]];
+        int numCells = numRows * numCols;
 
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
+        long[] sumsOverRows = new long[numCols];
+        long[] sumsOverCols = new long[numRows];
+        boolean[] attestedRows = new boolean[numRows];
+        boolean[] attestedCols = new boolean[numCols];
 
         // Make a chi square table for each condition combination, strike zero rows and columns and calculate
         // chi square and degrees of freedom for the remaining rows and columns in the table. See Friedman.
-        while (combinationIterator.hasNext()) {
-            boolean[] attestedRows = new boolean[numRows];
-            boolean[] attestedCols = new boolean[numCols];
-
+        for (int base = 0; base < counts.length; base += numCells) {
             Arrays.fill(attestedRows, true);
             Arrays.fill(attestedCols, true);
 
-            int[] combination = combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-
-            long total = getCellTable().calcMargin(coords, bothVars);
+            long total = margins(counts, base, numRows, numCols, sumsOverRows, sumsOverCols);
 
             if (total == 0) continue;
 
@@ -139,12 +131,9 @@ public class ChiSquareTest {
 
             for (int i = 0; i < numRows; i++) {
                 for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = getCellTable().calcMargin(coords, firstVar);
-                    long sumCol = getCellTable().calcMargin(coords, secondVar);
-                    long observed = getCellTable().getValue(coords);
+                    long sumRow = sumsOverRows[j];
+                    long sumCol = sumsOverCols[i];
+                    long observed = counts[base + i * numCols + j];
 
                     if (sumRow == 0L) {
                         attestedRows[i] = false;
@@ -199,32 +188,15 @@ public class ChiSquareTest {
      * @return True if the variable at index 0 is determined by the variables at the other indices.
      */
     public boolean isDetermined(int[] testIndices, double p) {
+        int[] counts = getCounts(testIndices, 1);
+        int numValues = getDims()[testIndices[0]];
 
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-
-        int[] condDims = new int[testIndices.length - 1];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 1, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numValues = this.getCellTable().getNumValues(0);
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
+        for (int base = 0; base < counts.length; base += numValues) {
+            long total = 0;
 
-        while (combinationIterator.hasNext()) {
-            int[] combination = combinationIterator.next();
-            System.arraycopy(combination, 0, coords, 1, combination.length);
-
-            long total = this.getCellTable().calcMargin(coords, firstVar);
+            for (int i = 0; i < numValues; i++) {
+                total += counts[base + i];
+            }
 
             if (total == 0) {
                 continue;
@@ -233,9 +205,7 @@ public class ChiSquareTest {
             boolean dominates = false;
 
             for (int i = 0; i < numValues; i++) {
-                coords[0] = i;
-
-                long numi = this.getCellTable().getValue(coords);
+                long numi = counts[base + i];
 
                 if ((double) numi / total >= p) {
                     dominates = true;
@@ -289,8 +259,43 @@ public class ChiSquareTest {
         return dims;
     }
 
-    public CellTable getCellTable() {
-        return cellTable;
+    public CellCounts getCellCounts() {
+        return cellCounts;
+    }
+
+    /**
+     * Counts cells for the given variables, with the first numFree of them moved to the end, so that the counts come
+     * in consecutive blocks, one for each combination of values of the remaining (conditioning) variables.
+     */
+    protected int[] getCounts(int[] testIndices, int numFree) {
+        int[] order = new int[testIndices.length];
+        System.arraycopy(testIndices, numFree, order, 0, testIndices.length - numFree);
+        System.arraycopy(testIndices, 0, order, testIndices.length - numFree, numFree);
+        return getCellCounts().getCounts(order);
+    }
+
+    /**
+     * Calculates the margins of the numRows x numCols table starting at base in counts, summing over rows into
+     * sumsOverRows and over columns into sumsOverCols.
+     *
+     * @return The total of the table.
+     */
+    protected static long margins(int[] counts, int base, int numRows, int numCols,
+                                  long[] sumsOverRows, long[] sumsOverCols) {
+        Arrays.fill(sumsOverRows, 0L);
+        Arrays.fill(sumsOverCols, 0L);
+        long total = 0;
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++) {
+                int count = counts[base + i * numCols + j];
+                sumsOverRows[j] += count;
+                sumsOverCols[i] += count;
+                total += count;
+            }
+        }
+
+        return total;
     }
 
     //===============================CLASSES==============================//
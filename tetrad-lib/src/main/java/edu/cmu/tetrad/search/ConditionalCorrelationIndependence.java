@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.KdTree;
 import org.apache.commons.math3.distribution.NormalDistribution;
 
 import java.util.*;
@@ -47,7 +48,10 @@ import static java.lang.Math.*;
  * Daudin, J. J. (1980). Partial association measures and a  application to qualitative regression.
  * Biometrika, 67(3), 581-590.
  * <p>
- * We use Nadaraya-Watson kernel regression, though we further restrict the sample size to nearby points.
+ * We use Nadaraya-Watson kernel regression, though we further restrict the sample size to nearby points. The
+ * nearest points in Z are found with a k-d tree over the Z columns, which is built once for each Z and set of rows
+ * and kept for later tests. For Z of many variables, neighbors may instead be found approximately in a random
+ * projection of Z; see setProjectionDimension.
  *
  * @author Joseph Ramsey
  */
@@ -110,6 +114,22 @@ public final class ConditionalCorrelationIndependence {
      */
     private int kernelRegressionSampleSize = 100;
 
+    /**
+     * If positive, neighbors for Z of more than this many variables are found in a random projection of Z onto this
+     * many dimensions.
+     */
+    private int projectionDimension = 0;
+
+    /**
+     * Trees over the (scaled) columns of Z, by Z and rows, least recently used first.
+     */
+    private final Map<TreeKey, KdTree> trees = new LinkedHashMap<TreeKey, KdTree>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TreeKey, KdTree> eldest) {
+            return size() > 100;
+        }
+    };
+
     //==================CONSTRUCTORS====================//
 
     /**
@@ -198,27 +218,7 @@ public final class ConditionalCorrelationIndependence {
             return _data[0];
         }
 
-        List<List<Integer>> _sortedIndices = new ArrayList<>();
-
-        for (int z2 = 0; z2 < z.size(); z2++) {
-            double[] w = _data[z2 + 1];
-            List<Integer> sorted = new ArrayList<>();
-            for (int t = 0; t < w.length; t++) sorted.add(t);
-            sorted.sort(Comparator.comparingDouble(o -> w[o]));
-            _sortedIndices.add(sorted);
-        }
-
-        List<Map<Integer, Integer>> _reverseLookup = new ArrayList<>();
-
-        for (int z2 = 0; z2 < z.size(); z2++) {
-            Map<Integer, Integer> m = new HashMap<>();
-
-            for (int j = 0; j < _data[z2 + 1].length; j++) {
-                m.put(_sortedIndices.get(z2).get(j), j);
-            }
-
-            _reverseLookup.add(m);
-        }
+        KdTree tree = getTree(_cols, _rows, _data);
 
         int _N = _data[0].length;
 
@@ -233,7 +233,7 @@ public final class ConditionalCorrelationIndependence {
         int[] _z = new int[z.size()];
 
         for (int m = 0; m < z.size(); m++) {
-            _z[m] = m;
+            _z[m] = m + 1;
         }
 
         double _max = Double.NEGATIVE_INFINITY;
@@ -245,9 +245,10 @@ public final class ConditionalCorrelationIndependence {
 
         double h = _max;
 
+        int sampleSize = min(kernelRegressionSampleSize, _N);
+
         for (int i = 0; i < _N; i++) {
-            Set<Integer> js = getCloseZs(_data, _z, i, kernelRegressionSampleSize,
-                    _reverseLookup, _sortedIndices);
+            int[] js = tree.nearest(i, sampleSize);
 
             for (int j : js) {
                 double xj = _xdata[j];
@@ -341,6 +342,27 @@ public final class ConditionalCorrelationIndependence {
         this.kernelRegressionSampleSize = kernelRegressionSapleSize;
     }
 
+    public int getProjectionDimension() {
+        return projectionDimension;
+    }
+
+    /**
+     * @param projectionDimension If positive, neighbors for Z of more than this many variables are found
+     *                            approximately, in a random projection of Z onto this many dimensions. 0 (the
+     *                            default) for exact neighbors always.
+     */
+    public void setProjectionDimension(int projectionDimension) {
+        if (projectionDimension < 0) {
+            throw new IllegalArgumentException("Projection dimension must be >= 0: " + projectionDimension);
+        }
+
+        this.projectionDimension = projectionDimension;
+
+        synchronized (trees) {
+            trees.clear();
+        }
+    }
+
     //=====================PRIVATE METHODS====================//
 
     /**
@@ -508,35 +530,36 @@ public final class ConditionalCorrelationIndependence {
         return data;
     }
 
-    private Set<Integer> getCloseZs(double[][] _data, int[] _z, int i, int sampleSize,
-                                    List<Map<Integer, Integer>> reverseLookup,
-                                    List<List<Integer>> sortedIndices) {
-        Set<Integer> js = new HashSet<>();
-
-        if (sampleSize > _data[0].length) sampleSize = (int) ceil(0.8 * _data.length);
-        if (_z.length == 0) return new HashSet<>();
+    // The tree over the Z columns of the data, data[1] onward, for the given rows.
+    private KdTree getTree(int[] cols, int[] rows, double[][] data) {
+        TreeKey key = new TreeKey(Arrays.copyOfRange(cols, 1, cols.length), rows);
 
-        int radius = 0;
+        synchronized (trees) {
+            KdTree tree = trees.get(key);
+            if (tree != null) return tree;
+        }
 
-        while (true) {
-            for (int z1 : _z) {
-                int q = reverseLookup.get(z1).get(i);
+        // Constant columns scale to NaN; these don't count toward distances.
+        double[][] z = new double[data.length - 1][];
 
-                if (q - radius >= 0 && q - radius < _data[z1 + 1].length) {
-                    final int r2 = sortedIndices.get(z1).get(q - radius);
-                    js.add(r2);
-                }
+        for (int m = 0; m < z.length; m++) {
+            z[m] = Arrays.copyOf(data[m + 1], data[m + 1].length);
+            for (int i = 0; i < z[m].length; i++) if (Double.isNaN(z[m][i])) z[m][i] = 0;
+        }
 
-                if (q + radius >= 0 && q + radius < _data[z1 + 1].length) {
-                    final int r2 = sortedIndices.get(z1).get(q + radius);
-                    js.add(r2);
-                }
-            }
+        KdTree tree;
 
-            if (js.size() >= sampleSize) return js;
+        if (projectionDimension > 0 && z.length > projectionDimension) {
+            tree = KdTree.randomProjection(z, projectionDimension, Arrays.hashCode(key.z));
+        } else {
+            tree = new KdTree(z);
+        }
 
-            radius++;
+        synchronized (trees) {
+            trees.put(key, tree);
         }
+
+        return tree;
     }
 
     private List<Integer> getRows(DataSet dataSet, List<Node> allVars, Map<Node, Integer> nodesHash) {
@@ -553,7 +576,31 @@ public final class ConditionalCorrelationIndependence {
 
         return rows;
     }
-}
 
+    /**
+     * Z columns and rows.
+     */
+    private static class TreeKey {
+        private final int[] z;
+        private final int[] rows;
+        private final int hash;
+
+        TreeKey(int[] z, int[] rows) {
+            this.z = z;
+            this.rows = rows;
+            this.hash = 31 * Arrays.hashCode(z) + Arrays.hashCode(rows);
+        }
 
+        @Override
+        public int hashCode() {
+            return hash;
+        }
 
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TreeKey)) return false;
+            TreeKey key = (TreeKey) o;
+            return hash == key.hash && Arrays.equals(z, key.z) && Arrays.equals(rows, key.rows);
+        }
+    }
+}
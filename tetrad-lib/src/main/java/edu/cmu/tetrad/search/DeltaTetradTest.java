@@ -24,7 +24,7 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.Matrix;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.special.Gamma;
 
 import java.util.*;
 
@@ -32,23 +32,30 @@ import java.util.*;
  * Implements a test for simultaneously zero tetrads in Bollen, K. (1990). "Outlier screening and distribution-free test
  * for vanishing tetrads." Sociological Methods and Research 19, 80-92 and Bollen and Ting, Confirmatory Tetrad
  * Analysis.
+ * <p>
+ * Tests may be given as Tetrads or, to avoid node lookups in clustering loops, as int quadruples of variable indices.
+ * Fourth moments are remembered in a bounded cache keyed by the sorted indices of the four variables, since the
+ * clustering algorithms test the same variables in many overlapping quartets. The test methods that return their
+ * results (calcChiSquare, getPValue(tetrads)) may be called from several threads at once.
  *
  * @author Joseph Ramsey
  */
 public class DeltaTetradTest {
+
+    // The default number of slots in the fourth moment cache.
+    private static final int DEFAULT_MAX_FOURTH_MOMENTS = 1 << 20;
+
     private DataSet dataSet;
     private double[][] data;
     private int N;
     private ICovarianceMatrix cov;
     private int df;
     private double chisq;
-    //    private double[][][][] fourthMoment;
-//    private int numVars;
-//    private double[] means;
     private List<Node> variables;
     private Map<Node, Integer> variablesHash;
-//    private boolean cacheFourthMoments = false;
 
+    // Fourth moments of the (centered) data, or null if there are no data.
+    private FourthMoments fourthMoments;
 
     // As input we require a data set and a list of non-redundant Tetrads.
 
@@ -81,7 +88,6 @@ public class DeltaTetradTest {
         this.data = this.dataSet.getDoubleData().transpose().toArray();
         this.N = dataSet.getNumRows();
         this.variables = dataSet.getVariables();
-//        this.numVars = dataSet.getNumColumns();
 
         this.variablesHash = new HashMap<>();
 
@@ -89,11 +95,7 @@ public class DeltaTetradTest {
             variablesHash.put(variables.get(i), i);
         }
 
-//        this.means = new double[numVars];
-//
-//        for (int i = 0; i < numVars; i++) {
-//            means[i] = mean(data[i], N);
-//        }
+        this.fourthMoments = new FourthMoments(DEFAULT_MAX_FOURTH_MOMENTS);
     }
 
     /**
@@ -116,11 +118,6 @@ public class DeltaTetradTest {
         }
     }
 
-//    private void initializeForthMomentMatrix(List<Node> variables) {
-//        int n = variables.size();
-//        fourthMoment = new double[n][n][n][n];
-//    }
-
     /**
      * Takes a list of tetrads for the given data set and returns the chi square value for the test. We assume that the
      * tetrads are non-redundant; if not, a matrix exception will be thrown.
@@ -129,277 +126,273 @@ public class DeltaTetradTest {
      * Square distribution with degrees of freedom equal to the number of nonredundant tetrads tested.
      */
     public double calcChiSquare(Tetrad... tetrads) {
-        this.df = tetrads.length;
+        return calcChiSquare(indices(tetrads));
+    }
 
-        // Need a list of symbolic covariances--i.e. covariances that appear in tetrads.
-        Set<Sigma> boldSigmaSet = new LinkedHashSet<>();
-        List<Sigma> boldSigma = new ArrayList<>();
+    /**
+     * Like calcChiSquare(Tetrad...), for tetrads given as quadruples {i, j, k, l} of indices into the variables of
+     * the data or covariance matrix.
+     */
+    public double calcChiSquare(int[]... tetrads) {
+        double chisq = chiSquare(tetrads);
 
-        for (Tetrad tetrad : tetrads) {
-            boldSigmaSet.add(new Sigma(tetrad.getI(), tetrad.getK()));
-            boldSigmaSet.add(new Sigma(tetrad.getI(), tetrad.getL()));
-            boldSigmaSet.add(new Sigma(tetrad.getJ(), tetrad.getK()));
-            boldSigmaSet.add(new Sigma(tetrad.getJ(), tetrad.getL()));
-        }
+        this.df = tetrads.length;
+        this.chisq = chisq;
 
-        for (Sigma sigma : boldSigmaSet) {
-            boldSigma.add(sigma);
-        }
+        return chisq;
+    }
 
-        // Need a matrix of variances and covariances of sample covariances.
-        Matrix sigma_ss = new Matrix(boldSigma.size(), boldSigma.size());
-
-        for (int i = 0; i < boldSigma.size(); i++) {
-            for (int j = 0; j < boldSigma.size(); j++) {
-                Sigma sigmaef = boldSigma.get(i);
-                Sigma sigmagh = boldSigma.get(j);
-
-                Node e = sigmaef.getA();
-                Node f = sigmaef.getB();
-                Node g = sigmagh.getA();
-                Node h = sigmagh.getB();
-
-                if (cov != null && cov instanceof CorrelationMatrix) {
-
-//                Assumes multinormality. Using formula 23. (Not implementing formula 22 because that case
-//                does not come up.)
-                    double rr = 0.5 * (sxy(e, f) * sxy(g, h))
-                            * (sxy(e, g) * sxy(e, g) + sxy(e, h) * sxy(e, h) + sxy(f, g) * sxy(f, g) + sxy(f, h) * sxy(f, h))
-                            + sxy(e, g) * sxy(f, h) + sxy(e, h) * sxy(f, g)
-                            - sxy(e, f) * (sxy(f, g) * sxy(f, h) + sxy(e, g) * sxy(e, h))
-                            - sxy(g, h) * (sxy(f, g) * sxy(e, g) + sxy(f, h) * sxy(e, h));
-
-                    sigma_ss.set(i, j, rr);
-                } else if (cov != null && dataSet == null) {
-
-                    // Assumes multinormality--see p. 160.
-                    double _ss = sxy(e, g) * sxy(f, h) - sxy(e, h) * sxy(f, g);   // + or -? Different advise. + in the code.
-                    sigma_ss.set(i, j, _ss);
-                } else {
-                    double _ss = sxyzw(e, f, g, h) - sxy(e, f) * sxy(g, h);
-                    sigma_ss.set(i, j, _ss);
-                }
-            }
-        }
+    /**
+     * @return the p value for the most recent test, or NaN if its chi square value is undefined.
+     */
+    public double getPValue() {
+        return pValue(this.df, this.chisq);
+    }
 
-        // Need a matrix of of population estimates of partial derivatives of tetrads
-        // with respect to covariances in boldSigma.w
-        Matrix del = new Matrix(boldSigma.size(), tetrads.length);
+    public double getPValue(Tetrad... tetrads) {
+        return getPValue(indices(tetrads));
+    }
 
-        for (int i = 0; i < boldSigma.size(); i++) {
-            for (int j = 0; j < tetrads.length; j++) {
-                Sigma sigma = boldSigma.get(i);
-                Tetrad tetrad = tetrads[j];
+    /**
+     * @return the p value of the test of the given tetrads, given as quadruples {i, j, k, l} of indices into the
+     * variables of the data or covariance matrix.
+     */
+    public double getPValue(int[]... tetrads) {
+        return pValue(tetrads.length, calcChiSquare(tetrads));
+    }
 
-                Node e = tetrad.getI();
-                Node f = tetrad.getJ();
-                Node g = tetrad.getK();
-                Node h = tetrad.getL();
+    /**
+     * Sets the number of fourth moments to remember. Fourth moments are only calculated when a data set is given.
+     */
+    public void setMaxFourthMoments(int maxFourthMoments) {
+        if (maxFourthMoments < 1) {
+            throw new IllegalArgumentException("Max fourth moments must be at least 1: " + maxFourthMoments);
+        }
 
-                double derivative = getDerivative(e, f, g, h, sigma.getA(), sigma.getB());
-                del.set(i, j, derivative);
-            }
+        if (dataSet != null) {
+            this.fourthMoments = new FourthMoments(maxFourthMoments);
         }
+    }
 
-        // Need a vector of population estimates of the tetrads.
-        Matrix t = new Matrix(tetrads.length, 1);
+    //==============================PRIVATE METHODS============================//
+
+    private int[][] indices(Tetrad[] tetrads) {
+        int[][] _tetrads = new int[tetrads.length][];
 
         for (int i = 0; i < tetrads.length; i++) {
             Tetrad tetrad = tetrads[i];
+            _tetrads[i] = new int[]{variablesHash.get(tetrad.getI()), variablesHash.get(tetrad.getJ()),
+                    variablesHash.get(tetrad.getK()), variablesHash.get(tetrad.getL())};
+        }
 
-            Node e = tetrad.getI();
-            Node f = tetrad.getJ();
-            Node g = tetrad.getK();
-            Node h = tetrad.getL();
+        return _tetrads;
+    }
+
+    private double chiSquare(int[][] tetrads) {
+        int m = tetrads.length;
 
-            double d1 = sxy(e, f);
-            double d2 = sxy(g, h);
-            double d3 = sxy(e, g);
-            double d4 = sxy(f, h);
+        // Need a list of symbolic covariances--i.e. covariances that appear in tetrads--
+        // as pairs of indices, in order of first appearance.
+        int[] sigmaA = new int[4 * m];
+        int[] sigmaB = new int[4 * m];
+        int k = 0;
 
-            double value = d1 * d2 - d3 * d4;
-            t.set(i, 0, value);
+        for (int[] tetrad : tetrads) {
+            k = addSigma(sigmaA, sigmaB, k, tetrad[0], tetrad[2]);
+            k = addSigma(sigmaA, sigmaB, k, tetrad[0], tetrad[3]);
+            k = addSigma(sigmaA, sigmaB, k, tetrad[1], tetrad[2]);
+            k = addSigma(sigmaA, sigmaB, k, tetrad[1], tetrad[3]);
         }
 
-        // Now multiply to get Sigma_tt
-        Matrix w1 = del.transpose().times(sigma_ss);
-        Matrix sigma_tt = w1.times(del);
+        // Need a matrix of variances and covariances of sample covariances. It is symmetric.
+        double[][] sigma_ss = new double[k][k];
 
-        // And now invert and multiply to get T.
-        Matrix v0 = sigma_tt.inverse();
-        Matrix v1 = t.transpose().times(v0);
-        Matrix v2 = v1.times(t);
-        double chisq = N * v2.get(0, 0);
+        for (int i = 0; i < k; i++) {
+            for (int j = i; j < k; j++) {
+                double ss = sigmaSS(sigmaA[i], sigmaB[i], sigmaA[j], sigmaB[j]);
+                sigma_ss[i][j] = ss;
+                sigma_ss[j][i] = ss;
+            }
+        }
 
-        this.chisq = chisq;
+        // Need a matrix of of population estimates of partial derivatives of tetrads
+        // with respect to covariances in boldSigma.
+        double[][] del = new double[k][m];
 
-        return chisq;
-    }
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < m; j++) {
+                del[i][j] = getDerivative(tetrads[j], sigmaA[i], sigmaB[i]);
+            }
+        }
 
-    /**
-     * @return the p value for the most recent test.
-     */
-    public double getPValue() {
-        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
-        return 1.0 - cdf;
-    }
+        // Need a vector of population estimates of the tetrads.
+        double[] t = new double[m];
 
-    public double getPValue(Tetrad... tetrads) {
-        calcChiSquare(tetrads);
-        return getPValue();
-    }
+        for (int i = 0; i < m; i++) {
+            int[] tetrad = tetrads[i];
+            t[i] = sxy(tetrad[0], tetrad[1]) * sxy(tetrad[2], tetrad[3])
+                    - sxy(tetrad[0], tetrad[2]) * sxy(tetrad[1], tetrad[3]);
+        }
 
-    private double sxyzw(Node e, Node f, Node g, Node h) {
-        if (dataSet == null) {
-            throw new IllegalArgumentException("To calculate sxyzw, tabular data is needed.");
+        // Now multiply to get Sigma_tt = del' * sigma_ss * del.
+        double[][] w1 = new double[m][k];
+
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < k; j++) {
+                double sum = 0.0;
+                for (int h = 0; h < k; h++) sum += del[h][i] * sigma_ss[h][j];
+                w1[i][j] = sum;
+            }
         }
 
-        int x = variablesHash.get(e);
-        int y = variablesHash.get(f);
-        int z = variablesHash.get(g);
-        int w = variablesHash.get(h);
+        double[][] sigma_tt = new double[m][m];
 
-        return getForthMoment(x, y, z, w);
-    }
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                double sum = 0.0;
+                for (int h = 0; h < k; h++) sum += w1[i][h] * del[h][j];
+                sigma_tt[i][j] = sum;
+            }
+        }
 
-//    private void setForthMoment(int x, int y, int z, int w, double sxyzw) {
-//        fourthMoment[x][y][z][w] = sxyzw;
-//        fourthMoment[x][y][w][z] = sxyzw;
-//        fourthMoment[x][w][z][y] = sxyzw;
-//        fourthMoment[x][w][y][z] = sxyzw;
-//        fourthMoment[x][z][y][w] = sxyzw;
-//        fourthMoment[x][z][w][y] = sxyzw;
-//
-//        fourthMoment[y][x][z][w] = sxyzw;
-//        fourthMoment[y][x][w][z] = sxyzw;
-//        fourthMoment[y][z][x][w] = sxyzw;
-//        fourthMoment[y][z][w][x] = sxyzw;
-//        fourthMoment[y][w][x][z] = sxyzw;
-//        fourthMoment[y][w][z][x] = sxyzw;
-//
-//        fourthMoment[z][x][y][w] = sxyzw;
-//        fourthMoment[z][x][w][y] = sxyzw;
-//        fourthMoment[z][y][x][w] = sxyzw;
-//        fourthMoment[z][y][w][x] = sxyzw;
-//        fourthMoment[z][w][x][y] = sxyzw;
-//        fourthMoment[z][w][y][x] = sxyzw;
-//
-//        fourthMoment[w][x][y][z] = sxyzw;
-//        fourthMoment[w][x][z][y] = sxyzw;
-//        fourthMoment[w][y][x][z] = sxyzw;
-//        fourthMoment[w][y][z][x] = sxyzw;
-//        fourthMoment[w][z][x][y] = sxyzw;
-//        fourthMoment[w][z][y][x] = sxyzw;
-//    }
-
-    private double getForthMoment(int x, int y, int z, int w) {
-//        if (cacheFourthMoments) {
-//            if (fourthMoment == null) {
-//                initializeForthMomentMatrix(dataSet.getVariable());
-//            }
-//
-//            double sxyzw = fourthMoment[x][y][z][w];
-//
-//            if (sxyzw == 0.0) {
-//                sxyzw = sxyzw(x, y, z, w);
-////                setForthMoment(x, y, z, w, sxyzw);
-//            }
-//
-//            return sxyzw;
-//        } else {
-        return sxyzw(x, y, z, w);
-//        }
+        // And now invert and multiply to get T.
+        double[][] v0 = new Matrix(sigma_tt).inverse().toArray();
+        double v2 = 0.0;
+
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                v2 += t[i] * v0[i][j] * t[j];
+            }
+        }
+
+        return N * v2;
     }
 
-    /**
-     * If using a covariance matrix or a correlation matrix, just returns the lookups. Otherwise calculates the
-     * covariance.
-     */
-    private double sxy(Node _node1, Node _node2) {
-        int i = variablesHash.get(_node1);
-        int j = variablesHash.get(_node2);
+    // Adds the covariance of a and b to the list unless it's already there.
+    private static int addSigma(int[] sigmaA, int[] sigmaB, int k, int a, int b) {
+        for (int i = 0; i < k; i++) {
+            if ((sigmaA[i] == a && sigmaB[i] == b) || (sigmaA[i] == b && sigmaB[i] == a)) {
+                return k;
+            }
+        }
+
+        sigmaA[k] = a;
+        sigmaB[k] = b;
+        return k + 1;
+    }
 
-        if (cov != null) {
-            return cov.getValue(i, j);
+    // The covariance of the sample covariances of e and f and of g and h.
+    private double sigmaSS(int e, int f, int g, int h) {
+        if (cov instanceof CorrelationMatrix) {
+
+            // Assumes multinormality. Using formula 23. (Not implementing formula 22 because that case
+            // does not come up.)
+            return 0.5 * (sxy(e, f) * sxy(g, h))
+                    * (sxy(e, g) * sxy(e, g) + sxy(e, h) * sxy(e, h) + sxy(f, g) * sxy(f, g) + sxy(f, h) * sxy(f, h))
+                    + sxy(e, g) * sxy(f, h) + sxy(e, h) * sxy(f, g)
+                    - sxy(e, f) * (sxy(f, g) * sxy(f, h) + sxy(e, g) * sxy(e, h))
+                    - sxy(g, h) * (sxy(f, g) * sxy(e, g) + sxy(f, h) * sxy(e, h));
+        } else if (dataSet == null) {
+
+            // Assumes multinormality--see p. 160.
+            return sxy(e, g) * sxy(f, h) - sxy(e, h) * sxy(f, g);   // + or -? Different advise. + in the code.
         } else {
-            double[] arr1 = data[i];
-            double[] arr2 = data[j];
-            return sxy(arr1, arr2, arr1.length);
+            return fourthMoments.get(e, f, g, h) - sxy(e, f) * sxy(g, h);
         }
     }
 
-    private double getDerivative(Node node1, Node node2, Node node3, Node node4, Node a, Node b) {
-        if (node1 == a && node2 == b) {
-            return sxy(node3, node4);
-        }
+    private double sxy(int i, int j) {
+        return cov.getValue(i, j);
+    }
 
-        if (node1 == b && node2 == a) {
-            return sxy(node3, node4);
-        }
+    private double getDerivative(int[] tetrad, int a, int b) {
+        int node1 = tetrad[0];
+        int node2 = tetrad[1];
+        int node3 = tetrad[2];
+        int node4 = tetrad[3];
 
-        if (node3 == a && node4 == b) {
-            return sxy(node1, node2);
+        if ((node1 == a && node2 == b) || (node1 == b && node2 == a)) {
+            return sxy(node3, node4);
         }
 
-        if (node3 == b && node4 == a) {
+        if ((node3 == a && node4 == b) || (node3 == b && node4 == a)) {
             return sxy(node1, node2);
         }
 
-        if (node1 == a && node3 == b) {
+        if ((node1 == a && node3 == b) || (node1 == b && node3 == a)) {
             return -sxy(node2, node4);
         }
 
-        if (node1 == b && node3 == a) {
-            return -sxy(node2, node4);
+        if ((node2 == a && node4 == b) || (node2 == b && node4 == a)) {
+            return -sxy(node1, node3);
         }
 
-        if (node2 == a && node4 == b) {
-            return -sxy(node1, node3);
+        return 0.0;
+    }
+
+    private static double pValue(int df, double chisq) {
+        if (Double.isNaN(chisq)) {
+            return Double.NaN;
         }
 
-        if (node2 == b && node4 == a) {
-            return -sxy(node1, node3);
+        if (chisq <= 0) {
+            return 1.0;
         }
 
-        return 0.0;
+        return Gamma.regularizedGammaQ(df / 2.0, chisq / 2.0);
     }
 
-//    public void setCacheFourthMoments(boolean cacheFourthMoments) {
-//        this.cacheFourthMoments = cacheFourthMoments;
-//    }
+    /**
+     * A direct-mapped cache of fourth moments of the centered data, keyed by the sorted indices of the four variables,
+     * packed into a long. A slot holds an immutable entry, so threads may share the cache without locking; an entry
+     * displaced by another that maps to the same slot is simply calculated again when next needed.
+     */
+    private class FourthMoments {
+        private final Entry[] entries;
+        private final int shift;
+
+        FourthMoments(int maxFourthMoments) {
+            int size = Integer.highestOneBit(maxFourthMoments);
+            this.entries = new Entry[size];
+            this.shift = 64 - Integer.numberOfTrailingZeros(size);
+        }
 
-    private static class Sigma {
-        private Node a;
-        private Node b;
+        double get(int x, int y, int z, int w) {
 
-        public Sigma(Node a, Node b) {
-            this.a = a;
-            this.b = b;
-        }
+            // Sort the indices with a sorting network.
+            int t;
+            if (x > y) { t = x; x = y; y = t; }
+            if (z > w) { t = z; z = w; w = t; }
+            if (x > z) { t = x; x = z; z = t; }
+            if (y > w) { t = y; y = w; w = t; }
+            if (y > z) { t = y; y = z; z = t; }
 
-        public Node getA() {
-            return a;
-        }
+            if (w > 0xffff) {
+                return sxyzw(x, y, z, w);
+            }
 
-        public Node getB() {
-            return b;
-        }
+            long key = ((long) x << 48) | ((long) y << 32) | ((long) z << 16) | w;
+            int slot = shift == 64 ? 0 : (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
 
-        public boolean equals(Object o) {
-            if (!(o instanceof Sigma)) {
-                throw new IllegalArgumentException();
+            Entry entry = entries[slot];
+
+            if (entry != null && entry.key == key) {
+                return entry.value;
             }
 
-            Sigma _o = (Sigma) o;
-            return (_o.getA().equals(getA()) && _o.getB().equals(getB())) || (_o.getB().equals(getA()) && _o.getA().equals(getB()));
+            double sxyzw = sxyzw(x, y, z, w);
+            entries[slot] = new Entry(key, sxyzw);
+            return sxyzw;
         }
+    }
 
-        public int hashCode() {
-            return a.hashCode() + b.hashCode();
-        }
+    private static class Entry {
+        final long key;
+        final double value;
 
-        public String toString() {
-            return "Sigma(" + getA() + ", " + getB() + ")";
+        Entry(long key, double value) {
+            this.key = key;
+            this.value = value;
         }
     }
 
@@ -419,30 +412,4 @@ public class DeltaTetradTest {
 
         return (1.0 / N) * sxyzw;
     }
-
-    private double sxy(double array1[], double array2[], int N) {
-        int i;
-        double sum = 0.0;
-
-        for (i = 0; i < N; i++) {
-//            sum += (array1[i] - meanX) * (array2[i] - meanY);
-            sum += array1[i] * array2[i];
-        }
-
-        return (1.0 / N) * sum;
-    }
-
-//    private double mean(double array[], int N) {
-//        int i;
-//        double sum = 0;
-//
-//        for (i = 0; i < N; i++) {
-//            sum += array[i];
-//        }
-//
-//        return sum / N;
-//    }
 }
-
-
-
@@ -0,0 +1,310 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.CellCounts;
+import org.apache.commons.math3.special.Gamma;
+
+import java.util.Arrays;
+
+/**
+ * Counts the cells of the contingency table of a discrete child against its parents, for local scores such as BDeu.
+ * Data are held by column. The parent configuration of each row is accumulated one column at a time using mixed-radix
+ * strides, so each pass reads a single column sequentially; columns known to have no missing values (-99) are
+ * handled by a loop without the missing-value check. Count arrays are flat and reused per thread, so scoring does
+ * not allocate once the buffers have grown to the largest table seen. Counts may instead be taken from a CellCounts,
+ * such as an AdTree, given to the constructor.
+ * <p>
+ * Also keeps memoized tables of logGamma(prior + n) for integer counts n, since every count in a table is an integer
+ * no greater than the sample size. Priors vary with the number of parent configurations, so only a few tables are
+ * kept, in slots chosen by prior; a table for a new prior replaces the one in its slot.
+ */
+public class DiscreteCountKernel {
+
+    // The data, by column, with -99 for missing values.
+    private final int[][] data;
+
+    // The number of categories of each variable.
+    private final int[] numCategories;
+
+    // The number of rows.
+    private final int sampleSize;
+
+    // True for columns with at least one missing value.
+    private final boolean[] hasMissing;
+
+    // Where counts come from, if not from the data.
+    private final CellCounts cellCounts;
+
+    // Per-thread working storage.
+    private final ThreadLocal<Counts> counts;
+
+    // The number of logGamma tables kept is 2^LOG_GAMMA_SLOT_BITS.
+    private static final int LOG_GAMMA_SLOT_BITS = 4;
+
+    // Tables of logGamma(prior + n), in slots by prior, filled in on demand.
+    private final LogGammaTable[] logGammaTables = new LogGammaTable[1 << LOG_GAMMA_SLOT_BITS];
+
+    /**
+     * @param data          The data by column; data[j][i] is the category of variable j in row i, or -99 if missing.
+     * @param numCategories The number of categories of each variable.
+     */
+    public DiscreteCountKernel(int[][] data, int[] numCategories) {
+        this(data, numCategories, null);
+    }
+
+    /**
+     * @param data          The data by column; data[j][i] is the category of variable j in row i, or -99 if missing.
+     * @param numCategories The number of categories of each variable.
+     * @param cellCounts    If not null, counts are taken from this (for instance, an AdTree over the same data)
+     *                      rather than from the data.
+     */
+    public DiscreteCountKernel(int[][] data, int[] numCategories, CellCounts cellCounts) {
+        if (data.length != numCategories.length) {
+            throw new IllegalArgumentException("Expecting one number of categories per column.");
+        }
+
+        this.data = data;
+        this.numCategories = numCategories;
+        this.sampleSize = data.length == 0 ? 0 : data[0].length;
+        this.hasMissing = new boolean[data.length];
+
+        for (int j = 0; j < data.length; j++) {
+            for (int value : data[j]) {
+                if (value == -99) {
+                    hasMissing[j] = true;
+                    break;
+                }
+            }
+        }
+
+        this.cellCounts = cellCounts;
+        this.counts = ThreadLocal.withInitial(() -> new Counts(cellCounts == null ? sampleSize : 0));
+    }
+
+    /**
+     * Counts the child against its parents. The returned object belongs to the calling thread and is overwritten by
+     * that thread's next call.
+     */
+    public Counts count(int child, int[] parents) {
+        Counts counts = this.counts.get();
+
+        int c = numCategories[child];
+        int r = 1;
+
+        for (int parent : parents) {
+            r *= numCategories[parent];
+        }
+
+        if (cellCounts != null) {
+            counts.set(cellCounts.getCounts(append(parents, child)), r, c);
+            return counts;
+        }
+
+        counts.reset(r, c);
+        int[] config = counts.config;
+        Arrays.fill(config, 0, sampleSize, 0);
+
+        // Mixed-radix strides, with the first parent most significant. Rows with a missing parent value are marked
+        // with -1, after which every column has to be checked for the mark.
+        int stride = r;
+        boolean marked = false;
+
+        for (int parent : parents) {
+            stride /= numCategories[parent];
+            int[] column = data[parent];
+            marked |= hasMissing[parent];
+
+            if (marked) {
+                for (int i = 0; i < sampleSize; i++) {
+                    if (config[i] < 0) continue;
+                    int value = column[i];
+                    config[i] = value == -99 ? -1 : config[i] + value * stride;
+                }
+            } else {
+                for (int i = 0; i < sampleSize; i++) {
+                    config[i] += column[i] * stride;
+                }
+            }
+        }
+
+        int[] cells = counts.cells;
+        int[] rows = counts.rows;
+        int[] column = data[child];
+        int n = 0;
+
+        if (marked || hasMissing[child]) {
+            for (int i = 0; i < sampleSize; i++) {
+                int value = column[i];
+                if (config[i] < 0 || value == -99) continue;
+                cells[config[i] * c + value]++;
+                rows[config[i]]++;
+                n++;
+            }
+        } else {
+            for (int i = 0; i < sampleSize; i++) {
+                cells[config[i] * c + column[i]]++;
+                rows[config[i]]++;
+            }
+
+            n = sampleSize;
+        }
+
+        counts.n = n;
+        return counts;
+    }
+
+    /**
+     * @return logGamma(prior + n), for 0 <= n <= the sample size.
+     */
+    public double logGamma(double prior, int n) {
+        int slot = slot(prior);
+        LogGammaTable table = logGammaTables[slot];
+
+        // Races here are harmless; a table replaced by another thread is only lost to the cache, and every thread
+        // writes the same values into a table.
+        if (table == null || table.prior != prior) {
+            table = new LogGammaTable(prior, sampleSize);
+            logGammaTables[slot] = table;
+        }
+
+        double value = table.values[n];
+
+        if (Double.isNaN(value)) {
+            value = Gamma.logGamma(prior + n);
+            table.values[n] = value;
+        }
+
+        return value;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public int getNumCategories(int variable) {
+        return numCategories[variable];
+    }
+
+    private static int[] append(int[] parents, int child) {
+        int[] all = Arrays.copyOf(parents, parents.length + 1);
+        all[parents.length] = child;
+        return all;
+    }
+
+    // The slot of the logGamma table for the given prior. The bits of the prior are mixed first, so that priors such
+    // as 1/2, 1/4 and 1/8, which differ only in their exponents, land in different slots.
+    private static int slot(double prior) {
+        long z = Double.doubleToLongBits(prior);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z ^= z >>> 31;
+        return (int) z & ((1 << LOG_GAMMA_SLOT_BITS) - 1);
+    }
+
+    // logGamma(prior + n) for 0 <= n <= the sample size, NaN where not yet computed.
+    private static final class LogGammaTable {
+        final double prior;
+        final double[] values;
+
+        LogGammaTable(double prior, int sampleSize) {
+            this.prior = prior;
+            this.values = new double[sampleSize + 1];
+            Arrays.fill(values, Double.NaN);
+        }
+    }
+
+    /**
+     * The counts for one child and parent set: cells[j * c + k] is the number of rows with parent configuration j and
+     * child value k, rows[j] is the number of rows with parent configuration j, and n is the number of rows used.
+     */
+    public static final class Counts {
+        private int[] cells = new int[0];
+        private int[] rows = new int[0];
+        private final int[] config;
+        private int r;
+        private int c;
+        private int n;
+
+        private Counts(int sampleSize) {
+            this.config = new int[sampleSize];
+        }
+
+        // Takes the cells from a table of counts, with child values varying fastest.
+        private void set(int[] table, int r, int c) {
+            if (rows.length < r) rows = new int[r];
+            Arrays.fill(rows, 0, r, 0);
+            int n = 0;
+
+            for (int j = 0; j < r; j++) {
+                for (int k = 0; k < c; k++) {
+                    rows[j] += table[j * c + k];
+                }
+
+                n += rows[j];
+            }
+
+            this.cells = table;
+            this.r = r;
+            this.c = c;
+            this.n = n;
+        }
+
+        private void reset(int r, int c) {
+            if (cells.length < r * c) cells = new int[r * c];
+            if (rows.length < r) rows = new int[r];
+            Arrays.fill(cells, 0, r * c, 0);
+            Arrays.fill(rows, 0, r, 0);
+            this.r = r;
+            this.c = c;
+        }
+
+        public int getCellCount(int j, int k) {
+            return cells[j * c + k];
+        }
+
+        public int getRowCount(int j) {
+            return rows[j];
+        }
+
+        /**
+         * @return the number of parent configurations.
+         */
+        public int getNumRows() {
+            return r;
+        }
+
+        /**
+         * @return the number of child categories.
+         */
+        public int getNumColumns() {
+            return c;
+        }
+
+        /**
+         * @return the number of rows of data with no missing values for the child or parents.
+         */
+        public int getN() {
+            return n;
+        }
+    }
+}
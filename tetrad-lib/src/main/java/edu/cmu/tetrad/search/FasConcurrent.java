@@ -143,7 +143,7 @@ public class FasConcurrent implements IFas {
         // x. It is hoped (i.e. true in the large sample limit) that true adjacencies are never removed.
         Graph graph = new EdgeListGraphSingleConnections(test.getVariables());
 
-        sepsets = new SepsetMap();
+        sepsets = new SepsetMap(graph.getNodes());
 
         int _depth = depth;
 
@@ -298,16 +298,16 @@ public class FasStableConcurrentFdr implements IFas {
                                 }
                             }
 
+                            double pValue = Double.NaN;
+
                             try {
-                                test.isIndependent(x, y, empty);
+                                pValue = test.getPValue(x, y, empty);
                             } catch (Exception e) {
                                 e.printStackTrace();
                             }
 
                             numIndependenceTests++;
 
-                            final double pValue = test.getPValue();
-
                             sorted.add(pValue);
                         }
                     }
@@ -365,8 +365,10 @@ public class FasStableConcurrentFdr implements IFas {
                                 }
                             }
 
+                            double pValue = Double.NaN;
+
                             try {
-                                test.isIndependent(x, y, empty);
+                                pValue = test.getPValue(x, y, empty);
                             } catch (Exception e) {
                                 e.printStackTrace();
                             }
@@ -376,7 +378,7 @@ public class FasStableConcurrentFdr implements IFas {
                             boolean noEdgeRequired =
                                     knowledge.noEdgeRequired(x.getName(), y.getName());
 
-                            if (test.getPValue() > cutoff && noEdgeRequired) {
+                            if (pValue > cutoff && noEdgeRequired) {
                                 if (recordSepsets /*&& !sepsets.isReturnEmptyIfNotSet()*/) {
                                     getSepsets().set(x, y, empty);
                                 }
@@ -386,7 +388,7 @@ public class FasStableConcurrentFdr implements IFas {
 
                                 if (verbose) {
                                     TetradLogger.getInstance().log("dependencies", SearchLogUtils.independenceFact(x, y, empty) + " p = " +
-                                            nf.format(test.getPValue()));
+                                            nf.format(pValue));
                                 }
                             }
                         }
@@ -518,12 +520,18 @@ public class FasStableConcurrentFdr implements IFas {
                                 while ((choice = cg.next()) != null) {
                                     List<Node> condSet = GraphUtils.asList(choice, ppx);
 
+                                    double pValue;
                                     boolean independent;
 
                                     try {
                                         numIndependenceTests++;
-                                        independent = test.isIndependent(x, y, condSet);
+
+                                        // One call gives both the p value, for the FDR cutoff, and the
+                                        // decision, without reading results other tasks leave in the shared test.
+                                        pValue = test.getPValue(x, y, condSet);
+                                        independent = pValue > test.getAlpha();
                                     } catch (Exception e) {
+                                        pValue = Double.NaN;
                                         independent = false;
                                     }
 
@@ -531,7 +539,7 @@ public class FasStableConcurrentFdr implements IFas {
                                             knowledge.noEdgeRequired(x.getName(), y.getName());
 
                                     if (independent && noEdgeRequired) {
-                                        sorted.add(test.getPValue());
+                                        sorted.add(pValue);
                                         continue EDGE;
                                     }
                                 }
@@ -600,9 +608,7 @@ public class FasStableConcurrentFdr implements IFas {
 
                                     try {
                                         numIndependenceTests++;
-                                        test.isIndependent(x, y, condSet);
-
-                                        if (test.getPValue() > cutoff) {
+                                        if (test.getPValue(x, y, condSet) > cutoff) {
                                             adjacencies.get(x).remove(y);
                                             adjacencies.get(y).remove(x);
 
@@ -193,7 +193,9 @@ public final class Fask implements GraphSearch {
         DataSet dataSet = DataUtils.standardizeData(this.dataSet);
 
         List<Node> variables = dataSet.getVariables();
-        double[][] lrs = getLrScores(); // Sets D.
+        double[][][] statistics = getLrAndCeScores(); // Sets D.
+        double[][] lrs = statistics[0];
+        double[][] ce = statistics[1];
 //        D = dataSet.getDoubleData().transpose().toArray();
 
         for (int i = 0; i < variables.size(); i++) {
@@ -272,8 +274,8 @@ public final class Fask implements GraphSearch {
                 double[] x = D[i];
                 double[] y = D[j];
 
-                double cx = correxp(x, y, x);
-                double cy = correxp(x, y, y);
+                double cx = ce[i][j];
+                double cy = ce[j][i];
 
                 if (G.isAdjacentTo(X, Y) || (abs(cx - cy) > skewEdgeThreshold)) {
                     double lr = lrs[i][j];// leftRight(x, y);
@@ -433,20 +435,96 @@ public final class Fask implements GraphSearch {
      * lr[i][j] is the left right scores leftRight(data[i], data[j]);
      */
     public double[][] getLrScores() {
-        List<Node> variables = dataSet.getVariables();
+        return getLrAndCeScores()[0];
+    }
+
+    // Returns {lr, ce}, where lr is as for getLrScores() and ce[i][j] = E(x_i x_j | x_i > 0) / sqrt(E(x_i x_i | x_i > 0)
+    // E(x_j x_j | x_i > 0)) for the standardized data, which is stored in D. The statistics are derived in place from
+    // the sums, so that at most four V x V arrays are live at once.
+    private double[][][] getLrAndCeScores() {
         double[][] D = DataUtils.standardizeData(dataSet).getDoubleData().transpose().toArray();
+        PairwiseStatistics statistics = new PairwiseStatistics(D);
 
-        double[][] lr = new double[variables.size()][variables.size()];
+        int V = D.length;
+        int N = statistics.getSampleSize();
 
-        for (int i = 0; i < variables.size(); i++) {
-            for (int j = 0; j < variables.size(); j++) {
-                lr[i][j] = leftRight(D[i], D[j]);
+        double[] signs = new double[V];
+
+        for (int i = 0; i < V; i++) {
+            signs[i] = empirical ? signum(statistics.getSkewness(i)) : 1.0;
+        }
+
+        // Sums over rows, by ordered pair i, j, of x_i x_j for x_i > 0, of x_j x_j for x_i > 0 and of x_i x_j,
+        // together with the sums the left-right rule needs, in one pass over the data.
+        List<PairwiseStatistics.Transform> f = new ArrayList<>();
+        List<PairwiseStatistics.Transform> h = new ArrayList<>();
+
+        f.add(PairwiseStatistics.POSITIVE_PART);
+        h.add(PairwiseStatistics.IDENTITY);
+        f.add(PairwiseStatistics.POSITIVE_INDICATOR);
+        h.add(PairwiseStatistics.SQUARE);
+        f.add(PairwiseStatistics.IDENTITY);
+        h.add(PairwiseStatistics.IDENTITY);
+
+        if (leftRight == LeftRight.RSKEW) {
+            f.add((column, value) -> g(signs[column] * value));
+            h.add(PairwiseStatistics.IDENTITY);
+        } else if (leftRight == LeftRight.SKEW) {
+            f.add(PairwiseStatistics.SQUARE);
+            h.add(PairwiseStatistics.IDENTITY);
+        } else if (leftRight == LeftRight.TANH) {
+            f.add((column, value) -> Math.tanh(value));
+            h.add(PairwiseStatistics.IDENTITY);
+        }
+
+        double[][][] sums = statistics.sums(f.toArray(new PairwiseStatistics.Transform[0]),
+                h.toArray(new PairwiseStatistics.Transform[0]));
+
+        // The sums of positive parts become ce and the sums of products become corr. The sums of squares are not
+        // needed once ce is known, so lr is written over them.
+        double[][] ce = sums[0];
+        double[][] positiveSquares = sums[1];
+        double[][] corr = sums[2];
+        double[][] lr = sums[1];
+
+        double[] positiveDiagonal = new double[V];
+        double[] productsDiagonal = new double[V];
+
+        for (int i = 0; i < V; i++) {
+            positiveDiagonal[i] = ce[i][i];
+            productsDiagonal[i] = corr[i][i];
+        }
+
+        for (int i = 0; i < V; i++) {
+            for (int j = 0; j < V; j++) {
+                ce[i][j] = ce[i][j] / sqrt(positiveDiagonal[i] * positiveSquares[i][j]);
+                corr[i][j] = corr[i][j] / sqrt(productsDiagonal[i] * productsDiagonal[j]);
             }
         }
 
         this.D = D;
 
-        return lr;
+        for (int i = 0; i < V; i++) {
+            for (int j = 0; j < V; j++) {
+                double s = signs[i] * signs[j];
+
+                if (leftRight == LeftRight.FASK1) {
+                    lr[i][j] = faskLeftRightV1(i, j, ce, corr, signs);
+                } else if (leftRight == LeftRight.FASK2) {
+                    lr[i][j] = faskLeftRightV2(i, j, ce, corr, signs);
+                } else if (leftRight == LeftRight.RSKEW) {
+                    lr[i][j] = s * corr[i][j] * (signs[j] * sums[3][i][j] - signs[i] * sums[3][j][i]) / N;
+                } else if (leftRight == LeftRight.SKEW) {
+                    lr[i][j] = s * corr[i][j] * (signs[i] * s * sums[3][i][j] - s * signs[j] * sums[3][j][i]) / N;
+                } else if (leftRight == LeftRight.TANH) {
+                    lr[i][j] = s * corr[i][j] * s * (sums[3][j][i] - sums[3][i][j]) / N;
+                } else {
+                    throw new IllegalStateException("Left right rule not configured: " + leftRight);
+                }
+            }
+        }
+
+        return new double[][][]{lr, ce};
     }
 
     /**
@@ -575,6 +653,35 @@ public final class Fask implements GraphSearch {
         throw new IllegalStateException("Left right rule not configured: " + leftRight);
     }
 
+    // The FASK left-right rules for variables i and j, from the statistics calculated by getLrAndCeScores.
+    private double faskLeftRightV2(int i, int j, double[][] ce, double[][] corr, double[] signs) {
+        double lr = ce[i][j] - ce[j][i];
+
+        if (empirical) {
+            lr *= signs[i] * signs[j];
+        }
+
+        if (corr[i][j] < delta) {
+            lr *= -1;
+        }
+
+        return lr;
+    }
+
+    private double faskLeftRightV1(int i, int j, double[][] ce, double[][] corr, double[] signs) {
+        double lr = ce[i][j] - ce[j][i];
+        double r = corr[i][j];
+
+        if (empirical) {
+            r *= signs[i] * signs[j];
+        }
+
+        lr *= signum(r);
+        if (r < delta) lr *= -1;
+
+        return lr;
+    }
+
     private double faskLeftRightV2(double[] x, double[] y) {
         double sx = skewness(x);
         double sy = skewness(y);
@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.data.KnowledgeEdge;
 import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.IntIndexedGraph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
@@ -179,6 +180,7 @@ public final class FciOrient {
         fciOrientbk(knowledge, graph, graph.getNodes());
 
         List<Node> nodes = graph.getNodes();
+        IntIndexedGraph indexed = graph instanceof IntIndexedGraph ? (IntIndexedGraph) graph : null;
 
         for (Node b : nodes) {
             if (Thread.currentThread().isInterrupted()) {
@@ -186,6 +188,7 @@ public final class FciOrient {
             }
 
             List<Node> adjacentNodes = graph.getAdjacentNodes(b);
+            int[] adjacentIds = getIds(adjacentNodes, indexed);
 
             if (adjacentNodes.size() < 2) {
                 continue;
@@ -199,14 +202,14 @@ public final class FciOrient {
                     break;
                 }
 
-                Node a = adjacentNodes.get(combination[0]);
-                Node c = adjacentNodes.get(combination[1]);
-
                 // Skip triples that are shielded.
-                if (graph.isAdjacentTo(a, c)) {
+                if (isAdjacentTo(combination, adjacentNodes, adjacentIds, graph)) {
                     continue;
                 }
 
+                Node a = adjacentNodes.get(combination[0]);
+                Node c = adjacentNodes.get(combination[1]);
+
                 if (graph.isDefCollider(a, b, c)) {
                     continue;
                 }
@@ -327,6 +330,7 @@ public final class FciOrient {
     // triples multiple times per iteration of doFinalOrientation.
     public void rulesR1R2cycle(Graph graph) {
         List<Node> nodes = graph.getNodes();
+        IntIndexedGraph indexed = graph instanceof IntIndexedGraph ? (IntIndexedGraph) graph : null;
 
         for (Node B : nodes) {
             if (Thread.currentThread().isInterrupted()) {
@@ -334,6 +338,7 @@ public final class FciOrient {
             }
 
             List<Node> adj = graph.getAdjacentNodes(B);
+            int[] adjIds = getIds(adj, indexed);
 
             if (adj.size() < 2) {
                 continue;
@@ -346,15 +351,41 @@ public final class FciOrient {
                 Node A = adj.get(combination[0]);
                 Node C = adj.get(combination[1]);
 
-                //choice gen doesnt do diff orders, so must switch A & C around.
-                ruleR1(A, B, C, graph);
-                ruleR1(C, B, A, graph);
-                ruleR2(A, B, C, graph);
-                ruleR2(C, B, A, graph);
+                //choice gen doesnt do diff orders, so must switch A & C around. R1 applies only where A and C
+                // are not adjacent and R2 only where they are, and neither changes adjacencies.
+                if (isAdjacentTo(combination, adj, adjIds, graph)) {
+                    ruleR2(A, B, C, graph);
+                    ruleR2(C, B, A, graph);
+                } else {
+                    ruleR1(A, B, C, graph);
+                    ruleR1(C, B, A, graph);
+                }
             }
         }
     }
 
+    // The ids of the given nodes, if the graph is indexed by id, otherwise null.
+    private static int[] getIds(List<Node> nodes, IntIndexedGraph indexed) {
+        if (indexed == null) return null;
+
+        int[] ids = new int[nodes.size()];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = indexed.getId(nodes.get(i));
+        }
+
+        return ids;
+    }
+
+    // True if the two nodes of the given combination of adjacents are adjacent, compared by id if ids are given.
+    private static boolean isAdjacentTo(int[] combination, List<Node> adj, int[] adjIds, Graph graph) {
+        if (adjIds != null) {
+            return ((IntIndexedGraph) graph).isAdjacentTo(adjIds[combination[0]], adjIds[combination[1]]);
+        }
+
+        return graph.isAdjacentTo(adj.get(combination[0]), adj.get(combination[1]));
+    }
+
     /// R1, away from collider
     // If a*->bo-*c and a, c not adjacent then a*->b->c
     private void ruleR1(Node a, Node b, Node c, Graph graph) {
@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.data.KnowledgeEdge;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.DepthChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.TetradLogger;
 import org.jetbrains.annotations.NotNull;
 
@@ -159,8 +160,8 @@ public final class Fges implements GraphSearch, GraphScorer {
     // A initial adjacencies graph.
     private Graph adjacencies = null;
 
-    // The graph being constructed.
-    private Graph graph;
+    // The graph being constructed. The searches below query it by node id.
+    private IntIndexedGraph graph;
 
     // Arrows with the same totalScore are stored in this list to distinguish their order in sortedArrows.
     // The ordering doesn't matter; it just have to be transitive.
@@ -209,8 +210,8 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         setScore(score);
         this.maxThreads = parallelism;
-        this.pool = new ForkJoinPool(parallelism);
-        this.graph = new EdgeListGraph(getVariables());
+        this.pool = ForkJoinPoolInstance.getInstance().getPool(parallelism);
+        this.graph = new IntIndexedGraph(getVariables());
     }
 
     //==========================PUBLIC METHODS==========================//
@@ -226,15 +227,15 @@ public final class Fges implements GraphSearch, GraphScorer {
         long start = System.currentTimeMillis();
         topGraphs.clear();
 
-        graph = new EdgeListGraph(getVariables());
+        // The search works on an int-indexed copy of the graph and returns an EdgeListGraph.
+        graph = new IntIndexedGraph(getVariables());
 
         if (adjacencies != null) {
             adjacencies = GraphUtils.replaceNodes(adjacencies, getVariables());
         }
 
         if (initialGraph != null) {
-            graph = new EdgeListGraph(initialGraph);
-            graph = GraphUtils.replaceNodes(graph, getVariables());
+            graph = new IntIndexedGraph(GraphUtils.replaceNodes(new EdgeListGraph(initialGraph), getVariables()));
         }
 
         addRequiredEdges(graph);
@@ -264,7 +265,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         this.modelScore = scoreDag(SearchGraphUtils.dagFromPattern(graph), true);
 
-        return graph;
+        return new EdgeListGraph(graph);
     }
 
     /**
@@ -1156,29 +1157,30 @@ public final class Fges implements GraphSearch, GraphScorer {
     }
 
     private Set<Node> getCommonAdjacents(Node x, Node y) {
-        Set<Node> adj = new HashSet<>(graph.getAdjacentNodes(x));
-        adj.retainAll(graph.getAdjacentNodes(y));
+        int _y = graph.getId(y);
+        Set<Node> adj = new HashSet<>();
+
+        for (int z : graph.getAdjacentIds(graph.getId(x))) {
+            if (graph.isAdjacentTo(z, _y)) {
+                adj.add(graph.getNode(z));
+            }
+        }
+
         return adj;
     }
 
 
     // Get all adj that are connected to Y by an undirected edge and not adjacent to X.
     private List<Node> getTNeighbors(Node x, Node y) {
-        List<Edge> yEdges = graph.getEdges(y);
+        int _x = graph.getId(x);
         List<Node> tNeighbors = new ArrayList<>();
 
-        for (Edge edge : yEdges) {
-            if (!Edges.isUndirectedEdge(edge)) {
+        for (int z : graph.getNeighborIds(graph.getId(y), Endpoint.TAIL, Endpoint.TAIL)) {
+            if (graph.isAdjacentTo(z, _x)) {
                 continue;
             }
 
-            Node z = edge.getDistalNode(y);
-
-            if (graph.isAdjacentTo(z, x)) {
-                continue;
-            }
-
-            tNeighbors.add(z);
+            tNeighbors.add(graph.getNode(z));
         }
 
         return tNeighbors;
@@ -1434,21 +1436,17 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Find all adj that are connected to Y by an undirected edge that are adjacent to X (that is, by undirected or
     // directed edge).
     private Set<Node> getNaYX(Node x, Node y) {
-        List<Node> adj = graph.getAdjacentNodes(y);
+        int _x = graph.getId(x);
         Set<Node> nayx = new HashSet<>();
 
-        for (Node z : adj) {
-            if (z == x) {
+        for (int z : graph.getNeighborIds(graph.getId(y), Endpoint.TAIL, Endpoint.TAIL)) {
+            if (z == _x) {
                 continue;
             }
-            Edge yz = graph.getEdge(y, z);
-            if (!Edges.isUndirectedEdge(yz)) {
+            if (!graph.isAdjacentTo(z, _x)) {
                 continue;
             }
-            if (!graph.isAdjacentTo(z, x)) {
-                continue;
-            }
-            nayx.add(z);
+            nayx.add(graph.getNode(z));
         }
 
         return nayx;
@@ -1456,10 +1454,11 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     // Returns true iif the given set forms a clique in the given graph.
     private boolean isClique(Set<Node> nodes) {
-        List<Node> _nodes = new ArrayList<>(nodes);
-        for (int i = 0; i < _nodes.size(); i++) {
-            for (int j = i + 1; j < _nodes.size(); j++) {
-                if (!graph.isAdjacentTo(_nodes.get(i), _nodes.get(j))) {
+        int[] ids = getIds(nodes);
+
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = i + 1; j < ids.length; j++) {
+                if (!graph.isAdjacentTo(ids[i], ids[j])) {
                     return false;
                 }
             }
@@ -1472,34 +1471,35 @@ public final class Fges implements GraphSearch, GraphScorer {
     private boolean semidirectedPathCondition(Node from, Node to, Set<Node> cond) {
         if (from == to) throw new IllegalArgumentException();
 
-        Queue<Node> Q = new LinkedList<>();
-        Set<Node> V = new HashSet<>();
+        int _to = graph.getId(to);
+        boolean[] blocked = new boolean[graph.getNumIds()];
+        boolean[] visited = new boolean[graph.getNumIds()];
+        int[] queue = new int[graph.getNumIds()];
+        int head = 0, tail = 0;
 
-        Q.add(from);
-        V.add(from);
+        for (int c : getIds(cond)) {
+            blocked[c] = true;
+        }
+
+        queue[tail++] = graph.getId(from);
+        visited[queue[0]] = true;
 
-        while (!Q.isEmpty()) {
-            Node t = Q.remove();
+        while (head < tail) {
+            int t = queue[head++];
 
-            if (cond.contains(t)) {
+            if (blocked[t]) {
                 continue;
             }
 
-            if (t == to) {
+            if (t == _to) {
                 return false;
             }
 
-            for (Node u : graph.getAdjacentNodes(t)) {
-                Edge edge = graph.getEdge(t, u);
-                Node c = traverseSemiDirected(t, edge);
-
-                if (c == null) {
-                    continue;
-                }
-
-                if (!V.contains(c)) {
-                    V.add(c);
-                    Q.offer(c);
+            // A semidirected path can step from t along any edge with a tail at t.
+            for (int c : graph.getNeighborIds(t, Endpoint.TAIL, null)) {
+                if (!visited[c]) {
+                    visited[c] = true;
+                    queue[tail++] = c;
                 }
             }
         }
@@ -1507,19 +1507,15 @@ public final class Fges implements GraphSearch, GraphScorer {
         return true;
     }
 
-    // Used to find semidirected paths for cycle checking.
-    private static Node traverseSemiDirected(Node node, Edge edge) {
-        if (node == edge.getNode1()) {
-            if (edge.getEndpoint1() == Endpoint.TAIL) {
-                return edge.getNode2();
-            }
-        } else if (node == edge.getNode2()) {
-            if (edge.getEndpoint2() == Endpoint.TAIL) {
-                return edge.getNode1();
-            }
+    private int[] getIds(Set<Node> nodes) {
+        int[] ids = new int[nodes.size()];
+        int i = 0;
+
+        for (Node node : nodes) {
+            ids[i++] = graph.getId(node);
         }
 
-        return null;
+        return ids;
     }
 
     // Runs Meek rules on just the changed adj.
@@ -665,10 +665,11 @@ public final class FgesMb {
     }
 
     /**
-     * Creates a new processors pool with the specified number of threads.
+     * Sets the pool to a new one with the specified number of threads, or to the pool the caller is running in, if
+     * any; see ForkJoinPoolInstance.getPool(int).
      */
     public void setParallelism(int numProcessors) {
-        this.pool = new ForkJoinPool(numProcessors);
+        this.pool = ForkJoinPoolInstance.getInstance().getPool(numProcessors);
     }
 
     /**
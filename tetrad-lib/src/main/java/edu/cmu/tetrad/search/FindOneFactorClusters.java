@@ -27,6 +27,7 @@ import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.*;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.sqrt;
@@ -270,55 +271,70 @@ public class FindOneFactorClusters {
 
         log("Finding pure triples.");
 
-        ChoiceGenerator gen = new ChoiceGenerator(allVariables.size(), 3);
-        int[] choice;
-        Set<Set<Integer>> puretriples = new HashSet<>();
-        CHOICE:
-        while ((choice = gen.next()) != null) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
-            }
-
-            int n1 = allVariables.get(choice[0]);
-            int n2 = allVariables.get(choice[1]);
-            int n3 = allVariables.get(choice[2]);
+        // The triples are checked in parallel, by first member, and collected in the order in which they would
+        // have been found sequentially.
+        int n = allVariables.size();
+        List<List<Set<Integer>>> found = new ArrayList<>();
+        for (int i = 0; i < n; i++) found.add(new ArrayList<>());
+        Thread caller = Thread.currentThread();
+
+        IntStream.range(0, n - 2).parallel().forEach(i -> {
+            for (int j = i + 1; j < n; j++) {
+                for (int k = j + 1; k < n; k++) {
+                    if (caller.isInterrupted()) {
+                        return;
+                    }
 
-            List<Integer> triple = triple(n1, n2, n3);
+                    int n1 = allVariables.get(i);
+                    int n2 = allVariables.get(j);
+                    int n3 = allVariables.get(k);
 
-            if (zeroCorr(triple)) continue;
+                    List<Integer> triple = triple(n1, n2, n3);
 
-            for (int o : allVariables) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
+                    if (pureTriple(triple, allVariables, caller)) {
+                        found.get(i).add(new HashSet<>(triple));
+                    }
                 }
+            }
+        });
 
-                if (triple.contains(o)) {
-                    continue;
+        Set<Set<Integer>> puretriples = new HashSet<>();
+
+        for (List<Set<Integer>> _found : found) {
+            for (Set<Integer> _cluster : _found) {
+                if (verbose) {
+                    log("++" + variablesForIndices(new ArrayList<>(_cluster)));
                 }
 
-                List<Integer> quartet = quartet(n1, n2, n3, o);
+                puretriples.add(_cluster);
+            }
+        }
 
-                boolean vanishes = vanishes(quartet);
+        return puretriples;
+    }
 
-                if (!vanishes) {
-                    continue CHOICE;
-                }
+    private boolean pureTriple(List<Integer> triple, List<Integer> allVariables, Thread caller) {
+        if (zeroCorr(triple)) return false;
 
-//                if (!(avgSumLnP(quartet) > -20)) {
-//                    continue CHOICE;
-//                }
-            }
+        int n1 = triple.get(0);
+        int n2 = triple.get(1);
+        int n3 = triple.get(2);
 
-            HashSet<Integer> _cluster = new HashSet<>(triple);
+        for (int o : allVariables) {
+            if (caller.isInterrupted()) {
+                return false;
+            }
 
-            if (verbose) {
-                log("++" + variablesForIndices(triple));
+            if (triple.contains(o)) {
+                continue;
             }
 
-            puretriples.add(_cluster);
+            if (!vanishes(n1, n2, n3, o)) {
+                return false;
+            }
         }
 
-        return puretriples;
+        return true;
     }
 
     private Set<Set<Integer>> combinePuretriples(Set<Set<Integer>> puretriples, List<Integer> _variables) {
@@ -957,25 +973,23 @@ public class FindOneFactorClusters {
         }
 
         if (vanishes(quartet)) {
-            for (int o : allVariables()) {
-                if (quartet.contains(o)) continue;
+
+            // The other variables are checked in parallel.
+            return IntStream.range(0, this.variables.size()).parallel().allMatch(o -> {
+                if (quartet.contains(o)) return true;
 
                 for (int i = 0; i < quartet.size(); i++) {
                     List<Integer> _quartet = new ArrayList<>(quartet);
                     _quartet.remove(quartet.get(i));
                     _quartet.add(o);
 
-//                    if (zeroCorr(_quartet)) {
-//                        continue;
-//                    }
-
                     if (!(vanishes(_quartet))) {
                         return false;
                     }
                 }
-            }
 
-            return true;
+                return true;
+            });
         }
 
         return false;
@@ -1154,12 +1168,13 @@ public class FindOneFactorClusters {
 
     private boolean vanishes(int x, int y, int z, int w) {
         if (testType == TestType.TETRAD_DELTA) {
-            Tetrad t1 = new Tetrad(variables.get(x), variables.get(y), variables.get(z), variables.get(w));
-            Tetrad t2 = new Tetrad(variables.get(x), variables.get(y), variables.get(w), variables.get(z));
-
-            return test.getPValue(t1, t2) > alpha;
+            return test.getPValue(new int[]{x, y, z, w}, new int[]{x, y, w, z}) > alpha;
         } else if (testType == TestType.TETRAD_WISHART) {
-            return test2.tetradPValue(x, y, z, w) > alpha && test2.tetradPValue(x, y, w, z) > alpha;
+
+            // The Wishart test keeps its results in fields.
+            synchronized (test2) {
+                return test2.tetradPValue(x, y, z, w) > alpha && test2.tetradPValue(x, y, w, z) > alpha;
+            }
         }
 
         throw new IllegalArgumentException("Only the delta and wishart tests are being used: " + testType);
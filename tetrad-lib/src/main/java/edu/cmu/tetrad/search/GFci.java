@@ -107,7 +107,8 @@ public final class GFci implements GraphSearch {
         fges.setFaithfulnessAssumed(faithfulnessAssumed);
         fges.setMaxDegree(maxDegree);
         fges.setOut(out);
-        graph = fges.search();
+        // The orientation rules below query the graph by node id.
+        graph = new IntIndexedGraph(fges.search());
         Graph fgesGraph = new EdgeListGraphSingleConnections(graph);
 
         sepsets = new SepsetsGreedy(fgesGraph, independenceTest, null, maxDegree);
@@ -158,6 +159,7 @@ public final class GFci implements GraphSearch {
 
         elapsedTime = time2 - time1;
 
+        graph = new EdgeListGraph(graph);
         graph.setPag(true);
 
         return graph;
@@ -21,13 +21,11 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CellCounts;
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.util.CombinationIterator;
 import edu.cmu.tetrad.util.ProbUtils;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 import static java.lang.Math.log;
 
@@ -81,64 +79,46 @@ public final class GSquareTest extends ChiSquareTest {
 //        this.cellTable.setMissingValue(DiscreteVariable.MISSING_VALUE);
     }
 
+    /**
+     * Constructs a test taking cell counts from the given source, for instance an AdTree over the data.
+     */
+    public GSquareTest(DataSet dataSet, double alpha, CellCounts cellCounts) {
+        super(dataSet, alpha, cellCounts);
+    }
+
     /**
      * Calculates g square for a conditional crosstabulation table for independence question 0 _||_ 1 | 2, 3, ...max by
      * summing up g square and degrees of freedom for each conditional table in turn, where rows or columns that consist
      * entirely of zeros have been removed.
      */
-    public synchronized GSquareTest.Result calcGSquare(int[] testIndices) {
-
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
+    public GSquareTest.Result calcGSquare(int[] testIndices) {
+        int[] counts = getCounts(testIndices, 2);
 
         double g2 = 0.0;
         int df = 0;
 
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
+        int numRows = getDims()[testIndices[0]];
+        int numCols = getDims()[testIndices[1]];
+        int numCells = numRows * numCols;
 
+        long[] sumsOverRows = new long[numCols];
+        long[] sumsOverCols = new long[numRows];
         boolean[] attestedRows = new boolean[numRows];
         boolean[] attestedCols = new boolean[numCols];
 
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
+        for (int base = 0; base < counts.length; base += numCells) {
             Arrays.fill(attestedRows, true);
             Arrays.fill(attestedCols, true);
 
-            long total = this.getCellTable().calcMargin(coords, bothVars);
+            long total = margins(counts, base, numRows, numCols, sumsOverRows, sumsOverCols);
 
             double _gSquare = 0.0;
 
-            List<Double> e = new ArrayList<>();
-            List<Long> o = new ArrayList<>();
-
             for (int i = 0; i < numRows; i++) {
                 for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
+                    long sumRow = sumsOverCols[i];
+                    long sumCol = sumsOverRows[j];
+                    long observed = counts[base + i * numCols + j];
 
                     boolean skip = false;
 
@@ -156,16 +136,10 @@ public final class GSquareTest extends ChiSquareTest {
                         continue;
                     }
 
-                    e.add((double) sumCol * sumRow);
-                    o.add(observed);
-                }
-            }
-
-            for (int i = 0; i < o.size(); i++) {
-                double expected = e.get(i) / (double) total;
-
-                if (o.get(i) != 0) {
-                    _gSquare += 2.0 * o.get(i) * log(o.get(i) / expected);
+                    if (observed != 0) {
+                        double expected = (double) sumCol * sumRow / (double) total;
+                        _gSquare += 2.0 * observed * log(observed / expected);
+                    }
                 }
             }
 
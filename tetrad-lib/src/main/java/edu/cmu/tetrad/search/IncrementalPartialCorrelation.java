@@ -0,0 +1,279 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Calculates partial correlations and residual variances from a covariance matrix using Cholesky factors of the
+ * covariance matrices of conditioning sets. Factors are cached by (sorted) conditioning set, and the factor for a set
+ * is obtained from the factor of the set without its largest member by appending one row, at O(k^2) cost instead of
+ * O(k^3) for a fresh inversion. Since FAS tests conditioning sets of size k after those of size k - 1, and FGES
+ * scores parent sets that differ by one variable, most factors are found in the cache or are one extension away.
+ * When the cache is full, factors are evicted one at a time by the clock (second chance) approximation to least
+ * recently used: factors are queued in the order they were cached, and a factor that has been used since it was last
+ * passed over goes to the back of the queue instead of being evicted.
+ * <p>
+ * Safe to share among threads.
+ */
+public class IncrementalPartialCorrelation {
+
+    // The default maximum number of factors to cache.
+    private static final int DEFAULT_MAX_FACTORS = 100000;
+
+    // Pivots smaller than this relative to the corresponding variance are taken to indicate singularity.
+    private static final double SINGULARITY_TOLERANCE = 1e-12;
+
+    // The covariance (or correlation) matrix.
+    private final ICovarianceMatrix cov;
+
+    // Cholesky factors of covariance matrices of conditioning sets, by set.
+    private final Map<Key, Factor> factors = new ConcurrentHashMap<>();
+
+    // The keys of the cached factors, in the order in which they are considered for eviction.
+    private final Queue<Key> evictionOrder = new ConcurrentLinkedQueue<>();
+
+    // The maximum number of factors to cache.
+    private final int maxFactors;
+
+    public IncrementalPartialCorrelation(ICovarianceMatrix cov) {
+        this(cov, DEFAULT_MAX_FACTORS);
+    }
+
+    public IncrementalPartialCorrelation(ICovarianceMatrix cov, int maxFactors) {
+        if (cov == null) throw new NullPointerException("Covariance matrix not specified.");
+        if (maxFactors < 1) throw new IllegalArgumentException("Max factors must be at least 1: " + maxFactors);
+        this.cov = cov;
+        this.maxFactors = maxFactors;
+    }
+
+    /**
+     * @return the partial correlation of x and y given z, where x, y and the members of z are indices into the
+     * covariance matrix.
+     * @throws SingularMatrixException if the covariance matrix of x, y and z is singular.
+     */
+    public double partialCorrelation(int x, int y, int[] z) {
+        Factor factor = factor(sorted(z));
+
+        double[] a = factor.solve(cov, x);
+        double[] b = factor.solve(cov, y);
+
+        double sxx = cov.getValue(x, x) - dot(a, a);
+        double syy = cov.getValue(y, y) - dot(b, b);
+        double sxy = cov.getValue(x, y) - dot(a, b);
+
+        if (sxx <= SINGULARITY_TOLERANCE * cov.getValue(x, x) || syy <= SINGULARITY_TOLERANCE * cov.getValue(y, y)) {
+            throw new SingularMatrixException();
+        }
+
+        return sxy / sqrt(sxx * syy);
+    }
+
+    /**
+     * @return the variance of the residual of the linear regression of y on z, where y and the members of z are
+     * indices into the covariance matrix.
+     * @throws SingularMatrixException if the covariance matrix of z is singular.
+     */
+    public double residualVariance(int y, int[] z) {
+        Factor factor = factor(sorted(z));
+        double[] a = factor.solve(cov, y);
+        return cov.getValue(y, y) - dot(a, a);
+    }
+
+    /**
+     * Removes all cached factors.
+     */
+    public void clear() {
+        factors.clear();
+        evictionOrder.clear();
+    }
+
+    /**
+     * @return the number of factors currently cached.
+     */
+    public int getNumFactors() {
+        return factors.size();
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    private Factor factor(int[] z) {
+        Factor factor = Factor.EMPTY;
+        int start = z.length;
+
+        // Find the longest prefix of z with a cached factor.
+        while (start > 0) {
+            Factor cached = factors.get(new Key(z, start));
+
+            if (cached != null) {
+                if (!cached.used) cached.used = true;
+                factor = cached;
+                break;
+            }
+
+            start--;
+        }
+
+        for (int k = start; k < z.length; k++) {
+            factor = factor.extend(cov, z[k]);
+            Key key = new Key(factor.vars, factor.vars.length);
+
+            if (factors.putIfAbsent(key, factor) == null) {
+                evictionOrder.offer(key);
+                evict();
+            }
+        }
+
+        return factor;
+    }
+
+    // Evicts factors until at most maxFactors are cached, giving factors used since they were last passed over a
+    // second chance. Keys of factors already removed are dropped from the queue.
+    private void evict() {
+        while (factors.size() > maxFactors) {
+            Key key = evictionOrder.poll();
+            if (key == null) return;
+
+            Factor factor = factors.get(key);
+
+            if (factor != null && factor.used) {
+                factor.used = false;
+                evictionOrder.offer(key);
+            } else {
+                factors.remove(key);
+            }
+        }
+    }
+
+    private static int[] sorted(int[] z) {
+        int[] _z = Arrays.copyOf(z, z.length);
+        Arrays.sort(_z);
+        return _z;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    /**
+     * The lower triangular Cholesky factor L of the covariance matrix of a conditioning set, packed by rows, so that
+     * L(i, j) is at i * (i + 1) / 2 + j.
+     */
+    private static class Factor {
+        static final Factor EMPTY = new Factor(new int[0], new double[0]);
+
+        final int[] vars;
+        final double[] l;
+
+        // True if the factor has been found in the cache since eviction last passed over it.
+        volatile boolean used;
+
+        Factor(int[] vars, double[] l) {
+            this.vars = vars;
+            this.l = l;
+        }
+
+        // Solves L w = cov(vars, v) by forward substitution.
+        double[] solve(ICovarianceMatrix cov, int v) {
+            int k = vars.length;
+            double[] w = new double[k];
+
+            for (int i = 0; i < k; i++) {
+                int row = i * (i + 1) / 2;
+                double s = cov.getValue(vars[i], v);
+                for (int j = 0; j < i; j++) s -= l[row + j] * w[j];
+                w[i] = s / l[row + i];
+            }
+
+            return w;
+        }
+
+        // Appends v to the conditioning set, adding one row to L.
+        Factor extend(ICovarianceMatrix cov, int v) {
+            int k = vars.length;
+            double[] w = solve(cov, v);
+
+            double vv = cov.getValue(v, v);
+            double d2 = vv - dot(w, w);
+
+            if (!(d2 > SINGULARITY_TOLERANCE * vv)) {
+                throw new SingularMatrixException();
+            }
+
+            int[] _vars = Arrays.copyOf(vars, k + 1);
+            _vars[k] = v;
+
+            double[] _l = Arrays.copyOf(l, (k + 1) * (k + 2) / 2);
+            System.arraycopy(w, 0, _l, k * (k + 1) / 2, k);
+            _l[k * (k + 1) / 2 + k] = sqrt(d2);
+
+            return new Factor(_vars, _l);
+        }
+    }
+
+    /**
+     * A conditioning set given as the first length members of an array.
+     */
+    private static class Key {
+        private final int[] vars;
+        private final int length;
+        private final int hash;
+
+        Key(int[] vars, int length) {
+            this.vars = vars;
+            this.length = length;
+
+            int h = 1;
+            for (int i = 0; i < length; i++) h = 31 * h + vars[i];
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            if (key.hash != hash || key.length != length) return false;
+
+            for (int i = 0; i < length; i++) {
+                if (vars[i] != key.vars[i]) return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -192,24 +192,7 @@ public final class IndTestChiSquare implements IndependenceTest {
             }
         }
 
-        // For testing x, y given z1,...,zn, set up an array of length
-        // n + 2 containing the indices of these variables in order.
-        int[] testIndices = new int[2 + z.size()];
-
-        testIndices[0] = variables.indexOf(x);
-        testIndices[1] = variables.indexOf(y);
-
-        for (int i = 0; i < z.size(); i++) {
-            testIndices[i + 2] = variables.indexOf(z.get(i));
-        }
-
-        // the following is lame code--need a better test
-        for (int i = 0; i < testIndices.length; i++) {
-            if (testIndices[i] < 0) {
-                throw new IllegalArgumentException("Variable " + i +
-                        " was not used in the constructor.");
-            }
-        }
+        int[] testIndices = getTestIndices(x, y, z);
 
         ChiSquareTest.Result result = chiSquareTest.calcChiSquare(testIndices);
         this.xSquare = result.getXSquare();
@@ -232,6 +215,38 @@ public final class IndTestChiSquare implements IndependenceTest {
         return result.isIndep();
     }
 
+    /**
+     * @return the p value of x _||_ y | z. The test is computed without recording it in this object's fields, so
+     * this may be called from several threads at once.
+     */
+    public double getPValue(Node x, Node y, List<Node> z) {
+        return chiSquareTest.calcChiSquare(getTestIndices(x, y, z)).getPValue();
+    }
+
+    // The indices of x, y and the members of z, in that order.
+    private int[] getTestIndices(Node x, Node y, List<Node> z) {
+        // For testing x, y given z1,...,zn, set up an array of length
+        // n + 2 containing the indices of these variables in order.
+        int[] testIndices = new int[2 + z.size()];
+
+        testIndices[0] = variables.indexOf(x);
+        testIndices[1] = variables.indexOf(y);
+
+        for (int i = 0; i < z.size(); i++) {
+            testIndices[i + 2] = variables.indexOf(z.get(i));
+        }
+
+        // the following is lame code--need a better test
+        for (int i = 0; i < testIndices.length; i++) {
+            if (testIndices[i] < 0) {
+                throw new IllegalArgumentException("Variable " + i +
+                        " was not used in the constructor.");
+            }
+        }
+
+        return testIndices;
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         List<Node> zList = Arrays.asList(z);
         return isIndependent(x, y, zList);
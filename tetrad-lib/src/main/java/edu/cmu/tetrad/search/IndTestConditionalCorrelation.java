@@ -304,6 +304,13 @@ public final class IndTestConditionalCorrelation implements IndependenceTest, Sc
     public void setKernelRegressionSampleSize(int i) {
         cci.setKernelRegressionSampleSize(i);
     }
+
+    /**
+     * @see ConditionalCorrelationIndependence#setProjectionDimension(int)
+     */
+    public void setProjectionDimension(int projectionDimension) {
+        cci.setProjectionDimension(projectionDimension);
+    }
 }
 
 
@@ -23,12 +23,14 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.DSeparationOracle;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.NodeType;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.Matrix;
+import java.beans.PropertyChangeListener;
 import java.util.*;
 
 /**
@@ -53,6 +55,19 @@ public class IndTestDSep implements IndependenceTest {
     private boolean verbose = false;
     private double pvalue = 0;
 
+    /**
+     * A snapshot of the graph for answering d-separation queries quickly, or null if the graph is not supported by
+     * DSeparationOracle. It is taken again after the graph reports a change, or if the numbers of nodes or edges of
+     * the graph change.
+     */
+    private DSeparationOracle oracle;
+    private volatile boolean oracleStale = true;
+    private int oracleNumNodes = -1;
+    private int oracleNumEdges = -1;
+
+    // Marks the oracle stale when the graph reports a change; removed from a graph when it is replaced.
+    private final PropertyChangeListener listener = e -> oracleStale = true;
+
     public IndTestDSep(Graph graph) {
         this(graph, false);
     }
@@ -66,6 +81,7 @@ public class IndTestDSep implements IndependenceTest {
         }
 
         this.graph = graph;
+        listen(graph);
 
         this._observedVars = calcVars(graph, keepLatents);
         this.observedVars = new HashSet<>(_observedVars);
@@ -152,7 +168,7 @@ public class IndTestDSep implements IndependenceTest {
             }
         }
 
-        boolean dSeparated = !getGraph().isDConnectedTo(x, y, z);
+        boolean dSeparated = !isDConnectedTo(x, y, z);
 
         if (verbose) {
             if (dSeparated) {
@@ -207,7 +223,7 @@ public class IndTestDSep implements IndependenceTest {
             }
         }
 
-        return getGraph().isDSeparatedFrom(x, y, z);
+        return !isDConnectedTo(x, y, z);
     }
 
     /**
@@ -266,8 +282,11 @@ public class IndTestDSep implements IndependenceTest {
         return this.graph;
     }
     
-    public void setGraph(Graph graph) {
+    public synchronized void setGraph(Graph graph) {
+        unlisten(this.graph);
         this.graph = graph;
+        listen(graph);
+        this.oracleStale = true;
     }
 
     public String toString() {
@@ -319,10 +338,41 @@ public class IndTestDSep implements IndependenceTest {
         this.verbose = verbose;
     }
 
-    
-}
+    private boolean isDConnectedTo(Node x, Node y, List<Node> z) {
+        DSeparationOracle oracle = getOracle();
 
+        if (oracle == null) {
+            return getGraph().isDConnectedTo(x, y, z);
+        }
 
+        return oracle.isDConnectedTo(x, y, z);
+    }
 
+    private void listen(Graph graph) {
+        try {
+            graph.addPropertyChangeListener(listener);
+        } catch (UnsupportedOperationException e) {
+            // Only changes in the numbers of nodes or edges will be noticed.
+        }
+    }
+
+    private void unlisten(Graph graph) {
+        try {
+            graph.removePropertyChangeListener(listener);
+        } catch (UnsupportedOperationException e) {
+            // It was never added.
+        }
+    }
 
+    private synchronized DSeparationOracle getOracle() {
+        if (oracleStale || graph.getNumNodes() != oracleNumNodes || graph.getNumEdges() != oracleNumEdges) {
+            oracleStale = false;
+            oracle = DSeparationOracle.supports(graph) ? new DSeparationOracle(graph) : null;
+            oracleNumNodes = graph.getNumNodes();
+            oracleNumEdges = graph.getNumEdges();
+        }
+
+        return oracle;
+    }
+}
 
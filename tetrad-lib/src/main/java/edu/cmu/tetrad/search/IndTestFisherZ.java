@@ -48,6 +48,11 @@ public final class IndTestFisherZ implements IndependenceTest {
      */
     private CorrelationMatrix cor;
 
+    /**
+     * Partial correlations from cached Cholesky factors of the correlation matrix, when there is one.
+     */
+    private IncrementalPartialCorrelation partialCorrelations;
+
     /**
      * The variables of the covariance matrix, in order. (Unmodifiable list.)
      */
@@ -66,10 +71,14 @@ public final class IndTestFisherZ implements IndependenceTest {
     private final Map<Node, Integer> indexMap;
     private final Map<String, Node> nameMap;
     private boolean verbose = true;
-    private double p = Double.NaN;
     private final NormalDistribution normal = new NormalDistribution(0, 1);
     private boolean sellke = false;
-    private double r = Double.NaN;
+
+    /**
+     * The result of the most recent test, for getPValue(), getScore() and getBic(). Searches that run tests from
+     * several threads should use getPValue(x, y, z) or test(x, y, z) instead.
+     */
+    private volatile Result lastResult = new Result(Double.NaN, Double.NaN, 0);
 
     private final Map<Node, Integer> nodesHash;
 
@@ -92,6 +101,7 @@ public final class IndTestFisherZ implements IndependenceTest {
 
         if (!dataSet.existsMissingValue()) {
             this.cor = new CorrelationMatrix(dataSet);
+            this.partialCorrelations = new IncrementalPartialCorrelation(cor);
             this.variables = cor.getVariables();
             this.indexMap = indexMap(variables);
             this.nameMap = nameMap(variables);
@@ -139,6 +149,7 @@ public final class IndTestFisherZ implements IndependenceTest {
     public IndTestFisherZ(Matrix data, List<Node> variables, double alpha) {
         this.dataSet = new BoxDataSet(new VerticalDoubleDataBox(data.transpose().toArray()), variables);
         this.cor = new CorrelationMatrix(dataSet);
+        this.partialCorrelations = new IncrementalPartialCorrelation(cor);
         this.variables = Collections.unmodifiableList(variables);
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -159,6 +170,7 @@ public final class IndTestFisherZ implements IndependenceTest {
      */
     public IndTestFisherZ(ICovarianceMatrix covMatrix, double alpha) {
         this.cor = new CorrelationMatrix(covMatrix);
+        this.partialCorrelations = new IncrementalPartialCorrelation(cor);
         this.variables = covMatrix.getVariables();
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -211,15 +223,8 @@ public final class IndTestFisherZ implements IndependenceTest {
      * @return true iff x _||_ y | z.
      * @throws RuntimeException if a matrix singularity is encountered.
      */
-    public synchronized boolean isIndependent(Node x, Node y, List<Node> z) {
-        double p = getPValue(x, y, z);
-//        this.p = p;
-
-//        if (isSellke()) {
-//            return p > SearchGraphUtils.getSelkeAlpha(p, this.alpha);
-//        } else {
-        return p > alpha;
-//        }
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        return getPValue(x, y, z) > alpha;
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -239,15 +244,27 @@ public final class IndTestFisherZ implements IndependenceTest {
      * @return the probability associated with the most recently computed independence test.
      */
     public double getPValue() {
-        return p;
-//        return p > alpha ? 1.0 : 0.0;
+        return lastResult.getPValue();
     }
 
+    /**
+     * @return the p value of x _||_ y | z. This may be called from several threads at once.
+     * @throws SingularMatrixException if the correlation matrix of x, y and z is singular.
+     */
     public double getPValue(Node x, Node y, List<Node> z) {
-        List<Node> allVars = new ArrayList<>(z);
-        allVars.add(x);
-        allVars.add(y);
+        Result result = test(x, y, z);
+        this.lastResult = result;
+        return result.getPValue();
+    }
 
+    /**
+     * Runs the test of x _||_ y | z without recording it as the most recent result, so this is reentrant and may be
+     * called concurrently on a shared instance.
+     *
+     * @return the p value, partial correlation and degrees of freedom of the test.
+     * @throws SingularMatrixException if the correlation matrix of x, y and z is singular.
+     */
+    public Result test(Node x, Node y, List<Node> z) {
         double r;
         int n;
 
@@ -255,23 +272,73 @@ public final class IndTestFisherZ implements IndependenceTest {
             r = partialCorrelation(x, y, z, null);
             n = sampleSize();
         } else {
+            List<Node> allVars = new ArrayList<>(z);
+            allVars.add(x);
+            allVars.add(y);
+
             List<Integer> rows = getRows(allVars, nodesHash);
             r = getR(x, y, z, rows);
             n = rows.size();
         }
 
-        this.r = r;
+        double df = n - 3. - z.size();
         double q = .5 * (log(1.0 + abs(r)) - log(1.0 - abs(r)));
-        double fisherZ = sqrt(n - 3. - z.size()) * q;
+        double fisherZ = sqrt(df) * q;
         double p = 2 * (1.0 - normal.cumulativeProbability(fisherZ));
 
-        this.p = p;
-        return p;
+        return new Result(p, r, df);
+    }
+
+    /**
+     * The immutable outcome of a single Fisher Z test.
+     */
+    public static final class Result {
+        private final double pValue;
+        private final double r;
+        private final double df;
+
+        public Result(double pValue, double r, double df) {
+            this.pValue = pValue;
+            this.r = r;
+            this.df = df;
+        }
+
+        /**
+         * @return the p value of the test.
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        /**
+         * @return the sample partial correlation of x and y given z.
+         */
+        public double getR() {
+            return r;
+        }
+
+        /**
+         * @return the degrees of freedom, n - 3 - |z|.
+         */
+        public double getDf() {
+            return df;
+        }
+
+        public String toString() {
+            return "p = " + pValue + " r = " + r + " df = " + df;
+        }
     }
 
     //======================PRIVATE==========================//
 
     private double partialCorrelation(Node x, Node y, List<Node> z, List<Integer> rows) throws SingularMatrixException {
+        if (rows == null && partialCorrelations != null) {
+            int[] _z = new int[z.size()];
+            for (int i = 0; i < z.size(); i++) _z[i] = indexMap.get(z.get(i));
+
+            return partialCorrelations.partialCorrelation(indexMap.get(x), indexMap.get(y), _z);
+        }
+
         int[] indices = new int[z.size() + 2];
         indices[0] = indexMap.get(x);
         indices[1] = indexMap.get(y);
@@ -331,6 +398,7 @@ public final class IndTestFisherZ implements IndependenceTest {
 
 
     public double getBic() {
+        double r = lastResult.getR();
         return -sampleSize() * Math.log(1.0 - r * r) - Math.log(sampleSize());
     }
 
@@ -481,7 +549,7 @@ public final class IndTestFisherZ implements IndependenceTest {
 
     @Override
     public double getScore() {
-        return alpha - p;//Math.abs(fisherZ) - cutoff;
+        return alpha - lastResult.getPValue();//Math.abs(fisherZ) - cutoff;
     }
 
     public boolean isVerbose() {
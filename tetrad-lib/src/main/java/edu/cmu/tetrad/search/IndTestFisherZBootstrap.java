@@ -70,14 +70,12 @@ public class IndTestFisherZBootstrap implements IndependenceTest {
         setAlpha(alpha);
 
         this.numBootstrapSamples = numBootstrapSamples;
-        Matrix[] bootstrapSamples = new Matrix[numBootstrapSamples];
         this.tests = new IndependenceTest[numBootstrapSamples];
 
+        // The samples are views of the rows of the data set; see ResampledDataBox.
         for (int i = 0; i < numBootstrapSamples; i++) {
-            Matrix fullData = dataSet.getDoubleData();
-            bootstrapSamples[i] = DataUtils.getBootstrapSample(fullData, bootstrapSampleSize);
-            tests[i] = new IndTestFisherZ(bootstrapSamples[i], dataSet.getVariables(), alpha);
-
+            DataSet bootstrapSample = DataUtils.getBootstrapView(dataSet, bootstrapSampleSize);
+            tests[i] = new IndTestFisherZ(bootstrapSample, alpha);
         }
 
     }
@@ -21,6 +21,8 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CategoryBitmapIndex;
+import edu.cmu.tetrad.data.CellCounts;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
@@ -99,6 +101,18 @@ public final class IndTestGSquare implements IndependenceTest {
      * @param alpha   the significance level of the tests.
      */
     public IndTestGSquare(DataSet dataSet, double alpha) {
+        this(dataSet, alpha, new CategoryBitmapIndex(dataSet));
+    }
+
+    /**
+     * Constructs a new independence checker that takes cell counts from the given source, for instance an AdTree
+     * over the data, which may be shared with other tests and scores.
+     *
+     * @param dataSet    the discrete data set.
+     * @param alpha      the significance level of the tests.
+     * @param cellCounts cell counts for the data set.
+     */
+    public IndTestGSquare(DataSet dataSet, double alpha, CellCounts cellCounts) {
 
         // The g square test requires as parameters: (a) the data set
         // itself, (b) an array containing the number of values for
@@ -123,7 +137,7 @@ public final class IndTestGSquare implements IndependenceTest {
             numVals[i] = v.getNumCategories();
         }
 
-        this.gSquareTest = new GSquareTest(dataSet, alpha);
+        this.gSquareTest = new GSquareTest(dataSet, alpha, cellCounts);
     }
 
     /**
@@ -190,26 +204,7 @@ public final class IndTestGSquare implements IndependenceTest {
             }
         }
 
-        // For testing x, y given z1,...,zn, set up an array of length
-        // n + 2 containing the indices of these variables in order.
-        int[] testIndices = new int[2 + z.size()];
-
-        testIndices[0] = variables.indexOf(x);
-        testIndices[1] = variables.indexOf(y);
-
-        for (int i = 0; i < z.size(); i++) {
-            testIndices[i + 2] = variables.indexOf(z.get(i));
-        }
-
-        // the following is lame code--need a better test
-        for (int i = 0; i < testIndices.length; i++) {
-            if (testIndices[i] < 0) {
-                throw new IllegalArgumentException(
-                        "Variable " + i + " was not used in the constructor.");
-            }
-        }
-
-        //        System.out.println("Testing " + x + " _||_ " + y + " | " + z);
+        int[] testIndices = getTestIndices(x, y, z);
 
         GSquareTest.Result result = gSquareTest.calcGSquare(testIndices);
         this.gSquare = result.getGSquare();
@@ -236,6 +231,38 @@ public final class IndTestGSquare implements IndependenceTest {
         return result.isIndep();
     }
 
+    /**
+     * @return the p value of x _||_ y | z. The test is computed without recording it in this object's fields, so
+     * this may be called from several threads at once.
+     */
+    public double getPValue(Node x, Node y, List<Node> z) {
+        return gSquareTest.calcGSquare(getTestIndices(x, y, z)).getPValue();
+    }
+
+    // The indices of x, y and the members of z, in that order.
+    private int[] getTestIndices(Node x, Node y, List<Node> z) {
+        // For testing x, y given z1,...,zn, set up an array of length
+        // n + 2 containing the indices of these variables in order.
+        int[] testIndices = new int[2 + z.size()];
+
+        testIndices[0] = variables.indexOf(x);
+        testIndices[1] = variables.indexOf(y);
+
+        for (int i = 0; i < z.size(); i++) {
+            testIndices[i + 2] = variables.indexOf(z.get(i));
+        }
+
+        // the following is lame code--need a better test
+        for (int i = 0; i < testIndices.length; i++) {
+            if (testIndices[i] < 0) {
+                throw new IllegalArgumentException(
+                        "Variable " + i + " was not used in the constructor.");
+            }
+        }
+
+        return testIndices;
+    }
+
     public boolean isIndependent(Node x, Node y, Node... z) {
         List<Node> zList = Arrays.asList(z);
         return isIndependent(x, y, zList);
@@ -77,7 +77,18 @@ public interface IndependenceTest {
      */
     double getPValue();
 
-//    double getPValue(Node x, Node y, List<Node> z);
+    /**
+     * @return the p value of the test x _||_ y | z. Unlike a call to isIndependent followed by getPValue(), this may
+     * be called from several threads at once on the same test. Tests that can compute p values without recording
+     * them in fields should override this; by default the test is run and its p value read while holding the
+     * test's monitor.
+     */
+    default double getPValue(Node x, Node y, List<Node> z) {
+        synchronized (this) {
+            isIndependent(x, y, z);
+            return getPValue();
+        }
+    }
 
     /**
      * @return the list of variables over which this independence checker is capable of determinining independence
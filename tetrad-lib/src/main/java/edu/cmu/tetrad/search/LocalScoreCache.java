@@ -21,48 +21,222 @@
 
 package edu.cmu.tetrad.search;
 
-import org.apache.commons.collections4.map.MultiKeyMap;
-
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Stores a map from (variable, parents) to score.
+ * <p>
+ * The cache is a bounded, set-associative table keyed on the variable and an order-independent
+ * 64-bit hash of the parent set, so lookups neither box the parents nor allocate. Reads and
+ * writes go through an AtomicReferenceArray of entries whose keys and scores are final, so the
+ * cache may be shared by concurrent searches without locking. Each entry also records when it
+ * was last used, from a shared atomic clock; when a set is full the least recently used entry
+ * in it is evicted.
  *
  * @author Joseph Ramsey
  */
 public class LocalScoreCache {
-    private MultiKeyMap map;
+
+    // The number of entries in each set of the table.
+    private static final int WAYS = 4;
+
+    // The default number of entries the cache will hold.
+    private static final int DEFAULT_CAPACITY = 1 << 20;
+
+    // The slots of the table, WAYS consecutive slots per set.
+    private final AtomicReferenceArray<Entry> slots;
+
+    // The number of sets minus one; the number of sets is a power of two.
+    private final int setMask;
+
+    // Statistics.
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Access clock for LRU eviction.
+    private final AtomicLong tick = new AtomicLong();
 
     public LocalScoreCache() {
-        map = new MultiKeyMap();
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The maximum number of (variable, parents) scores to retain. This is rounded
+     *                 up to a power of two.
+     */
+    public LocalScoreCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+
+        int sets = 1;
+
+        while (sets * WAYS < capacity && sets < (1 << 28)) {
+            sets <<= 1;
+        }
+
+        this.setMask = sets - 1;
+        this.slots = new AtomicReferenceArray<>(sets * WAYS);
     }
 
     public void add(int variable, int[] parents, double score) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+        long hash = hash(variable, parents);
+        int base = base(hash);
 
-        for (int parent : parents) {
-            _parents.add(parent);
+        int[] _parents = Arrays.copyOf(parents, parents.length);
+        Arrays.sort(_parents);
+        Entry entry = new Entry(variable, _parents, hash, score, tick.getAndIncrement());
+
+        int victim = base;
+        long oldest = Long.MAX_VALUE;
+
+        for (int i = base; i < base + WAYS; i++) {
+            Entry e = slots.get(i);
+
+            if (e == null) {
+                if (slots.compareAndSet(i, null, entry)) {
+                    return;
+                }
+
+                e = slots.get(i);
+
+                if (e == null) {
+                    continue;
+                }
+            }
+
+            if (e.matches(variable, parents, hash)) {
+                slots.set(i, entry);
+                return;
+            }
+
+            if (e.lastUsed < oldest) {
+                oldest = e.lastUsed;
+                victim = i;
+            }
         }
 
-        map.put(variable, _parents, score);
+        slots.set(victim, entry);
+        evictions.increment();
     }
 
+    /**
+     * @return The cached score for the given variable and parents, or NaN if it is not in the cache.
+     */
     public double get(int variable, int[] parents) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+        long hash = hash(variable, parents);
+        int base = base(hash);
 
-        for (int parent : parents) {
-            _parents.add(parent);
+        for (int i = base; i < base + WAYS; i++) {
+            Entry e = slots.get(i);
+
+            if (e != null && e.matches(variable, parents, hash)) {
+                e.lastUsed = tick.getAndIncrement();
+                hits.increment();
+                return e.score;
+            }
         }
 
-        Double _score = (Double) map.get(variable, _parents);
-        return _score == null ? Double.NaN : (_score);
+        misses.increment();
+        return Double.NaN;
     }
 
     public void clear() {
-        map.clear();
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
     }
-}
 
+    public int getCapacity() {
+        return slots.length();
+    }
 
+    public long getHits() {
+        return hits.sum();
+    }
 
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The fraction of lookups that were found in the cache, or NaN if there have been none.
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? Double.NaN : h / (double) total;
+    }
+
+    public String toString() {
+        return "LocalScoreCache hits = " + getHits() + " misses = " + getMisses()
+                + " evictions = " + getEvictions() + " capacity = " + getCapacity();
+    }
+
+    //===============================PRIVATE METHODS=========================//
+
+    private int base(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & setMask) * WAYS;
+    }
+
+    // The parents are combined by addition so that the hash does not depend on their order.
+    private static long hash(int variable, int[] parents) {
+        long h = 0;
+
+        for (int parent : parents) {
+            h += mix(parent + 1L);
+        }
+
+        return mix(h ^ mix(((long) variable << 32) | parents.length));
+    }
+
+    // The SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static class Entry {
+        private final int variable;
+
+        // Sorted.
+        private final int[] parents;
+        private final long hash;
+        private final double score;
+
+        // Written by every thread that reads the entry.
+        private volatile long lastUsed;
+
+        Entry(int variable, int[] parents, long hash, double score, long lastUsed) {
+            this.variable = variable;
+            this.parents = parents;
+            this.hash = hash;
+            this.score = score;
+            this.lastUsed = lastUsed;
+        }
+
+        // Parent sets have distinct members, so equal lengths plus containment is set equality.
+        boolean matches(int variable, int[] parents, long hash) {
+            if (this.hash != hash || this.variable != variable || this.parents.length != parents.length) {
+                return false;
+            }
+
+            for (int parent : parents) {
+                if (Arrays.binarySearch(this.parents, parent) < 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -1331,48 +1331,30 @@ public class Lofs2 {
         dataSet = DataUtils.standardizeData(dataSet);
         double[][] data = dataSet.getDoubleData().transpose().toArray();
         Graph _graph = new EdgeListGraph(graph.getNodes());
-        List<Node> nodes = dataSet.getVariables();
-        Map<Node, Integer> nodesHash = new HashMap<>();
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        int N = dataSet.getNumRows();
 
-        for (int i = 0; i < nodes.size(); i++) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
-            }
+        // Sums of x tanh(y), tanh(x) y, x y and y y for each edge x---y, for the edges in parallel.
+        PairwiseStatistics.Transform tanh = (column, value) -> Math.tanh(value);
 
-            nodesHash.put(nodes.get(i), i);
-        }
+        double[][] sums = new PairwiseStatistics(data).sums(
+                new PairwiseStatistics.Transform[]{PairwiseStatistics.IDENTITY, tanh,
+                        PairwiseStatistics.IDENTITY, PairwiseStatistics.ONE},
+                new PairwiseStatistics.Transform[]{tanh, PairwiseStatistics.IDENTITY,
+                        PairwiseStatistics.IDENTITY, PairwiseStatistics.SQUARE},
+                pairs(edges, dataSet.getVariables()));
 
-        for (Edge edge : graph.getEdges()) {
+        for (int e = 0; e < edges.size(); e++) {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
 
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
-
-            double sumX = 0.0;
-            int countX = 0;
-
-            double[] xData = data[nodesHash.get(edge.getNode1())];
-            double[] yData = data[nodesHash.get(edge.getNode2())];
-
-            for (int i = 0; i < xData.length; i++) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
-
-                double x0 = xData[i];
-                double y0 = yData[i];
-
-                double termX = (x0 * Math.tanh(y0) - Math.tanh(x0) * y0);
+            Node x = edges.get(e).getNode1();
+            Node y = edges.get(e).getNode2();
 
-                sumX += termX;
-                countX++;
-            }
-
-            double R = sumX / countX;
+            double R = (sums[0][e] - sums[1][e]) / N;
 
-            double rhoX = regressionCoef(xData, yData);
+            double rhoX = sums[2][e] / sums[3][e];
             R *= rhoX;
 
             if (R > 0) {
@@ -1393,52 +1375,35 @@ public class Lofs2 {
         dataSet = DataUtils.standardizeData(dataSet);
         double[][] data = dataSet.getDoubleData().transpose().toArray();
         Graph _graph = new EdgeListGraph(graph.getNodes());
-        List<Node> nodes = dataSet.getVariables();
-        Map<Node, Integer> nodesHash = new HashMap<>();
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        int N = dataSet.getNumRows();
 
-        for (int i = 0; i < nodes.size(); i++) {
-            nodesHash.put(nodes.get(i), i);
-        }
+        // Sums of x x y, x y y, x y and y y for each edge x---y, for the edges in parallel.
+        PairwiseStatistics statistics = new PairwiseStatistics(data);
+        int[][] pairs = pairs(edges, dataSet.getVariables());
 
-        for (Edge edge : graph.getEdges()) {
+        double[][] sums = statistics.sums(
+                new PairwiseStatistics.Transform[]{PairwiseStatistics.SQUARE, PairwiseStatistics.IDENTITY,
+                        PairwiseStatistics.IDENTITY, PairwiseStatistics.ONE},
+                new PairwiseStatistics.Transform[]{PairwiseStatistics.IDENTITY, PairwiseStatistics.SQUARE,
+                        PairwiseStatistics.IDENTITY, PairwiseStatistics.SQUARE},
+                pairs);
+
+        for (int e = 0; e < edges.size(); e++) {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
 
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
+            Node x = edges.get(e).getNode1();
+            Node y = edges.get(e).getNode2();
 
-            double sumX = 0.0;
-            int countX = 0;
-
-            int _i = nodesHash.get(edge.getNode1());
-            int _j = nodesHash.get(edge.getNode2());
-
-            double[] xData = data[_i];
-            double[] yData = data[_j];
-
-            if (empirical) {
-                xData = correctSkewnesses(xData);
-                yData = correctSkewnesses(yData);
-            }
-
-            for (int i = 0; i < xData.length; i++) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+            // The signs of the skewnesses, by which the data are multiplied if empirical.
+            double sx = empirical ? signum(statistics.getSkewness(pairs[e][0])) : 1.0;
+            double sy = empirical ? signum(statistics.getSkewness(pairs[e][1])) : 1.0;
 
-                double x0 = xData[i];
-                double y0 = yData[i];
+            double R = (sx * sx * sy * sums[0][e] - sx * sy * sy * sums[1][e]) / N;
 
-                double termX = x0 * x0 * y0 - x0 * y0 * y0;
-
-                sumX += termX;
-                countX++;
-            }
-
-            double R = sumX / countX;
-
-            double rhoX = regressionCoef(xData, yData);
+            double rhoX = sx * sy * sums[2][e] / (sy * sy * sums[3][e]);
 
             R *= rhoX;
 
@@ -1461,49 +1426,38 @@ public class Lofs2 {
         graph = GraphUtils.replaceNodes(graph, dataSet.getVariables());
         dataSet = DataUtils.standardizeData(dataSet);
         double[][] data = dataSet.getDoubleData().transpose().toArray();
-        List<Node> nodes = dataSet.getVariables();
-        Map<Node, Integer> nodesHash = new HashMap<>();
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        int N = dataSet.getNumRows();
 
-        for (int i = 0; i < nodes.size(); i++) {
-            nodesHash.put(nodes.get(i), i);
+        PairwiseStatistics statistics = new PairwiseStatistics(data);
+
+        // The signs of the skewnesses, by which the data are multiplied if empirical.
+        double[] signs = new double[data.length];
+
+        for (int i = 0; i < data.length; i++) {
+            signs[i] = empirical ? signum(statistics.getSkewness(i)) : 1.0;
         }
 
-        for (Edge edge : graph.getEdges()) {
+        // Sums of g(x) y and x g(y) for each edge x---y, for the edges in parallel.
+        PairwiseStatistics.Transform g = (column, value) -> g(signs[column] * value);
+        int[][] pairs = pairs(edges, dataSet.getVariables());
+
+        double[][] sums = statistics.sums(
+                new PairwiseStatistics.Transform[]{g, PairwiseStatistics.IDENTITY},
+                new PairwiseStatistics.Transform[]{PairwiseStatistics.IDENTITY, g},
+                pairs);
+
+        for (int e = 0; e < edges.size(); e++) {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
 
+            Edge edge = edges.get(e);
             Node x = edge.getNode1();
             Node y = edge.getNode2();
 
-            double[] xData = data[nodesHash.get(edge.getNode1())];
-            double[] yData = data[nodesHash.get(edge.getNode2())];
-
-            if (empirical) {
-                xData = correctSkewnesses(xData);
-                yData = correctSkewnesses(yData);
-            }
-
-            double[] xx = new double[xData.length];
-            double[] yy = new double[yData.length];
-
-            for (int i = 0; i < xData.length; i++) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
-
-                double xi = xData[i];
-                double yi = yData[i];
-
-                double s1 = g(xi) * yi;
-                double s2 = xi * g(yi);
-
-                xx[i] = s1;
-                yy[i] = s2;
-            }
-
-            double mxx = mean(xx);
-            double myy = mean(yy);
+            double mxx = signs[pairs[e][1]] * sums[0][e] / N;
+            double myy = signs[pairs[e][0]] * sums[1][e] / N;
 
             graph.removeEdge(edge);
 
@@ -1519,6 +1473,23 @@ public class Lofs2 {
         return graph;
     }
 
+    // The column indices of the endpoints of each edge.
+    private int[][] pairs(List<Edge> edges, List<Node> nodes) {
+        Map<Node, Integer> nodesHash = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            nodesHash.put(nodes.get(i), i);
+        }
+
+        int[][] pairs = new int[edges.size()][];
+
+        for (int e = 0; e < edges.size(); e++) {
+            pairs[e] = new int[]{nodesHash.get(edges.get(e).getNode1()), nodesHash.get(edges.get(e).getNode2())};
+        }
+
+        return pairs;
+    }
+
     private double g(double x) {
         return Math.log(Math.cosh(Math.max(x, 0)));
     }
@@ -21,7 +21,6 @@
 
 package edu.cmu.tetrad.search;
 
-import de.bwaldvogel.liblinear.*;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
@@ -29,9 +28,8 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.Matrix;
 import edu.cmu.tetrad.util.Vector;
 
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +37,12 @@ import java.util.Map;
 
 /**
  * Calculates Mixed Variables Polynomial likelihood.
+ * <p>
+ * Discrete children are fit by one-versus-rest L2-regularized logistic regressions (the objective of liblinear's
+ * L2R_LR solver, with C = 1), solved by Newton's method in dense buffers kept per thread. Each fit starts from the
+ * coefficients last fit for the same child and features in the thread, where that is better than starting from zero,
+ * and is carried to convergence, so the result does not depend on where it started. Safe to use from several threads
+ * at once.
  *
  * @author Bryan Andrews
  */
@@ -69,12 +73,8 @@ public class MNLRLikelihood {
     // Structure Prior
     private final double structurePrior;
 
-    private final PrintStream original = System.out;
-
-    private final PrintStream nullout = new PrintStream(new OutputStream() { public void write(int b) {
-        //DO NOTHING
-    }
-    });
+    // Working storage for the logistic regressions, per thread.
+    private final ThreadLocal<LogisticWorkspace> workspaces = ThreadLocal.withInitial(LogisticWorkspace::new);
 
     public MNLRLikelihood(DataSet dataSet, double structurePrior, int fDegree) {
 
@@ -166,7 +166,7 @@ public class MNLRLikelihood {
 
         int p = continuous_parents.size();
 
-        List<List<Integer>> cells = adTree.getCellLeaves(discrete_parents);
+        List<List<Integer>> cells = getCellLeaves(discrete_parents);
         //List<List<Integer>> cells = partition(discrete_parents);
 
         int[] continuousCols = new int[p];
@@ -195,31 +195,53 @@ public class MNLRLikelihood {
 
                 int degree = fDegree;
                 if (fDegree < 1) { degree = (int) Math.floor(Math.log(r)); }
-                Matrix subset = new Matrix(r, p * degree + 1);
-                for (int i = 0; i < r; i++) {
-                    subset.set(i, p * degree, 1);
-                    for (int j = 0; j < p; j++) {
-                        for (int d = 0; d < degree; d++) {
-                            subset.set(i, p * d + j, Math.pow((continuousData[continuousCols[j]][cell.get(i)] - mean[j]) / var[j], d + 1));
+
+                if (c instanceof ContinuousVariable) {
+                    Matrix subset = new Matrix(r, p * degree + 1);
+                    for (int i = 0; i < r; i++) {
+                        subset.set(i, p * degree, 1);
+                        for (int j = 0; j < p; j++) {
+                            for (int d = 0; d < degree; d++) {
+                                subset.set(i, p * d + j, Math.pow((continuousData[continuousCols[j]][cell.get(i)] - mean[j]) / var[j], d + 1));
+                            }
                         }
                     }
-                }
 
-                if (c instanceof ContinuousVariable) {
                     Vector target = new Vector(r);
                     for (int i = 0; i < r; i++) {
                         target.set(i, continuousData[child_index][cell.get(i)]);
                     }
                     lik += multipleRegression(target, subset);
                 } else {
-                    Matrix target = new Matrix(r, ((DiscreteVariable) c).getNumCategories());
+                    LogisticWorkspace workspace = workspaces.get();
+                    int n = p * degree + 1;
+                    double[] x = workspace.features(r, n);
+                    long[] keys = new long[n];
+
+                    for (int j = 0; j < p; j++) {
+                        for (int d = 0; d < degree; d++) {
+                            keys[p * d + j] = ((long) continuousCols[j] << 32) | d;
+                        }
+                    }
+
+                    keys[p * degree] = -1;
+
                     for (int i = 0; i < r; i++) {
-                        for (int j = 0; j < ((DiscreteVariable) c).getNumCategories(); j++) {
-                            target.set(i, j, -1);
+                        x[i * n + p * degree] = 1;
+                        for (int j = 0; j < p; j++) {
+                            for (int d = 0; d < degree; d++) {
+                                x[i * n + p * d + j] = Math.pow((continuousData[continuousCols[j]][cell.get(i)] - mean[j]) / var[j], d + 1);
+                            }
                         }
-                        target.set(i, discreteData[child_index][cell.get(i)], 1);
                     }
-                    lik += MultinomialLogisticRegression(target, subset);
+
+                    int[] categories = new int[r];
+                    for (int i = 0; i < r; i++) {
+                        categories[i] = discreteData[child_index][cell.get(i)];
+                    }
+
+                    lik += multinomialLogisticRegression(workspace, child_index, categories,
+                            ((DiscreteVariable) c).getNumCategories(), keys);
                 }
             }
         }
@@ -244,7 +266,7 @@ public class MNLRLikelihood {
 
 //        int p = continuous_parents.size();
 
-        List<List<Integer>> cells = adTree.getCellLeaves(discrete_parents);
+        List<List<Integer>> cells = getCellLeaves(discrete_parents);
         //List<List<Integer>> cells = partition(discrete_parents, 0).cells;
 
 //        int[] continuousCols = new int[p];
@@ -287,52 +309,292 @@ public class MNLRLikelihood {
 
     }
 
-    private double MultinomialLogisticRegression(Matrix targets, Matrix subset) {
+    // The tree builds its index sets lazily, so calls into it are serialized.
+    private List<List<Integer>> getCellLeaves(List<DiscreteVariable> discrete_parents) {
+        synchronized (adTree) {
+            return adTree.getCellLeaves(discrete_parents);
+        }
+    }
+
+    /**
+     * The log likelihood of the categories under one-versus-rest logistic regressions on the features in the
+     * workspace, one per category. As with liblinear, a category that no row has is left out, and one that every row
+     * has is given probability 1.
+     */
+    private double multinomialLogisticRegression(LogisticWorkspace workspace, int child, int[] categories,
+                                                 int numCategories, long[] keys) {
+        int r = categories.length;
+        int n = keys.length;
+
+        int[] counts = new int[numCategories];
+        for (int category : categories) counts[category]++;
+
+        double[] probs = workspace.probs(r * numCategories);
+        double[][] coefs = new double[numCategories][];
+
+        for (int k = 0; k < numCategories; k++) {
+            if (counts[k] == 0) {
+                continue;
+            }
 
-        Problem problem = new Problem();
-        problem.l = targets.rows(); // number of training examples
-        problem.n = subset.columns(); // number of features
-        problem.x = new FeatureNode[problem.l][problem.n]; // feature nodes
-        problem.bias = 0;
-        for (int i = 0; i < problem.l; i ++) {
-            for (int j = 0; j < problem.n; j++) {
-                problem.x[i][j] = new FeatureNode(j+1, subset.get(i,j));
+            if (counts[k] == r) {
+                for (int i = 0; i < r; i++) probs[i * numCategories + k] = 1;
+                continue;
+            }
+
+            double[] y = workspace.targets(r);
+            for (int i = 0; i < r; i++) y[i] = categories[i] == k ? 1 : -1;
+
+            double[] w = workspace.warmStart(child, k, keys);
+            coefs[k] = workspace.fit(r, n, w, Math.min(counts[k], r - counts[k]));
+
+            double[] x = workspace.x;
+
+            for (int i = 0; i < r; i++) {
+                double z = 0;
+                for (int j = 0; j < n; j++) z += x[i * n + j] * coefs[k][j];
+                probs[i * numCategories + k] = 1.0 / (1.0 + Math.exp(-z));
             }
         }
-        SolverType solver = SolverType.L2R_LR; // -s 0
-        double C = 1.0;    // cost of constraints violation
-        double eps = 1e-4; // stopping criteria
-        Parameter parameter = new Parameter(solver, C, eps);
-        ArrayList<Model> models = new ArrayList<>();
+
+        workspace.remember(child, keys, coefs);
+
         double lik = 0;
-        double num;
-        double den;
-
-        for (int i = 0; i < targets.columns(); i++) {
-            System.setOut(nullout);
-            problem.y = targets.getColumn(i).toArray(); // target values
-            models.add(i, Linear.train(problem, parameter));
-            System.setOut(original);
+
+        for (int i = 0; i < r; i++) {
+            double den = 0;
+
+            for (int k = 0; k < numCategories; k++) {
+                if (counts[k] > 0) den += probs[i * numCategories + k];
+            }
+
+            lik += Math.log(probs[i * numCategories + categories[i]] / den);
         }
 
-        for (int j = 0; j < problem.l; j++) {
-            num = 0;
-            den = 0;
-            for (int i = 0; i < targets.columns(); i++) {
-                double[] p = new double[models.get(i).getNrClass()];
-                Linear.predictProbability(models.get(i), problem.x[j], p);
-                if (targets.get(j,i) == 1) {
-                    num = p[0];
-                    den += p[0];
-                } else if (p.length > 1) {
-                    den += p[0];
+        return lik;
+    }
+
+    /**
+     * Buffers for fitting L2-regularized logistic regressions, min 0.5 w'w + sum_i log(1 + exp(-y_i w'x_i)), to a
+     * dense row-major feature matrix, with the coefficients last fit for each child. Belongs to one thread.
+     */
+    private static class LogisticWorkspace {
+
+        // The stopping criterion, relative to the gradient at zero, as in liblinear.
+        private static final double TOLERANCE = 1e-10;
+        private static final int MAX_ITERATIONS = 100;
+
+        private double[] x = new double[0];
+        private double[] y = new double[0];
+        private double[] probs = new double[0];
+        private double[] margins = new double[0];
+        private double[] directions = new double[0];
+        private double[] gradient = new double[0];
+        private double[] hessian = new double[0];
+        private double[] step = new double[0];
+        private double[] trial = new double[0];
+
+        // For each child, the features and coefficients (by category) of its last fit.
+        private final Map<Integer, long[]> lastKeys = new HashMap<>();
+        private final Map<Integer, double[][]> lastCoefs = new HashMap<>();
+
+        double[] features(int r, int n) {
+            if (x.length < r * n) x = new double[r * n];
+            if (margins.length < r) {
+                margins = new double[r];
+                directions = new double[r];
+            }
+            if (gradient.length < n) {
+                gradient = new double[n];
+                step = new double[n];
+                trial = new double[n];
+            }
+            if (hessian.length < n * n) hessian = new double[n * n];
+            return x;
+        }
+
+        double[] targets(int r) {
+            if (y.length < r) y = new double[r];
+            return y;
+        }
+
+        double[] probs(int size) {
+            if (probs.length < size) probs = new double[size];
+            return probs;
+        }
+
+        // The last coefficients fit for the child and category, for the features they have in common.
+        double[] warmStart(int child, int category, long[] keys) {
+            double[] w = new double[keys.length];
+            long[] _keys = lastKeys.get(child);
+            double[][] coefs = lastCoefs.get(child);
+
+            if (_keys == null || category >= coefs.length || coefs[category] == null) {
+                return w;
+            }
+
+            for (int j = 0; j < keys.length; j++) {
+                for (int _j = 0; _j < _keys.length; _j++) {
+                    if (_keys[_j] == keys[j]) {
+                        w[j] = coefs[category][_j];
+                        break;
+                    }
                 }
             }
-            lik += Math.log(num/den);
+
+            return w;
         }
 
-        return lik;
+        void remember(int child, long[] keys, double[][] coefs) {
+            lastKeys.put(child, keys);
+            lastCoefs.put(child, coefs);
+        }
 
-    }
+        /**
+         * Fits the coefficients to the first r rows of x and y by Newton's method with backtracking, starting from
+         * w, or from zero if that is better. The returned array is w.
+         *
+         * @param minority The number of rows in the smaller class.
+         */
+        double[] fit(int r, int n, double[] w, int minority) {
+            Arrays.fill(gradient, 0, n, 0);
+            for (int i = 0; i < r; i++) {
+                for (int j = 0; j < n; j++) gradient[j] -= 0.5 * y[i] * x[i * n + j];
+            }
+
+            double threshold = TOLERANCE * Math.max(minority, 1) / r * norm(gradient, n);
+            double f0 = objective(r, n, new double[n], margins);
+            double f = objective(r, n, w, margins);
+
+            if (!(f < f0)) {
+                Arrays.fill(w, 0);
+                f = objective(r, n, w, margins);
+            }
+
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                gradientAndHessian(r, n, w);
+
+                double gnorm = norm(gradient, n);
+                if (!(gnorm > threshold)) break;
+
+                // The Hessian is the identity plus a positive semidefinite matrix, so it has a Cholesky factor.
+                cholesky(n);
+
+                for (int j = 0; j < n; j++) step[j] = -gradient[j];
+                solve(n);
+
+                double slope = 0;
+                for (int j = 0; j < n; j++) slope += step[j] * gradient[j];
+
+                for (int i = 0; i < r; i++) {
+                    double d = 0;
+                    for (int j = 0; j < n; j++) d += x[i * n + j] * step[j];
+                    directions[i] = d;
+                }
+
+                double t = 1;
+                boolean improved = false;
+
+                while (t > 1e-10) {
+                    for (int j = 0; j < n; j++) trial[j] = w[j] + t * step[j];
+                    double _f = 0.5 * dot(trial, trial, n);
+                    for (int i = 0; i < r; i++) _f += logLoss(y[i] * (margins[i] + t * directions[i]));
+
+                    if (_f <= f + 1e-4 * t * slope) {
+                        System.arraycopy(trial, 0, w, 0, n);
+                        for (int i = 0; i < r; i++) margins[i] += t * directions[i];
+                        improved = _f < f;
+                        f = _f;
+                        break;
+                    }
+
+                    t /= 2;
+                }
+
+                if (!improved) break;
+            }
+
+            return w;
+        }
+
+        // The objective at w, leaving the margins x_i'w in margins.
+        private double objective(int r, int n, double[] w, double[] margins) {
+            double f = 0.5 * dot(w, w, n);
+
+            for (int i = 0; i < r; i++) {
+                double z = 0;
+                for (int j = 0; j < n; j++) z += x[i * n + j] * w[j];
+                margins[i] = z;
+                f += logLoss(y[i] * z);
+            }
 
+            return f;
+        }
+
+        private void gradientAndHessian(int r, int n, double[] w) {
+            System.arraycopy(w, 0, gradient, 0, n);
+            Arrays.fill(hessian, 0, n * n, 0);
+            for (int j = 0; j < n; j++) hessian[j * n + j] = 1;
+
+            for (int i = 0; i < r; i++) {
+                double s = 1.0 / (1.0 + Math.exp(-y[i] * margins[i]));
+                double g = (s - 1) * y[i];
+                double h = s * (1 - s);
+                int row = i * n;
+
+                for (int j = 0; j < n; j++) {
+                    double xj = x[row + j];
+                    gradient[j] += g * xj;
+                    double hxj = h * xj;
+                    for (int l = 0; l <= j; l++) hessian[j * n + l] += hxj * x[row + l];
+                }
+            }
+        }
+
+        // Factors the lower triangle of the Hessian in place.
+        private void cholesky(int n) {
+            for (int j = 0; j < n; j++) {
+                double d = hessian[j * n + j];
+                for (int l = 0; l < j; l++) d -= hessian[j * n + l] * hessian[j * n + l];
+                d = Math.sqrt(d);
+                hessian[j * n + j] = d;
+
+                for (int i = j + 1; i < n; i++) {
+                    double s = hessian[i * n + j];
+                    for (int l = 0; l < j; l++) s -= hessian[i * n + l] * hessian[j * n + l];
+                    hessian[i * n + j] = s / d;
+                }
+            }
+        }
+
+        // Solves L L' step = step, given the factor L.
+        private void solve(int n) {
+            for (int i = 0; i < n; i++) {
+                double s = step[i];
+                for (int l = 0; l < i; l++) s -= hessian[i * n + l] * step[l];
+                step[i] = s / hessian[i * n + i];
+            }
+
+            for (int i = n - 1; i >= 0; i--) {
+                double s = step[i];
+                for (int l = i + 1; l < n; l++) s -= hessian[l * n + i] * step[l];
+                step[i] = s / hessian[i * n + i];
+            }
+        }
+
+        // log(1 + exp(-m)), without overflow.
+        private static double logLoss(double m) {
+            return m > 0 ? Math.log1p(Math.exp(-m)) : -m + Math.log1p(Math.exp(m));
+        }
+
+        private static double dot(double[] a, double[] b, int n) {
+            double sum = 0;
+            for (int j = 0; j < n; j++) sum += a[j] * b[j];
+            return sum;
+        }
+
+        private static double norm(double[] a, int n) {
+            return Math.sqrt(dot(a, a, n));
+        }
+    }
 }
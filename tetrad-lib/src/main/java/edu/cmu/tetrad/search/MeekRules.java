@@ -26,6 +26,7 @@ import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.Edge;
 import edu.cmu.tetrad.graph.Edges;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.IntIndexedGraph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradLogger;
 
@@ -158,25 +159,41 @@ public class MeekRules implements ImpliedOrientation {
      * Meek's rule R1: if a-->b, b---c, and a not adj to c, then b-->c
      */
     private boolean meekR1(Node b, Node c, Graph graph, Set<Node> visited) {
-        for (Node a : graph.getParents(b)) {
-            if (graph.isAdjacentTo(c, a)) continue;
-            if (direct(b, c, graph, visited)) {
-                log(SearchLogUtils.edgeOrientedMsg(
-                        "Meek R1 triangle (" + a + "-->" + b + "---" + c + ")", graph.getEdge(b, c)));
-                return true;
-            }
+        Node a = getParentNotAdjacentTo(b, c, graph);
+
+        if (a != null && direct(b, c, graph, visited)) {
+            log(SearchLogUtils.edgeOrientedMsg(
+                    "Meek R1 triangle (" + a + "-->" + b + "---" + c + ")", graph.getEdge(b, c)));
+            return true;
         }
 
         return false;
     }
 
+    // Returns a parent of b not adjacent to c, or null if there is none.
+    private Node getParentNotAdjacentTo(Node b, Node c, Graph graph) {
+        if (graph instanceof IntIndexedGraph) {
+            IntIndexedGraph _graph = (IntIndexedGraph) graph;
+            int _c = _graph.getId(c);
+
+            for (int a : _graph.getParentIds(_graph.getId(b))) {
+                if (!_graph.isAdjacentTo(a, _c)) return _graph.getNode(a);
+            }
+
+            return null;
+        }
+
+        for (Node a : graph.getParents(b)) {
+            if (!graph.isAdjacentTo(c, a)) return a;
+        }
+
+        return null;
+    }
+
     /**
      * If a-->b-->c, a--c, then a-->c.
      */
     private boolean meekR2(Node a, Node c, Graph graph, Set<Node> visited) {
-        List<Node> adjacentNodes = graph.getAdjacentNodes(c);
-        adjacentNodes.remove(a);
-
         Set<Node> common = getCommonAdjacents(a, c, graph);
 
         for (Node b : common) {
@@ -306,16 +323,7 @@ public class MeekRules implements ImpliedOrientation {
     private boolean revertToUnshieldedColliders(Node y, Graph graph, Set<Node> visited) {
         boolean did = false;
 
-        List<Node> parents = graph.getParents(y);
-
-        P:
-        for (Node p : parents) {
-            for (Node q : parents) {
-                if (p != q && !graph.isAdjacentTo(p, q)) {
-                    continue P;
-                }
-            }
-
+        for (Node p : getShieldedParents(y, graph)) {
             if (knowledge.isForbidden(y.getName(), p.getName()) || knowledge.isRequired(p.getName(), y.getName())) continue;
 
             graph.removeEdge(p, y);
@@ -330,6 +338,44 @@ public class MeekRules implements ImpliedOrientation {
         return did;
     }
 
+    // Returns the parents of y that are adjacent to every other parent of y.
+    private List<Node> getShieldedParents(Node y, Graph graph) {
+        List<Node> shielded = new ArrayList<>();
+
+        if (graph instanceof IntIndexedGraph) {
+            IntIndexedGraph _graph = (IntIndexedGraph) graph;
+            int[] parents = _graph.getParentIds(_graph.getId(y));
+
+            P:
+            for (int p : parents) {
+                for (int q : parents) {
+                    if (p != q && !_graph.isAdjacentTo(p, q)) {
+                        continue P;
+                    }
+                }
+
+                shielded.add(_graph.getNode(p));
+            }
+
+            return shielded;
+        }
+
+        List<Node> parents = graph.getParents(y);
+
+        P:
+        for (Node p : parents) {
+            for (Node q : parents) {
+                if (p != q && !graph.isAdjacentTo(p, q)) {
+                    continue P;
+                }
+            }
+
+            shielded.add(p);
+        }
+
+        return shielded;
+    }
+
     private void log(String message) {
         if (verbose) {
             TetradLogger.getInstance().forceLogMessage(message);
@@ -341,6 +387,18 @@ public class MeekRules implements ImpliedOrientation {
     }
 
     private Set<Node> getCommonAdjacents(Node x, Node y, Graph graph) {
+        if (graph instanceof IntIndexedGraph) {
+            IntIndexedGraph _graph = (IntIndexedGraph) graph;
+            int _y = _graph.getId(y);
+            Set<Node> adj = new HashSet<>();
+
+            for (int z : _graph.getAdjacentIds(_graph.getId(x))) {
+                if (_graph.isAdjacentTo(z, _y)) adj.add(_graph.getNode(z));
+            }
+
+            return adj;
+        }
+
         Set<Node> adj = new HashSet<>(graph.getAdjacentNodes(x));
         adj.retainAll(graph.getAdjacentNodes(y));
         return adj;
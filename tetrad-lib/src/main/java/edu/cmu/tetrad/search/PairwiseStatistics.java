@@ -0,0 +1,199 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (c) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.util.StatUtils;
+
+import java.util.stream.IntStream;
+
+/**
+ * Calculates sums over rows of products of (transformed) columns of a data set, for all ordered pairs of columns
+ * or for given pairs, as needed by the pairwise orientation rules of Fask and Lofs2. For a transform f of the first
+ * column and h of the second, sums(f, h)[i][j] is the sum over rows k of f(x_ik) * h(x_jk); for instance, with
+ * POSITIVE_PART and IDENTITY this is the sum of x_i x_j over rows where x_i > 0. Several sums may be calculated in
+ * one pass over the data.
+ * <p>
+ * For all pairs, each thread takes a tile of first columns and runs through the rows in blocks, transforming each
+ * block of its columns once and taking its products with the same block of every second column while the
+ * transformed block is in cache. Columns are the caller's arrays; they are not copied.
+ */
+public final class PairwiseStatistics {
+
+    /**
+     * A transform of the values of a column.
+     */
+    public interface Transform {
+        double apply(int column, double value);
+    }
+
+    public static final Transform ONE = (column, value) -> 1.0;
+    public static final Transform IDENTITY = (column, value) -> value;
+    public static final Transform SQUARE = (column, value) -> value * value;
+    public static final Transform POSITIVE_PART = (column, value) -> value > 0 ? value : 0.0;
+    public static final Transform POSITIVE_INDICATOR = (column, value) -> value > 0 ? 1.0 : 0.0;
+
+    // The number of first columns in a tile.
+    private static final int TILE_SIZE = 32;
+
+    // The number of rows in a block.
+    private static final int BLOCK_SIZE = 512;
+
+    // The data, by column.
+    private final double[][] columns;
+
+    // The number of rows.
+    private final int N;
+
+    // The skewness of each column.
+    private final double[] skewnesses;
+
+    /**
+     * @param columns The data, by column. The columns must all have the same length and no missing values.
+     */
+    public PairwiseStatistics(double[][] columns) {
+        if (columns == null) throw new NullPointerException("Columns not provided.");
+
+        this.columns = columns;
+        this.N = columns.length == 0 ? 0 : columns[0].length;
+
+        for (double[] column : columns) {
+            if (column.length != N) throw new IllegalArgumentException("The columns must all have the same length.");
+        }
+
+        this.skewnesses = new double[columns.length];
+        IntStream.range(0, columns.length).parallel().forEach(i -> skewnesses[i] = StatUtils.skewness(columns[i]));
+    }
+
+    /**
+     * @return The number of columns.
+     */
+    public int getNumColumns() {
+        return columns.length;
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    public int getSampleSize() {
+        return N;
+    }
+
+    /**
+     * @return The skewness of column i.
+     */
+    public double getSkewness(int i) {
+        return skewnesses[i];
+    }
+
+    /**
+     * @return sums[i][j], the sum over rows k of f(x_ik) * h(x_jk), for all columns i and j.
+     */
+    public double[][] sums(Transform f, Transform h) {
+        return sums(new Transform[]{f}, new Transform[]{h})[0];
+    }
+
+    /**
+     * @return sums[t][i][j], the sum over rows k of f[t](x_ik) * h[t](x_jk), for all columns i and j, calculated
+     * in one pass over the data.
+     */
+    public double[][][] sums(Transform[] f, Transform[] h) {
+        if (f.length != h.length) throw new IllegalArgumentException("Expecting as many transforms f as h.");
+
+        int numSums = f.length;
+        int numColumns = columns.length;
+        double[][][] sums = new double[numSums][numColumns][numColumns];
+        int numTiles = (numColumns + TILE_SIZE - 1) / TILE_SIZE;
+
+        IntStream.range(0, numTiles).parallel().forEach(tile -> {
+            int from = tile * TILE_SIZE;
+            int width = Math.min(numColumns, from + TILE_SIZE) - from;
+
+            double[][] fBlock = new double[numSums * width][BLOCK_SIZE];
+            double[] hBlock = new double[BLOCK_SIZE];
+
+            for (int start = 0; start < N; start += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, N - start);
+
+                for (int t = 0; t < numSums; t++) {
+                    for (int a = 0; a < width; a++) {
+                        double[] x = columns[from + a];
+                        double[] _f = fBlock[t * width + a];
+                        for (int k = 0; k < length; k++) _f[k] = f[t].apply(from + a, x[start + k]);
+                    }
+                }
+
+                for (int j = 0; j < numColumns; j++) {
+                    double[] y = columns[j];
+
+                    for (int t = 0; t < numSums; t++) {
+                        double[] _h;
+                        int offset;
+
+                        if (h[t] == IDENTITY) {
+                            _h = y;
+                            offset = start;
+                        } else {
+                            for (int k = 0; k < length; k++) hBlock[k] = h[t].apply(j, y[start + k]);
+                            _h = hBlock;
+                            offset = 0;
+                        }
+
+                        for (int a = 0; a < width; a++) {
+                            double[] _f = fBlock[t * width + a];
+                            double sum = 0.0;
+                            for (int k = 0; k < length; k++) sum += _f[k] * _h[offset + k];
+                            sums[t][from + a][j] += sum;
+                        }
+                    }
+                }
+            }
+        });
+
+        return sums;
+    }
+
+    /**
+     * @return sums[t][p], the sum over rows k of f[t](x_ik) * h[t](x_jk), where {i, j} = pairs[p], calculated for
+     * the pairs in parallel.
+     */
+    public double[][] sums(Transform[] f, Transform[] h, int[][] pairs) {
+        if (f.length != h.length) throw new IllegalArgumentException("Expecting as many transforms f as h.");
+
+        int numSums = f.length;
+        double[][] sums = new double[numSums][pairs.length];
+
+        IntStream.range(0, pairs.length).parallel().forEach(p -> {
+            int i = pairs[p][0];
+            int j = pairs[p][1];
+            double[] x = columns[i];
+            double[] y = columns[j];
+
+            for (int t = 0; t < numSums; t++) {
+                double sum = 0.0;
+                for (int k = 0; k < N; k++) sum += f[t].apply(i, x[k]) * h[t].apply(j, y[k]);
+                sums[t][p] = sum;
+            }
+        });
+
+        return sums;
+    }
+}
@@ -28,6 +28,7 @@ import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.Matrix;
 import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradLogger;
 import org.apache.commons.math3.linear.SingularMatrixException;
 import org.jetbrains.annotations.NotNull;
 
@@ -81,6 +82,9 @@ public class SemBicScore implements Score {
     // The rule type to use.
     private RuleType ruleType = RuleType.CHICKERING;
 
+    // Residual variances from cached Cholesky factors of the covariance matrix, when there is one.
+    private IncrementalPartialCorrelation partialCorrelations;
+
     /**
      * Constructs the score using a covariance matrix.
      */
@@ -140,6 +144,18 @@ public class SemBicScore implements Score {
         }
     }
 
+    // Same as the static method but using the cached factors.
+    private double getVarRy(int i, int[] parents) {
+        try {
+            return partialCorrelations.residualVariance(i, parents);
+        } catch (SingularMatrixException e) {
+            List<Node> p = new ArrayList<>();
+            for (int _p : parents) p.add(variables.get(_p));
+            TetradLogger.getInstance().log("info", "Singularity " + variables.get(i) + " | " + p);
+            return NEGATIVE_INFINITY;
+        }
+    }
+
     @NotNull
     public static Matrix bStar(Matrix b) {
         Matrix byx = new Matrix(b.rows() + 1, 1);
@@ -260,7 +276,11 @@ public class SemBicScore implements Score {
 
         double varey;
 
-        varey = getVarRy(i, parents, data, covariances, calculateRowSubsets);
+        if (!calculateRowSubsets && partialCorrelations != null) {
+            varey = getVarRy(i, parents);
+        } else {
+            varey = getVarRy(i, parents, data, covariances, calculateRowSubsets);
+        }
 
         double c = getPenaltyDiscount();
 
@@ -376,6 +396,7 @@ public class SemBicScore implements Score {
     private void setCovariances(ICovarianceMatrix covariances) {
         this.covariances = covariances;
         this.matrix = this.covariances.getMatrix();
+        this.partialCorrelations = new IncrementalPartialCorrelation(covariances);
 
         double n = covariances.getSampleSize();
         double ess = DataUtils.getEss(covariances);
@@ -438,6 +459,17 @@ public class SemBicScore implements Score {
     }
 
     private double partialCorrelation(Node x, Node y, List<Node> z, List<Integer> rows) {
+        if (rows == null && partialCorrelations != null) {
+            int[] _z = new int[z.size()];
+            for (int i = 0; i < z.size(); i++) _z[i] = indexMap.get(z.get(i));
+
+            try {
+                return partialCorrelations.partialCorrelation(indexMap.get(x), indexMap.get(y), _z);
+            } catch (SingularMatrixException e) {
+                return NaN;
+            }
+        }
+
         try {
             return StatUtils.partialCorrelation(convertCovToCorr(getCov(rows, indices(x, y, z))));
         } catch (Exception e) {
@@ -26,8 +26,11 @@ import edu.cmu.tetrad.util.TetradSerializable;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
  * <p>Stores a map from pairs of nodes to separating sets--that is, for each unordered pair of nodes {node1, node2} in a
@@ -38,7 +41,13 @@ import java.util.concurrent.ConcurrentHashMap;
  * So at the end of the search, a null sepset carries different information from an empty sepset.)</p> <p>We cast the
  * variable-like objects to Node to allow them either to be variables explicitly or else to be graph nodes that in some
  * model could be considered as variables. This allows us to use d-separation as a graphical indicator of what
- * independendence in models ideally should be.</p>
+ * independendence in models ideally should be.</p> <p>Nodes are given indices as they are first seen (or in the order
+ * of the variables passed to the constructor), and sepsets are stored in a table keyed by the pair of indices packed
+ * into a long, as lists of node indices in ascending order, so the order of a list returned by get(a, b) depends on
+ * the order in which the map saw the nodes; two maps are equal if they have the same sepsets as sets. Equal sepsets
+ * are stored once. The record of distinct sepsets is never pruned, so a map whose sepsets are often replaced holds on
+ * to every distinct sepset it has been given. The map is safe to share among threads; lookups take no locks and
+ * allocate nothing, so the list returned by get(a, b) is the stored one and cannot be modified.</p>
  *
  * @author Joseph Ramsey
  */
@@ -46,22 +55,48 @@ public final class SepsetMap implements TetradSerializable {
     static final long serialVersionUID = 23L;
 
     /**
+     * The sepsets and p values by pair of nodes. These are the serialized form only; they are written out from the
+     * table and read back into it, and are otherwise null.
+     *
      * @serial
      */
-    private Map<Set<Node>, List<Node>> sepsets = new ConcurrentHashMap<>();
-    private Map<Set<Node>, Double> pValues = new ConcurrentHashMap<>();
+    private Map<Set<Node>, List<Node>> sepsets;
+    private Map<Set<Node>, Double> pValues;
     private Map<Node, HashSet<Node>> parents = new HashMap<>();
+
+    // The nodes, by index, and the index of each node.
+    private transient volatile Node[] nodes;
+    private transient Map<Node, Integer> indices;
+
+    // The sepsets, by packed pair of node indices.
+    private transient Table table;
+
+    // The distinct sepsets stored, so that each is stored once. Entries are not removed when no pair uses them.
+    private transient Map<Sepset, Sepset> interned;
 //    private Set<Set<Node>> correlations;
 //    private boolean returnEmptyIfNotSet = false;
 
     //=============================CONSTRUCTORS===========================//
 
     public SepsetMap() {
+        init();
+    }
+
+    /**
+     * Constructs a map whose node indices are the indices of the given variables, so that stored sepsets list their
+     * nodes in the order of the variables.
+     */
+    public SepsetMap(List<Node> variables) {
+        init();
+
+        for (Node node : variables) {
+            index(node);
+        }
     }
 
     public SepsetMap(SepsetMap map) {
-        this.sepsets = new HashMap<>(map.sepsets);
-        this.pValues = new HashMap<>(map.pValues);
+        init();
+        addAll(map);
     }
 
     /**
@@ -77,14 +112,7 @@ public final class SepsetMap implements TetradSerializable {
      * Sets the sepset for {x, y} to be z. Note that {x, y} is unordered.
      */
     public void set(Node x, Node y, List<Node> z) {
-        Set<Node> pair = new HashSet<>(2);
-        pair.add(x);
-        pair.add(y);
-        if (z == null) {
-            sepsets.remove(pair);
-        } else {
-            sepsets.put(pair, z);
-        }
+        set(x, y, z, Double.NaN);
     }
 
 //    public void setPValue(Node x, Node y, double p) {
@@ -98,9 +126,7 @@ public final class SepsetMap implements TetradSerializable {
      * Retrieves the sepset previously set for {a, b}, or null if no such set was previously set.
      */
     public List<Node> get(Node a, Node b) {
-        Set<Node> pair = new HashSet<>(2);
-        pair.add(a);
-        pair.add(b);
+        Entry entry = entry(a, b);
 
 //        if (correlations != null && !correlations.contains(pair)) {
 //            return Collections.emptyList();
@@ -110,15 +136,15 @@ public final class SepsetMap implements TetradSerializable {
 //            return Collections.emptyList();
 //        }
 
-        return sepsets.get(pair);
+        return entry == null ? null : entry.sepset;
     }
 
+    /**
+     * Retrieves the p value recorded with the sepset for {x, y}, or NaN if none was recorded.
+     */
     public double getPValue(Node x, Node y) {
-        Set<Node> pair = new HashSet<>(2);
-        pair.add(x);
-        pair.add(y);
-
-        return pValues.get(pair);
+        Entry entry = entry(x, y);
+        return entry == null ? Double.NaN : entry.pValue;
     }
 
     public void set(Node x, LinkedHashSet<Node> z) {
@@ -143,7 +169,25 @@ public final class SepsetMap implements TetradSerializable {
         }
 
         SepsetMap _sepset = (SepsetMap) o;
-        return sepsets.equals(_sepset.sepsets);
+        if (size() != _sepset.size()) return false;
+
+        // Each map lists sepsets in its own node order, so they are compared as sets.
+        Node[] nodes = this.nodes;
+        boolean[] equal = {true};
+
+        table.forEach(entry -> {
+            if (!equal[0]) return;
+            Entry _entry = _sepset.entry(nodes[first(entry.key)], nodes[second(entry.key)]);
+            equal[0] = _entry != null && new HashSet<>(entry.sepset).equals(new HashSet<>(_entry.sepset));
+        });
+
+        return equal[0];
+    }
+
+    public int hashCode() {
+        int[] hashCode = {0};
+        table.forEach(entry -> hashCode[0] += pair(entry.key).hashCode() ^ new HashSet<>(entry.sepset).hashCode());
+        return hashCode[0];
     }
 
     /**
@@ -161,14 +205,47 @@ public final class SepsetMap implements TetradSerializable {
         if (sepsets == null) {
             throw new NullPointerException();
         }
+
+        init();
+
+        for (Set<Node> pair : sepsets.keySet()) {
+            Iterator<Node> _pair = pair.iterator();
+            Node x = _pair.next();
+            Node y = _pair.hasNext() ? _pair.next() : x;
+            Double p = pValues == null ? null : pValues.get(pair);
+            set(x, y, sepsets.get(pair), p == null ? Double.NaN : p);
+        }
+
+        sepsets = null;
+        pValues = null;
+    }
+
+    /**
+     * Writes the table out in the form of the sepsets and pValues maps, so that sessions are saved out as before.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        Map<Set<Node>, List<Node>> sepsets = new HashMap<>();
+        Map<Set<Node>, Double> pValues = new HashMap<>();
+
+        table.forEach(entry -> {
+            Set<Node> pair = pair(entry.key);
+            sepsets.put(pair, new ArrayList<>(entry.sepset));
+            if (!Double.isNaN(entry.pValue)) pValues.put(pair, entry.pValue);
+        });
+
+        ObjectOutputStream.PutField fields = s.putFields();
+        fields.put("sepsets", sepsets);
+        fields.put("pValues", pValues);
+        fields.put("parents", parents);
+        s.writeFields();
     }
 
     public int size() {
-        return sepsets.keySet().size();
+        return table.size();
     }
 
     public String toString() {
-        return sepsets.toString();
+        return sepsetsByPair().toString();
     }
 
     /**
@@ -188,7 +265,237 @@ public final class SepsetMap implements TetradSerializable {
 //    }
 
     public void addAll(SepsetMap newSepsets) {
-        sepsets.putAll(newSepsets.sepsets);
+        newSepsets.table.forEach(entry -> {
+            Node[] nodes = newSepsets.nodes;
+            set(nodes[first(entry.key)], nodes[second(entry.key)], entry.sepset, entry.pValue);
+        });
+    }
+
+    //=============================PRIVATE METHODS=======================//
+
+    private void init() {
+        nodes = new Node[0];
+        indices = new ConcurrentHashMap<>();
+        table = new Table();
+        interned = new ConcurrentHashMap<>();
+    }
+
+    private void set(Node x, Node y, List<Node> z, double pValue) {
+        if (z == null) {
+            Integer i = indices.get(x);
+            Integer j = indices.get(y);
+            if (i != null && j != null) table.remove(key(i, j));
+            return;
+        }
+
+        int[] _z = new int[z.size()];
+        for (int k = 0; k < _z.length; k++) _z[k] = index(z.get(k));
+        Arrays.sort(_z);
+
+        long key = key(index(x), index(y));
+        table.put(new Entry(key, intern(new Sepset(_z, nodes)), pValue));
+    }
+
+    private Entry entry(Node x, Node y) {
+        Integer i = indices.get(x);
+        Integer j = indices.get(y);
+        if (i == null || j == null) return null;
+        return table.get(key(i, j));
+    }
+
+    // The index of the node, giving it the next index if it hasn't been seen.
+    private int index(Node node) {
+        Integer index = indices.get(node);
+        if (index != null) return index;
+
+        synchronized (indices) {
+            index = indices.get(node);
+            if (index != null) return index;
+
+            Node[] _nodes = Arrays.copyOf(nodes, nodes.length + 1);
+            _nodes[nodes.length] = node;
+            nodes = _nodes;
+            indices.put(node, nodes.length - 1);
+            return nodes.length - 1;
+        }
+    }
+
+    private Sepset intern(Sepset sepset) {
+        Sepset _sepset = interned.putIfAbsent(sepset, sepset);
+        return _sepset == null ? sepset : _sepset;
+    }
+
+    private Set<Node> pair(long key) {
+        Node[] nodes = this.nodes;
+        Set<Node> pair = new HashSet<>(2);
+        pair.add(nodes[first(key)]);
+        pair.add(nodes[second(key)]);
+        return pair;
+    }
+
+    private Map<Set<Node>, List<Node>> sepsetsByPair() {
+        Map<Set<Node>, List<Node>> sepsets = new HashMap<>();
+        table.forEach(entry -> sepsets.put(pair(entry.key), entry.sepset));
+        return sepsets;
+    }
+
+    // The unordered pair {i, j}, packed as (min, max).
+    private static long key(int i, int j) {
+        return i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+    }
+
+    private static int first(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int second(long key) {
+        return (int) key;
+    }
+
+    /**
+     * A sepset, as node indices in ascending order, viewed as an unmodifiable list of nodes.
+     */
+    private static final class Sepset extends AbstractList<Node> implements RandomAccess {
+        private final int[] indices;
+        private final Node[] nodes;
+
+        Sepset(int[] indices, Node[] nodes) {
+            this.indices = indices;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Node get(int index) {
+            return nodes[indices[index]];
+        }
+
+        @Override
+        public int size() {
+            return indices.length;
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final Sepset sepset;
+        final double pValue;
+
+        Entry(long key, Sepset sepset, double pValue) {
+            this.key = key;
+            this.sepset = sepset;
+            this.pValue = pValue;
+        }
+    }
+
+    /**
+     * An open addressing hash table of entries by key. Writers lock the table; readers don't, but see each slot with
+     * volatile semantics. A table that is replaced on growth is not changed after, so a reader still probing it sees
+     * its state as of the replacement.
+     */
+    private static final class Table {
+
+        // Marks a slot whose entry has been removed; its key matches no pair.
+        private static final Entry REMOVED = new Entry(-1L, null, Double.NaN);
+
+        private volatile AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(16);
+
+        // The numbers of entries and of entries plus removed markers, guarded by this.
+        private volatile int size;
+        private int used;
+
+        Entry get(long key) {
+            AtomicReferenceArray<Entry> slots = this.slots;
+            int mask = slots.length() - 1;
+
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                Entry entry = slots.get(i);
+                if (entry == null) return null;
+                if (entry.key == key) return entry;
+            }
+        }
+
+        synchronized void put(Entry entry) {
+            if (2 * (used + 1) > slots.length()) {
+                resize();
+            }
+
+            int mask = slots.length() - 1;
+            int free = -1;
+
+            for (int i = hash(entry.key) & mask; ; i = (i + 1) & mask) {
+                Entry _entry = slots.get(i);
+
+                if (_entry == null) {
+                    if (free == -1) {
+                        free = i;
+                        used++;
+                    }
+
+                    slots.set(free, entry);
+                    size++;
+                    return;
+                } else if (_entry.key == entry.key) {
+                    slots.set(i, entry);
+                    return;
+                } else if (_entry == REMOVED && free == -1) {
+                    free = i;
+                }
+            }
+        }
+
+        synchronized void remove(long key) {
+            int mask = slots.length() - 1;
+
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                Entry entry = slots.get(i);
+                if (entry == null) return;
+
+                if (entry.key == key) {
+                    slots.set(i, REMOVED);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(Consumer<Entry> action) {
+            AtomicReferenceArray<Entry> slots = this.slots;
+
+            for (int i = 0; i < slots.length(); i++) {
+                Entry entry = slots.get(i);
+                if (entry != null && entry != REMOVED) action.accept(entry);
+            }
+        }
+
+        // Moves the entries to a table with room for twice as many, dropping removed markers.
+        private void resize() {
+            int capacity = 16;
+            while (capacity < 4 * (size + 1)) capacity <<= 1;
+
+            AtomicReferenceArray<Entry> _slots = new AtomicReferenceArray<>(capacity);
+            int mask = capacity - 1;
+
+            for (int i = 0; i < slots.length(); i++) {
+                Entry entry = slots.get(i);
+                if (entry == null || entry == REMOVED) continue;
+
+                int j = hash(entry.key) & mask;
+                while (_slots.get(j) != null) j = (j + 1) & mask;
+                _slots.set(j, entry);
+            }
+
+            slots = _slots;
+            used = size;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
     }
 }
 
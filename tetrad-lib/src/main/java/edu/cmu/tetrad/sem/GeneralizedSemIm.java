@@ -21,8 +21,10 @@
 
 package edu.cmu.tetrad.sem;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
+import edu.cmu.tetrad.calculator.expression.SlotContext;
 import edu.cmu.tetrad.calculator.parser.ExpressionLexer;
 import edu.cmu.tetrad.calculator.parser.Token;
 import edu.cmu.tetrad.data.*;
@@ -40,6 +42,8 @@ import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.PowellOptimizer;
 
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static edu.cmu.tetrad.util.StatUtils.sd;
 
@@ -74,6 +78,9 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      */
     private double selfLoopCoef = Double.NaN;
 
+    // The number of rows simulated together by the parallel Fisher simulation.
+    private static final int FISHER_CHUNK_SIZE = 1000;
+
 
     /**
      * Constructs a new GeneralizedSemIm from the given GeneralizedSemPm by picking values for each of
@@ -421,25 +428,12 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
         List<Node> variables = pm.getNodes();
         Map<String, Double> std = new HashMap<>();
 
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
+        // Variable values are cleared for each row, so only the parameters are ever bound.
+        SlotContext context = new SlotContext();
 
-                if (value != null) {
-                    return value * 2 / std.get(term);
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
+        for (String parameter : parameterValues.keySet()) {
+            context.set(context.addSlot(parameter), parameterValues.get(parameter));
+        }
 
         List<Node> continuousVariables = new LinkedList<>();
         List<Node> nonErrorVariables = pm.getVariableNodes();
@@ -491,14 +485,12 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
                 continue;
             }
 
-            for (int row = 0; row < sampleSize; row++) {
-                variableValues.clear();
+            Node node = tierOrdering.get(tier);
+            CompiledExpression expression = CompiledExpression.compile(pm.getNodeExpression(node), context);
 
-                Node node = tierOrdering.get(tier);
-                Expression expression = pm.getNodeExpression(node);
+            for (int row = 0; row < sampleSize; row++) {
                 double value = expression.evaluate(context);
                 v[row] = value;
-                variableValues.put(node.getName(), value);
 
 
 
@@ -870,122 +862,63 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      */
     public synchronized DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks,
                                                    double epsilon) {
-        boolean printedUndefined = false;
-        boolean printedInfinite = false;
-
-        if (intervalBetweenShocks < 1) throw new IllegalArgumentException(
-                "Interval between shocks must be >= 1: " + intervalBetweenShocks);
-        if (epsilon <= 0.0) throw new IllegalArgumentException(
-                "Epsilon must be > 0: " + epsilon);
-
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        final Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
-
-        final List<Node> variableNodes = pm.getVariableNodes();
-
-        double[] t1 = new double[variableNodes.size()];
-        double[] t2 = new double[variableNodes.size()];
-        double[] shocks = new double[variableNodes.size()];
-        double[][] all = new double[variableNodes.size()][sampleSize];
-
-        // Do the simulation.
-
-        for (int row = 0; row < sampleSize; row++) {
-            for (int j = 0; j < t1.length; j++) {
-                Node error = pm.getErrorNode(variableNodes.get(j));
-
-                if (error == null) {
-                    throw new NullPointerException();
-                }
+        FisherSimulation simulation = new FisherSimulation(sampleSize, intervalBetweenShocks, epsilon);
+        simulation.simulate(simulation.context, 0, sampleSize);
+        return simulation.toDataSet();
+    }
 
-                Expression expression = pm.getNodeExpression(error);
-                double value = expression.evaluate(context);
+    /**
+     * Simulates data as simulateDataFisher(sampleSize, intervalBetweenShocks, epsilon) does, in parallel. The rows
+     * are simulated in chunks, each starting from zero and drawing from a random stream of its own, seeded from the
+     * given seed and the index of the chunk. The data depend only on the seed, not on the number of threads, though
+     * they are not the same as the data simulateDataFisher gives.
+     *
+     * @param sampleSize            The number of samples to be drawn.
+     * @param intervalBetweenShocks External shock is applied every this many steps.
+     *                              Must be positive integer.
+     * @param epsilon               The convergence criterion; |xi.t - xi.t-1| < epsilon.
+     * @param seed                  The seed of the random streams.
+     */
+    public DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks, double epsilon, long seed) {
+        FisherSimulation simulation = new FisherSimulation(sampleSize, intervalBetweenShocks, epsilon);
+        int numChunks = (sampleSize + FISHER_CHUNK_SIZE - 1) / FISHER_CHUNK_SIZE;
 
-                if (Double.isNaN(value)) {
-                    throw new IllegalArgumentException("Undefined value for expression: " + expression);
-                }
+        class ChunkTask extends RecursiveAction {
+            private final int from;
+            private final int to;
 
-                variableValues.put(error.getName(), value);
-                shocks[j] = value;
-                t2[j] += shocks[j];
+            private ChunkTask(int from, int to) {
+                this.from = from;
+                this.to = to;
             }
 
-            for (int i = 0; i < intervalBetweenShocks; i++) {
-                for (int j = 0; j < t1.length; j++) {
-                    Node node = variableNodes.get(j);
-                    Expression expression = pm.getNodeExpression(node);
-                    t2[j] = expression.evaluate(context);
-
-                    if (Double.isNaN(t2[j])) {
-                        if (!printedUndefined) {
-                            System.out.println("Undefined value.");
-                            printedUndefined = true;
-                        }
-                    }
-
-                    if (Double.isInfinite(t2[j])) {
-                        if (!printedInfinite) {
-                            System.out.println("Infinite value.");
-                            printedInfinite = true;
-                        }
-                    }
-
-                    variableValues.put(node.getName(), t2[j]);
-                }
-
-                boolean converged = true;
-
-                for (int j = 0; j < t1.length; j++) {
-                    if (Math.abs(t2[j] - t1[j]) > epsilon) {
-                        converged = false;
-                        break;
-                    }
+            @Override
+            protected void compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) / 2;
+                    invokeAll(new ChunkTask(from, mid), new ChunkTask(mid, to));
+                    return;
                 }
 
-                double[] t3 = t1;
-                t1 = t2;
-                t2 = t3;
+                RandomUtil random = RandomUtil.getInstance();
+                random.setThreadSeed(seed * 0x9E3779B97F4A7C15L + from);
 
-                if (converged) {
-                    break;
+                try {
+                    simulation.simulate(simulation.context.copy(), from * FISHER_CHUNK_SIZE,
+                            Math.min(sampleSize, (from + 1) * FISHER_CHUNK_SIZE));
+                } finally {
+                    random.clearThreadSeed();
                 }
             }
-
-            for (int j = 0; j < t1.length; j++) {
-                all[j][row] = t1[j];
-            }
         }
 
-        List<Node> continuousVars = new ArrayList<>();
-
-        for (Node node : variableNodes) {
-            final ContinuousVariable var = new ContinuousVariable(node.getName());
-            var.setNodeType(node.getNodeType());
-            continuousVars.add(var);
+        if (numChunks > 0) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new ChunkTask(0, numChunks));
         }
 
-        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
-        return DataUtils.restrictToMeasured(boxDataSet);
+        return simulation.toDataSet();
     }
 
-
     public Vector simulateOneRecord(Vector e) {
         final Map<String, Double> variableValues = new HashMap<>();
 
@@ -1200,7 +1133,132 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
     public void setSimulatePositiveDataOnly(boolean simulatedPositiveDataOnly) {
         this.simulatePositiveDataOnly = simulatedPositiveDataOnly;
     }
-}
 
+    /**
+     * The expressions of the model compiled for Fisher simulation, with the data simulated from them. Rows may be
+     * simulated in separate pieces, each with its own copy of the context.
+     */
+    private class FisherSimulation {
+        private final List<Node> variableNodes = pm.getVariableNodes();
+        private final int numVars = variableNodes.size();
+        private final SlotContext context = new SlotContext();
+        private final Expression[] errorExpressions = new Expression[numVars];
+        private final CompiledExpression[] errors = new CompiledExpression[numVars];
+        private final CompiledExpression[] nodes = new CompiledExpression[numVars];
+        private final int[] errorSlots = new int[numVars];
+        private final int[] nodeSlots = new int[numVars];
+        private final double[][] all;
+        private final int intervalBetweenShocks;
+        private final double epsilon;
+        private final AtomicBoolean printedUndefined = new AtomicBoolean(false);
+        private final AtomicBoolean printedInfinite = new AtomicBoolean(false);
+
+        FisherSimulation(int sampleSize, int intervalBetweenShocks, double epsilon) {
+            if (intervalBetweenShocks < 1) throw new IllegalArgumentException(
+                    "Interval between shocks must be >= 1: " + intervalBetweenShocks);
+            if (epsilon <= 0.0) throw new IllegalArgumentException(
+                    "Epsilon must be > 0: " + epsilon);
+
+            this.intervalBetweenShocks = intervalBetweenShocks;
+            this.epsilon = epsilon;
+            this.all = new double[numVars][sampleSize];
+
+            // Parameters are bound first, since they take precedence over variables of the same name.
+            for (String parameter : parameterValues.keySet()) {
+                context.set(context.addSlot(parameter), parameterValues.get(parameter));
+            }
+
+            for (int j = 0; j < numVars; j++) {
+                Node error = pm.getErrorNode(variableNodes.get(j));
+
+                if (error == null) {
+                    throw new NullPointerException();
+                }
+
+                errorExpressions[j] = pm.getNodeExpression(error);
+                errorSlots[j] = context.addSlot(error.getName());
+            }
 
+            for (int j = 0; j < numVars; j++) {
+                nodeSlots[j] = context.addSlot(variableNodes.get(j).getName());
+            }
+
+            for (int j = 0; j < numVars; j++) {
+                errors[j] = CompiledExpression.compile(errorExpressions[j], context);
+                nodes[j] = CompiledExpression.compile(pm.getNodeExpression(variableNodes.get(j)), context);
+            }
+        }
 
+        void simulate(SlotContext context, int from, int to) {
+            double[] t1 = new double[numVars];
+            double[] t2 = new double[numVars];
+
+            for (int row = from; row < to; row++) {
+                for (int j = 0; j < numVars; j++) {
+                    double value = errors[j].evaluate(context);
+
+                    if (Double.isNaN(value)) {
+                        throw new IllegalArgumentException("Undefined value for expression: " + errorExpressions[j]);
+                    }
+
+                    context.set(errorSlots[j], value);
+                    t2[j] += value;
+                }
+
+                for (int i = 0; i < intervalBetweenShocks; i++) {
+                    for (int j = 0; j < numVars; j++) {
+                        t2[j] = nodes[j].evaluate(context);
+
+                        if (Double.isNaN(t2[j])) {
+                            if (printedUndefined.compareAndSet(false, true)) {
+                                System.out.println("Undefined value.");
+                            }
+                        }
+
+                        if (Double.isInfinite(t2[j])) {
+                            if (printedInfinite.compareAndSet(false, true)) {
+                                System.out.println("Infinite value.");
+                            }
+                        }
+
+                        context.set(nodeSlots[j], t2[j]);
+                    }
+
+                    boolean converged = true;
+
+                    for (int j = 0; j < numVars; j++) {
+                        if (Math.abs(t2[j] - t1[j]) > epsilon) {
+                            converged = false;
+                            break;
+                        }
+                    }
+
+                    double[] t3 = t1;
+                    t1 = t2;
+                    t2 = t3;
+
+                    if (converged) {
+                        break;
+                    }
+                }
+
+                for (int j = 0; j < numVars; j++) {
+                    all[j][row] = t1[j];
+                }
+            }
+        }
+
+        DataSet toDataSet() {
+            List<Node> continuousVars = new ArrayList<>();
+
+            for (Node node : variableNodes) {
+                final ContinuousVariable var = new ContinuousVariable(node.getName());
+                var.setNodeType(node.getNodeType());
+                continuousVars.add(var);
+            }
+
+            BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
+            return DataUtils.restrictToMeasured(boxDataSet);
+        }
+    }
+}
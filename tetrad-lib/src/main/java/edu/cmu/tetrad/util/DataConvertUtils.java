@@ -26,6 +26,7 @@ import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.data.DoubleDataBox;
 import edu.cmu.tetrad.data.MixedDataBox;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
 import edu.cmu.tetrad.data.VerticalIntDataBox;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.NodeVariableType;
@@ -37,6 +38,7 @@ import edu.pitt.dbmi.data.reader.covariance.CovarianceData;
 import edu.pitt.dbmi.data.reader.metadata.ColumnMetadata;
 import edu.pitt.dbmi.data.reader.metadata.Metadata;
 import edu.pitt.dbmi.data.reader.tabular.MixedTabularData;
+import edu.pitt.dbmi.data.reader.tabular.VerticalContinuousTabularData;
 import edu.pitt.dbmi.data.reader.tabular.VerticalDiscreteTabularData;
 import java.util.Arrays;
 import java.util.List;
@@ -56,6 +58,8 @@ public class DataConvertUtils {
     public static DataModel toDataModel(Data data, Metadata metadata) {
         if (data instanceof ContinuousData) {
             return toContinuousDataModel((ContinuousData) data);
+        } else if (data instanceof VerticalContinuousTabularData) {
+            return toVerticalContinuousDataModel((VerticalContinuousTabularData) data, metadata);
         } else if (data instanceof VerticalDiscreteTabularData) {
             return toVerticalDiscreteDataModel((VerticalDiscreteTabularData) data, metadata);
         } else if (data instanceof MixedTabularData) {
@@ -70,6 +74,8 @@ public class DataConvertUtils {
     public static DataModel toDataModel(Data data) {
         if (data instanceof ContinuousData) {
             return toContinuousDataModel((ContinuousData) data);
+        } else if (data instanceof VerticalContinuousTabularData) {
+            return toVerticalContinuousDataModel((VerticalContinuousTabularData) data);
         } else if (data instanceof VerticalDiscreteTabularData) {
             return toVerticalDiscreteDataModel((VerticalDiscreteTabularData) data);
         } else if (data instanceof MixedTabularData) {
@@ -175,6 +181,40 @@ public class DataConvertUtils {
         return new BoxDataSet(dataBox, variables);
     }
 
+    /**
+     * Converting using metadata
+     *
+     * @param dataset
+     * @param metatdata
+     * @return
+     */
+    public static DataModel toVerticalContinuousDataModel(VerticalContinuousTabularData dataset, Metadata metatdata) {
+        Node[] nodes = toNodes(dataset.getDataColumns()).stream()
+                .toArray(Node[]::new);
+
+        metatdata.getInterventionalColumns().forEach(e -> {
+            ColumnMetadata valueColumn = e.getValueColumn();
+            ColumnMetadata statusColumn = e.getStatusColumn();
+            int valColNum = valueColumn.getColumnNumber() - 1;
+            int statColNum = statusColumn.getColumnNumber() - 1;
+
+            nodes[statColNum].setNodeVariableType(NodeVariableType.INTERVENTION_STATUS);
+            nodes[valColNum].setNodeVariableType(NodeVariableType.INTERVENTION_VALUE);
+        });
+
+        DataBox dataBox = new VerticalDoubleDataBox(dataset.getData());
+        List<Node> nodeList = Arrays.asList(nodes);
+
+        return new BoxDataSet(dataBox, nodeList);
+    }
+
+    public static DataModel toVerticalContinuousDataModel(VerticalContinuousTabularData dataset) {
+        DataBox dataBox = new VerticalDoubleDataBox(dataset.getData());
+        List<Node> variables = toNodes(dataset.getDataColumns());
+
+        return new BoxDataSet(dataBox, variables);
+    }
+
     public static DataModel toContinuousDataModel(ContinuousData dataset) {
         DataBox dataBox = new DoubleDataBox(dataset.getData());
         List<Node> variables = toNodes(dataset.getDataColumns());
@@ -22,6 +22,7 @@
 package edu.cmu.tetrad.util;
 
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Static instance of a ForkJoinPool. Not sure this is necessary.
@@ -42,5 +43,21 @@ public class ForkJoinPoolInstance {
     public ForkJoinPool getPool() {
         return pool;
     }
+
+    /**
+     * For algorithms that would otherwise make a pool of their own. If the caller is itself running in a pool, as
+     * when a comparison runs algorithms in parallel, tasks are forked into that pool, so that nested parallelism
+     * shares its threads instead of oversubscribing the cores.
+     *
+     * @param parallelism The parallelism of the new pool, if one is made.
+     * @return The pool of the calling thread, if it is running in one, or else a new pool.
+     */
+    public ForkJoinPool getPool(int parallelism) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            return ForkJoinTask.getPool();
+        }
+
+        return new ForkJoinPool(parallelism);
+    }
 }
 
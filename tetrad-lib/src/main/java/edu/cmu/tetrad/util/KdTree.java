@@ -0,0 +1,328 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import java.util.Random;
+
+/**
+ * A k-d tree over a fixed set of points, for k-nearest-neighbor queries by Euclidean distance. Points are given by
+ * column, as data[dimension][point], and copied into a flat array in tree order, so that a leaf's points are adjacent
+ * in memory. Each node splits at the median of the dimension along which its points are most spread. Queries allocate
+ * only their result arrays, and the tree may be queried from several threads at once.
+ * <p>
+ * For points of many dimensions, where k-d trees degrade toward a linear scan, randomProjection gives a tree over
+ * the points projected onto a few random Gaussian directions. Neighbors found in the projected space are approximate.
+ */
+public final class KdTree {
+
+    // The maximum number of points in a leaf.
+    private static final int LEAF_SIZE = 8;
+
+    // The number of dimensions and points.
+    private final int dims;
+    private final int numPoints;
+
+    // The coordinates of the points, by point in tree order, dims to a point.
+    private final double[] coords;
+
+    // The index in the original data of each point in tree order.
+    private final int[] index;
+
+    // The position in tree order of each point of the original data.
+    private final int[] position;
+
+    // For each node, the dimension split on, or -1 for a leaf, and the split value. The children of node k are 2k + 1
+    // and 2k + 2; node k covers points from[k] to to[k] in tree order.
+    private final int[] splitDim;
+    private final double[] splitValue;
+    private final int[] from;
+    private final int[] to;
+
+    /**
+     * @param data The points, as data[dimension][point]. Values must not be NaN.
+     */
+    public KdTree(double[][] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Need at least one dimension.");
+        }
+
+        this.dims = data.length;
+        this.numPoints = data[0].length;
+
+        for (double[] column : data) {
+            if (column.length != numPoints) {
+                throw new IllegalArgumentException("All dimensions must have the same number of points.");
+            }
+        }
+
+        double[] points = new double[numPoints * dims];
+
+        for (int d = 0; d < dims; d++) {
+            for (int i = 0; i < numPoints; i++) {
+                points[i * dims + d] = data[d][i];
+            }
+        }
+
+        this.index = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) index[i] = i;
+
+        int numNodes = 1;
+        while (numNodes * LEAF_SIZE < numPoints) numNodes <<= 1;
+        numNodes = 2 * numNodes - 1;
+
+        this.splitDim = new int[numNodes];
+        this.splitValue = new double[numNodes];
+        this.from = new int[numNodes];
+        this.to = new int[numNodes];
+
+        build(0, 0, numPoints, points);
+
+        this.coords = new double[numPoints * dims];
+        this.position = new int[numPoints];
+
+        for (int p = 0; p < numPoints; p++) {
+            System.arraycopy(points, index[p] * dims, coords, p * dims, dims);
+            position[index[p]] = p;
+        }
+    }
+
+    /**
+     * @param data       The points, as data[dimension][point]. Values must not be NaN.
+     * @param projection The number of random directions to project onto.
+     * @param seed       The seed for the random directions.
+     * @return A tree over the projected points. Queries of it find approximate nearest neighbors in the original
+     * space, with the same indices.
+     */
+    public static KdTree randomProjection(double[][] data, int projection, long seed) {
+        if (projection < 1) {
+            throw new IllegalArgumentException("Need at least one direction: " + projection);
+        }
+
+        int numPoints = data.length == 0 ? 0 : data[0].length;
+        Random random = new Random(seed);
+        double[][] projected = new double[projection][numPoints];
+
+        for (int e = 0; e < projection; e++) {
+            for (double[] column : data) {
+                double g = random.nextGaussian() / Math.sqrt(projection);
+                for (int i = 0; i < numPoints; i++) projected[e][i] += g * column[i];
+            }
+        }
+
+        return new KdTree(projected);
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public int getNumDimensions() {
+        return dims;
+    }
+
+    /**
+     * @param point The index of one of the points of the tree.
+     * @param k     The number of neighbors to find. If there are fewer points than this, all are returned.
+     * @return The indices of the k points nearest to the given point, itself included, nearest first.
+     */
+    public int[] nearest(int point, int k) {
+        return nearest(coords, position[point] * dims, k);
+    }
+
+    /**
+     * @param query A point with the dimensions of the tree.
+     * @param k     The number of neighbors to find. If there are fewer points than this, all are returned.
+     * @return The indices of the k points nearest to the query, nearest first.
+     */
+    public int[] nearest(double[] query, int k) {
+        if (query.length != dims) {
+            throw new IllegalArgumentException("Expecting a point of " + dims + " dimensions.");
+        }
+
+        return nearest(query, 0, k);
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    private void build(int node, int lo, int hi, double[] points) {
+        from[node] = lo;
+        to[node] = hi;
+
+        if (hi - lo <= LEAF_SIZE || 2 * node + 2 >= splitDim.length) {
+            splitDim[node] = -1;
+            return;
+        }
+
+        int dim = 0;
+        double spread = -1;
+
+        for (int d = 0; d < dims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int p = lo; p < hi; p++) {
+                double v = points[index[p] * dims + d];
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+
+            if (max - min > spread) {
+                spread = max - min;
+                dim = d;
+            }
+        }
+
+        int mid = (lo + hi) >>> 1;
+        select(points, dim, lo, hi - 1, mid);
+
+        splitDim[node] = dim;
+        splitValue[node] = points[index[mid] * dims + dim];
+
+        build(2 * node + 1, lo, mid, points);
+        build(2 * node + 2, mid, hi, points);
+    }
+
+    // Partially sorts index[lo..hi] by the given dimension so that index[k] is in its sorted place.
+    private void select(double[] points, int dim, int lo, int hi, int k) {
+        while (hi > lo) {
+            double pivot = points[index[(lo + hi) >>> 1] * dims + dim];
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (points[index[i] * dims + dim] < pivot) i++;
+                while (points[index[j] * dims + dim] > pivot) j--;
+
+                if (i <= j) {
+                    int t = index[i];
+                    index[i] = index[j];
+                    index[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    private int[] nearest(double[] query, int offset, int k) {
+        k = Math.min(k, numPoints);
+        if (k <= 0) return new int[0];
+
+        // A max-heap of the best k so far, by squared distance.
+        int[] heap = new int[k];
+        double[] heapDist = new double[k];
+        int[] size = {0};
+
+        search(0, query, offset, k, heap, heapDist, size);
+
+        // Sort by popping the heap.
+        int[] result = new int[k];
+
+        for (int n = k - 1; n >= 0; n--) {
+            result[n] = index[heap[0]];
+            heap[0] = heap[n];
+            heapDist[0] = heapDist[n];
+            siftDown(heap, heapDist, n);
+        }
+
+        return result;
+    }
+
+    private void search(int node, double[] query, int offset, int k, int[] heap, double[] heapDist, int[] size) {
+        int dim = splitDim[node];
+
+        if (dim == -1) {
+            for (int p = from[node]; p < to[node]; p++) {
+                double dist = 0.0;
+                int base = p * dims;
+
+                for (int d = 0; d < dims; d++) {
+                    double diff = coords[base + d] - query[offset + d];
+                    dist += diff * diff;
+                }
+
+                if (size[0] < k) {
+                    int n = size[0]++;
+                    heap[n] = p;
+                    heapDist[n] = dist;
+                    siftUp(heap, heapDist, n);
+                } else if (dist < heapDist[0]) {
+                    heap[0] = p;
+                    heapDist[0] = dist;
+                    siftDown(heap, heapDist, k);
+                }
+            }
+
+            return;
+        }
+
+        double diff = query[offset + dim] - splitValue[node];
+        int near = diff < 0 ? 2 * node + 1 : 2 * node + 2;
+        int far = diff < 0 ? 2 * node + 2 : 2 * node + 1;
+
+        search(near, query, offset, k, heap, heapDist, size);
+
+        if (size[0] < k || diff * diff < heapDist[0]) {
+            search(far, query, offset, k, heap, heapDist, size);
+        }
+    }
+
+    private static void siftUp(int[] heap, double[] heapDist, int n) {
+        while (n > 0) {
+            int parent = (n - 1) / 2;
+            if (heapDist[parent] >= heapDist[n]) return;
+            swap(heap, heapDist, parent, n);
+            n = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, double[] heapDist, int size) {
+        int n = 0;
+
+        while (true) {
+            int largest = n;
+            int left = 2 * n + 1;
+            int right = left + 1;
+
+            if (left < size && heapDist[left] > heapDist[largest]) largest = left;
+            if (right < size && heapDist[right] > heapDist[largest]) largest = right;
+            if (largest == n) return;
+
+            swap(heap, heapDist, n, largest);
+            n = largest;
+        }
+    }
+
+    private static void swap(int[] heap, double[] heapDist, int a, int b) {
+        int t = heap[a];
+        heap[a] = heap[b];
+        heap[b] = t;
+
+        double d = heapDist[a];
+        heapDist[a] = heapDist[b];
+        heapDist[b] = d;
+    }
+}
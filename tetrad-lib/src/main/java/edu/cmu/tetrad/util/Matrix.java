@@ -22,6 +22,7 @@
 package edu.cmu.tetrad.util;
 
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import org.apache.commons.math3.exception.OutOfRangeException;
 import org.apache.commons.math3.linear.*;
 
 import java.io.IOException;
@@ -31,7 +32,10 @@ import java.io.ObjectInputStream;
  * Wraps the Apache math3 linear algebra library for most uses in Tetrad.
  * Specialized uses will still have to use the library directly. One issue
  * this fixes is that a BlockRealMatrix cannot represent a matrix with zero
- * rows; this uses an Array2DRowRealMatrix to represent that case.
+ * rows; this uses an Array2DRowRealMatrix to represent that case. Matrices
+ * with no more than SmallMatrixKernel.SMALL_DIMENSION rows and columns are
+ * stored flat, and the common operations on them (selection, products,
+ * inversion) are done by SmallMatrixKernel without going through Apache.
  *
  * @author Joseph Ramsey
  */
@@ -44,6 +48,8 @@ public class Matrix implements TetradSerializable {
     public Matrix(double[][] data) {
         if (data.length == 0) {
             this.apacheData = new Array2DRowRealMatrix();
+        } else if (data[0].length > 0 && SmallMatrixKernel.isSmall(data.length, data[0].length)) {
+            this.apacheData = SmallRealMatrix.copyOf(data);
         } else {
             this.apacheData = new BlockRealMatrix(data);
         }
@@ -55,6 +61,8 @@ public class Matrix implements TetradSerializable {
     public Matrix(int m, int n) {
         if (m == 0 || n == 0) {
             this.apacheData = new Array2DRowRealMatrix();
+        } else if (SmallMatrixKernel.isSmall(m, n)) {
+            this.apacheData = new SmallRealMatrix(m, n);
         } else {
             this.apacheData = new BlockRealMatrix(m, n);
         }
@@ -67,6 +75,13 @@ public class Matrix implements TetradSerializable {
         this(m.apacheData.copy().getData());
     }
 
+    // Wraps the given m x n row-major array without copying; m and n must be positive and small.
+    private Matrix(int m, int n, double[] data) {
+        this.apacheData = new SmallRealMatrix(m, n, data);
+        this.m = m;
+        this.n = n;
+    }
+
     public void assign(Matrix matrix) {
         if (apacheData.getRowDimension() != matrix.rows() || apacheData.getColumnDimension() != matrix.columns()) {
             throw new IllegalArgumentException("Mismatched matrix size.");
@@ -98,12 +113,34 @@ public class Matrix implements TetradSerializable {
             return new Matrix(rows.length, cols.length);
         }
 
+        if (SmallMatrixKernel.isSmall(rows.length, cols.length)) {
+            for (int row : rows) if (row < 0 || row >= rows()) throw new OutOfRangeException(row, 0, rows() - 1);
+            for (int col : cols) if (col < 0 || col >= columns()) throw new OutOfRangeException(col, 0, columns() - 1);
+
+            double[] selection = new double[rows.length * cols.length];
+            double[] data = flat();
+
+            if (data != null) {
+                SmallMatrixKernel.select(data, columns(), rows, cols, selection);
+            } else {
+                for (int i = 0; i < rows.length; i++) {
+                    for (int j = 0; j < cols.length; j++) {
+                        selection[i * cols.length + j] = apacheData.getEntry(rows[i], cols[j]);
+                    }
+                }
+            }
+
+            return new Matrix(rows.length, cols.length, selection);
+        }
+
         RealMatrix subMatrix = apacheData.getSubMatrix(rows, cols);
         return new Matrix(subMatrix.getData());
     }
 
     public Matrix copy() {
         if (zeroDimension()) return new Matrix(rows(), columns());
+        double[] data = flat();
+        if (data != null) return new Matrix(rows(), columns(), data.clone());
         return new Matrix(apacheData.copy().getData());
     }
 
@@ -118,7 +155,12 @@ public class Matrix implements TetradSerializable {
     public Matrix times(Matrix m) {
         if (this.zeroDimension() || m.zeroDimension())
             return new Matrix(this.rows(), m.columns());
-        else {
+        else if (flat() != null && m.flat() != null) {
+            if (columns() != m.rows()) throw new IllegalArgumentException("Mismatched dimensions.");
+            double[] product = new double[rows() * m.columns()];
+            SmallMatrixKernel.multiply(flat(), rows(), columns(), m.flat(), m.columns(), product);
+            return new Matrix(rows(), m.columns(), product);
+        } else {
             return new Matrix(apacheData.multiply(m.apacheData).getData());
         }
     }
@@ -129,6 +171,12 @@ public class Matrix implements TetradSerializable {
         }
 
         double[] y = new double[apacheData.getRowDimension()];
+        double[] data = flat();
+
+        if (data != null) {
+            SmallMatrixKernel.multiply(data, rows(), columns(), v.toArray(), y);
+            return new Vector(y);
+        }
 
         for (int i = 0; i < apacheData.getRowDimension(); i++) {
             double sum = 0.0;
@@ -178,6 +226,14 @@ public class Matrix implements TetradSerializable {
             return new Matrix(0, 0);
         }
 
+        double[] data = flat();
+
+        if (data != null) {
+            double[] inverse = new double[data.length];
+            SmallMatrixKernel.invert(data, rows(), inverse);
+            return new Matrix(rows(), columns(), inverse);
+        }
+
         return new Matrix(new LUDecomposition(apacheData, 1e-9).getSolver().getInverse().getData());
     }
 
@@ -222,6 +278,14 @@ public class Matrix implements TetradSerializable {
 
     public Matrix transpose() {
         if (zeroDimension()) return new Matrix(columns(), rows());
+        double[] data = flat();
+
+        if (data != null) {
+            double[] transpose = new double[data.length];
+            SmallMatrixKernel.transpose(data, rows(), columns(), transpose);
+            return new Matrix(columns(), rows(), transpose);
+        }
+
         return new Matrix(apacheData.transpose().getData());
     }
 
@@ -249,7 +313,7 @@ public class Matrix implements TetradSerializable {
 
     public Matrix minus(Matrix mb) {
         if (mb.rows() == 0 || mb.columns() == 0) return this;
-        return new Matrix(apacheData.subtract(mb.apacheData).getData());
+        return plusScaled(mb, -1.0);
     }
 
     public double norm1() {
@@ -258,7 +322,7 @@ public class Matrix implements TetradSerializable {
 
     public Matrix plus(Matrix mb) {
         if (mb.rows() == 0 || mb.columns() == 0) return this;
-        return new Matrix(apacheData.add(mb.apacheData).getData());
+        return plusScaled(mb, 1.0);
     }
 
     public int rank() {
@@ -336,6 +400,30 @@ public class Matrix implements TetradSerializable {
         return new DenseDoubleMatrix2D(apacheData.getData()).zSum();
     }
 
+    // this + scale * mb.
+    private Matrix plusScaled(Matrix mb, double scale) {
+        if (flat() != null && mb.flat() != null) {
+            if (rows() != mb.rows() || columns() != mb.columns()) {
+                throw new IllegalArgumentException("Mismatched dimensions.");
+            }
+
+            double[] sum = new double[flat().length];
+            SmallMatrixKernel.addScaled(flat(), mb.flat(), scale, sum);
+            return new Matrix(rows(), columns(), sum);
+        }
+
+        if (scale == 1.0) {
+            return new Matrix(apacheData.add(mb.apacheData).getData());
+        } else {
+            return new Matrix(apacheData.subtract(mb.apacheData).getData());
+        }
+    }
+
+    // The row-major storage of a small matrix, or null if this is not stored flat.
+    private double[] flat() {
+        return apacheData instanceof SmallRealMatrix ? ((SmallRealMatrix) apacheData).getDataRef() : null;
+    }
+
     private boolean zeroDimension() {
         return rows() == 0 || columns() == 0;
     }
@@ -61,6 +61,10 @@ public class RandomUtil {
 
     private Map<Long, RandomGenerator> seedsToGenerators = new HashedMap<>();
 
+    // Generators of threads that have been given streams of their own, and standard normals using them.
+    private final ThreadLocal<RandomGenerator> threadGenerators = new ThreadLocal<>();
+    private final ThreadLocal<NormalDistribution> threadNormals = new ThreadLocal<>();
+
 
     //========================================CONSTRUCTORS===================================//
 
@@ -94,11 +98,11 @@ public class RandomUtil {
      * @return Ibid.
      */
     public int nextInt(int n) {
-        return randomGenerator.nextInt(n);
+        return generator().nextInt(n);
     }
 
     public double nextDouble() {
-        return randomGenerator.nextDouble();
+        return generator().nextDouble();
     }
 
     /**
@@ -109,7 +113,7 @@ public class RandomUtil {
     public double nextUniform(double low, double high) {
         if (low == high) return low;
         else {
-            return new UniformRealDistribution(randomGenerator, low, high).sample();
+            return new UniformRealDistribution(generator(), low, high).sample();
         }
     }
 
@@ -123,7 +127,7 @@ public class RandomUtil {
             throw new IllegalArgumentException("Standard deviation must be non-negative: " + sd);
         }
 
-        double sample = normal.sample();
+        double sample = normal().sample();
         return sample * sd + mean;
 
 //        return new NormalDistribution(randomGenerator, mean, sd).sample();
@@ -183,7 +187,7 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double nextPoisson(double lambda) {
-        return new PoissonDistribution(randomGenerator, lambda, 1.0E-12D, 100000).sample();
+        return new PoissonDistribution(generator(), lambda, 1.0E-12D, 100000).sample();
     }
 
     /**
@@ -193,7 +197,7 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double normalPdf(double mean, double sd, double value) {
-        return new NormalDistribution(randomGenerator, mean, sd).density(value);
+        return new NormalDistribution(generator(), mean, sd).density(value);
     }
 
     /**
@@ -203,7 +207,7 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double normalCdf(double mean, double sd, double value) {
-        return normal.cumulativeProbability((value - mean) / sd);
+        return normal().cumulativeProbability((value - mean) / sd);
 //        value = (value - mean) / sd;
 //        return ProbUtils.normalCdf(value);
     }
@@ -222,7 +226,7 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double nextT(double df) {
-        return new TDistribution(randomGenerator, df).sample();
+        return new TDistribution(generator(), df).sample();
     }
 
     /**
@@ -230,7 +234,7 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double nextExponential(double lambda) {
-        return new ExponentialDistribution(randomGenerator, lambda).sample();
+        return new ExponentialDistribution(generator(), lambda).sample();
     }
 
     /**
@@ -238,7 +242,7 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double nextChiSquare(double df) {
-        return new ChiSquaredDistribution(randomGenerator, df).sample();
+        return new ChiSquaredDistribution(generator(), df).sample();
     }
 
     /**
@@ -247,19 +251,53 @@ public class RandomUtil {
      * @return Ibid.
      */
     public double nextGamma(double shape, double scale) {
-        return new GammaDistribution(randomGenerator, shape, scale).sample();
+        return new GammaDistribution(generator(), shape, scale).sample();
     }
 
     public long getSeed() {
         return seed;
     }
 
+    /**
+     * @return The generator of the calling thread, if it has been given a seed of its own, or else the common one.
+     */
     public RandomGenerator getRandomGenerator() {
-        return randomGenerator;
+        return generator();
+    }
+
+    /**
+     * Gives the calling thread a stream of random numbers of its own, which it draws from until clearThreadSeed is
+     * called. A computation split among threads can then draw reproducible numbers, one stream per piece of work,
+     * however the threads are scheduled.
+     *
+     * @param seed The seed of the stream.
+     */
+    public void setThreadSeed(long seed) {
+        RandomGenerator generator = new Well44497b(seed);
+        threadGenerators.set(generator);
+        threadNormals.set(new NormalDistribution(generator, 0, 1));
+    }
+
+    /**
+     * Returns the calling thread to the common stream of random numbers.
+     */
+    public void clearThreadSeed() {
+        threadGenerators.remove();
+        threadNormals.remove();
+    }
+
+    private RandomGenerator generator() {
+        RandomGenerator generator = threadGenerators.get();
+        return generator == null ? randomGenerator : generator;
+    }
+
+    private NormalDistribution normal() {
+        NormalDistribution normal = threadNormals.get();
+        return normal == null ? this.normal : normal;
     }
 
     public long nextLong() {
-        return randomGenerator.nextLong();
+        return generator().nextLong();
     }
 }
 
@@ -0,0 +1,240 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * Loops for the small dense matrices that come up in conditional independence tests and local scores (a few
+ * variables up to a few dozen), on flat row-major double[] arrays. At these sizes the cost of the Apache matrix
+ * classes is mostly dispatch, bounds checking and copying, not arithmetic, so these are written as plain loops with
+ * caller-supplied output arrays; output arrays may not alias inputs unless a method says otherwise. Matrix and Vector
+ * use these automatically for matrices with no more than SMALL_DIMENSION rows and columns.
+ */
+public final class SmallMatrixKernel {
+
+    /**
+     * Matrices with at most this many rows and columns are stored flat and handled by this class.
+     */
+    public static final int SMALL_DIMENSION = 32;
+
+    /**
+     * Pivots with absolute value below this are taken to indicate singularity, as for the LU decomposition used by
+     * Matrix.inverse() for larger matrices.
+     */
+    public static final double SINGULARITY_THRESHOLD = 1e-9;
+
+    private SmallMatrixKernel() {
+    }
+
+    /**
+     * @return true if an m x n matrix should be handled by this class.
+     */
+    public static boolean isSmall(int m, int n) {
+        return m <= SMALL_DIMENSION && n <= SMALL_DIMENSION;
+    }
+
+    /**
+     * out (m x n) = a (m x k) * b (k x n).
+     */
+    public static void multiply(double[] a, int m, int k, double[] b, int n, double[] out) {
+        for (int i = 0; i < m; i++) {
+            int rowA = i * k;
+            int rowOut = i * n;
+
+            for (int j = 0; j < n; j++) out[rowOut + j] = 0.0;
+
+            for (int l = 0; l < k; l++) {
+                double ail = a[rowA + l];
+                if (ail == 0.0) continue;
+                int rowB = l * n;
+
+                for (int j = 0; j < n; j++) {
+                    out[rowOut + j] += ail * b[rowB + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * y (m) = a (m x n) * x (n).
+     */
+    public static void multiply(double[] a, int m, int n, double[] x, double[] y) {
+        for (int i = 0; i < m; i++) {
+            int row = i * n;
+            double sum = 0.0;
+            for (int j = 0; j < n; j++) sum += a[row + j] * x[j];
+            y[i] = sum;
+        }
+    }
+
+    /**
+     * out (n x m) = a (m x n) transposed.
+     */
+    public static void transpose(double[] a, int m, int n, double[] out) {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                out[j * m + i] = a[i * n + j];
+            }
+        }
+    }
+
+    /**
+     * out (rows.length x cols.length) = the given rows and columns of a, which has n columns.
+     */
+    public static void select(double[] a, int n, int[] rows, int[] cols, double[] out) {
+        int c = cols.length;
+
+        for (int i = 0; i < rows.length; i++) {
+            int rowA = rows[i] * n;
+            int rowOut = i * c;
+
+            for (int j = 0; j < c; j++) {
+                out[rowOut + j] = a[rowA + cols[j]];
+            }
+        }
+    }
+
+    /**
+     * out = a + scale * b, elementwise. out may be a or b.
+     */
+    public static void addScaled(double[] a, double[] b, double scale, double[] out) {
+        for (int i = 0; i < out.length; i++) out[i] = a[i] + scale * b[i];
+    }
+
+    /**
+     * @return the dot product of the first n entries of a and b.
+     */
+    public static double dot(double[] a, double[] b, int n) {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    /**
+     * out (n x n) = the inverse of a (n x n), by LU decomposition with partial pivoting. a is not modified.
+     *
+     * @throws SingularMatrixException if a pivot is smaller than SINGULARITY_THRESHOLD in absolute value.
+     */
+    public static void invert(double[] a, int n, double[] out) {
+        double[] lu = new double[n * n];
+        System.arraycopy(a, 0, lu, 0, n * n);
+        invertInPlace(lu, n, new int[n], out);
+    }
+
+    /**
+     * out (n x n) = the inverse of lu (n x n). lu is overwritten with its LU decomposition and pivot with the row
+     * permutation, so that callers inverting many matrices can reuse both arrays.
+     *
+     * @throws SingularMatrixException if a pivot is smaller than SINGULARITY_THRESHOLD in absolute value.
+     */
+    public static void invertInPlace(double[] lu, int n, int[] pivot, double[] out) {
+        decompose(lu, n, pivot);
+
+        // Permuted identity.
+        for (int i = 0; i < n * n; i++) out[i] = 0.0;
+        for (int row = 0; row < n; row++) out[row * n + pivot[row]] = 1.0;
+
+        // Solve L Y = P.
+        for (int col = 0; col < n; col++) {
+            int rowCol = col * n;
+
+            for (int i = col + 1; i < n; i++) {
+                double factor = lu[i * n + col];
+                if (factor == 0.0) continue;
+                int rowI = i * n;
+                for (int j = 0; j < n; j++) out[rowI + j] -= out[rowCol + j] * factor;
+            }
+        }
+
+        // Solve U X = Y.
+        for (int col = n - 1; col >= 0; col--) {
+            int rowCol = col * n;
+            double diag = lu[rowCol + col];
+            for (int j = 0; j < n; j++) out[rowCol + j] /= diag;
+
+            for (int i = 0; i < col; i++) {
+                double factor = lu[i * n + col];
+                if (factor == 0.0) continue;
+                int rowI = i * n;
+                for (int j = 0; j < n; j++) out[rowI + j] -= out[rowCol + j] * factor;
+            }
+        }
+    }
+
+    // Crout LU decomposition with partial pivoting, in place, as in Apache's LUDecomposition.
+    private static void decompose(double[] lu, int n, int[] pivot) {
+        for (int i = 0; i < n; i++) pivot[i] = i;
+
+        for (int col = 0; col < n; col++) {
+
+            // Upper.
+            for (int row = 0; row < col; row++) {
+                int rowRow = row * n;
+                double sum = lu[rowRow + col];
+                for (int i = 0; i < row; i++) sum -= lu[rowRow + i] * lu[i * n + col];
+                lu[rowRow + col] = sum;
+            }
+
+            // Lower.
+            int max = col;
+            double largest = Double.NEGATIVE_INFINITY;
+
+            for (int row = col; row < n; row++) {
+                int rowRow = row * n;
+                double sum = lu[rowRow + col];
+                for (int i = 0; i < col; i++) sum -= lu[rowRow + i] * lu[i * n + col];
+                lu[rowRow + col] = sum;
+
+                if (Math.abs(sum) > largest) {
+                    largest = Math.abs(sum);
+                    max = row;
+                }
+            }
+
+            if (Math.abs(lu[max * n + col]) < SINGULARITY_THRESHOLD) {
+                throw new SingularMatrixException();
+            }
+
+            if (max != col) {
+                int rowMax = max * n;
+                int rowCol = col * n;
+
+                for (int i = 0; i < n; i++) {
+                    double tmp = lu[rowMax + i];
+                    lu[rowMax + i] = lu[rowCol + i];
+                    lu[rowCol + i] = tmp;
+                }
+
+                int tmp = pivot[max];
+                pivot[max] = pivot[col];
+                pivot[col] = tmp;
+            }
+
+            double diag = lu[col * n + col];
+
+            for (int row = col + 1; row < n; row++) {
+                lu[row * n + col] /= diag;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.io.Serializable;
+
+/**
+ * A RealMatrix stored as a single row-major double[], used by Matrix for small matrices so that SmallMatrixKernel
+ * can work on the storage directly.
+ */
+final class SmallRealMatrix extends AbstractRealMatrix implements Serializable {
+    static final long serialVersionUID = 23L;
+
+    private final int rows;
+    private final int cols;
+
+    // Row-major.
+    private final double[] data;
+
+    SmallRealMatrix(int rows, int cols) {
+        this(rows, cols, new double[rows * cols]);
+    }
+
+    /**
+     * Wraps the given array, without copying it.
+     */
+    SmallRealMatrix(int rows, int cols, double[] data) {
+        if (data.length != rows * cols) {
+            throw new IllegalArgumentException("Expecting " + rows * cols + " entries: " + data.length);
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+    }
+
+    /**
+     * Copies the given array, which must be rectangular.
+     */
+    static SmallRealMatrix copyOf(double[][] data) {
+        int rows = data.length;
+        int cols = rows == 0 ? 0 : data[0].length;
+        double[] _data = new double[rows * cols];
+
+        for (int i = 0; i < rows; i++) {
+            if (data[i].length != cols) {
+                throw new IllegalArgumentException("Ragged array: row " + i + " has length " + data[i].length);
+            }
+
+            System.arraycopy(data[i], 0, _data, i * cols, cols);
+        }
+
+        return new SmallRealMatrix(rows, cols, _data);
+    }
+
+    /**
+     * @return the underlying array, not a copy.
+     */
+    double[] getDataRef() {
+        return data;
+    }
+
+    @Override
+    public int getRowDimension() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnDimension() {
+        return cols;
+    }
+
+    @Override
+    public RealMatrix createMatrix(int rowDimension, int columnDimension) {
+        return new SmallRealMatrix(rowDimension, columnDimension);
+    }
+
+    @Override
+    public RealMatrix copy() {
+        return new SmallRealMatrix(rows, cols, data.clone());
+    }
+
+    @Override
+    public double getEntry(int row, int column) {
+        checkIndex(row, column);
+        return data[row * cols + column];
+    }
+
+    @Override
+    public void setEntry(int row, int column, double value) {
+        checkIndex(row, column);
+        data[row * cols + column] = value;
+    }
+
+    @Override
+    public void addToEntry(int row, int column, double increment) {
+        checkIndex(row, column);
+        data[row * cols + column] += increment;
+    }
+
+    @Override
+    public void multiplyEntry(int row, int column, double factor) {
+        checkIndex(row, column);
+        data[row * cols + column] *= factor;
+    }
+
+    @Override
+    public double[][] getData() {
+        double[][] _data = new double[rows][cols];
+
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(data, i * cols, _data[i], 0, cols);
+        }
+
+        return _data;
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        if (row < 0 || row >= rows) throw new OutOfRangeException(row, 0, rows - 1);
+        double[] _row = new double[cols];
+        System.arraycopy(data, row * cols, _row, 0, cols);
+        return _row;
+    }
+
+    // Apache's MatrixUtils; ours is in the same package.
+    private void checkIndex(int row, int column) {
+        org.apache.commons.math3.linear.MatrixUtils.checkMatrixIndex(this, row, column);
+    }
+}
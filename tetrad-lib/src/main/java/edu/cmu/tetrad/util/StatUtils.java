@@ -1746,7 +1746,7 @@ public final class StatUtils {
      *
      * @return the given partial correlation.
      */
-    public static synchronized double partialCorrelation(Matrix submatrix) {
+    public static double partialCorrelation(Matrix submatrix) {
         try {
             return StatUtils.partialCorrelationPrecisionMatrix(submatrix);
         } catch (SingularMatrixException e) {
@@ -25,7 +25,8 @@ import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
 /**
- * Vector wrapping matrix library.
+ * Vector wrapping matrix library. Arithmetic is done directly on the backing
+ * array with SmallMatrixKernel.
  */
 public class Vector implements TetradSerializable {
     static final long serialVersionUID = 23L;
@@ -40,6 +41,11 @@ public class Vector implements TetradSerializable {
         this.data = new ArrayRealVector(size);
     }
 
+    // Wraps the given array without copying it.
+    private Vector(double[] data, boolean copy) {
+        this.data = new ArrayRealVector(data, copy);
+    }
+
     public void assign(double value) {
         for (int i = 0; i < data.getDimension(); i++) {
             data.setEntry(i, value);
@@ -47,7 +53,7 @@ public class Vector implements TetradSerializable {
     }
 
     public Vector copy() {
-        return new Vector(data.copy().toArray());
+        return new Vector(data.toArray(), false);
     }
 
     public Matrix diag() {
@@ -61,7 +67,8 @@ public class Vector implements TetradSerializable {
     }
 
     public double dotProduct(Vector v2) {
-        return data.dotProduct(v2.data);
+        if (v2.size() != size()) throw new IllegalArgumentException("Mismatched dimensions.");
+        return SmallMatrixKernel.dot(dataRef(), v2.dataRef(), size());
     }
 
     public double get(int i) {
@@ -73,20 +80,18 @@ public class Vector implements TetradSerializable {
     }
 
     public Vector minus(Vector mb) {
-        return new Vector(data.subtract(mb.data).toArray());
+        return plus(mb, -1.0);
     }
 
     public Vector plus(Vector mb) {
-        return new Vector(data.add(mb.data).toArray());
+        return plus(mb, 1.0);
     }
 
     public Vector scalarMult(double scalar) {
-        Vector newMatrix = copy();
-        for (int i = 0; i < size(); i++) {
-            newMatrix.set(i, get(i) * scalar);
-        }
-
-        return newMatrix;
+        double[] v = dataRef();
+        double[] product = new double[v.length];
+        for (int i = 0; i < v.length; i++) product[i] = v[i] * scalar;
+        return new Vector(product, false);
     }
 
     public void set(int j, double v) {
@@ -112,7 +117,7 @@ public class Vector implements TetradSerializable {
             _selection[i] = data.getEntry(selection[i]);
         }
 
-        return new Vector(_selection);
+        return new Vector(_selection, false);
     }
 
     public boolean equals(Object o) {
@@ -125,6 +130,19 @@ public class Vector implements TetradSerializable {
         return MatrixUtils.equals(v.toArray(), this.toArray());
     }
 
+    // this + scale * mb.
+    private Vector plus(Vector mb, double scale) {
+        if (mb.size() != size()) throw new IllegalArgumentException("Mismatched dimensions.");
+        double[] sum = new double[size()];
+        SmallMatrixKernel.addScaled(dataRef(), mb.dataRef(), scale, sum);
+        return new Vector(sum, false);
+    }
+
+    // The backing array, not a copy.
+    private double[] dataRef() {
+        return data instanceof ArrayRealVector ? ((ArrayRealVector) data).getDataRef() : data.toArray();
+    }
+
     /**
      * Generates a simple exemplar of this class to test serialization.
      */
@@ -0,0 +1,451 @@
+package edu.pitt.dbmi.algo.resampling;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edge.Property;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.EdgeTypeProbability;
+import edu.cmu.tetrad.graph.EdgeTypeProbability.EdgeType;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts, over the graphs found for a set of resamplings, how often each pair of nodes is joined by each type of
+ * edge. Graphs are added one at a time as they are found and need not be kept. Counts from different threads or
+ * processes may be combined with merge, and, being serializable, may be written out by one JVM and read into
+ * another. Nodes are identified by name.
+ * <p>
+ * Only pairs that are adjacent in some graph are stored; the number of graphs in which a pair is not adjacent is the
+ * number of graphs less the number in which it is.
+ */
+public class EdgeFrequencies implements Serializable {
+
+	private static final long serialVersionUID = 23L;
+
+	private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+
+	private static final Property[] PROPERTIES = Property.values();
+
+	// The nodes, in the order first seen.
+	private final List<Node> nodes = new ArrayList<>();
+
+	// Indices of nodes in the above list, by name.
+	private final Map<String, Integer> indices = new HashMap<>();
+
+	// Counts of edge types, by pair of node indices. See pairKey and edgeKey.
+	private final Map<Long, PairCounts> counts = new HashMap<>();
+
+	// The number of graphs added.
+	private int numGraphs = 0;
+
+	/**
+	 * Adds the edges of the given graph to the counts. Where a pair of nodes is joined by more than one edge, the
+	 * first is counted.
+	 */
+	public synchronized void add(Graph graph) {
+		if (graph == null) {
+			return;
+		}
+
+		for (Node node : graph.getNodes()) {
+			index(node);
+		}
+
+		Set<Long> seen = new HashSet<>();
+
+		for (Edge edge : graph.getEdges()) {
+			int i = index(edge.getNode1());
+			int j = index(edge.getNode2());
+
+			if (i == j) {
+				continue;
+			}
+
+			Endpoint end1 = edge.getEndpoint1();
+			Endpoint end2 = edge.getEndpoint2();
+
+			// Endpoints are stored relative to the node with the lower index.
+			if (i > j) {
+				int t = i;
+				i = j;
+				j = t;
+				Endpoint e = end1;
+				end1 = end2;
+				end2 = e;
+			}
+
+			EdgeType edgeType = edgeType(end1, end2);
+
+			// Edges with no type, such as o-, are counted as no edge, as before.
+			if (edgeType == EdgeType.nil) {
+				continue;
+			}
+
+			long pair = pairKey(i, j);
+
+			if (!seen.add(pair)) {
+				continue;
+			}
+
+			PairCounts pairCounts = counts.get(pair);
+
+			if (pairCounts == null) {
+				pairCounts = new PairCounts();
+				counts.put(pair, pairCounts);
+			}
+
+			pairCounts.add(edgeKey(edgeType, edge.getProperties()), 1);
+		}
+
+		numGraphs++;
+	}
+
+	/**
+	 * Adds the counts of the given frequencies to these.
+	 */
+	public void merge(EdgeFrequencies other) {
+		if (other == this) {
+			throw new IllegalArgumentException("Cannot merge frequencies with themselves.");
+		}
+
+		List<Node> otherNodes;
+		Map<Long, PairCounts> otherCounts = new HashMap<>();
+		int otherNumGraphs;
+
+		synchronized (other) {
+			otherNodes = new ArrayList<>(other.nodes);
+			otherNumGraphs = other.numGraphs;
+
+			for (Map.Entry<Long, PairCounts> entry : other.counts.entrySet()) {
+				otherCounts.put(entry.getKey(), entry.getValue().copy());
+			}
+		}
+
+		synchronized (this) {
+			int[] map = new int[otherNodes.size()];
+
+			for (int k = 0; k < otherNodes.size(); k++) {
+				map[k] = index(otherNodes.get(k));
+			}
+
+			for (Map.Entry<Long, PairCounts> entry : otherCounts.entrySet()) {
+				long key = entry.getKey();
+				int i = map[(int) (key >>> 32)];
+				int j = map[(int) key];
+				boolean swap = i > j;
+
+				long pair = swap ? pairKey(j, i) : pairKey(i, j);
+				PairCounts pairCounts = counts.get(pair);
+
+				if (pairCounts == null) {
+					pairCounts = new PairCounts();
+					counts.put(pair, pairCounts);
+				}
+
+				PairCounts _counts = entry.getValue();
+
+				for (int k = 0; k < _counts.size; k++) {
+					int edgeKey = _counts.keys[k];
+					pairCounts.add(swap ? reverse(edgeKey) : edgeKey, _counts.counts[k]);
+				}
+			}
+
+			numGraphs += otherNumGraphs;
+		}
+	}
+
+	/**
+	 * @return the number of graphs added, including those added by merging.
+	 */
+	public synchronized int getNumGraphs() {
+		return numGraphs;
+	}
+
+	/**
+	 * @return the nodes of the graphs added, in the order first seen.
+	 */
+	public synchronized List<Node> getNodes() {
+		return new ArrayList<>(nodes);
+	}
+
+	/**
+	 * @return the probability of each type of edge between node1 and node2 (oriented from node1 to node2) over the
+	 * graphs added, followed by the probability of no edge, or null if the nodes are adjacent in none of them.
+	 */
+	public synchronized List<EdgeTypeProbability> getEdgeTypeProbabilities(Node node1, Node node2) {
+		Integer i = indices.get(node1.getName());
+		Integer j = indices.get(node2.getName());
+
+		if (i == null || j == null || i.equals(j)) {
+			return null;
+		}
+
+		boolean swap = i > j;
+		PairCounts pairCounts = counts.get(swap ? pairKey(j, i) : pairKey(i, j));
+
+		if (pairCounts == null) {
+			return null;
+		}
+
+		List<EdgeTypeProbability> edgeTypeProbabilities = new ArrayList<>();
+		int[] order = pairCounts.sortedIndices();
+		int numAdjacent = 0;
+
+		for (int k : order) {
+			int edgeKey = swap ? reverse(pairCounts.keys[k]) : pairCounts.keys[k];
+			EdgeTypeProbability etp = new EdgeTypeProbability(EDGE_TYPES[edgeKey & 7],
+					(double) pairCounts.counts[k] / numGraphs);
+
+			for (Property property : properties(edgeKey)) {
+				etp.addProperty(property);
+			}
+
+			edgeTypeProbabilities.add(etp);
+			numAdjacent += pairCounts.counts[k];
+		}
+
+		edgeTypeProbabilities.add(new EdgeTypeProbability(EdgeType.nil, (double) (numGraphs - numAdjacent) / numGraphs));
+
+		return edgeTypeProbabilities;
+	}
+
+	/**
+	 * @return a graph over the nodes seen, sorted, in which each pair of nodes is joined by its most probable type
+	 * of edge, subject to the given ensemble rule. Each edge records the probabilities of all types of edge for its
+	 * pair.
+	 */
+	public synchronized Graph getGraph(ResamplingEdgeEnsemble edgeEnsemble) {
+		if (numGraphs == 0) {
+			return new EdgeListGraph();
+		}
+
+		List<Node> sorted = new ArrayList<>(nodes);
+		Collections.sort(sorted);
+
+		Graph graph = new EdgeListGraph(sorted);
+
+		for (long pair : counts.keySet()) {
+			Node n1 = nodes.get((int) (pair >>> 32));
+			Node n2 = nodes.get((int) pair);
+
+			// Edges are oriented by the sorted order of the nodes.
+			if (n1.compareTo(n2) > 0) {
+				Node t = n1;
+				n1 = n2;
+				n2 = t;
+			}
+
+			List<EdgeTypeProbability> edgeTypeProbabilities = getEdgeTypeProbabilities(n1, n2);
+			EdgeTypeProbability chosen = null;
+			double maxEdgeProb = 0;
+			double noEdgeProb = 0;
+
+			for (EdgeTypeProbability etp : edgeTypeProbabilities) {
+				if (etp.getEdgeType() == EdgeType.nil) {
+					noEdgeProb = etp.getProbability();
+				} else if (etp.getProbability() > maxEdgeProb) {
+					chosen = etp;
+					maxEdgeProb = etp.getProbability();
+				}
+			}
+
+			if (chosen == null) {
+				continue;
+			}
+
+			switch (edgeEnsemble) {
+			case Highest:
+				if (noEdgeProb > maxEdgeProb) {
+					continue;
+				}
+				break;
+			case Majority:
+				if (noEdgeProb > maxEdgeProb || maxEdgeProb < .5) {
+					continue;
+				}
+				break;
+			default:
+				// Do nothing
+			}
+
+			Edge edge = edge(n1, n2, chosen.getEdgeType());
+
+			for (Property property : chosen.getProperties()) {
+				edge.addProperty(property);
+			}
+
+			for (EdgeTypeProbability etp : edgeTypeProbabilities) {
+				edge.addEdgeTypeProbability(etp);
+			}
+
+			graph.addEdge(edge);
+		}
+
+		return graph;
+	}
+
+	//==============================PRIVATE METHODS============================//
+
+	private int index(Node node) {
+		Integer index = indices.get(node.getName());
+
+		if (index == null) {
+			index = nodes.size();
+			nodes.add(node);
+			indices.put(node.getName(), index);
+		}
+
+		return index;
+	}
+
+	private static long pairKey(int i, int j) {
+		return ((long) i << 32) | j;
+	}
+
+	// The edge type in the low three bits, properties above.
+	private static int edgeKey(EdgeType edgeType, List<Property> properties) {
+		int key = edgeType.ordinal();
+
+		for (Property property : properties) {
+			key |= 1 << (3 + property.ordinal());
+		}
+
+		return key;
+	}
+
+	private static List<Property> properties(int edgeKey) {
+		List<Property> properties = new ArrayList<>();
+
+		for (Property property : PROPERTIES) {
+			if ((edgeKey & (1 << (3 + property.ordinal()))) != 0) {
+				properties.add(property);
+			}
+		}
+
+		return properties;
+	}
+
+	// The key of the same edge seen from the other node.
+	private static int reverse(int edgeKey) {
+		EdgeType edgeType = EDGE_TYPES[edgeKey & 7];
+
+		switch (edgeType) {
+		case ta:
+			edgeType = EdgeType.at;
+			break;
+		case at:
+			edgeType = EdgeType.ta;
+			break;
+		case ca:
+			edgeType = EdgeType.ac;
+			break;
+		case ac:
+			edgeType = EdgeType.ca;
+			break;
+		default:
+			// Symmetric
+		}
+
+		return (edgeKey & ~7) | edgeType.ordinal();
+	}
+
+	private static EdgeType edgeType(Endpoint end1, Endpoint end2) {
+		if (end1 == Endpoint.TAIL && end2 == Endpoint.ARROW) {
+			return EdgeType.ta;
+		} else if (end1 == Endpoint.ARROW && end2 == Endpoint.TAIL) {
+			return EdgeType.at;
+		} else if (end1 == Endpoint.CIRCLE && end2 == Endpoint.ARROW) {
+			return EdgeType.ca;
+		} else if (end1 == Endpoint.ARROW && end2 == Endpoint.CIRCLE) {
+			return EdgeType.ac;
+		} else if (end1 == Endpoint.CIRCLE && end2 == Endpoint.CIRCLE) {
+			return EdgeType.cc;
+		} else if (end1 == Endpoint.ARROW && end2 == Endpoint.ARROW) {
+			return EdgeType.aa;
+		} else if (end1 == Endpoint.TAIL && end2 == Endpoint.TAIL) {
+			return EdgeType.tt;
+		}
+
+		return EdgeType.nil;
+	}
+
+	private static Edge edge(Node n1, Node n2, EdgeType edgeType) {
+		switch (edgeType) {
+		case ta:
+			return new Edge(n1, n2, Endpoint.TAIL, Endpoint.ARROW);
+		case at:
+			return new Edge(n1, n2, Endpoint.ARROW, Endpoint.TAIL);
+		case ca:
+			return new Edge(n1, n2, Endpoint.CIRCLE, Endpoint.ARROW);
+		case ac:
+			return new Edge(n1, n2, Endpoint.ARROW, Endpoint.CIRCLE);
+		case cc:
+			return new Edge(n1, n2, Endpoint.CIRCLE, Endpoint.CIRCLE);
+		case aa:
+			return new Edge(n1, n2, Endpoint.ARROW, Endpoint.ARROW);
+		case tt:
+			return new Edge(n1, n2, Endpoint.TAIL, Endpoint.TAIL);
+		default:
+			throw new IllegalArgumentException("No edge for type " + edgeType);
+		}
+	}
+
+	/**
+	 * Counts by edge key for one pair of nodes. There are few distinct keys per pair, so they are kept in small
+	 * parallel arrays.
+	 */
+	private static class PairCounts implements Serializable {
+		private static final long serialVersionUID = 23L;
+
+		private int[] keys = new int[2];
+		private int[] counts = new int[2];
+		private int size = 0;
+
+		void add(int key, int count) {
+			for (int k = 0; k < size; k++) {
+				if (keys[k] == key) {
+					counts[k] += count;
+					return;
+				}
+			}
+
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, 2 * size);
+				counts = Arrays.copyOf(counts, 2 * size);
+			}
+
+			keys[size] = key;
+			counts[size] = count;
+			size++;
+		}
+
+		PairCounts copy() {
+			PairCounts copy = new PairCounts();
+			copy.keys = Arrays.copyOf(keys, keys.length);
+			copy.counts = Arrays.copyOf(counts, counts.length);
+			copy.size = size;
+			return copy;
+		}
+
+		// Indices of the keys in order of key, so that output does not depend on the order edges were seen.
+		int[] sortedIndices() {
+			Integer[] order = new Integer[size];
+			for (int k = 0; k < size; k++) order[k] = k;
+			Arrays.sort(order, (a, b) -> Integer.compare(keys[a], keys[b]));
+
+			int[] _order = new int[size];
+			for (int k = 0; k < size; k++) _order[k] = order[k];
+			return _order;
+		}
+	}
+}
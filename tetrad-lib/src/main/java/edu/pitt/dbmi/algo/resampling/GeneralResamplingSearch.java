@@ -9,15 +9,19 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.algcomparison.algorithm.MultiDataSetAlgorithm;
+import edu.cmu.tetrad.data.BoxDataSet;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.data.ResampledDataBox;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.util.Parameters;
 import edu.pitt.dbmi.algo.resampling.task.GeneralResamplingSearchRunnable;
 
@@ -47,12 +51,21 @@ public class GeneralResamplingSearch {
 
 	private List<Graph> PAGs = Collections.synchronizedList(new ArrayList<>());
 
+	// If not null, graphs are added to these rather than to PAGs.
+	private EdgeFrequencies edgeFrequencies = null;
+
+	// The number of graphs found.
+	private final AtomicInteger numResults = new AtomicInteger();
+
 	// private ForkJoinPool pool = null;
 
 	private final ExecutorService pool;
 
 	private DataSet data = null;
 
+	// The largest number of bytes used by the data of a resampling, beyond the shared data.
+	private long bytesPerResampling = 0;
+
 	private List<DataSet> dataSets = null;
 
 	/**
@@ -81,8 +94,34 @@ public class GeneralResamplingSearch {
 		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 	}
 
+	/**
+	 * Records the graph found for one resampling: adds it to the edge frequencies if they have been set, otherwise
+	 * keeps it in the list returned by search.
+	 */
 	public void addPAG(Graph pag) {
-		PAGs.add(pag);
+		if (edgeFrequencies != null) {
+			if (verbose) {
+				synchronized (out) {
+					out.println("Resampling Search Result (" + numResults.get() + "):");
+					out.println(GraphUtils.graphToText(pag));
+					out.println();
+				}
+			}
+
+			edgeFrequencies.add(pag);
+		} else {
+			PAGs.add(pag);
+		}
+
+		numResults.incrementAndGet();
+	}
+
+	/**
+	 * Sets frequencies to which the graphs found are added as they are found, rather than kept. search then
+	 * returns an empty list.
+	 */
+	public void setEdgeFrequencies(EdgeFrequencies edgeFrequencies) {
+		this.edgeFrequencies = edgeFrequencies;
 	}
 
 	public void setAlgorithm(Algorithm algorithm) {
@@ -166,6 +205,8 @@ public class GeneralResamplingSearch {
 	public List<Graph> search() {
 
 		PAGs.clear();
+		numResults.set(0);
+		bytesPerResampling = 0;
 		parameters.set("numberResampling", 0); // This needs to be set to zero to not loop indefinitely
 
 		if (!this.runParallel) {
@@ -174,65 +215,12 @@ public class GeneralResamplingSearch {
 				out.println("Running Resamplings in Sequential Mode, numberResampling = " + numberResampling);
 			}
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
-
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newResamplingTask().run();
 			}
 			
 			// Search again with original dataset
 			if (resamplingWithReplacement && addOriginalDataset) {
-				GeneralResamplingSearchRunnable task = null;
-				
-				if (data != null) {
-					task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
-				} else {
-					List<DataModel> dataModels = new ArrayList<>();
-					for (DataSet data : dataSets) {
-						dataModels.add(data);
-					}
-					task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-							verbose);
-				}
-				
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newOriginalDataTask().run();
 			}
 			
 		} else {
@@ -242,66 +230,12 @@ public class GeneralResamplingSearch {
 			}
 
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
-
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				pool.submit(task);
+				pool.submit(newResamplingTask());
 			}
 			
 			// Search again with original dataset
 			if (resamplingWithReplacement && addOriginalDataset) {
-				GeneralResamplingSearchRunnable task = null;
-				
-				if (data != null) {
-					task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
-				} else {
-					List<DataModel> dataModels = new ArrayList<>();
-					for (DataSet data : dataSets) {
-						dataModels.add(data);
-					}
-					task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-							verbose);
-				}
-				
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				pool.submit(task);
+				pool.submit(newOriginalDataTask());
 			}
 
 			pool.shutdown();
@@ -319,74 +253,122 @@ public class GeneralResamplingSearch {
 		}
 
 		// If the pool is prematurely terminated, do sequentially
-		if (PAGs == null || PAGs.size() == 0) {
+		if (numResults.get() == 0) {
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
-
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newResamplingTask().run();
 			}
 			
 			// Search again with original dataset
 			if (resamplingWithReplacement && addOriginalDataset) {
-				GeneralResamplingSearchRunnable task = null;
-				
-				if (data != null) {
-					task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
-				} else {
-					List<DataModel> dataModels = new ArrayList<>();
-					for (DataSet data : dataSets) {
-						dataModels.add(data);
-					}
-					task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-							verbose);
-				}
-				
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newOriginalDataTask().run();
 			}
 			
 		}
 
+		if (verbose) {
+			out.println("Memory per resampling: about " + bytesPerResampling / 1024 + " KB of row indices, for "
+					+ bytesPerCopy() / 1024 + " KB of resampled data");
+		}
+
 		parameters.set("numberResampling", numberResampling); // This needs to be reset back to the previous value
 
 		return PAGs;
 	}
 
+	/**
+	 * @return the approximate number of bytes used by the data of each resampling, beyond the shared data. Each
+	 *         resampling is a view of the rows of the original data, so this is mostly the row indices of the view.
+	 */
+	public long getBytesPerResampling() {
+		return bytesPerResampling;
+	}
+
+	/**
+	 * A task that searches over one resampling of the data. Resamplings are views of the rows of the original data,
+	 * which all of them share; see ResampledDataBox.
+	 */
+	private GeneralResamplingSearchRunnable newResamplingTask() {
+		GeneralResamplingSearchRunnable task = null;
+
+		if (data != null) {
+			DataSet dataSet = resample(data);
+			bytesPerResampling = Math.max(bytesPerResampling, bytesUsed(dataSet));
+			task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
+		} else {
+			List<DataModel> dataModels = new ArrayList<>();
+			long bytes = 0;
+			for (DataSet data : dataSets) {
+				DataSet dataSet = resample(data);
+				bytes += bytesUsed(dataSet);
+				dataModels.add(dataSet);
+			}
+			bytesPerResampling = Math.max(bytesPerResampling, bytes);
+			task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
+					verbose);
+		}
+
+		if (initialGraph != null) {
+			task.setInitialGraph(initialGraph);
+		}
+		task.setKnowledge(knowledge);
+		return task;
+	}
+
+	private GeneralResamplingSearchRunnable newOriginalDataTask() {
+		GeneralResamplingSearchRunnable task = null;
+		
+		if (data != null) {
+			task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
+		} else {
+			List<DataModel> dataModels = new ArrayList<>();
+			for (DataSet data : dataSets) {
+				dataModels.add(data);
+			}
+			task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
+					verbose);
+		}
+		
+		if (initialGraph != null) {
+			task.setInitialGraph(initialGraph);
+		}
+		task.setKnowledge(knowledge);
+		return task;
+	}
+
+	private DataSet resample(DataSet data) {
+		int sampleSize = (int) (data.getNumRows() * percentResampleSize / 100.0);
+
+		// Bootstrapping
+		if (resamplingWithReplacement) {
+			return DataUtils.getBootstrapView(data, sampleSize);
+		// Sub-sampling
+		} else {
+			return DataUtils.getResamplingView(data, sampleSize);
+		}
+	}
+
+	private long bytesUsed(DataSet dataSet) {
+		if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof ResampledDataBox) {
+			return ((ResampledDataBox) ((BoxDataSet) dataSet).getDataBox()).getBytesUsed();
+		}
+
+		return bytesPerCopy(dataSet);
+	}
+
+	private long bytesPerCopy() {
+		if (data != null) {
+			return bytesPerCopy(data);
+		}
+
+		long bytes = 0;
+		for (DataSet data : dataSets) {
+			bytes += bytesPerCopy(data);
+		}
+		return bytes;
+	}
+
+	private long bytesPerCopy(DataSet data) {
+		return 8L * (long) (data.getNumRows() * percentResampleSize / 100.0) * data.getNumColumns();
+	}
+
 }
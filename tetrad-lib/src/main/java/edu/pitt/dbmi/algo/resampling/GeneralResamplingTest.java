@@ -6,17 +6,12 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
-import edu.cmu.tetrad.graph.Edge.Property;
-import edu.cmu.tetrad.graph.EdgeTypeProbability.EdgeType;
 import edu.cmu.tetrad.util.Parameters;
 import edu.cmu.tetrad.util.Params;
 import edu.cmu.tetrad.util.RandomUtil;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created by mahdi on 1/16/17.
@@ -38,7 +33,8 @@ public class GeneralResamplingTest {
 	
 	private MultiDataSetAlgorithm multiDataSetAlgorithm = null;
 	
-	private List<Graph> PAGs;
+	// Counts of edge types over the graphs found, which are not kept.
+	private EdgeFrequencies edgeFrequencies;
 
 	private boolean verbose = false;
 
@@ -200,10 +196,12 @@ public class GeneralResamplingTest {
 			}
 		}
 
-		PAGs = resamplingSearch.search();
+		edgeFrequencies = new EdgeFrequencies();
+		resamplingSearch.setEdgeFrequencies(edgeFrequencies);
+		resamplingSearch.search();
 
 		if (verbose) {
-			out.println("Resampling number is : " + PAGs.size());
+			out.println("Resampling number is : " + edgeFrequencies.getNumGraphs());
 		}
 		stop = System.currentTimeMillis();
 		if (verbose) {
@@ -223,252 +221,25 @@ public class GeneralResamplingTest {
 		return graph;
 	}
 
-	private static void addNodeToGraph(Graph graph, List<Node> nodes, int start, int end) {
-		if (start == end) {
-			graph.addNode(nodes.get(start));
-		} else if (start < end) {
-			int mid = (start + end) / 2;
-			addNodeToGraph(graph, nodes, start, mid);
-			addNodeToGraph(graph, nodes, mid + 1, end);
-		}
+	/**
+	 * @return the counts of edge types over the graphs found by the last search. These may be merged with counts
+	 *         from other searches, in this or another JVM, and a graph made from the result with
+	 *         EdgeFrequencies.getGraph.
+	 */
+	public EdgeFrequencies getEdgeFrequencies() {
+		return edgeFrequencies;
 	}
 
 	private Graph generateSamplingGraph() {
-		Graph pag = null;
 		if(verbose){
-			out.println("PAGs: " + PAGs.size());
+			out.println("PAGs: " + edgeFrequencies.getNumGraphs());
 			out.println("Ensemble: " + edgeEnsemble);
 			out.println();
 		}
-		if(PAGs == null || PAGs.size() == 0)return new EdgeListGraph();
-		
-		int i=0;
-		for (Graph g : PAGs) {
-			if (g != null) {
-				if(pag == null){
-					pag = g;
-				}
-				if(verbose){
-					out.println("Resampling Search Result (" + i + "):");
-					out.println(GraphUtils.graphToText(g));
-					out.println();
-					i++;
-				}
-			}
-		}
-		if(pag==null)return new EdgeListGraph();
-		
-		// Sort nodes by its name for fixing the edge orientation
-		List<Node> nodes = pag.getNodes();
-		Collections.sort(nodes);
-		
-		Graph complete = new EdgeListGraph(nodes);
-		complete.fullyConnect(Endpoint.TAIL);
 
-		Graph graph = new EdgeListGraph();
-		addNodeToGraph(graph, complete.getNodes(), 0, complete.getNodes().size() - 1);
-
-		for (Edge e : complete.getEdges()) {
-
-			Node n1 = e.getNode1();
-			Node n2 = e.getNode2();
-			
-			// Test new probability method
-			List<EdgeTypeProbability> edgeTypeProbabilities = getProbability(n1, n2);
-			EdgeTypeProbability chosen_edge_type = null;
-			double max_edge_prob = 0;
-			double no_edge_prob = 0;
-			if(edgeTypeProbabilities != null) {
-				for(EdgeTypeProbability etp : edgeTypeProbabilities) {
-					EdgeType edgeType = etp.getEdgeType();
-					double prob = etp.getProbability();
-					//out.println(edgeType + ": " + prob);
-					if(edgeType != EdgeType.nil && prob > max_edge_prob) {
-						if(prob > max_edge_prob) {
-							chosen_edge_type = etp;
-							max_edge_prob = prob;
-						}
-					}else {
-						no_edge_prob = prob;
-					}
-				}			
-			}
-			
-			if(chosen_edge_type != null) {
-				Edge edge = null;
-				EdgeType edgeType = chosen_edge_type.getEdgeType();
-				switch (edgeType) {
-				case ta:
-					edge = new Edge(n1, n2, Endpoint.TAIL, Endpoint.ARROW);
-					break;
-				case at:
-					edge = new Edge(n1, n2, Endpoint.ARROW, Endpoint.TAIL);
-					break;
-				case ca:
-					edge = new Edge(n1, n2, Endpoint.CIRCLE, Endpoint.ARROW);
-					break;
-				case ac:
-					edge = new Edge(n1, n2, Endpoint.ARROW, Endpoint.CIRCLE);
-					break;
-				case cc:
-					edge = new Edge(n1, n2, Endpoint.CIRCLE, Endpoint.CIRCLE);
-					break;
-				case aa:
-					edge = new Edge(n1, n2, Endpoint.ARROW, Endpoint.ARROW);
-					break;
-				case tt:
-					edge = new Edge(n1, n2, Endpoint.TAIL, Endpoint.TAIL);
-					break;
-				default:
-					// Do nothing
-				}
-				
-				for(Property property : chosen_edge_type.getProperties()) {
-					edge.addProperty(property);
-				}
-				
-				switch (edgeEnsemble) {
-				case Highest:
-					if (no_edge_prob > max_edge_prob) {
-						edge = null;
-					}
-					break;
-				case Majority:
-					if (no_edge_prob > max_edge_prob || max_edge_prob < .5) {
-						edge = null;
-					}
-					break;
-				default:
-					// Do nothing
-				}
-				
-				if (edge != null) {
-					if(verbose){
-						out.println("Final result: " + edge + " : " + max_edge_prob);
-					}
-					
-					for(EdgeTypeProbability etp : edgeTypeProbabilities) {
-						edge.addEdgeTypeProbability(etp);
-					}
-					
-					graph.addEdge(edge);
-				}
-			}
-			
-		}
-
-		return graph;
+		return edgeFrequencies.getGraph(edgeEnsemble);
 	}
 
-	private List<EdgeTypeProbability> getProbability(Node node1, Node node2){
-		Map<String, Integer> edgeDist = new HashMap<>();
-		int no_edge_num = 0;
-		for (Graph g : PAGs) {
-			Edge e = g.getEdge(node1, node2);
-			if(e != null) {				
-				String edgeString = e.toString();
-				if(e.getEndpoint1() == e.getEndpoint2() && node1.compareTo(e.getNode1()) != 0) {
-					Edge edge = new Edge(node1, node2, e.getEndpoint1(), e.getEndpoint2());
-					for(Property property : e.getProperties()) {
-						edge.addProperty(property);
-					}
-					edgeString = edge.toString();
-				}
-				Integer num_edge = edgeDist.get(edgeString);
-				if(num_edge == null) {
-					num_edge = 0;
-				}
-				num_edge = num_edge.intValue() + 1;
-				edgeDist.put(edgeString, num_edge);	
-			}else {
-				no_edge_num++;
-			}
-		}
-		int n = PAGs.size();
-		// Normalization
-		List<EdgeTypeProbability> edgeTypeProbabilities = edgeDist.size()==0?null:new ArrayList<>();
-		for(String edgeString : edgeDist.keySet()) {
-			int edge_num = edgeDist.get(edgeString);
-			double probability = (double) edge_num/n;
-			
-			String[] token = edgeString.split("\\s+");
-			String n1 = token[0];
-			String arc = token[1];
-			String n2 = token[2];
-			
-			char end1 = arc.charAt(0);
-            char end2 = arc.charAt(2);
-
-            Endpoint _end1, _end2;
-
-            if (end1 == '<') {
-                _end1 = Endpoint.ARROW;
-            } else if (end1 == 'o') {
-                _end1 = Endpoint.CIRCLE;
-            } else if (end1 == '-') {
-                _end1 = Endpoint.TAIL;
-            } else {
-                throw new IllegalArgumentException();
-            }
-
-            if (end2 == '>') {
-                _end2 = Endpoint.ARROW;
-            } else if (end2 == 'o') {
-                _end2 = Endpoint.CIRCLE;
-            } else if (end2 == '-') {
-                _end2 = Endpoint.TAIL;
-            } else {
-                throw new IllegalArgumentException();
-            }
-            
-            if(node1.getName().equalsIgnoreCase(n2) && node2.getName().equalsIgnoreCase(n1)) {
-            	Endpoint tmp = _end1;
-            	_end1 = _end2;
-            	_end2 = tmp;
-            }
-            
-            EdgeType edgeType = EdgeType.nil;
-            
-            if(_end1 == Endpoint.TAIL && _end2 == Endpoint.ARROW) {
-            	edgeType = EdgeType.ta;
-            }
-            if(_end1 == Endpoint.ARROW && _end2 == Endpoint.TAIL) {
-            	edgeType = EdgeType.at;
-            }
-            if(_end1 == Endpoint.CIRCLE && _end2 == Endpoint.ARROW) {
-            	edgeType = EdgeType.ca;
-            }
-            if(_end1 == Endpoint.ARROW && _end2 == Endpoint.CIRCLE) {
-            	edgeType = EdgeType.ac;
-            }
-            if(_end1 == Endpoint.CIRCLE && _end2 == Endpoint.CIRCLE) {
-            	edgeType = EdgeType.cc;
-            }
-            if(_end1 == Endpoint.ARROW && _end2 == Endpoint.ARROW) {
-            	edgeType = EdgeType.aa;
-            }
-            if(_end1 == Endpoint.TAIL && _end2 == Endpoint.TAIL) {
-            	edgeType = EdgeType.tt;
-            }
-            
-            EdgeTypeProbability etp = new EdgeTypeProbability(edgeType, probability);
-            
-            // Edge's properties
-            if(token.length > 3) {
-            	for(int i=3;i<token.length;i++) {
-            		etp.addProperty(Edge.Property.valueOf(token[i]));
-            	}
-            }
-            edgeTypeProbabilities.add(etp);
-		}
-		
-		if(no_edge_num < n && edgeTypeProbabilities != null) {
-			edgeTypeProbabilities.add(new EdgeTypeProbability(EdgeType.nil, (double)no_edge_num/n));
-		}
-		
-		return edgeTypeProbabilities;
-	}
-	
 	public static int[][] getAdjConfusionMatrix(Graph truth, Graph estimate) {
 		Graph complete = new EdgeListGraph(estimate.getNodes());
 		complete.fullyConnect(Endpoint.TAIL);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.annotation;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reflections.Reflections;
+
+/**
+ * Checks the annotated class index against a classpath scan.
+ */
+public class AnnotatedClassIndexTest {
+
+    public AnnotatedClassIndexTest() {
+    }
+
+    @Test
+    public void testIndexMatchesClasspathScan() {
+        assertIndexMatchesClasspathScan("edu.cmu.tetrad.algcomparison.algorithm", Algorithm.class);
+        assertIndexMatchesClasspathScan("edu.cmu.tetrad.algcomparison.score", Score.class);
+        assertIndexMatchesClasspathScan("edu.cmu.tetrad.algcomparison.independence", TestOfIndependence.class);
+    }
+
+    @Test
+    public void testUnindexedClassesAreScanned() {
+        // The test classes are compiled without the annotation processor.
+        Assert.assertTrue(AnnotatedClassIndex.getTypesAnnotatedWith("edu.cmu.tetrad.annotation", Algorithm.class)
+                .contains(UnindexedAlgorithm.class));
+
+        List<Class<?>> indexed = AnnotatedClassIndex.getIndexedTypesAnnotatedWith("edu.cmu.tetrad.annotation", Algorithm.class);
+        Assert.assertTrue(indexed == null || !indexed.contains(UnindexedAlgorithm.class));
+    }
+
+    private void assertIndexMatchesClasspathScan(String packageName, Class<? extends Annotation> type) {
+        List<Class<?>> indexed = AnnotatedClassIndex.getIndexedTypesAnnotatedWith(packageName, type);
+        Assert.assertNotNull("No index for " + type.getName(), indexed);
+
+        Set<Class<?>> scanned = new Reflections(packageName).getTypesAnnotatedWith(type).stream()
+                .filter(e -> e.isAnnotationPresent(type))
+                .collect(Collectors.toSet());
+
+        Assert.assertEquals(scanned, indexed.stream().collect(Collectors.toSet()));
+
+        Set<Class<?>> found = AnnotatedClassIndex.getTypesAnnotatedWith(packageName, type).stream()
+                .filter(e -> e.isAnnotationPresent(type))
+                .collect(Collectors.toSet());
+
+        Assert.assertEquals(scanned, found);
+    }
+
+    @Algorithm(
+            name = "Unindexed",
+            command = "unindexed",
+            algoType = AlgType.forbid_latent_common_causes
+    )
+    public static class UnindexedAlgorithm {
+    }
+
+}
@@ -63,6 +63,47 @@ public class JunctionTreeAlgorithmTest {
         {1, 1, 1}
     };
 
+    @Test
+    public void testBatchConditionalProbabilities() throws IOException {
+        String graphFile = this.getClass().getResource("/jta/graph2.txt").getFile();
+        String dataFile = this.getClass().getResource("/jta/data2.txt").getFile();
+
+        Graph graph = readInGraph(Paths.get(graphFile));
+        DataModel dataModel = readInDiscreteData(Paths.get(dataFile));
+
+        BayesPm bayesPm = createBayesPm(dataModel, graph);
+        BayesIm bayesIm = createEmBayesEstimator(dataModel, bayesPm);
+
+        int x = bayesIm.getNodeIndex(bayesIm.getNode("x"));
+        int y = bayesIm.getNodeIndex(bayesIm.getNode("y"));
+        int z = bayesIm.getNodeIndex(bayesIm.getNode("z"));
+        int w = bayesIm.getNodeIndex(bayesIm.getNode("w"));
+
+        int[] evidenceNodes = {y, z, w};
+        int[][] evidenceValues = {
+            {0, 0, 0},
+            {1, 0, 1},
+            {0, -1, 1},
+            {-1, -1, -1}
+        };
+
+        JunctionTreeAlgorithm jta = new JunctionTreeAlgorithm(bayesIm);
+        double[][] condProbs = jta.getConditionalProbabilities(x, evidenceNodes, evidenceValues);
+
+        Assert.assertEquals(evidenceValues.length, condProbs.length);
+
+        for (int i = 0; i < evidenceValues.length; i++) {
+            JunctionTreeAlgorithm expected = new JunctionTreeAlgorithm(bayesIm);
+            for (int j = 0; j < evidenceNodes.length; j++) {
+                if (evidenceValues[i][j] >= 0) {
+                    expected.setEvidence(evidenceNodes[j], evidenceValues[i][j]);
+                }
+            }
+
+            Assert.assertArrayEquals(expected.getMarginalProbability(x), condProbs[i], 1e-10);
+        }
+    }
+
     @Ignore
     @Test
     public void testJointProbGivenParents() throws IOException {
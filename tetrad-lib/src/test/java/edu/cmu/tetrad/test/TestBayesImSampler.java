@@ -0,0 +1,114 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests BayesImSampler against exact updating.
+ */
+public final class TestBayesImSampler {
+
+    @Test
+    public void testLikelihoodWeighting() {
+        checkMarginals(BayesImSampler.Mode.LIKELIHOOD_WEIGHTING);
+    }
+
+    @Test
+    public void testGibbs() {
+        checkMarginals(BayesImSampler.Mode.GIBBS);
+    }
+
+    @Test
+    public void testApproximateUpdater() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        BayesIm bayesIm = sampleBayesIm();
+        Evidence evidence = Evidence.tautology(bayesIm);
+        evidence.getProposition().setCategory(3, 1);
+
+        ApproximateUpdater updater = new ApproximateUpdater(bayesIm);
+        updater.setErrorBound(0.005);
+        updater.setEvidence(evidence);
+
+        BayesUpdater exact = new RowSummingExactUpdater(bayesIm);
+        exact.setEvidence(evidence);
+
+        for (int j = 0; j < bayesIm.getNumColumns(0); j++) {
+            assertEquals(exact.getMarginal(0, j), updater.getMarginal(0, j), 0.01);
+        }
+    }
+
+    private void checkMarginals(BayesImSampler.Mode mode) {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        BayesIm bayesIm = sampleBayesIm();
+        Evidence evidence = Evidence.tautology(bayesIm);
+        evidence.getProposition().setCategory(3, 1);
+        evidence.getProposition().setCategory(1, 0);
+
+        BayesImSampler sampler = new BayesImSampler(bayesIm);
+        sampler.setMode(mode);
+        sampler.setErrorBound(0.005);
+        double[][] marginals = sampler.getMarginals(evidence);
+
+        assertTrue(sampler.getError() <= 0.005);
+
+        BayesUpdater exact = new RowSummingExactUpdater(bayesIm);
+        exact.setEvidence(evidence);
+
+        for (int i = 0; i < bayesIm.getNumNodes(); i++) {
+            for (int j = 0; j < bayesIm.getNumColumns(i); j++) {
+                assertEquals(exact.getMarginal(i, j), marginals[i][j], 0.01);
+            }
+        }
+    }
+
+    private BayesIm sampleBayesIm() {
+        Node x0Node = new GraphNode("X0");
+        Node x1Node = new GraphNode("X1");
+        Node x2Node = new GraphNode("X2");
+        Node x3Node = new GraphNode("X3");
+
+        Dag graph = new Dag();
+        graph.addNode(x0Node);
+        graph.addNode(x1Node);
+        graph.addNode(x2Node);
+        graph.addNode(x3Node);
+
+        graph.addDirectedEdge(x0Node, x1Node);
+        graph.addDirectedEdge(x0Node, x2Node);
+        graph.addDirectedEdge(x1Node, x3Node);
+        graph.addDirectedEdge(x2Node, x3Node);
+
+        BayesPm bayesPm = new BayesPm(graph, 2, 3);
+        return new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+    }
+}
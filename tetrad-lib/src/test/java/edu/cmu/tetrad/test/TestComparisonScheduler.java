@@ -0,0 +1,267 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.ComparisonScheduler;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests ComparisonScheduler.
+ */
+public final class TestComparisonScheduler {
+
+    @Test
+    public void testBudget() {
+        AtomicInteger cores = new AtomicInteger();
+        AtomicLong memory = new AtomicLong();
+        AtomicInteger maxCores = new AtomicInteger();
+        AtomicLong maxMemory = new AtomicLong();
+
+        List<SleepJob> jobs = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++) {
+            jobs.add(new SleepJob("" + i, "" + (i % 3), 20, 2, 1 + i % 3) {
+                @Override
+                public double[] run() {
+                    maxCores.accumulateAndGet(cores.addAndGet(getCores()), Math::max);
+                    maxMemory.accumulateAndGet(memory.addAndGet(getMemory()), Math::max);
+                    double[] results = super.run();
+                    cores.addAndGet(-getCores());
+                    memory.addAndGet(-getMemory());
+                    return results;
+                }
+            });
+        }
+
+        new ComparisonScheduler(4, 4).run(jobs);
+
+        for (SleepJob job : jobs) assertEquals(1, job.numRuns.get());
+        assertTrue(maxCores.get() <= 4);
+        assertTrue(maxMemory.get() <= 4);
+    }
+
+    @Test
+    public void testLongestFirst() {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        List<SleepJob> jobs = new ArrayList<>();
+        String[] keys = {"a", "b", "c"};
+        long[] times = {5, 60, 25};
+
+        for (int run = 0; run < 3; run++) {
+            for (int k = 0; k < 3; k++) {
+                jobs.add(new SleepJob(keys[k] + run, keys[k], times[k], 1, 0) {
+                    @Override
+                    public double[] run() {
+                        started.add(getKey());
+                        return super.run();
+                    }
+                });
+            }
+        }
+
+        new ComparisonScheduler(1, 1).run(jobs);
+
+        // One of each first, for estimates, then longest first.
+        assertEquals("[a, b, c, b, b, c, c, a, a]", started.toString());
+    }
+
+    @Test
+    public void testOneCore() {
+        Thread caller = Thread.currentThread();
+        List<Boolean> onCaller = Collections.synchronizedList(new ArrayList<>());
+        List<SleepJob> jobs = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            jobs.add(new SleepJob("" + i, "" + i, 1, 1, 0) {
+                @Override
+                public double[] run() {
+                    onCaller.add(Thread.currentThread() == caller && !ForkJoinTask.inForkJoinPool());
+                    return super.run();
+                }
+            });
+        }
+
+        // With one core, jobs run on the calling thread, so searches in them may make pools of their own.
+        new ComparisonScheduler(1, 1).run(jobs);
+
+        assertEquals("[true, true, true]", onCaller.toString());
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        File file = File.createTempFile("checkpoint", ".txt");
+        file.deleteOnExit();
+
+        List<SleepJob> jobs = jobs();
+        jobs.get(3).fail = true;
+
+        ComparisonScheduler scheduler = new ComparisonScheduler(2, 1);
+        scheduler.setCheckpointFile(file, "study 1");
+        scheduler.run(jobs);
+
+        // Only the failed job is run again.
+        List<SleepJob> resumed = jobs();
+        scheduler = new ComparisonScheduler(2, 1);
+        scheduler.setCheckpointFile(file, "study 1");
+        scheduler.run(resumed);
+
+        for (int i = 0; i < resumed.size(); i++) {
+            SleepJob job = resumed.get(i);
+            assertEquals(i == 3 ? 1 : 0, job.numRuns.get());
+            assertArrayEquals(new double[]{i, Double.NaN, -0.5}, job.results, 0);
+        }
+
+        // A different study starts over.
+        List<SleepJob> other = jobs();
+        scheduler = new ComparisonScheduler(2, 1);
+        scheduler.setCheckpointFile(file, "study 2");
+        scheduler.run(other);
+
+        for (SleepJob job : other) assertEquals(1, job.numRuns.get());
+    }
+
+    @Test
+    public void testTruncatedCheckpoint() throws IOException {
+        File file = File.createTempFile("checkpoint", ".txt");
+        file.deleteOnExit();
+
+        ComparisonScheduler scheduler = new ComparisonScheduler(2, 1);
+        scheduler.setCheckpointFile(file, "study 1");
+        scheduler.run(jobs());
+
+        // Cut the last line off after its second result, as if the session had been stopped while writing it.
+        List<String> lines = Files.readAllLines(file.toPath());
+        String last = lines.get(lines.size() - 1);
+        int lastId = Integer.parseInt(last.split("\t")[0]);
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - "\t-0.5".length() - System.lineSeparator().length());
+        }
+
+        List<SleepJob> resumed = jobs();
+        scheduler = new ComparisonScheduler(2, 1);
+        scheduler.setCheckpointFile(file, "study 1");
+        scheduler.run(resumed);
+
+        for (int i = 0; i < resumed.size(); i++) {
+            SleepJob job = resumed.get(i);
+            assertEquals(i == lastId ? 1 : 0, job.numRuns.get());
+            assertArrayEquals(new double[]{i, Double.NaN, -0.5}, job.results, 0);
+        }
+
+        // The job is restored from the line written when it was run again, not from the cut one.
+        resumed = jobs();
+        scheduler = new ComparisonScheduler(2, 1);
+        scheduler.setCheckpointFile(file, "study 1");
+        scheduler.run(resumed);
+
+        for (SleepJob job : resumed) assertEquals(0, job.numRuns.get());
+    }
+
+    private List<SleepJob> jobs() {
+        List<SleepJob> jobs = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            SleepJob job = new SleepJob("" + i, "" + (i % 2), 1, 1, 0);
+            job.value = i;
+            jobs.add(job);
+        }
+
+        return jobs;
+    }
+
+    private static class SleepJob implements ComparisonScheduler.Job {
+        private final String id;
+        private final String key;
+        private final long time;
+        private final int cores;
+        private final long memory;
+        private final AtomicInteger numRuns = new AtomicInteger();
+        private boolean fail = false;
+        private double value = 0;
+        private double[] results;
+
+        SleepJob(String id, String key, long time, int cores, long memory) {
+            this.id = id;
+            this.key = key;
+            this.time = time;
+            this.cores = cores;
+            this.memory = memory;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public int getCores() {
+            return cores;
+        }
+
+        @Override
+        public long getMemory() {
+            return memory;
+        }
+
+        @Override
+        public double[] run() {
+            numRuns.incrementAndGet();
+
+            try {
+                Thread.sleep(time);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            if (fail) return null;
+            results = new double[]{value, Double.NaN, -0.5};
+            return results;
+        }
+
+        @Override
+        public void restore(double[] results) {
+            if (results.length != 3) throw new IllegalArgumentException("Checkpoint does not match the statistics.");
+            this.results = results;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests CovarianceMatrix.
@@ -84,9 +85,91 @@ public final class TestCovarianceMatrix {
         assertEquals(-.051, c2.getValue(0, 1), 0.001);
         assertEquals(-.609, c3.getValue(0, 1), 0.001);
     }
-}
 
+    /**
+     * Covariances of a bootstrap view, calculated from row counts, should be those of a copy of its rows, and
+     * setting a value in a view should not change the shared data.
+     */
+    @Test
+    public void testResampledView() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        List<Node> variables = new LinkedList<>();
+
+        for (int i = 0; i < 4; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        DataSet dataSet = new BoxDataSet(new VerticalDoubleDataBox(50, variables.size()), variables);
+
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 4; j++) {
+                dataSet.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        DataSet view = DataUtils.getBootstrapView(dataSet, 60);
+        assertTrue(((BoxDataSet) view).getDataBox() instanceof ResampledDataBox);
+
+        DataSet copy = new BoxDataSet(new VerticalDoubleDataBox(((BoxDataSet) view).getDataBox()), variables);
+
+        ICovarianceMatrix c1 = new CovarianceMatrix(view);
+        ICovarianceMatrix c2 = new CovarianceMatrix(copy);
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(c2.getValue(i, j), c1.getValue(i, j), 1e-10);
+            }
+        }
+
+        double before = dataSet.getDouble(0, 0);
+        DataSet subsample = DataUtils.getResamplingView(dataSet, 50);
+
+        for (int i = 0; i < 50; i++) {
+            subsample.setDouble(i, 0, 100.0);
+        }
+
+        assertEquals(before, dataSet.getDouble(0, 0), 0.0);
+        assertEquals(100.0, subsample.getDouble(49, 0), 0.0);
+    }
 
+    @Test
+    public void testStreaming() {
+        RandomUtil.getInstance().setSeed(4828384834L);
 
+        List<Node> variables = new LinkedList<>();
 
+        for (int i = 0; i < 4; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        DataSet dataSet = new BoxDataSet(new VerticalDoubleDataBox(1000, variables.size()), variables);
+
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < 4; j++) {
+                dataSet.setDouble(i, j, 1000 + RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
 
+        StreamingCovariance first = new StreamingCovariance(variables);
+        StreamingCovariance second = new StreamingCovariance(variables);
+
+        for (int i = 0; i < 1000; i++) {
+            double[] row = new double[4];
+            for (int j = 0; j < 4; j++) row[j] = dataSet.getDouble(i, j);
+            (i < 300 ? first : second).add(row);
+        }
+
+        first.merge(second);
+        assertEquals(1000, first.getSampleSize());
+
+        ICovarianceMatrix c1 = first.getCovarianceMatrix();
+        ICovarianceMatrix c2 = new CovarianceMatrix(dataSet);
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(c2.getValue(i, j), c1.getValue(i, j), 1e-10);
+            }
+        }
+    }
+}
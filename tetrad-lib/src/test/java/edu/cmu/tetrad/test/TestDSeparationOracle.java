@@ -0,0 +1,158 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.IndTestDSep;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests DSeparationOracle against GraphUtils.isDConnectedTo.
+ */
+public final class TestDSeparationOracle {
+
+    @Test
+    public void testDag() {
+        RandomUtil.getInstance().setSeed(38234L);
+        Graph dag = GraphUtils.randomGraph(30, 5, 45, 10, 10, 10, false);
+        check(dag);
+    }
+
+    @Test
+    public void testBidirected() {
+        RandomUtil.getInstance().setSeed(10293L);
+        Graph graph = GraphUtils.randomGraph(20, 0, 25, 10, 10, 10, false);
+        List<Node> nodes = graph.getNodes();
+
+        for (int i = 0; i < 8; i++) {
+            Node a = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            Node b = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+
+            if (a != b && !graph.isAdjacentTo(a, b)) {
+                graph.addBidirectedEdge(a, b);
+            }
+        }
+
+        check(graph);
+    }
+
+    @Test
+    public void testIndTestDSep() {
+        Node x = new GraphNode("X");
+        Node y = new GraphNode("Y");
+        Node w = new GraphNode("W");
+
+        Graph graph = new EdgeListGraph(Arrays.asList(x, y, w));
+        graph.addDirectedEdge(x, w);
+        graph.addDirectedEdge(w, y);
+
+        IndTestDSep test = new IndTestDSep(graph);
+        assertTrue(test.isIndependent(x, y, Collections.singletonList(w)));
+        assertFalse(test.isIndependent(x, y, Collections.<Node>emptyList()));
+
+        // Changes to the graph are seen, and unsupported graphs are handled by the graph.
+        graph.removeEdge(w, y);
+        graph.addUndirectedEdge(w, y);
+        assertFalse(DSeparationOracle.supports(graph));
+        assertEquals(graph.isDConnectedTo(x, y, Collections.<Node>emptyList()),
+                !test.isIndependent(x, y, Collections.<Node>emptyList()));
+
+        graph.removeEdge(w, y);
+        graph.addDirectedEdge(y, w);
+        assertTrue(test.isIndependent(x, y, Collections.<Node>emptyList()));
+        assertFalse(test.isIndependent(x, y, Collections.singletonList(w)));
+
+        // A graph that is replaced no longer holds the test's listener.
+        final List<PropertyChangeListener> listeners = new ArrayList<>();
+
+        Graph listened = new EdgeListGraph(graph) {
+            public void addPropertyChangeListener(PropertyChangeListener l) {
+                super.addPropertyChangeListener(l);
+                listeners.add(l);
+            }
+
+            public void removePropertyChangeListener(PropertyChangeListener l) {
+                super.removePropertyChangeListener(l);
+                listeners.remove(l);
+            }
+        };
+
+        test.setGraph(listened);
+        assertEquals(1, listeners.size());
+        assertFalse(test.isIndependent(x, y, Collections.singletonList(w)));
+
+        test.setGraph(graph);
+        assertTrue(listeners.isEmpty());
+
+        // Changes to the graph set are seen.
+        graph.removeEdge(y, w);
+        assertTrue(test.isIndependent(x, y, Collections.singletonList(w)));
+    }
+
+    private void check(Graph graph) {
+        DSeparationOracle oracle = new DSeparationOracle(graph);
+        List<Node> nodes = oracle.getNodes();
+        int[] all = new int[nodes.size()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+
+        for (int q = 0; q < 100; q++) {
+            Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            List<Node> z = new ArrayList<>();
+
+            for (Node node : nodes) {
+                if (node != x && RandomUtil.getInstance().nextDouble() < 0.15) z.add(node);
+            }
+
+            int[] _z = new int[z.size()];
+            for (int i = 0; i < _z.length; i++) _z[i] = oracle.getId(z.get(i));
+
+            boolean[] connected = oracle.isDConnectedTo(oracle.getId(x), all, _z);
+            List<Node> dConnected = oracle.getDConnectedNodes(x, z);
+
+            for (Node y : nodes) {
+                if (y == x) continue;
+
+                boolean expected = GraphUtils.isDConnectedTo(x, y, z, graph);
+                assertEquals(expected, oracle.isDConnectedTo(x, y, z));
+                assertEquals(expected, connected[oracle.getId(y)]);
+                assertEquals(expected, dConnected.contains(y));
+            }
+        }
+
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                assertEquals(graph.isAncestorOf(x, y), oracle.isAncestorOf(oracle.getId(x), oracle.getId(y)));
+            }
+        }
+    }
+}
@@ -260,6 +260,34 @@ public class TestDeltaTetradTest {
         double chiSq2 = test2.calcChiSquare(t1234, t1342);
     }
 
+    @Test
+    public void testIndices() {
+        RandomUtil.getInstance().setSeed(482834823L);
+
+        SemPm pm = makePm();
+        DataSet data = new SemIm(pm).simulateData(1000, false);
+
+        List<Node> variables = data.getVariables();
+        Node x1 = variables.get(0);
+        Node x2 = variables.get(1);
+        Node x3 = variables.get(2);
+        Node x4 = variables.get(3);
+
+        Tetrad t1234 = new Tetrad(x1, x2, x3, x4);
+        Tetrad t1243 = new Tetrad(x1, x2, x4, x3);
+
+        DeltaTetradTest test = new DeltaTetradTest(data);
+
+        double pValue = test.getPValue(t1234, t1243);
+
+        assertEquals(pValue, test.getPValue(new int[]{0, 1, 2, 3}, new int[]{0, 1, 3, 2}), 1e-12);
+
+        // With fourth moments found in the cache, or with a cache too small to hold them.
+        assertEquals(pValue, test.getPValue(t1234, t1243), 1e-12);
+        test.setMaxFourthMoments(1);
+        assertEquals(pValue, test.getPValue(t1234, t1243), 1e-12);
+    }
+
     private SemPm makePm() {
         List<Node> variableNodes = new ArrayList<>();
         ContinuousVariable x1 = new ContinuousVariable("X1");
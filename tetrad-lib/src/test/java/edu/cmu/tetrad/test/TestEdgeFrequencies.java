@@ -0,0 +1,123 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.graph.EdgeTypeProbability.EdgeType;
+import edu.pitt.dbmi.algo.resampling.EdgeFrequencies;
+import edu.pitt.dbmi.algo.resampling.ResamplingEdgeEnsemble;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests EdgeFrequencies.
+ */
+public final class TestEdgeFrequencies {
+
+    @Test
+    public void testCounts() {
+        EdgeFrequencies frequencies = new EdgeFrequencies();
+        frequencies.add(GraphConverter.convert("X1-->X2,X2-->X3"));
+        frequencies.add(GraphConverter.convert("X2-->X1,X2-->X3"));
+        frequencies.add(GraphConverter.convert("X1-->X2"));
+        frequencies.add(GraphConverter.convert("X3<--X2"));
+
+        assertEquals(4, frequencies.getNumGraphs());
+
+        Node x1 = new GraphNode("X1");
+        Node x2 = new GraphNode("X2");
+        Node x3 = new GraphNode("X3");
+
+        assertEquals(0.5, probability(frequencies.getEdgeTypeProbabilities(x1, x2), EdgeType.ta), 1e-10);
+        assertEquals(0.25, probability(frequencies.getEdgeTypeProbabilities(x1, x2), EdgeType.at), 1e-10);
+        assertEquals(0.25, probability(frequencies.getEdgeTypeProbabilities(x1, x2), EdgeType.nil), 1e-10);
+        assertEquals(0.75, probability(frequencies.getEdgeTypeProbabilities(x3, x2), EdgeType.at), 1e-10);
+        assertNull(frequencies.getEdgeTypeProbabilities(x1, x3));
+
+        Graph graph = frequencies.getGraph(ResamplingEdgeEnsemble.Majority);
+        assertEquals(2, graph.getNumEdges());
+        assertTrue(graph.isParentOf(graph.getNode("X1"), graph.getNode("X2")));
+        assertTrue(graph.isParentOf(graph.getNode("X2"), graph.getNode("X3")));
+    }
+
+    /**
+     * Frequencies counted separately, serialized and merged should equal those counted together.
+     */
+    @Test
+    public void testMerge() throws Exception {
+        EdgeFrequencies all = new EdgeFrequencies();
+        EdgeFrequencies part1 = new EdgeFrequencies();
+        EdgeFrequencies part2 = new EdgeFrequencies();
+
+        String[] graphs = {"X1-->X2,X2o->X3", "X3<->X2", "X1---X3", "X2-->X1"};
+
+        for (int i = 0; i < graphs.length; i++) {
+            Graph graph = GraphConverter.convert(graphs[i]);
+            all.add(graph);
+            (i < 2 ? part1 : part2).add(graph);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(part2);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            part1.merge((EdgeFrequencies) in.readObject());
+        }
+
+        assertEquals(all.getNumGraphs(), part1.getNumGraphs());
+
+        for (Node x : all.getNodes()) {
+            for (Node y : all.getNodes()) {
+                if (x == y) continue;
+
+                List<EdgeTypeProbability> expected = all.getEdgeTypeProbabilities(x, y);
+                List<EdgeTypeProbability> actual = part1.getEdgeTypeProbabilities(x, y);
+
+                if (expected == null) {
+                    assertNull(actual);
+                    continue;
+                }
+
+                for (EdgeType edgeType : EdgeType.values()) {
+                    assertEquals(probability(expected, edgeType), probability(actual, edgeType), 1e-10);
+                }
+            }
+        }
+    }
+
+    private static double probability(List<EdgeTypeProbability> edgeTypeProbabilities, EdgeType edgeType) {
+        double probability = 0.0;
+
+        for (EdgeTypeProbability etp : edgeTypeProbabilities) {
+            if (etp.getEdgeType() == edgeType) probability += etp.getProbability();
+        }
+
+        return probability;
+    }
+}
@@ -21,9 +21,12 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
+import edu.cmu.tetrad.calculator.expression.SlotContext;
 import edu.cmu.tetrad.calculator.parser.ExpressionParser;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import java.text.ParseException;
@@ -366,6 +369,61 @@ public class TestExpressionParser {
             e.printStackTrace();
         }
     }
-}
 
+    // Compiled expressions should give what the expressions themselves give, draws from distributions included.
+    @Test
+    public void testCompiled() {
+        final Map<String, Double> values = new HashMap<>();
 
+        values.put("b1", 0.5);
+        values.put("b2", -1.5);
+        values.put("X1", 2.0);
+        values.put("X2", 3.0);
+
+        Context context = new Context() {
+            public Double getValue(String var) {
+                return values.get(var);
+            }
+        };
+
+        SlotContext slotContext = new SlotContext();
+
+        for (String name : values.keySet()) {
+            slotContext.set(slotContext.addSlot(name), values.get(name));
+        }
+
+        // Bound, but never assigned.
+        slotContext.addSlot("X3");
+
+        List<String> formulas = new ArrayList<>();
+
+        formulas.add("b1 * X1 + b2 * X2 + X3");
+        formulas.add("-X1 + X2 / b1 - 2 ^ X2 * pow(X1, b2)");
+        formulas.add("max(X1, X2, b1) - min(X1, b2, 7)");
+        formulas.add("exp(b1) + ln(X1) + log10(X2) + sqrt(X2) + abs(b2) + signum(b2) + ceil(b2) + floor(b2)");
+        formulas.add("round(b2) + sin(X1) + cos(X1) + tan(b1) + asin(b1) + acos(b1) + atan(X2)");
+        formulas.add("sinh(b1) + cosh(b1) + tanh(b1) + logistic(b2 * X1)");
+        formulas.add("IF(X1 < X2, X1 * X2, 0) + (X1 AND X2)");
+        formulas.add("b1 * X1 + N(0, X2) + tan(U(-b1, b1)) + Gamma(X1, 1) * Beta(1, X2)");
+
+        ExpressionParser parser = new ExpressionParser();
+        RandomUtil random = RandomUtil.getInstance();
+
+        try {
+            for (String formula : formulas) {
+                Expression expression = parser.parseExpression(formula);
+                CompiledExpression compiled = CompiledExpression.compile(expression, slotContext);
+
+                random.setThreadSeed(42);
+                double value = expression.evaluate(context);
+                random.setThreadSeed(42);
+                double compiledValue = compiled.evaluate(slotContext);
+                random.clearThreadSeed();
+
+                assertEquals(formula, value, compiledValue, 0.0);
+            }
+        } catch (ParseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -41,6 +41,7 @@ import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.*;
 import edu.pitt.csb.mgm.MGM;
 import edu.pitt.csb.mgm.MixedUtils;
+import org.apache.commons.math3.special.Gamma;
 
 import java.io.*;
 import java.text.DecimalFormat;
@@ -217,6 +218,127 @@ public class TestFges {
         assertEquals(SearchGraphUtils.patternForDag(graph), pattern);
     }
 
+    @Test
+    public void testCachedScore() {
+        RandomUtil.getInstance().setSeed(1450184147770L);
+
+        List<Node> vars = new ArrayList<>();
+
+        for (int i = 0; i < 15; i++) {
+            vars.add(new ContinuousVariable("X" + i));
+        }
+
+        Graph dag = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 15, 30, 15, 15, false, true);
+        SemIm im = new SemIm(new SemPm(dag));
+        DataSet data = im.simulateData(1000, false);
+
+        Graph pattern1 = new Fges(new SemBicScore(data)).search();
+
+        CachedScore score = new CachedScore(new SemBicScore(data), 64);
+        Graph pattern2 = new Fges(score).search();
+
+        assertEquals(pattern1, pattern2);
+        assertTrue(score.getCache().getHits() > 0);
+        assertTrue(score.getCache().getEvictions() > 0);
+
+        LocalScoreCache cache = new LocalScoreCache(16);
+        cache.add(3, new int[]{5, 1, 2}, 1.5);
+        assertEquals(1.5, cache.get(3, new int[]{2, 5, 1}), 0.0);
+        assertTrue(Double.isNaN(cache.get(3, new int[]{2, 5})));
+        assertTrue(Double.isNaN(cache.get(4, new int[]{2, 5, 1})));
+    }
+
+    @Test
+    public void testBDeuCounts() {
+        RandomUtil.getInstance().setSeed(1450184147770L);
+
+        List<Node> vars = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            vars.add(new DiscreteVariable("X" + i));
+        }
+
+        Graph dag = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 10, 30, 15, 15, false, true);
+        BayesIm im = new MlBayesIm(new BayesPm(dag, 2, 4), MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(500, false);
+
+        // Missing values in some columns only, so that both counting loops are used.
+        for (int i = 0; i + 3 < data.getNumRows(); i += 7) {
+            data.setInt(i, 2, -99);
+            data.setInt(i + 3, 5, -99);
+        }
+
+        BDeuScore score = new BDeuScore(data);
+        score.setSamplePrior(2);
+
+        int[][] parentSets = {{}, {1}, {2}, {1, 3}, {5, 2, 6}, {3, 4, 6, 7}};
+
+        for (int node = 0; node < vars.size(); node++) {
+            for (int[] parents : parentSets) {
+                if (contains(parents, node)) continue;
+                double expected = bdeu(data, node, parents, 2, 1);
+                assertEquals(expected, score.localScore(node, parents), 1e-9);
+            }
+        }
+    }
+
+    // The BDeu score computed directly from the data set.
+    private static double bdeu(DataSet data, int node, int[] parents, double samplePrior, double structurePrior) {
+        int c = ((DiscreteVariable) data.getVariable(node)).getNumCategories();
+        int r = 1;
+
+        for (int parent : parents) {
+            r *= ((DiscreteVariable) data.getVariable(parent)).getNumCategories();
+        }
+
+        int[][] n_jk = new int[r][c];
+        int[] n_j = new int[r];
+        int n = 0;
+
+        ROW:
+        for (int i = 0; i < data.getNumRows(); i++) {
+            int j = 0;
+
+            for (int parent : parents) {
+                int value = data.getInt(i, parent);
+                if (value == -99) continue ROW;
+                j = j * ((DiscreteVariable) data.getVariable(parent)).getNumCategories() + value;
+            }
+
+            int k = data.getInt(i, node);
+            if (k == -99) continue;
+
+            n_jk[j][k]++;
+            n_j[j]++;
+            n++;
+        }
+
+        double e = structurePrior;
+        int vm = n - 1;
+        double score = parents.length * Math.log(e / vm) + (vm - parents.length) * Math.log(1.0 - e / vm);
+
+        double cellPrior = samplePrior / (c * r);
+        double rowPrior = samplePrior / r;
+
+        for (int j = 0; j < r; j++) {
+            score += Gamma.logGamma(rowPrior) - Gamma.logGamma(rowPrior + n_j[j]);
+
+            for (int k = 0; k < c; k++) {
+                score += Gamma.logGamma(cellPrior + n_jk[j][k]) - Gamma.logGamma(cellPrior);
+            }
+        }
+
+        return score;
+    }
+
+    private static boolean contains(int[] parents, int node) {
+        for (int parent : parents) {
+            if (parent == node) return true;
+        }
+
+        return false;
+    }
+
 
     @Test
     public void testFromGraphSimpleFges() {
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.IncrementalPartialCorrelation;
 import edu.cmu.tetrad.search.IndTestFisherZ;
 import edu.cmu.tetrad.search.IndependenceTest;
 import edu.cmu.tetrad.sem.SemIm;
@@ -33,10 +34,15 @@ import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.Matrix;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.lang.Math.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -99,6 +105,90 @@ public class TestIndTestFisherZ {
         assertEquals(0.38, p3, 0.01);
     }
 
+    @Test
+    public void testConcurrentPValues() throws Exception {
+        RandomUtil.getInstance().setSeed(48285934L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 100, 100, 100, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+        IndTestFisherZ test = new IndTestFisherZ(data, 0.05);
+        List<Node> nodes = data.getVariables();
+
+        final int numTests = 200;
+        double[] expected = new double[numTests];
+
+        for (int t = 0; t < numTests; t++) {
+            expected[t] = test.getPValue(nodes.get(t % 10), nodes.get((t + 1) % 10), conditioningSet(nodes, t));
+        }
+
+        double[] actual = new double[numTests];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < numTests; t++) {
+            final int _t = t;
+            futures.add(executor.submit(() -> {
+                actual[_t] = test.getPValue(nodes.get(_t % 10), nodes.get((_t + 1) % 10), conditioningSet(nodes, _t));
+            }));
+        }
+
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+
+        for (int t = 0; t < numTests; t++) {
+            assertEquals(expected[t], actual[t], 0.0);
+        }
+
+        IndTestFisherZ.Result result = test.test(nodes.get(0), nodes.get(1), conditioningSet(nodes, 0));
+        assertEquals(expected[0], result.getPValue(), 0.0);
+        assertEquals(500 - 3 - conditioningSet(nodes, 0).size(), result.getDf(), 0.0);
+    }
+
+    @Test
+    public void testIncrementalPartialCorrelation() {
+        RandomUtil.getInstance().setSeed(48285934L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 15, 100, 100, 100, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+        IncrementalPartialCorrelation partialCorrelations = new IncrementalPartialCorrelation(cov);
+
+        int[][] zs = {{}, {2}, {2, 3}, {4, 3, 2}, {2, 3, 4, 5, 6}};
+
+        for (int[] z : zs) {
+            double expected = StatUtils.partialCorrelation(cov.getMatrix(), 0, 1, z);
+            assertEquals(expected, partialCorrelations.partialCorrelation(0, 1, z), 1e-10);
+        }
+
+        assertEquals(5, partialCorrelations.getNumFactors());
+    }
+
+    @Test
+    public void testIncrementalPartialCorrelationEviction() {
+        RandomUtil.getInstance().setSeed(48285934L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 15, 100, 100, 100, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+        IncrementalPartialCorrelation partialCorrelations = new IncrementalPartialCorrelation(cov, 3);
+
+        int[][] zs = {{2, 3, 4}, {2}, {5, 6}, {2, 3, 4, 5}, {7}, {2, 8}, {2, 3, 4, 9}};
+
+        for (int round = 0; round < 2; round++) {
+            for (int[] z : zs) {
+                double expected = StatUtils.partialCorrelation(cov.getMatrix(), 0, 1, z);
+                assertEquals(expected, partialCorrelations.partialCorrelation(0, 1, z), 1e-10);
+                assertTrue(partialCorrelations.getNumFactors() <= 3);
+            }
+        }
+    }
+
+    private static List<Node> conditioningSet(List<Node> nodes, int t) {
+        List<Node> z = new ArrayList<>();
+        for (int k = 0; k < t % 4; k++) z.add(nodes.get((t + 2 + k) % 10));
+        return z;
+    }
+
     @Test
     public void test2() {
 //        for (int p = 0; p < 50; p++) {
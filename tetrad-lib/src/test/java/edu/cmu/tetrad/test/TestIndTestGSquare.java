@@ -21,9 +21,14 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.data.CategoryBitmapIndex;
+import edu.cmu.tetrad.data.CellTable;
 import edu.cmu.tetrad.data.DataReader;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.AdTree;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.BicScore;
 import edu.cmu.tetrad.search.IndTestGSquare;
 import org.junit.Test;
 
@@ -31,7 +36,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -86,6 +97,110 @@ public class TestIndTestGSquare {
         }
     }
 
+    @Test
+    public void testBitmapCounts() {
+        try {
+            DataSet dataSet = getDataSet(1);
+
+            // Rows with missing values are left out of the counts.
+            for (int i = 0; i < dataSet.getNumRows(); i += 11) {
+                dataSet.setInt(i, i % 4, -99);
+            }
+
+            CategoryBitmapIndex index = new CategoryBitmapIndex(dataSet);
+            CellTable table = new CellTable(null);
+            int[][] indexSets = {{0}, {1, 0}, {0, 2, 3}, {3, 1, 2, 0}};
+
+            for (int[] indices : indexSets) {
+                table.addToTable(dataSet, indices);
+                int[] counts = index.getCounts(indices);
+                int[] coords = new int[indices.length];
+
+                for (int c = 0; c < counts.length; c++) {
+                    for (int i = indices.length - 1, rest = c; i >= 0; i--) {
+                        coords[i] = rest % index.getNumCategories(indices[i]);
+                        rest /= index.getNumCategories(indices[i]);
+                    }
+
+                    assertEquals(table.getValue(coords), counts[c]);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testAdTree() throws IOException {
+        DataSet dataSet = getDataSet(1);
+
+        for (int i = 0; i < dataSet.getNumRows(); i += 13) {
+            dataSet.setInt(i, i % 5, -99);
+        }
+
+        CategoryBitmapIndex index = new CategoryBitmapIndex(dataSet);
+        AdTree tree = new AdTree(dataSet);
+        AdTree small = new AdTree(dataSet, 50, 0);
+        int[][] indexSets = {{0}, {4, 1}, {0, 2, 5}, {5, 3, 1, 2}, {1, 0, 2, 3, 4, 5}};
+
+        for (int[] indices : indexSets) {
+            assertArrayEquals(index.getCounts(indices), tree.getCounts(indices));
+            assertArrayEquals(index.getCounts(indices), small.getCounts(indices));
+        }
+
+        assertTrue(tree.getBytes() > 0);
+        assertEquals(0, small.getBytes());
+
+        IndTestGSquare test1 = new IndTestGSquare(dataSet, 0.05);
+        IndTestGSquare test2 = new IndTestGSquare(dataSet, 0.05, tree);
+        List<Node> v = test1.getVariables();
+
+        assertEquals(test1.getPValue(v.get(0), v.get(1), v.subList(2, 5)),
+                test2.getPValue(v.get(0), v.get(1), v.subList(2, 5)), 0.0);
+
+        BDeuScore score1 = new BDeuScore(dataSet);
+        BDeuScore score2 = new BDeuScore(dataSet, tree);
+        BicScore score3 = new BicScore(dataSet);
+        BicScore score4 = new BicScore(dataSet, tree);
+
+        assertEquals(score1.localScore(3, new int[]{0, 5}), score2.localScore(3, new int[]{0, 5}), 1e-10);
+        assertEquals(score3.localScore(3, new int[]{0, 5}), score4.localScore(3, new int[]{0, 5}), 1e-10);
+    }
+
+    @Test
+    public void testConcurrentPValues() throws Exception {
+        DataSet dataSet = getDataSet(1);
+        IndTestGSquare test = new IndTestGSquare(dataSet, 0.05);
+        List<Node> v = test.getVariables();
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < v.size(); i++) {
+            for (int j = i + 1; j < v.size(); j++) {
+                Node x = v.get(i);
+                Node y = v.get(j);
+                List<Node> z = new ArrayList<>(v);
+                z.remove(x);
+                z.remove(y);
+
+                test.isIndependent(x, y, z);
+                double expected = test.getPValue();
+
+                tasks.add(() -> test.getPValue(x, y, z) == expected);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            for (Future<Boolean> future : executor.invokeAll(tasks)) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private DataSet getDataSet(int i) throws IOException {
         String filename = discreteFiles[i];
         System.out.println("Loading " + filename);
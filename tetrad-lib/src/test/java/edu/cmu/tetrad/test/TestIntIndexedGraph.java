@@ -0,0 +1,123 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests IntIndexedGraph against EdgeListGraph.
+ */
+public final class TestIntIndexedGraph {
+
+    @Test
+    public void testSequence() {
+        Node x1 = new GraphNode("x1");
+        Node x2 = new GraphNode("x2");
+        Node x3 = new GraphNode("x3");
+        Node x4 = new GraphNode("x4");
+
+        IntIndexedGraph graph = new IntIndexedGraph();
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addNode(x4);
+
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x2, x3);
+        graph.addUndirectedEdge(x3, x4);
+
+        assertEquals(Collections.singletonList(x2), graph.getChildren(x1));
+        assertEquals(Collections.singletonList(x1), graph.getParents(x2));
+        assertTrue(graph.isAdjacentTo(x3, x4));
+        assertTrue(graph.isAdjacentTo(graph.getId(x4), graph.getId(x3)));
+        assertEquals(Endpoint.ARROW, graph.getEndpoint(x2, x3));
+
+        graph.setEndpoint(x3, x2, Endpoint.ARROW);
+        assertFalse(graph.isParentOf(x2, x3));
+        assertEquals(Endpoint.ARROW, graph.getEndpoint(x3, x2));
+
+        graph.removeNode(x2);
+        assertFalse(graph.isAdjacentTo(x1, x2));
+        assertTrue(graph.getAdjacentNodes(x1).isEmpty());
+        assertEquals(-1, graph.getId(x2));
+
+        graph.fullyConnect(Endpoint.CIRCLE);
+        assertEquals(3, graph.getNumEdges());
+        assertEquals(2, graph.getNodesInTo(x1, Endpoint.CIRCLE).size());
+
+        Graph copy = new EdgeListGraph(graph);
+        assertEquals(copy, graph);
+        assertEquals(graph, new IntIndexedGraph(copy));
+    }
+
+    @Test
+    public void testAgainstEdgeListGraph() {
+        RandomUtil.getInstance().setSeed(48282L);
+
+        Graph dag = GraphUtils.randomGraph(40, 0, 60, 10, 10, 10, false);
+        Graph expected = new EdgeListGraph(dag);
+        IntIndexedGraph graph = new IntIndexedGraph(dag);
+
+        List<Node> nodes = expected.getNodes();
+
+        // Remove and reorient some edges in both.
+        int i = 0;
+
+        for (Edge edge : expected.getEdges()) {
+            if (i++ % 3 == 0) {
+                expected.removeEdge(edge);
+                graph.removeEdge(edge);
+            } else if (i % 3 == 0) {
+                expected.setEndpoint(edge.getNode2(), edge.getNode1(), Endpoint.CIRCLE);
+                graph.setEndpoint(edge.getNode2(), edge.getNode1(), Endpoint.CIRCLE);
+            }
+        }
+
+        assertEquals(expected, graph);
+
+        for (Node x : nodes) {
+            assertEquals(new HashSet<>(expected.getAdjacentNodes(x)), new HashSet<>(graph.getAdjacentNodes(x)));
+            assertEquals(new HashSet<>(expected.getParents(x)), new HashSet<>(graph.getParents(x)));
+            assertEquals(new HashSet<>(expected.getChildren(x)), new HashSet<>(graph.getChildren(x)));
+            assertEquals(new HashSet<>(expected.getEdges(x)), new HashSet<>(graph.getEdges(x)));
+            assertEquals(expected.getDegree(x), graph.getDegree(x));
+
+            for (Node y : nodes) {
+                assertEquals(expected.isAdjacentTo(x, y), graph.isAdjacentTo(x, y));
+                assertEquals(expected.isParentOf(x, y), graph.isParentOf(x, y));
+                assertEquals(expected.isChildOf(x, y), graph.isChildOf(x, y));
+                assertEquals(expected.getEdge(x, y), graph.getEdge(x, y));
+                assertEquals(expected.getEndpoint(x, y), graph.getEndpoint(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.util.KdTree;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests KdTree against a linear scan.
+ */
+public final class TestKdTree {
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(3);
+
+        for (int trial = 0; trial < 50; trial++) {
+            int n = 1 + random.nextInt(2000);
+            int dims = 1 + random.nextInt(5);
+            int k = 1 + random.nextInt(100);
+
+            // Some trials have many ties.
+            boolean discrete = trial % 3 == 0;
+            double[][] data = new double[dims][n];
+
+            for (int d = 0; d < dims; d++) {
+                for (int i = 0; i < n; i++) {
+                    data[d][i] = discrete ? random.nextInt(4) : random.nextGaussian();
+                }
+            }
+
+            KdTree tree = new KdTree(data);
+
+            for (int q = 0; q < 10; q++) {
+                int point = random.nextInt(n);
+                int[] nearest = tree.nearest(point, k);
+
+                double[] dist = new double[n];
+                for (int i = 0; i < n; i++) dist[i] = distance(data, point, i);
+                double[] sorted = Arrays.copyOf(dist, n);
+                Arrays.sort(sorted);
+
+                assertEquals(Math.min(k, n), nearest.length);
+                Set<Integer> seen = new HashSet<>();
+
+                for (int m = 0; m < nearest.length; m++) {
+                    assertEquals(sorted[m], dist[nearest[m]], 0.0);
+                    assertTrue(seen.add(nearest[m]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomProjection() {
+        Random random = new Random(5);
+        int n = 1000;
+        int dims = 20;
+
+        // Points near a line, so that two directions keep most of the structure.
+        double[][] data = new double[dims][n];
+
+        for (int i = 0; i < n; i++) {
+            double t = random.nextGaussian();
+            for (int d = 0; d < dims; d++) data[d][i] = t + 0.01 * random.nextGaussian();
+        }
+
+        KdTree exact = new KdTree(data);
+        KdTree projected = KdTree.randomProjection(data, 2, 7);
+
+        assertEquals(2, projected.getNumDimensions());
+
+        int overlap = 0;
+
+        for (int point = 0; point < n; point += 10) {
+            Set<Integer> a = new HashSet<>();
+            for (int i : exact.nearest(point, 20)) a.add(i);
+            for (int i : projected.nearest(point, 20)) if (a.contains(i)) overlap++;
+        }
+
+        assertTrue(overlap > 0.5 * 20 * n / 10);
+    }
+
+    private static double distance(double[][] data, int i, int j) {
+        double sum = 0;
+
+        for (double[] column : data) {
+            double d = column[i] - column[j];
+            sum += d * d;
+        }
+
+        return sum;
+    }
+}
@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
@@ -31,9 +32,11 @@ import edu.cmu.tetrad.graph.Node;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -164,9 +167,90 @@ public final class TestKnowledge {
             assertTrue(knowledge.isForbidden("X11", "X22"));
         }
     }
-}
 
+    @Test
+    public void testCompiled() {
+        List<Node> nodes = new ArrayList<>();
+        List<String> varNames = new ArrayList<>();
 
+        for (int i = 0; i < 8; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+            varNames.add("X" + (i + 1));
+        }
 
+        Knowledge2 knowledge = new Knowledge2(varNames);
 
+        // Tiers {X1, X2}, {X3}, {X4, X2}, {X5}; X2 is in two tiers.
+        knowledge.addToTier(0, "X1");
+        knowledge.addToTier(0, "X2");
+        knowledge.addToTier(1, "X3");
+        knowledge.addToTier(2, "X4");
+        knowledge.addToTier(2, "X2");
+        knowledge.addToTier(3, "X5");
+        knowledge.setTierForbiddenWithin(0, true);
+        knowledge.setOnlyCanCauseNextTier(1, true);
+
+        // X4 --> X3 is forbidden by tiers but required.
+        knowledge.setRequired("X4", "X3");
+        knowledge.setForbidden("X7", "X8");
+        knowledge.setRequired("X8", "X6");
+
+        // By tiers: later tiers to earlier ones, within tier 0, and tier 1 to tier 3.
+        String[] forbiddenByTiers = {
+                "X3X1", "X3X2", "X4X1", "X4X2", "X2X1", "X2X2", "X4X3", "X2X3",
+                "X5X1", "X5X2", "X5X3", "X5X4", "X1X1", "X1X2", "X3X5"};
+        String[] required = {"X4X3", "X8X6"};
+        String[] forbidden = {
+                "X3X1", "X3X2", "X4X1", "X4X2", "X2X1", "X2X2", "X2X3",
+                "X5X1", "X5X2", "X5X3", "X5X4", "X1X1", "X1X2", "X3X5", "X7X8"};
+
+        CompiledKnowledge compiled = knowledge.compile(nodes);
+
+        assertEquals(0, compiled.getTier(compiled.getIndex("X1")));
+        assertEquals(-1, compiled.getTier(compiled.getIndex("X2")));
+        assertEquals(-1, compiled.getTier(compiled.getIndex("X6")));
+
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                String pair = x.getName() + y.getName();
+                int i = compiled.getIndex(x.getName());
+                int j = compiled.getIndex(y.getName());
+
+                boolean isForbiddenByTiers = Arrays.asList(forbiddenByTiers).contains(pair);
+                boolean isRequired = Arrays.asList(required).contains(pair);
+                boolean isForbidden = Arrays.asList(forbidden).contains(pair);
+
+                assertEquals(pair, isForbiddenByTiers, knowledge.isForbiddenByTiers(x.getName(), y.getName()));
+                assertEquals(pair, isForbiddenByTiers, compiled.isForbiddenByTiers(i, j));
+                assertEquals(pair, isRequired, knowledge.isRequired(x.getName(), y.getName()));
+                assertEquals(pair, isRequired, compiled.isRequired(i, j));
+                assertEquals(pair, isForbidden, knowledge.isForbidden(x.getName(), y.getName()));
+                assertEquals(pair, isForbidden, compiled.isForbidden(i, j));
+            }
+        }
 
+        // Queries about tiers that don't exist don't change the knowledge.
+        assertFalse(knowledge.isTierForbiddenWithin(10));
+        assertFalse(knowledge.isOnlyCanCauseNextTier(10));
+        assertTrue(knowledge.getTier(10).isEmpty());
+        assertEquals(4, knowledge.getNumTiers());
+        assertFalse(compiled.isStale());
+
+        // Changing a copy doesn't change the original.
+        Knowledge2 copy = new Knowledge2(knowledge);
+        copy.addToTier(0, "X6");
+        copy.removeFromTiers("X3");
+
+        assertTrue(copy.isForbidden("X6", "X1"));
+        assertFalse(knowledge.isForbidden("X6", "X1"));
+        assertTrue(knowledge.isForbidden("X3", "X1"));
+        assertEquals(1, knowledge.getTier(1).size());
+        assertFalse(compiled.isStale());
+
+        knowledge.setForbidden("X1", "X3");
+
+        assertTrue(compiled.isStale());
+        assertTrue(knowledge.isForbidden("X1", "X3"));
+        assertTrue(knowledge.compile(nodes).isForbidden("X1", "X3"));
+    }
+}
@@ -0,0 +1,129 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.MNLRLikelihood;
+import org.junit.Test;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests MNLRLikelihood.
+ */
+public final class TestMNLRLikelihood {
+
+    // Columns: X1, X2 continuous; D binary; Y with three categories, depending on X1 and D.
+    private static final int[][] PARENT_SETS = {{}, {0}, {1}, {2}, {0, 1}, {0, 2}, {1, 2}, {0, 1, 2}};
+
+    @Test
+    public void testInformativeParents() {
+        MNLRLikelihood likelihood = new MNLRLikelihood(makeData(500, 1), 0, 1);
+
+        double none = likelihood.getLik(3, new int[0]);
+        double x1 = likelihood.getLik(3, new int[]{0});
+        double x1d = likelihood.getLik(3, new int[]{0, 2});
+
+        assertTrue(x1 > none + 10);
+        assertTrue(x1d > x1);
+        assertTrue(x1d < 0);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        MNLRLikelihood likelihood = new MNLRLikelihood(makeData(300, 2), 0, 1);
+
+        double[] expected = new double[PARENT_SETS.length];
+        for (int i = 0; i < PARENT_SETS.length; i++) expected[i] = likelihood.getLik(3, PARENT_SETS[i]);
+
+        PrintStream out = System.out;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<double[]>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < 8; t++) {
+                final int offset = t;
+
+                futures.add(executor.submit(() -> {
+                    double[] liks = new double[PARENT_SETS.length];
+
+                    // Visit parent sets in a different order on each task, so that warm starts differ.
+                    for (int k = 0; k < PARENT_SETS.length; k++) {
+                        int i = (k + offset) % PARENT_SETS.length;
+                        liks[i] = likelihood.getLik(3, PARENT_SETS[i]);
+                    }
+
+                    return liks;
+                }));
+            }
+
+            for (Future<double[]> future : futures) {
+                double[] liks = future.get();
+
+                for (int i = 0; i < PARENT_SETS.length; i++) {
+                    assertEquals(expected[i], liks[i], 1e-6);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertSame(out, System.out);
+    }
+
+    private DataSet makeData(int sampleSize, long seed) {
+        Random random = new Random(seed);
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new ContinuousVariable("X2"));
+        variables.add(new DiscreteVariable("D", 2));
+        variables.add(new DiscreteVariable("Y", 3));
+
+        DataSet data = new BoxDataSet(new MixedDataBox(variables, sampleSize), variables);
+
+        for (int i = 0; i < sampleSize; i++) {
+            double x1 = random.nextGaussian();
+            int d = random.nextInt(2);
+
+            double[] p = {1, Math.exp(2 * x1), Math.exp(1.5 * d - x1)};
+            double u = random.nextDouble() * (p[0] + p[1] + p[2]);
+            int y = u < p[0] ? 0 : u < p[0] + p[1] ? 1 : 2;
+
+            data.setDouble(i, 0, x1);
+            data.setDouble(i, 1, random.nextGaussian());
+            data.setInt(i, 2, d);
+            data.setInt(i, 3, y);
+        }
+
+        return data;
+    }
+}
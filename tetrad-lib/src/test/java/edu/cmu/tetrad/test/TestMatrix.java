@@ -22,6 +22,10 @@
 package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.util.Matrix;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.linear.BlockRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -44,6 +48,55 @@ public class TestMatrix {
         assertEquals(0, xTx.trace(), 0.01);
         assertEquals(0, xTxInv.trace(), 0.01);
     }
+
+    @Test
+    public void testSmallMatrices() {
+        RandomUtil.getInstance().setSeed(2938482L);
+
+        Matrix big = new Matrix(40, 40);
+
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                big.set(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        int[] rows = {3, 17, 5, 39, 0, 22};
+        int[] cols = {8, 1, 30, 12, 7, 6};
+        Matrix small = big.getSelection(rows, cols);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                assertEquals(big.get(rows[i], cols[j]), small.get(i, j), 0.0);
+            }
+        }
+
+        RealMatrix apache = new BlockRealMatrix(small.toArray());
+        assertMatrixEquals(new LUDecomposition(apache, 1e-9).getSolver().getInverse().getData(),
+                small.inverse().toArray());
+        assertMatrixEquals(apache.multiply(apache.transpose()).getData(),
+                small.times(small.transpose()).toArray());
+        assertMatrixEquals(apache.subtract(apache.transpose()).getData(),
+                small.minus(small.transpose()).toArray());
+
+        Matrix identity = small.times(small.inverse());
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < rows.length; j++) {
+                assertEquals(i == j ? 1.0 : 0.0, identity.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    private void assertMatrixEquals(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                assertEquals(expected[i][j], actual[i][j], 1e-10);
+            }
+        }
+    }
 }
 
 
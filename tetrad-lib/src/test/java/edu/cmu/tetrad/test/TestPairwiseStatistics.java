@@ -0,0 +1,99 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.search.PairwiseStatistics;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the tiled sums of PairwiseStatistics agree with direct sums.
+ */
+public class TestPairwiseStatistics {
+
+    @Test
+    public void testAllPairs() {
+        RandomUtil.getInstance().setSeed(3829384L);
+
+        // More columns than a tile and more rows than a block, neither a multiple.
+        double[][] data = data(45, 1300);
+
+        PairwiseStatistics.Transform[] f = {PairwiseStatistics.POSITIVE_PART, PairwiseStatistics.POSITIVE_INDICATOR,
+                (column, value) -> Math.tanh(value)};
+        PairwiseStatistics.Transform[] h = {PairwiseStatistics.IDENTITY, PairwiseStatistics.SQUARE,
+                PairwiseStatistics.IDENTITY};
+
+        double[][][] sums = new PairwiseStatistics(data).sums(f, h);
+
+        for (int s = 0; s < f.length; s++) {
+            for (int i = 0; i < data.length; i++) {
+                for (int j = 0; j < data.length; j++) {
+                    assertEquals(sum(data, f[s], h[s], i, j), sums[s][i][j], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPairs() {
+        RandomUtil.getInstance().setSeed(3829384L);
+
+        double[][] data = data(10, 700);
+        int[][] pairs = {{0, 1}, {3, 2}, {9, 9}, {5, 7}};
+
+        PairwiseStatistics.Transform[] f = {PairwiseStatistics.SQUARE, PairwiseStatistics.ONE};
+        PairwiseStatistics.Transform[] h = {PairwiseStatistics.IDENTITY, PairwiseStatistics.SQUARE};
+
+        double[][] sums = new PairwiseStatistics(data).sums(f, h, pairs);
+
+        for (int s = 0; s < f.length; s++) {
+            for (int e = 0; e < pairs.length; e++) {
+                assertEquals(sum(data, f[s], h[s], pairs[e][0], pairs[e][1]), sums[s][e], 1e-9);
+            }
+        }
+    }
+
+    private double[][] data(int numColumns, int N) {
+        double[][] data = new double[numColumns][N];
+
+        for (int i = 0; i < numColumns; i++) {
+            for (int k = 0; k < N; k++) {
+                data[i][k] = RandomUtil.getInstance().nextNormal(0, 1);
+            }
+        }
+
+        return data;
+    }
+
+    private double sum(double[][] data, PairwiseStatistics.Transform f, PairwiseStatistics.Transform h,
+                       int i, int j) {
+        double sum = 0.0;
+
+        for (int k = 0; k < data[i].length; k++) {
+            sum += f.apply(i, data[i][k]) * h.apply(j, data[j][k]);
+        }
+
+        return sum;
+    }
+}
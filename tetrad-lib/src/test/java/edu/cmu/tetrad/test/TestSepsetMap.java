@@ -0,0 +1,167 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.SepsetMap;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing and retrieving sepsets.
+ */
+public class TestSepsetMap {
+
+    @Test
+    public void testSetAndGet() {
+        List<Node> nodes = nodes(5);
+        Node x1 = nodes.get(0), x2 = nodes.get(1), x3 = nodes.get(2), x4 = nodes.get(3), x5 = nodes.get(4);
+
+        SepsetMap map = new SepsetMap(nodes);
+
+        assertNull(map.get(x1, x2));
+
+        map.set(x1, x2, Arrays.asList(x4, x3));
+        map.set(x3, x2, Collections.<Node>emptyList());
+
+        assertEquals(Arrays.asList(x3, x4), map.get(x1, x2));
+        assertEquals(Arrays.asList(x3, x4), map.get(x2, x1));
+        assertEquals(Collections.emptyList(), map.get(x2, x3));
+        assertNull(map.get(x1, x3));
+        assertEquals(2, map.size());
+
+        // Equal sepsets are stored once.
+        map.set(x4, x5, Arrays.asList(x3, x4));
+        assertSame(map.get(x1, x2), map.get(x4, x5));
+
+        map.set(x2, x1, null);
+        assertNull(map.get(x1, x2));
+        assertEquals(2, map.size());
+
+        SepsetMap copy = new SepsetMap(map);
+        assertEquals(map, copy);
+    }
+
+    @Test
+    public void testConcurrentSets() {
+        List<Node> nodes = nodes(200);
+
+        SepsetMap map = new SepsetMap();
+
+        IntStream.range(0, nodes.size()).parallel().forEach(i -> {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                map.set(nodes.get(i), nodes.get(j), Collections.singletonList(nodes.get((i + j) % nodes.size())));
+            }
+        });
+
+        assertEquals(nodes.size() * (nodes.size() - 1) / 2, map.size());
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                assertEquals(Collections.singletonList(nodes.get((i + j) % nodes.size())),
+                        map.get(nodes.get(j), nodes.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        List<Node> nodes = nodes(4);
+
+        SepsetMap map = new SepsetMap();
+        map.set(nodes.get(0), nodes.get(1), Arrays.asList(nodes.get(2), nodes.get(3)));
+        map.set(nodes.get(2), nodes.get(3), Collections.<Node>emptyList());
+
+        SepsetMap _map = serializedCopy(map);
+
+        assertEquals(map, _map);
+        assertEquals(new HashSet<>(Arrays.asList(nodes.get(2), nodes.get(3))),
+                new HashSet<>(_map.get(nodes.get(1), nodes.get(0))));
+        assertEquals(Collections.emptyList(), _map.get(nodes.get(3), nodes.get(2)));
+    }
+
+    @Test
+    public void testIndexOrders() throws Exception {
+        List<Node> nodes = nodes(4);
+        Node x1 = nodes.get(0), x2 = nodes.get(1), x3 = nodes.get(2), x4 = nodes.get(3);
+
+        List<Node> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+
+        SepsetMap map1 = new SepsetMap(nodes);
+        SepsetMap map2 = new SepsetMap(reversed);
+        SepsetMap map3 = new SepsetMap();
+
+        for (SepsetMap map : Arrays.asList(map1, map2, map3)) {
+            map.set(x1, x2, Arrays.asList(x3, x4));
+            map.set(x2, x3, Arrays.asList(x4, x1));
+            map.set(x1, x4, Collections.<Node>emptyList());
+        }
+
+        // The sepsets are listed in each map's own node order.
+        assertEquals(Arrays.asList(x3, x4), map1.get(x1, x2));
+        assertEquals(Arrays.asList(x4, x3), map2.get(x1, x2));
+
+        assertEquals(map1, map2);
+        assertEquals(map2, map1);
+        assertEquals(map1, map3);
+        assertEquals(map1.hashCode(), map2.hashCode());
+        assertEquals(map2, serializedCopy(map2));
+        assertEquals(serializedCopy(map1), map2);
+
+        map3.set(x2, x3, Collections.singletonList(x4));
+        assertNotEquals(map1, map3);
+
+        map3.set(x2, x3, null);
+        assertNotEquals(map1, map3);
+    }
+
+    private SepsetMap serializedCopy(SepsetMap map) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (SepsetMap) in.readObject();
+    }
+
+    private List<Node> nodes(int numNodes) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numNodes; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        return nodes;
+    }
+}